@@ -0,0 +1,63 @@
+package org.example.bench;
+
+import org.example.core.graph.CompactGraph;
+import org.example.core.graph.GraphServiceImpl;
+import org.example.core.traverse.AllPairsLatencies;
+import org.example.core.traverse.TraverseOptions;
+import org.example.core.traverse.TraverseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build time of the all pairs precomputation. The memory footprint is fixed by the node count
+ * ({@code nodes^2 * 4} bytes) and printed once per trial, the gc profiler shows the allocation rate.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@State(Scope.Benchmark)
+public class AllPairsBenchmark {
+
+  @Param({"1000", "5000"})
+  public int nodes;
+
+  @Param({"RANDOM", "SCALE_FREE"})
+  public SyntheticGraphs.Shape shape;
+
+  private CompactGraph graph;
+
+  @Setup
+  public void setUp() {
+    this.graph = CompactGraph.fromTuples(SyntheticGraphs.generate(this.shape, this.nodes, 4));
+  }
+
+  @Benchmark
+  public AllPairsLatencies precompute() {
+    TraverseService traverseService =
+        new TraverseService(
+            new GraphServiceImpl(file -> null) {
+              @Override
+              public CompactGraph constructCompactGraphFromFile(String filePathAndName) {
+                return AllPairsBenchmark.this.graph;
+              }
+            },
+            TraverseOptions.defaults().withAllPairsNodeLimit(this.nodes));
+    traverseService.initGraph("synthetic");
+    AllPairsLatencies allPairs = traverseService.allPairsLatencies();
+    System.out.println(allPairs);
+    return allPairs;
+  }
+}
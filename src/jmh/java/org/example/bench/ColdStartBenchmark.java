@@ -0,0 +1,76 @@
+package org.example.bench;
+
+import org.example.core.graph.CompactGraph;
+import org.example.core.graph.GraphServiceImpl;
+import org.example.core.graph.GraphTuple;
+import org.example.details.BinaryGraphFile;
+import org.example.details.BinaryGraphService;
+import org.example.details.GraphFileReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to the first graph in a fresh JVM, the text file against the binary snapshot. Every
+ * measurement runs in its own fork without warmup, so class loading and the interpreter are part of
+ * the result just like on a real process start.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 5, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@State(Scope.Benchmark)
+public class ColdStartBenchmark {
+
+  @Param({"1000000"})
+  public int edges;
+
+  @Param({"8"})
+  public int degree;
+
+  private String textFile;
+  private String snapshotFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    List<GraphTuple> tuples =
+        SyntheticGraphs.generate(SyntheticGraphs.Shape.RANDOM, this.edges / this.degree, this.degree);
+    Path text = SyntheticGraphs.writeEdgeLines(tuples);
+    Path snapshot = Files.createTempFile("graph", ".bin");
+    snapshot.toFile().deleteOnExit();
+    BinaryGraphFile.write(CompactGraph.fromTuples(tuples), snapshot);
+    this.textFile = text.toString();
+    this.snapshotFile = snapshot.toString();
+  }
+
+  @Benchmark
+  public CompactGraph textFile() {
+    return new GraphServiceImpl(new GraphFileReader()).constructCompactGraphFromFile(this.textFile);
+  }
+
+  @Benchmark
+  public CompactGraph binarySnapshot() {
+    return new BinaryGraphService().constructCompactGraphFromFile(this.snapshotFile);
+  }
+
+  /** Maps the snapshot into an off-heap graph, nothing but the name index is copied. */
+  @Benchmark
+  public CompactGraph mappedSnapshot() {
+    return new BinaryGraphService(true).constructCompactGraphFromFile(this.snapshotFile);
+  }
+}
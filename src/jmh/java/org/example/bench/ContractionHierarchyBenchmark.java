@@ -0,0 +1,102 @@
+package org.example.bench;
+
+import org.example.core.graph.GraphServiceImpl;
+import org.example.core.graph.GraphTuple;
+import org.example.core.traverse.ContractionHierarchy;
+import org.example.core.traverse.NoTraceFoundException;
+import org.example.core.traverse.TraverseOptions;
+import org.example.core.traverse.TraverseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point to point shortest latency queries with the {@link ContractionHierarchy} against plain
+ * Dijkstra from the start and the search from both ends. The hierarchy is built once per trial,
+ * its build time, core size and shortcuts are printed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class ContractionHierarchyBenchmark {
+  private static final int QUERY_COUNT = 256;
+
+  @Param({"RANDOM", "SCALE_FREE", "LAYERED"})
+  public SyntheticGraphs.Shape shape;
+
+  @Param({"200000"})
+  public int nodes;
+
+  @Param({"4"})
+  public int degree;
+
+  /** DIJKSTRA (from the start only), BIDIRECTIONAL or HIERARCHY. */
+  @Param({"DIJKSTRA", "BIDIRECTIONAL", "HIERARCHY"})
+  public String search;
+
+  private TraverseService traverseService;
+  private String[] starts;
+  private String[] ends;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    List<GraphTuple> tuples = SyntheticGraphs.generate(this.shape, this.nodes, this.degree);
+    // Without the result cache, every invocation does the full work.
+    TraverseOptions options =
+        TraverseOptions.defaults()
+            .withQueryCacheSize(0)
+            .withBidirectionalSearch(!this.search.equals("DIJKSTRA"));
+    if (this.search.equals("HIERARCHY")) {
+      options = options.withContractionHierarchy(ContractionHierarchy::build);
+    }
+    this.traverseService = new TraverseService(new GraphServiceImpl(file -> tuples), options);
+    this.traverseService.initGraph("synthetic");
+    if (this.traverseService.contractionHierarchy() != null) {
+      System.out.println(this.traverseService.contractionHierarchy());
+    }
+    Random random = new Random(42);
+
+    // Only pairs with a trace between them, the exception of a missing trace would dominate.
+    this.starts = new String[QUERY_COUNT];
+    this.ends = new String[QUERY_COUNT];
+    int found = 0;
+    for (int attempt = 0; found < QUERY_COUNT && attempt < 100 * QUERY_COUNT; attempt++) {
+      GraphTuple start = tuples.get(random.nextInt(tuples.size()));
+      GraphTuple end = tuples.get(random.nextInt(tuples.size()));
+      try {
+        this.traverseService.findShortestLatencyForPath(start.parentName(), end.childName());
+        this.starts[found] = start.parentName();
+        this.ends[found] = end.childName();
+        found++;
+      } catch (NoTraceFoundException e) {
+        // Try the next pair.
+      }
+    }
+    if (found < QUERY_COUNT) {
+      throw new IllegalStateException("Only " + found + " connected pairs found.");
+    }
+  }
+
+  @Benchmark
+  public int findShortestLatencyForPath() {
+    this.next = (this.next + 1) % QUERY_COUNT;
+    return this.traverseService.findShortestLatencyForPath(
+        this.starts[this.next], this.ends[this.next]);
+  }
+}
@@ -0,0 +1,75 @@
+package org.example.bench;
+
+import org.example.core.graph.GraphServiceImpl;
+import org.example.core.graph.GraphTuple;
+import org.example.core.traverse.TraverseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one change of the live graph with {@link TraverseService#updateEdges(List)} against
+ * loading the whole graph again, which was the only way before. Every update publishes a new
+ * graph version, including the strongly connected components.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class EdgeUpdateBenchmark {
+
+  @Param({"RANDOM", "LAYERED"})
+  public SyntheticGraphs.Shape shape;
+
+  @Param({"10000", "100000"})
+  public int nodes;
+
+  @Param({"4"})
+  public int degree;
+
+  private List<GraphTuple> tuples;
+  private TraverseService traverseService;
+  private final Random random = new Random(42);
+
+  @Setup
+  public void setUp() {
+    this.tuples = SyntheticGraphs.generate(this.shape, this.nodes, this.degree);
+    this.traverseService = new TraverseService(new GraphServiceImpl(file -> this.tuples));
+    this.traverseService.initGraph("synthetic");
+  }
+
+  /** The latency of an existing edge changes, the most frequent update from the monitoring. */
+  @Benchmark
+  public long latencyUpdate() {
+    GraphTuple edge = this.tuples.get(this.random.nextInt(this.tuples.size()));
+    return this.traverseService.upsertEdge(
+        edge.parentName(), edge.childName(), 1 + this.random.nextInt(100));
+  }
+
+  /** An existing edge is deleted and added again, so the graph does not drift away. */
+  @Benchmark
+  public long deleteAndInsert() {
+    GraphTuple edge = this.tuples.get(this.random.nextInt(this.tuples.size()));
+    this.traverseService.deleteEdge(edge.parentName(), edge.childName());
+    return this.traverseService.upsertEdge(edge.parentName(), edge.childName(), edge.latency());
+  }
+
+  @Benchmark
+  public long reload() {
+    return this.traverseService.reloadGraph("synthetic", Runnable::run).join();
+  }
+}
@@ -0,0 +1,93 @@
+package org.example.bench;
+
+import org.example.core.graph.CompactGraph;
+import org.example.core.graph.GraphNode;
+import org.example.core.graph.GraphServiceImpl;
+import org.example.core.graph.GraphTuple;
+import org.example.details.GraphFileReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to get from a file to a graph, with the different readers and graph representations. The
+ * original format only knows single character names, so that file has the same number of edges but
+ * far fewer distinct nodes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class GraphLoadingBenchmark {
+
+  @Param({"100000", "1000000"})
+  public int edges;
+
+  @Param({"8"})
+  public int degree;
+
+  private final GraphFileReader graphFileReader = new GraphFileReader();
+  private final GraphServiceImpl graphService = new GraphServiceImpl(this.graphFileReader);
+  private GraphServiceImpl parallelGraphService;
+  private ForkJoinPool pool;
+  private String edgeLineFile;
+  private String tupleFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    List<GraphTuple> tuples =
+        SyntheticGraphs.generate(SyntheticGraphs.Shape.RANDOM, this.edges / this.degree, this.degree);
+    this.edgeLineFile = SyntheticGraphs.writeEdgeLines(tuples).toString();
+    this.tupleFile = SyntheticGraphs.writeTuples(tuples).toString();
+    this.pool = new ForkJoinPool();
+    this.parallelGraphService = new GraphServiceImpl(this.graphFileReader, this.pool);
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.pool.shutdown();
+  }
+
+  @Benchmark
+  public CompactGraph edgeLinesStreamedIntoCompactGraph() {
+    return this.graphService.constructCompactGraphFromFile(this.edgeLineFile);
+  }
+
+  @Benchmark
+  public CompactGraph edgeLinesAsListIntoParallelCompactGraph() {
+    return this.parallelGraphService.constructCompactGraphFromFile(this.edgeLineFile);
+  }
+
+  @Benchmark
+  public Map<String, GraphNode> edgeLinesStreamedIntoLookupMap() {
+    return this.graphService.constructGraphFromFile(this.edgeLineFile);
+  }
+
+  @Benchmark
+  public CompactGraph tuplesStreamedIntoCompactGraph() {
+    return this.graphService.constructCompactGraphFromFile(this.tupleFile);
+  }
+
+  /** The original path: read the whole file, split it and create a list of all tuples. */
+  @Benchmark
+  public CompactGraph tuplesAsListIntoCompactGraph() {
+    return CompactGraph.fromTuples(this.graphFileReader.getGraphTuplesForFile(this.tupleFile));
+  }
+}
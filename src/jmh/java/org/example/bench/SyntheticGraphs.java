@@ -0,0 +1,127 @@
+package org.example.bench;
+
+import org.example.core.graph.GraphTuple;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates graphs for the benchmarks. All graphs are created from a fixed seed, so two runs of a
+ * benchmark work on exactly the same graph.
+ */
+public final class SyntheticGraphs {
+  private static final long SEED = 20230803L;
+  private static final int MAX_LATENCY = 100;
+
+  public enum Shape {
+    /** Every edge connects two nodes picked uniformly at random. */
+    RANDOM,
+    /**
+     * Preferential attachment (Barabasi-Albert). Every new node calls nodes which are already
+     * called a lot, so a few hub services get most of the edges.
+     */
+    SCALE_FREE,
+    /**
+     * Microservice DAG. The nodes are split into layers (gateways, APIs, ..., databases) and every
+     * node only calls nodes of the next two layers.
+     */
+    LAYERED
+  }
+
+  private SyntheticGraphs() {}
+
+  /**
+   * @param nodes the number of nodes.
+   * @param degree the average number of outgoing edges of a node.
+   */
+  public static List<GraphTuple> generate(Shape shape, int nodes, int degree) {
+    Random random = new Random(SEED);
+    String[] names = new String[nodes];
+    for (int n = 0; n < nodes; n++) {
+      names[n] = "svc-" + n;
+    }
+    List<GraphTuple> tuples = new ArrayList<>(nodes * degree);
+    switch (shape) {
+      case RANDOM -> {
+        for (int e = 0; e < nodes * degree; e++) {
+          tuples.add(edge(names, random.nextInt(nodes), random.nextInt(nodes), random));
+        }
+      }
+      case SCALE_FREE -> {
+        // Every edge end is remembered, picking a random one picks a node proportional to its
+        // degree.
+        int[] ends = new int[2 * nodes * degree];
+        int endCount = 0;
+        for (int n = 0; n < nodes; n++) {
+          for (int d = 0; d < degree; d++) {
+            int target = endCount == 0 ? random.nextInt(nodes) : ends[random.nextInt(endCount)];
+            tuples.add(edge(names, n, target, random));
+            ends[endCount++] = n;
+            ends[endCount++] = target;
+          }
+        }
+      }
+      case LAYERED -> {
+        int layers = Math.max(2, (int) Math.round(Math.log(nodes) / Math.log(2)));
+        int perLayer = Math.max(1, nodes / layers);
+        for (int n = 0; n < nodes; n++) {
+          int layer = n / perLayer;
+          int firstCallee = (layer + 1) * perLayer;
+          if (firstCallee >= nodes) {
+            // The last layer are the databases, they don't call anyone.
+            continue;
+          }
+          int callees = Math.min(nodes - firstCallee, 2 * perLayer);
+          for (int d = 0; d < degree; d++) {
+            tuples.add(edge(names, n, firstCallee + random.nextInt(callees), random));
+          }
+        }
+      }
+    }
+    return tuples;
+  }
+
+  /** Writes the graph in the edge list format, one parent->child:latency per line. */
+  public static Path writeEdgeLines(List<GraphTuple> tuples) throws IOException {
+    Path file = Files.createTempFile("graph", ".txt");
+    file.toFile().deleteOnExit();
+    try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+      for (GraphTuple t : tuples) {
+        writer.write(t.parentName() + "->" + t.childName() + ":" + t.latency());
+        writer.newLine();
+      }
+    }
+    return file;
+  }
+
+  /**
+   * Writes the graph in the original format (AB5, BC4). As it only supports single character
+   * names, the nodes are folded onto the letters.
+   */
+  public static Path writeTuples(List<GraphTuple> tuples) throws IOException {
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    Path file = Files.createTempFile("graph", ".txt");
+    file.toFile().deleteOnExit();
+    try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+      for (int i = 0; i < tuples.size(); i++) {
+        GraphTuple t = tuples.get(i);
+        if (i > 0) {
+          writer.write(", ");
+        }
+        writer.write(alphabet.charAt(Math.floorMod(t.parentName().hashCode(), alphabet.length())));
+        writer.write(alphabet.charAt(Math.floorMod(t.childName().hashCode(), alphabet.length())));
+        writer.write(Integer.toString(t.latency()));
+      }
+    }
+    return file;
+  }
+
+  private static GraphTuple edge(String[] names, int source, int target, Random random) {
+    return new GraphTuple(names[source], names[target], 1 + random.nextInt(MAX_LATENCY));
+  }
+}
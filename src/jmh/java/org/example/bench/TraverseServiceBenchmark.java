@@ -0,0 +1,264 @@
+package org.example.bench;
+
+import org.example.core.graph.GraphService;
+import org.example.core.graph.GraphServiceImpl;
+import org.example.core.graph.OffHeapGraphService;
+import org.example.core.graph.GraphTuple;
+import org.example.core.traverse.LatencyQuery;
+import org.example.core.traverse.NoTraceFoundException;
+import org.example.core.traverse.PathValidator;
+import org.example.core.traverse.RankedPath;
+import org.example.core.traverse.TraverseOptions;
+import org.example.core.traverse.TraverseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link TraverseService} queries on synthetic graphs. Every invocation runs the
+ * next query of a fixed, precomputed list, so the benchmark does not only measure one lucky pair.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class TraverseServiceBenchmark {
+  private static final int QUERY_COUNT = 256;
+  private static final int PATH_LENGTH = 6;
+
+  @Param({"RANDOM", "SCALE_FREE", "LAYERED"})
+  public SyntheticGraphs.Shape shape;
+
+  @Param({"1000", "10000"})
+  public int nodes;
+
+  @Param({"4"})
+  public int degree;
+
+  /** Where the graph is stored, see {@link OffHeapGraphService}. */
+  @Param({"HEAP", "OFF_HEAP"})
+  public String storage;
+
+  /** With the query metrics on, the difference is their overhead, see {@code QueryMetrics}. */
+  @Param({"false"})
+  public boolean metrics;
+
+  /** Point to point shortest latencies from both ends, see {@code TraverseOptions}. */
+  @Param({"true"})
+  public boolean bidirectional;
+
+  private TraverseService traverseService;
+  private String[] starts;
+  private String[] ends;
+  private List<List<String>> paths;
+  private List<LatencyQuery> report;
+  private PathValidator pathValidator;
+  private int[][] resolvedPaths;
+
+  @Setup
+  public void setUp() {
+    List<GraphTuple> tuples = SyntheticGraphs.generate(this.shape, this.nodes, this.degree);
+    // Without the result cache, every invocation does the full work.
+    GraphService graphService = new GraphServiceImpl(file -> tuples);
+    if (this.storage.equals("OFF_HEAP")) {
+      graphService = new OffHeapGraphService(graphService);
+    }
+    this.traverseService =
+        new TraverseService(
+            graphService,
+            TraverseOptions.defaults()
+                .withQueryCacheSize(0)
+                .withMetricsEnabled(this.metrics)
+                .withBidirectionalSearch(this.bidirectional));
+    this.traverseService.initGraph("synthetic");
+    Random random = new Random(42);
+
+    // Only pairs with a trace between them, the exception of a missing trace would dominate.
+    this.starts = new String[QUERY_COUNT];
+    this.ends = new String[QUERY_COUNT];
+    int found = 0;
+    for (int attempt = 0; found < QUERY_COUNT && attempt < 100 * QUERY_COUNT; attempt++) {
+      GraphTuple start = tuples.get(random.nextInt(tuples.size()));
+      GraphTuple end = tuples.get(random.nextInt(tuples.size()));
+      try {
+        this.traverseService.findShortestLatencyForPath(start.parentName(), end.childName());
+        this.starts[found] = start.parentName();
+        this.ends[found] = end.childName();
+        found++;
+      } catch (NoTraceFoundException e) {
+        // Try the next pair.
+      }
+    }
+    if (found < QUERY_COUNT) {
+      throw new IllegalStateException("Only " + found + " connected pairs found.");
+    }
+
+    // Random walks along existing edges for the path validation.
+    List<List<String>> adjacency = new ArrayList<>();
+    Map<String, Integer> index = new HashMap<>();
+    for (GraphTuple t : tuples) {
+      index.computeIfAbsent(
+          t.parentName(),
+          n -> {
+            adjacency.add(new ArrayList<>());
+            return adjacency.size() - 1;
+          });
+      adjacency.get(index.get(t.parentName())).add(t.childName());
+    }
+    this.paths = new ArrayList<>();
+    for (int q = 0; q < QUERY_COUNT; q++) {
+      List<String> path = new ArrayList<>(List.of(this.starts[q]));
+      while (path.size() < PATH_LENGTH) {
+        Integer node = index.get(path.get(path.size() - 1));
+        if (node == null) {
+          break;
+        }
+        List<String> children = adjacency.get(node);
+        path.add(children.get(random.nextInt(children.size())));
+      }
+      this.paths.add(path);
+    }
+    this.pathValidator = this.traverseService.pathValidator();
+    this.resolvedPaths = new int[QUERY_COUNT][];
+    for (int q = 0; q < QUERY_COUNT; q++) {
+      this.resolvedPaths[q] =
+          this.paths.get(q).stream().mapToInt(this.pathValidator::nodeId).toArray();
+    }
+
+    // The nightly report, the latency from one gateway to every service.
+    Map<String, Boolean> services = new HashMap<>();
+    for (GraphTuple t : tuples) {
+      services.put(t.parentName(), true);
+      services.put(t.childName(), true);
+    }
+    this.report = new ArrayList<>();
+    for (String service : services.keySet()) {
+      this.report.add(new LatencyQuery(this.starts[0], service));
+    }
+  }
+
+  /** Every benchmark thread walks through the queries on its own. */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+
+    int next() {
+      next = (next + 1) % QUERY_COUNT;
+      return next;
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Hops {
+    @Param({"2", "4", "8"})
+    public int maxHops;
+  }
+
+  @State(Scope.Benchmark)
+  public static class LatencyLimit {
+    @Param({"100", "300"})
+    public int latencyLimit;
+  }
+
+  @State(Scope.Benchmark)
+  public static class ShortestPaths {
+    @Param({"10", "100"})
+    public int k;
+
+    @Param({"true", "false"})
+    public boolean simplePathsOnly;
+  }
+
+  @Benchmark
+  public int averageLatencyOfPath(Cursor cursor) {
+    return this.traverseService.averageLatencyOfPath(this.paths.get(cursor.next()));
+  }
+
+  /** The allocation free variant, the names are resolved to ids once in advance. */
+  @Benchmark
+  public long latencyOfResolvedPath(Cursor cursor) {
+    int[] path = this.resolvedPaths[cursor.next()];
+    return this.pathValidator.latencyOfPath(path, path.length);
+  }
+
+  @Benchmark
+  public int findShortestLatencyForPath(Cursor cursor) {
+    int q = cursor.next();
+    return this.traverseService.findShortestLatencyForPath(this.starts[q], this.ends[q]);
+  }
+
+  @Benchmark
+  public int findNumberOfPossibleTraces(Cursor cursor, Hops hops) {
+    int q = cursor.next();
+    try {
+      return this.traverseService.findNumberOfPossibleTraces(
+          this.starts[q], this.ends[q], hops.maxHops, false);
+    } catch (ArithmeticException e) {
+      // Too many traces for an int, the work was done anyway.
+      return -1;
+    }
+  }
+
+  @Benchmark
+  public int findAllPathsWithLessThanLatency(Cursor cursor, LatencyLimit limit) {
+    int q = cursor.next();
+    try {
+      return this.traverseService.findAllPathsWithLessThanLatency(
+          this.starts[q], this.ends[q], limit.latencyLimit);
+    } catch (ArithmeticException e) {
+      return -1;
+    }
+  }
+
+  @Benchmark
+  public List<Integer> latencyReportBatched() {
+    return this.traverseService.findShortestLatencies(this.report);
+  }
+
+  @Benchmark
+  public int latencyReportOneByOne() {
+    int sum = 0;
+    for (LatencyQuery query : this.report) {
+      try {
+        sum += this.traverseService.findShortestLatencyForPath(query.startName(), query.endName());
+      } catch (NoTraceFoundException e) {
+        // Not every service is reachable from the gateway.
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public List<RankedPath> findShortestPaths(Cursor cursor, ShortestPaths paths) {
+    int q = cursor.next();
+    return this.traverseService.findShortestPaths(
+        this.starts[q], this.ends[q], paths.k, paths.simplePathsOnly);
+  }
+
+  @Benchmark
+  public int findDownstreamServices(Cursor cursor) {
+    return this.traverseService.findDownstreamServices(List.of(this.starts[cursor.next()])).size();
+  }
+
+  @Benchmark
+  public int findImpactedServices(Cursor cursor) {
+    return this.traverseService.findImpactedServices(List.of(this.ends[cursor.next()])).size();
+  }
+}
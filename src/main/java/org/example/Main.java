@@ -6,7 +6,10 @@ import org.example.core.graph.GraphServiceImpl;
 import org.example.core.traverse.NoTraceFoundException;
 import org.example.core.traverse.TraverseService;
 import org.example.details.GraphFileReader;
+import org.example.details.GraphFileWatcher;
+import org.example.details.QueryMetricsJmx;
 
+import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.Scanner;
 
@@ -20,6 +23,11 @@ public class Main {
   private final GraphReader graphReader = new GraphFileReader();
   private final GraphService graphService = new GraphServiceImpl(graphReader);
   private final TraverseService traverseService = new TraverseService(graphService);
+  // The metrics stay off until they are enabled over JMX, e.g. with JConsole.
+  private final QueryMetricsJmx queryMetricsJmx =
+      new QueryMetricsJmx(
+          traverseService.queryMetrics(), ManagementFactory.getPlatformMBeanServer());
+  private GraphFileWatcher graphFileWatcher;
 
   public static void main(String[] args) {
     // Please keep in mind that we are not working with any DPI frameworks etc.
@@ -31,17 +39,28 @@ public class Main {
     // exactly. The given file format. There should be NO dependency to the core package from the details
     // package.
     Main main = new Main();
-    main.initGraphDialog();
-    main.calculateAndPrintAverageLatency(List.of("A", "B", "C"));
-    main.calculateAndPrintAverageLatency(List.of("A", "D"));
-    main.calculateAndPrintAverageLatency(List.of("A", "D", "C"));
-    main.calculateAndPrintAverageLatency(List.of("A", "E", "B", "C", "D"));
-    main.calculateAndPrintAverageLatency(List.of("A", "E", "D"));
-    main.calculateAndPrintNumberOfTracesWithHops("C", "C", 3, false);
-    main.calculateAndPrintNumberOfTracesWithHops("A", "C", 4, true);
-    main.calculateAndPrintShortestLatencyPath("A", "C");
-    main.calculateAndPrintShortestLatencyPath("B", "B");
-    main.calculateAndPrintAllPathsWithLatencyLimit("C", "C", 30);
+    try {
+      main.initGraphDialog();
+      main.calculateAndPrintAverageLatency(List.of("A", "B", "C"));
+      main.calculateAndPrintAverageLatency(List.of("A", "D"));
+      main.calculateAndPrintAverageLatency(List.of("A", "D", "C"));
+      main.calculateAndPrintAverageLatency(List.of("A", "E", "B", "C", "D"));
+      main.calculateAndPrintAverageLatency(List.of("A", "E", "D"));
+      main.calculateAndPrintNumberOfTracesWithHops("C", "C", 3, false);
+      main.calculateAndPrintNumberOfTracesWithHops("A", "C", 4, true);
+      main.calculateAndPrintShortestLatencyPath("A", "C");
+      main.calculateAndPrintShortestLatencyPath("B", "B");
+      main.calculateAndPrintAllPathsWithLatencyLimit("C", "C", 30);
+    } finally {
+      main.shutdown();
+    }
+  }
+
+  private void shutdown() {
+    if (this.graphFileWatcher != null) {
+      this.graphFileWatcher.close();
+    }
+    this.queryMetricsJmx.close();
   }
 
   private void calculateAndPrintAllPathsWithLatencyLimit(
@@ -59,7 +78,25 @@ public class Main {
     System.out.println("Otherwise just hit enter.");
     Scanner s = new Scanner(System.in);
     String value = s.nextLine();
-    this.traverseService.initGraph(value != null && !value.isEmpty() ? value : DEFAULT_GRAPH_DATA);
+    String graphFile = value != null && !value.isEmpty() ? value : DEFAULT_GRAPH_DATA;
+    this.traverseService.initGraph(graphFile);
+    // In case the file changes while we are running, the new graph replaces the old one.
+    this.graphFileWatcher =
+        new GraphFileWatcher(
+            graphFile,
+            () -> this.reloadGraph(graphFile),
+            e -> System.err.println("Reloading the graph failed, keeping the current one: " + e));
+  }
+
+  private void reloadGraph(String graphFile) {
+    this.traverseService
+        .reloadGraph(graphFile)
+        .whenComplete(
+            (version, e) -> {
+              if (e != null) {
+                System.err.println("Reloading the graph failed, keeping the current one: " + e);
+              }
+            });
   }
 
   private void calculateAndPrintShortestLatencyPath(String startName, String endName) {
@@ -0,0 +1,529 @@
+package org.example.core.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable graph representation in the compressed sparse row (CSR) layout. Every node name is
+ * interned to a dense int id (0..nodeCount-1) and the outgoing edges of node {@code n} are the
+ * edge ids in the range {@code [firstEdge(n), endEdge(n))}. Target and latency of an edge are
+ * stored in primitive arrays, so walking the graph does not allocate anything and does not chase
+ * pointers like the {@link GraphNode} based lookup map does.
+ *
+ * <p>The factories of this class keep the arrays on the heap. {@link OffHeapCompactGraph} keeps
+ * them outside of the heap for graphs which are too big for the garbage collector to handle well.
+ * All queries only use the accessors of this class, so they work on both.
+ */
+public abstract class CompactGraph {
+  // Marks a deleted edge in the changes of withUpdates, latencies are never negative.
+  private static final int DELETED = -1;
+
+  // Built on first use, a race only builds the same graph twice.
+  private volatile CompactGraph reversed;
+
+  // Only the two implementations in this package, the queries rely on them being immutable.
+  CompactGraph() {}
+
+  /**
+   * Create a compact graph from the tuples of a {@link GraphReader}. Node ids are assigned in the
+   * order the names first appear. If the same edge is contained more than once the last latency
+   * wins, the same way {@link GraphNode#addDependentNode(GraphNode, Integer)} behaves.
+   *
+   * @param tuples the edges of the graph.
+   * @return the compact graph.
+   */
+  public static CompactGraph fromTuples(List<GraphTuple> tuples) {
+    Builder builder = new Builder();
+    for (GraphTuple t : tuples) {
+      builder.addEdge(t.parentName(), t.childName(), t.latency());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Create a compact graph from an already constructed lookup map.
+   *
+   * @param lookupMap lookup map where all nodes are available.
+   * @return the compact graph.
+   */
+  public static CompactGraph fromLookupMap(Map<String, GraphNode> lookupMap) {
+    Builder builder = new Builder();
+    for (GraphNode node : lookupMap.values()) {
+      builder.addNode(node.getName());
+      for (Map.Entry<GraphNode, Integer> child : node.getDependentNodes().values()) {
+        builder.addEdge(node.getName(), child.getKey().getName(), child.getValue());
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Create a compact graph directly from its CSR arrays, for example when it is loaded from a
+   * snapshot. The arrays are taken over without copying, so they must not be changed afterwards.
+   *
+   * @param names the node names, the index is the node id.
+   * @param offsets the first edge of every node plus the end of the last one (nodeCount + 1).
+   * @param targets the target of every edge, strictly ascending within the edges of a node.
+   * @param latencies the latency of every edge.
+   * @return the compact graph.
+   * @throws IllegalArgumentException in case the arrays are not a valid graph.
+   */
+  public static CompactGraph fromArrays(
+      String[] names, int[] offsets, int[] targets, int[] latencies) {
+    int nodeCount = names.length;
+    if (offsets.length != nodeCount + 1
+        || offsets[0] != 0
+        || offsets[nodeCount] != targets.length
+        || targets.length != latencies.length) {
+      throw new IllegalArgumentException("The array sizes do not match.");
+    }
+    Map<String, Integer> ids = new HashMap<>();
+    for (int n = 0; n < nodeCount; n++) {
+      if (ids.put(names[n], n) != null) {
+        throw new IllegalArgumentException("Duplicated node name: " + names[n]);
+      }
+      if (offsets[n + 1] < offsets[n]) {
+        throw new IllegalArgumentException("The offsets need to be ascending.");
+      }
+      for (int e = offsets[n]; e < offsets[n + 1]; e++) {
+        if (targets[e] < 0 || targets[e] >= nodeCount || latencies[e] < 0) {
+          throw new IllegalArgumentException("Invalid edge " + e + " of node " + names[n]);
+        }
+        if (e > offsets[n] && targets[e] <= targets[e - 1]) {
+          throw new IllegalArgumentException("The targets of node " + names[n] + " are not sorted.");
+        }
+      }
+    }
+    return new HeapCompactGraph(names, ids, offsets, targets, latencies);
+  }
+
+  public abstract int nodeCount();
+
+  public abstract int edgeCount();
+
+  /**
+   * @return the highest latency of all edges, 0 for a graph without edges.
+   */
+  public abstract int maxLatency();
+
+  /**
+   * @param name the node name.
+   * @return the id of the node or -1 in case there is no node with this name.
+   */
+  public abstract int idOf(String name);
+
+  public abstract String nameOf(int node);
+
+  public abstract int firstEdge(int node);
+
+  public abstract int endEdge(int node);
+
+  public int outDegree(int node) {
+    return this.endEdge(node) - this.firstEdge(node);
+  }
+
+  public abstract int target(int edge);
+
+  public abstract int latency(int edge);
+
+  /**
+   * @param source the id of the source node.
+   * @param target the id of the target node.
+   * @return the edge id or -1 in case there is no edge from source to target.
+   */
+  public int findEdge(int source, int target) {
+    int low = this.firstEdge(source);
+    int high = this.endEdge(source) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int middleTarget = this.target(middle);
+      if (middleTarget < target) {
+        low = middle + 1;
+      } else if (middleTarget > target) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The graph with all edges reversed, the edges of a node are its incoming edges. Node ids and
+   * names are the same as in this graph. It is built on the first call and kept afterwards, which
+   * doubles the memory of the edges.
+   *
+   * @return the reversed graph, its reversed graph is this one.
+   */
+  public CompactGraph reversed() {
+    CompactGraph r = this.reversed;
+    if (r == null) {
+      r = this.buildReversed();
+      r.reversed = this;
+      this.reversed = r;
+    }
+    return r;
+  }
+
+  abstract CompactGraph buildReversed();
+
+  /**
+   * Applies edge updates copy-on-write: the result is a new graph and this one stays unchanged, so
+   * queries which still run on it are not affected. For the same edge the last update wins. An
+   * upsert adds missing nodes with the next free ids, a delete of an unknown edge does nothing.
+   *
+   * <p>Every call copies O(E), however few edges it changes, so a batch of updates is much cheaper
+   * than the same updates one by one. Updates which only change latencies of existing edges copy
+   * the whole latency array and share the offsets and targets with this graph (on the heap), all
+   * other updates copy offsets, targets and latencies once and merge the changes into the nodes
+   * they belong to. Names and name index are shared unless nodes are added. In case the {@link
+   * #reversed()} graph was built already, it is updated the same way instead of being built again,
+   * which copies its arrays as well.
+   *
+   * @param updates the edge updates in the order they happened.
+   * @return the updated graph.
+   * @throws IllegalArgumentException in case a name is missing or a latency is negative.
+   */
+  public CompactGraph withUpdates(List<EdgeUpdate> updates) {
+    List<String> addedNames = new ArrayList<>();
+    Map<String, Integer> addedIds = new HashMap<>();
+    // Source and target packed into one long, the value is the new latency or DELETED.
+    Map<Long, Integer> changes = new HashMap<>();
+    for (EdgeUpdate update : updates) {
+      if (update.parentName() == null || update.childName() == null) {
+        throw new IllegalArgumentException("The parent and child name can't be empty.");
+      }
+      if (update.isDelete()) {
+        int source = this.resolve(update.parentName(), addedNames, addedIds, false);
+        int target = this.resolve(update.childName(), addedNames, addedIds, false);
+        if (source >= 0 && target >= 0) {
+          changes.put(edgeKey(source, target), DELETED);
+        }
+      } else {
+        if (update.latency() < 0) {
+          throw new IllegalArgumentException("The latency can't be negative: " + update.latency());
+        }
+        int source = this.resolve(update.parentName(), addedNames, addedIds, true);
+        int target = this.resolve(update.childName(), addedNames, addedIds, true);
+        changes.put(edgeKey(source, target), update.latency());
+      }
+    }
+    String[] added = addedNames.toArray(new String[0]);
+    CompactGraph updated = this.applyChanges(added, changes, false);
+    CompactGraph r = this.reversed;
+    if (r != null) {
+      CompactGraph updatedReversed = r.applyChanges(added, changes, true);
+      updatedReversed.reversed = updated;
+      updated.reversed = updatedReversed;
+    }
+    return updated;
+  }
+
+  private static long edgeKey(int source, int target) {
+    return ((long) source << 32) | target;
+  }
+
+  private int resolve(
+      String name, List<String> addedNames, Map<String, Integer> addedIds, boolean create) {
+    int id = this.idOf(name);
+    if (id >= 0) {
+      return id;
+    }
+    Integer added = addedIds.get(name);
+    if (added == null && create) {
+      added = this.nodeCount() + addedNames.size();
+      addedNames.add(name);
+      addedIds.put(name, added);
+    }
+    return added == null ? -1 : added;
+  }
+
+  // With reverse the changes are applied to the reversed graph, so source and target swap roles.
+  private CompactGraph applyChanges(
+      String[] addedNames, Map<Long, Integer> changes, boolean reverse) {
+    int oldNodeCount = this.nodeCount();
+    int nodeCount = oldNodeCount + addedNames.length;
+    long[] keys = new long[changes.size()];
+    int[] values = new int[changes.size()];
+    int i = 0;
+    for (long key : changes.keySet()) {
+      keys[i++] = reverse ? edgeKey((int) key, (int) (key >>> 32)) : key;
+    }
+    // Sorted by source and within a source by target, the same order as the edges.
+    Arrays.sort(keys);
+    boolean latenciesOnly = addedNames.length == 0;
+    int[] existing = new int[keys.length];
+    for (i = 0; i < keys.length; i++) {
+      int source = (int) (keys[i] >>> 32);
+      int target = (int) keys[i];
+      values[i] = changes.get(reverse ? edgeKey(target, source) : keys[i]);
+      existing[i] =
+          source < oldNodeCount && target < oldNodeCount ? this.findEdge(source, target) : -1;
+      latenciesOnly &= existing[i] >= 0 && values[i] != DELETED;
+    }
+    if (latenciesOnly) {
+      return this.withLatencies(existing, values);
+    }
+    int[] degrees = new int[nodeCount];
+    for (int n = 0; n < oldNodeCount; n++) {
+      degrees[n] = this.outDegree(n);
+    }
+    for (i = 0; i < keys.length; i++) {
+      int source = (int) (keys[i] >>> 32);
+      if (values[i] == DELETED && existing[i] >= 0) {
+        degrees[source]--;
+      } else if (values[i] != DELETED && existing[i] < 0) {
+        degrees[source]++;
+      }
+    }
+    int[] offsets = offsetsFromDegrees(degrees);
+    int[] targets = new int[offsets[nodeCount]];
+    int[] latencies = new int[offsets[nodeCount]];
+    // Merge the sorted edges of every node with the sorted changes of the node.
+    int change = 0;
+    for (int n = 0; n < nodeCount; n++) {
+      int write = offsets[n];
+      int e = n < oldNodeCount ? this.firstEdge(n) : 0;
+      int end = n < oldNodeCount ? this.endEdge(n) : 0;
+      while (e < end || (change < keys.length && (int) (keys[change] >>> 32) == n)) {
+        int edgeTarget = e < end ? this.target(e) : Integer.MAX_VALUE;
+        int changeTarget =
+            change < keys.length && (int) (keys[change] >>> 32) == n
+                ? (int) keys[change]
+                : Integer.MAX_VALUE;
+        if (edgeTarget < changeTarget) {
+          targets[write] = edgeTarget;
+          latencies[write++] = this.latency(e++);
+          continue;
+        }
+        if (values[change] != DELETED) {
+          targets[write] = changeTarget;
+          latencies[write++] = values[change];
+        }
+        if (edgeTarget == changeTarget) {
+          e++;
+        }
+        change++;
+      }
+    }
+    return this.withEdges(addedNames, offsets, targets, latencies);
+  }
+
+  /**
+   * Creates a graph of the same kind with other edges.
+   *
+   * @param addedNames the names of new nodes, they get the ids after the existing nodes.
+   */
+  abstract CompactGraph withEdges(
+      String[] addedNames, int[] offsets, int[] targets, int[] latencies);
+
+  /**
+   * Creates a graph of the same kind with the same edges but other latencies for some of them.
+   *
+   * @param edges the ids of the edges to change.
+   * @param latencies the new latency of every edge in edges.
+   */
+  CompactGraph withLatencies(int[] edges, int[] latencies) {
+    int nodeCount = this.nodeCount();
+    int[] offsets = new int[nodeCount + 1];
+    for (int n = 0; n < nodeCount; n++) {
+      offsets[n] = this.firstEdge(n);
+    }
+    offsets[nodeCount] = this.edgeCount();
+    int[] allTargets = new int[this.edgeCount()];
+    int[] allLatencies = new int[this.edgeCount()];
+    for (int e = 0; e < allTargets.length; e++) {
+      allTargets[e] = this.target(e);
+      allLatencies[e] = this.latency(e);
+    }
+    for (int i = 0; i < edges.length; i++) {
+      allLatencies[edges[i]] = latencies[i];
+    }
+    return this.withEdges(new String[0], offsets, allTargets, allLatencies);
+  }
+
+  /**
+   * Transposes the edges of a graph.
+   *
+   * @return the offsets, sources and latencies of the reversed edges, grouped by target and within
+   *     a target sorted by source.
+   */
+  static int[][] reverseEdges(CompactGraph graph) {
+    int nodeCount = graph.nodeCount();
+    int edgeCount = graph.edgeCount();
+    int[] degrees = new int[nodeCount];
+    for (int e = 0; e < edgeCount; e++) {
+      degrees[graph.target(e)]++;
+    }
+    int[] offsets = offsetsFromDegrees(degrees);
+    int[] insert = Arrays.copyOf(offsets, nodeCount);
+    int[] sources = new int[edgeCount];
+    int[] latencies = new int[edgeCount];
+    // The sources are visited in ascending order, so they end up sorted within every target.
+    for (int n = 0; n < nodeCount; n++) {
+      for (int e = graph.firstEdge(n); e < graph.endEdge(n); e++) {
+        int position = insert[graph.target(e)]++;
+        sources[position] = n;
+        latencies[position] = graph.latency(e);
+      }
+    }
+    return new int[][] {offsets, sources, latencies};
+  }
+
+  /**
+   * Collects nodes and edges and turns them into a {@link CompactGraph}. The builder itself is not
+   * thread safe, the resulting graph is immutable and can be shared freely.
+   */
+  public static final class Builder {
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private int[] sources = new int[16];
+    private int[] targets = new int[16];
+    private int[] latencies = new int[16];
+    private int edgeCount;
+
+    /**
+     * Add a node without any edge. Adding a name which is already known does nothing.
+     *
+     * @param name the node name.
+     * @return the id of the node.
+     */
+    public int addNode(String name) {
+      Integer id = ids.get(name);
+      if (id == null) {
+        id = names.size();
+        names.add(name);
+        ids.put(name, id);
+      }
+      return id;
+    }
+
+    /**
+     * Add an edge, the nodes are created in case they do not exist yet.
+     *
+     * @param parentName the source of the edge.
+     * @param childName the target of the edge.
+     * @param latency the latency of the edge, can't be negative.
+     * @return this builder.
+     */
+    public Builder addEdge(String parentName, String childName, int latency) {
+      if (latency < 0) {
+        throw new IllegalArgumentException("The latency can't be negative: " + latency);
+      }
+      int source = this.addNode(parentName);
+      int target = this.addNode(childName);
+      if (edgeCount == sources.length) {
+        int newLength = sources.length * 2;
+        sources = Arrays.copyOf(sources, newLength);
+        targets = Arrays.copyOf(targets, newLength);
+        latencies = Arrays.copyOf(latencies, newLength);
+      }
+      sources[edgeCount] = source;
+      targets[edgeCount] = target;
+      latencies[edgeCount] = latency;
+      edgeCount++;
+      return this;
+    }
+
+    public CompactGraph build() {
+      int nodeCount = names.size();
+      // Counting sort by source. The sort is stable, so within a source the edges are still in the
+      // order they were added which we need to let the last duplicate win.
+      int[] offsets = new int[nodeCount + 1];
+      for (int e = 0; e < edgeCount; e++) {
+        offsets[sources[e] + 1]++;
+      }
+      for (int n = 0; n < nodeCount; n++) {
+        offsets[n + 1] += offsets[n];
+      }
+      int[] insert = Arrays.copyOf(offsets, nodeCount);
+      int[] sortedTargets = new int[edgeCount];
+      int[] sortedLatencies = new int[edgeCount];
+      for (int e = 0; e < edgeCount; e++) {
+        int position = insert[sources[e]]++;
+        sortedTargets[position] = targets[e];
+        sortedLatencies[position] = latencies[e];
+      }
+      int[] degrees = new int[nodeCount];
+      int[] compactTargets = new int[edgeCount];
+      int[] compactLatencies = new int[edgeCount];
+      int written =
+          compactNodes(
+              offsets,
+              sortedTargets,
+              sortedLatencies,
+              0,
+              nodeCount,
+              compactTargets,
+              compactLatencies,
+              degrees);
+      return new HeapCompactGraph(
+          names.toArray(new String[0]),
+          new HashMap<>(ids),
+          offsetsFromDegrees(degrees),
+          Arrays.copyOf(compactTargets, written),
+          Arrays.copyOf(compactLatencies, written));
+    }
+  }
+
+  static CompactGraph of(
+      String[] names, Map<String, Integer> ids, int[] offsets, int[] targets, int[] latencies) {
+    return new HeapCompactGraph(names, ids, offsets, targets, latencies);
+  }
+
+  /**
+   * Removes duplicated edges (the last one wins) and sorts the edges by target for the nodes in the
+   * range [fromNode, toNode). The edges need to be grouped by source already and within a source be
+   * in the order they were added. The result is written to the start of the out arrays.
+   *
+   * @param degrees receives the out degree of every node in the range after removing duplicates.
+   * @return the number of edges written.
+   */
+  static int compactNodes(
+      int[] offsets,
+      int[] targets,
+      int[] latencies,
+      int fromNode,
+      int toNode,
+      int[] outTargets,
+      int[] outLatencies,
+      int[] degrees) {
+    int base = offsets[fromNode];
+    // Target and position within the segment are packed into one long, so sorting the longs sorts
+    // by target and within the same target by position. The last of a run of equal targets is the
+    // one added last.
+    long[] packed = new long[offsets[toNode] - base];
+    int write = 0;
+    for (int n = fromNode; n < toNode; n++) {
+      int from = offsets[n] - base;
+      int to = offsets[n + 1] - base;
+      for (int i = from; i < to; i++) {
+        packed[i] = ((long) targets[base + i] << 32) | (i - from);
+      }
+      Arrays.sort(packed, from, to);
+      int segmentStart = write;
+      for (int i = from; i < to; i++) {
+        int target = (int) (packed[i] >>> 32);
+        if (i + 1 < to && (int) (packed[i + 1] >>> 32) == target) {
+          continue;
+        }
+        outTargets[write] = target;
+        outLatencies[write] = latencies[base + from + (int) packed[i]];
+        write++;
+      }
+      degrees[n] = write - segmentStart;
+    }
+    return write;
+  }
+
+  static int[] offsetsFromDegrees(int[] degrees) {
+    int[] offsets = new int[degrees.length + 1];
+    for (int n = 0; n < degrees.length; n++) {
+      offsets[n + 1] = offsets[n] + degrees[n];
+    }
+    return offsets;
+  }
+}
@@ -0,0 +1,21 @@
+package org.example.core.graph;
+
+/**
+ * A change of a single edge of a live graph, see {@link CompactGraph#withUpdates(java.util.List)}.
+ *
+ * @param latency the new latency of the edge, null to delete the edge.
+ */
+public record EdgeUpdate(String parentName, String childName, Integer latency) {
+
+  public static EdgeUpdate upsert(String parentName, String childName, int latency) {
+    return new EdgeUpdate(parentName, childName, latency);
+  }
+
+  public static EdgeUpdate delete(String parentName, String childName) {
+    return new EdgeUpdate(parentName, childName, null);
+  }
+
+  public boolean isDelete() {
+    return latency == null;
+  }
+}
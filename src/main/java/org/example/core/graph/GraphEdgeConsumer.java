@@ -0,0 +1,10 @@
+package org.example.core.graph;
+
+/**
+ * Receives the edges of a graph one by one while they are read, so the content of a file never has
+ * to be held in memory as a whole.
+ */
+@FunctionalInterface
+public interface GraphEdgeConsumer {
+  void accept(String parentName, String childName, int latency);
+}
@@ -14,4 +14,19 @@ public interface GraphReader {
    * @throws MalformedInputFormatException in case the file is empty or not in the right format.
    */
   List<GraphTuple> getGraphTuplesForFile(String filePathAndName);
+
+  /**
+   * Reads the content of a file and pushes every edge to the consumer as soon as it is parsed. No
+   * list of all edges is created, so the memory needed depends on what the consumer keeps and not
+   * on the size of the file. By default this falls back to {@link #getGraphTuplesForFile(String)}.
+   *
+   * @param filePathAndName the path and name all in one argument.
+   * @param consumer receives the edges in the order they appear in the file.
+   * @throws MalformedInputFormatException in case the file is empty or not in the right format.
+   */
+  default void streamGraphTuplesForFile(String filePathAndName, GraphEdgeConsumer consumer) {
+    for (GraphTuple t : this.getGraphTuplesForFile(filePathAndName)) {
+      consumer.accept(t.parentName(), t.childName(), t.latency());
+    }
+  }
 }
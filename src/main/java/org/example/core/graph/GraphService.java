@@ -14,4 +14,14 @@ public interface GraphService {
    *     not right.
    */
   Map<String, GraphNode> constructGraphFromFile(String filePathAndName);
+
+  /**
+   * Create a compact and immutable Graph from a given file.
+   *
+   * @param filePathAndName the path and file name.
+   * @return the graph in the compact representation.
+   * @throws MalformedInputFormatException in case the file could not be loaded because the format is
+   *     not right.
+   */
+  CompactGraph constructCompactGraphFromFile(String filePathAndName);
 }
@@ -1,30 +1,56 @@
 package org.example.core.graph;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public class GraphServiceImpl implements GraphService {
 
   private final GraphReader graphReader;
+  private final ForkJoinPool pool;
 
   public GraphServiceImpl(GraphReader graphReader) {
+    this(graphReader, null);
+  }
+
+  /**
+   * @param graphReader the reader to get the tuples from.
+   * @param pool in case a pool is given the compact graph is built in parallel on it. The parallel
+   *     build needs the whole list of tuples in memory, so it trades memory for startup time.
+   */
+  public GraphServiceImpl(GraphReader graphReader, ForkJoinPool pool) {
     this.graphReader = graphReader;
+    this.pool = pool;
   }
 
   @Override
   public Map<String, GraphNode> constructGraphFromFile(String filePathAndName) {
-    List<GraphTuple> tuples = this.graphReader.getGraphTuplesForFile(filePathAndName);
     Map<String, GraphNode> lookupMap = new HashMap<>();
-    for (GraphTuple t : tuples) {
-      if (!lookupMap.containsKey(t.parentName()))
-        lookupMap.put(t.parentName(), new GraphNode(t.parentName()));
-      if (!lookupMap.containsKey(t.childName()))
-        lookupMap.put(t.childName(), new GraphNode(t.childName()));
-    }
-    for (GraphTuple t : tuples) {
-      lookupMap.get(t.parentName()).addDependentNode(lookupMap.get(t.childName()), t.latency());
-    }
+    this.graphReader.streamGraphTuplesForFile(
+        filePathAndName,
+        (parentName, childName, latency) -> {
+          GraphNode parent = lookupMap.computeIfAbsent(parentName, GraphNode::new);
+          GraphNode child = lookupMap.computeIfAbsent(childName, GraphNode::new);
+          parent.addDependentNode(child, latency);
+        });
     return lookupMap;
   }
+
+  @Override
+  public CompactGraph constructCompactGraphFromFile(String filePathAndName) {
+    if (this.pool != null) {
+      // Collected from the same stream as the sequential build, so both parse the file alike.
+      List<GraphTuple> tuples = new ArrayList<>();
+      this.graphReader.streamGraphTuplesForFile(
+          filePathAndName,
+          (parentName, childName, latency) ->
+              tuples.add(new GraphTuple(parentName, childName, latency)));
+      return new ParallelCompactGraphBuilder(this.pool).build(tuples);
+    }
+    CompactGraph.Builder builder = new CompactGraph.Builder();
+    this.graphReader.streamGraphTuplesForFile(filePathAndName, builder::addEdge);
+    return builder.build();
+  }
 }
@@ -0,0 +1,120 @@
+package org.example.core.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** {@link CompactGraph} with all arrays on the heap, the default representation. */
+final class HeapCompactGraph extends CompactGraph {
+  private final String[] names;
+  private final Map<String, Integer> ids;
+  // offsets[n] is the first edge of node n, offsets[n + 1] is the first edge of the next node.
+  private final int[] offsets;
+  // Within the edges of one node the targets are sorted ascending, so we can binary search them.
+  private final int[] targets;
+  private final int[] latencies;
+  private final int maxLatency;
+
+  HeapCompactGraph(
+      String[] names, Map<String, Integer> ids, int[] offsets, int[] targets, int[] latencies) {
+    this.names = names;
+    this.ids = ids;
+    this.offsets = offsets;
+    this.targets = targets;
+    this.latencies = latencies;
+    int max = 0;
+    for (int latency : latencies) {
+      max = Math.max(max, latency);
+    }
+    this.maxLatency = max;
+  }
+
+  @Override
+  public int nodeCount() {
+    return names.length;
+  }
+
+  @Override
+  public int edgeCount() {
+    return targets.length;
+  }
+
+  @Override
+  public int maxLatency() {
+    return maxLatency;
+  }
+
+  @Override
+  public int idOf(String name) {
+    Integer id = ids.get(name);
+    return id == null ? -1 : id;
+  }
+
+  @Override
+  public String nameOf(int node) {
+    return names[node];
+  }
+
+  @Override
+  public int firstEdge(int node) {
+    return offsets[node];
+  }
+
+  @Override
+  public int endEdge(int node) {
+    return offsets[node + 1];
+  }
+
+  @Override
+  public int outDegree(int node) {
+    return offsets[node + 1] - offsets[node];
+  }
+
+  @Override
+  public int target(int edge) {
+    return targets[edge];
+  }
+
+  @Override
+  public int latency(int edge) {
+    return latencies[edge];
+  }
+
+  @Override
+  public int findEdge(int source, int target) {
+    int from = offsets[source];
+    int to = offsets[source + 1];
+    int index = Arrays.binarySearch(targets, from, to, target);
+    return index < 0 ? -1 : index;
+  }
+
+  @Override
+  CompactGraph buildReversed() {
+    int[][] reversedEdges = CompactGraph.reverseEdges(this);
+    return new HeapCompactGraph(names, ids, reversedEdges[0], reversedEdges[1], reversedEdges[2]);
+  }
+
+  @Override
+  CompactGraph withEdges(String[] addedNames, int[] offsets, int[] targets, int[] latencies) {
+    if (addedNames.length == 0) {
+      return new HeapCompactGraph(names, ids, offsets, targets, latencies);
+    }
+    String[] allNames = Arrays.copyOf(names, names.length + addedNames.length);
+    Map<String, Integer> allIds = new HashMap<>(ids);
+    for (int i = 0; i < addedNames.length; i++) {
+      allNames[names.length + i] = addedNames[i];
+      allIds.put(addedNames[i], names.length + i);
+    }
+    return new HeapCompactGraph(allNames, allIds, offsets, targets, latencies);
+  }
+
+  // Offsets and targets are shared, the latencies are copied as a whole: O(E) per update.
+  @Override
+  CompactGraph withLatencies(int[] edges, int[] newLatencies) {
+    int[] updated = latencies.clone();
+    for (int i = 0; i < edges.length; i++) {
+      updated[edges[i]] = newLatencies[i];
+    }
+    return new HeapCompactGraph(names, ids, offsets, targets, updated);
+  }
+}
@@ -0,0 +1,314 @@
+package org.example.core.graph;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link CompactGraph} which keeps all of its data outside of the Java heap, in direct or memory
+ * mapped buffers. The heap only holds this object and the buffer headers, no matter how big the
+ * graph is, so the garbage collector has nothing to scan or copy.
+ *
+ * <p>The names are stored as UTF-8 bytes in a name table. The name lookup is an open addressing
+ * hash index (linear probing) in a direct buffer, which compares the bytes in place. Only {@link
+ * #nameOf(int)} and {@link #idOf(String)} allocate, the accessors used while walking the graph
+ * read straight from the buffers.
+ *
+ * <p>Direct buffers count against {@code -XX:MaxDirectMemorySize}, which defaults to the maximum
+ * heap size. Mapped buffers, see {@link #wrap}, don't, they are backed by the page cache. A single
+ * buffer can't be bigger than 2GB, which limits a graph to about 500 million edges.
+ */
+public final class OffHeapCompactGraph extends CompactGraph {
+  private static final int EMPTY_SLOT = 0;
+
+  // nameStarts[n] is the start of the name of node n in the name table, nameStarts[n + 1] its end.
+  private final IntBuffer nameStarts;
+  private final ByteBuffer nameTable;
+  private final IntBuffer offsets;
+  private final IntBuffer targets;
+  private final IntBuffer latencies;
+  // Node id + 1 per slot, EMPTY_SLOT for unused slots. The capacity is a power of two.
+  private final IntBuffer index;
+  private final int indexMask;
+  private final int maxLatency;
+
+  private OffHeapCompactGraph(
+      IntBuffer nameStarts,
+      ByteBuffer nameTable,
+      IntBuffer offsets,
+      IntBuffer targets,
+      IntBuffer latencies) {
+    this(nameStarts, nameTable, newIndex(nameStarts.limit() - 1), offsets, targets, latencies);
+  }
+
+  private OffHeapCompactGraph(
+      IntBuffer nameStarts,
+      ByteBuffer nameTable,
+      IntBuffer index,
+      IntBuffer offsets,
+      IntBuffer targets,
+      IntBuffer latencies) {
+    this.nameStarts = nameStarts;
+    this.nameTable = nameTable;
+    this.index = index;
+    this.indexMask = index.capacity() - 1;
+    this.offsets = offsets;
+    this.targets = targets;
+    this.latencies = latencies;
+    int max = 0;
+    for (int e = 0; e < latencies.limit(); e++) {
+      max = Math.max(max, latencies.get(e));
+    }
+    this.maxLatency = max;
+  }
+
+  /**
+   * Copies a graph into direct buffers. The source graph can be dropped afterwards.
+   *
+   * @param graph the graph to copy.
+   * @return the off-heap graph.
+   */
+  public static OffHeapCompactGraph copyOf(CompactGraph graph) {
+    if (graph instanceof OffHeapCompactGraph offHeap) {
+      return offHeap;
+    }
+    int nodeCount = graph.nodeCount();
+    int edgeCount = graph.edgeCount();
+    byte[][] names = new byte[nodeCount][];
+    int nameBytes = 0;
+    for (int n = 0; n < nodeCount; n++) {
+      names[n] = graph.nameOf(n).getBytes(StandardCharsets.UTF_8);
+      nameBytes = Math.addExact(nameBytes, names[n].length);
+    }
+    IntBuffer nameStarts = allocate(nodeCount + 1);
+    ByteBuffer nameTable = ByteBuffer.allocateDirect(nameBytes);
+    IntBuffer offsets = allocate(nodeCount + 1);
+    for (int n = 0; n < nodeCount; n++) {
+      nameStarts.put(n, nameTable.position());
+      nameTable.put(names[n]);
+      offsets.put(n, graph.firstEdge(n));
+    }
+    nameStarts.put(nodeCount, nameTable.position());
+    offsets.put(nodeCount, edgeCount);
+    IntBuffer targets = allocate(edgeCount);
+    IntBuffer latencies = allocate(edgeCount);
+    for (int e = 0; e < edgeCount; e++) {
+      targets.put(e, graph.target(e));
+      latencies.put(e, graph.latency(e));
+    }
+    OffHeapCompactGraph offHeap =
+        new OffHeapCompactGraph(nameStarts, nameTable.clear(), offsets, targets, latencies);
+    offHeap.buildIndex();
+    return offHeap;
+  }
+
+  /**
+   * Creates a graph on top of existing buffers without copying them, for example the memory mapped
+   * sections of a snapshot file. Only the hash index is newly allocated. The buffers are read with
+   * absolute positions from index 0 to their limit and must not be changed afterwards.
+   *
+   * @param nameStarts the start of every name in the name table plus the end of the last one.
+   * @param nameTable the UTF-8 encoded names.
+   * @param offsets the first edge of every node plus the end of the last one.
+   * @param targets the target of every edge, strictly ascending within the edges of a node.
+   * @param latencies the latency of every edge.
+   * @return the off-heap graph.
+   * @throws IllegalArgumentException in case the buffers are not a valid graph.
+   */
+  public static OffHeapCompactGraph wrap(
+      IntBuffer nameStarts,
+      ByteBuffer nameTable,
+      IntBuffer offsets,
+      IntBuffer targets,
+      IntBuffer latencies) {
+    OffHeapCompactGraph graph =
+        new OffHeapCompactGraph(
+            nameStarts.slice(), nameTable.slice(), offsets.slice(), targets.slice(), latencies.slice());
+    graph.validate();
+    graph.buildIndex();
+    return graph;
+  }
+
+  private static IntBuffer newIndex(int nodeCount) {
+    return allocate(Integer.highestOneBit(Math.max(2, 2 * nodeCount - 1)) << 1);
+  }
+
+  private static IntBuffer allocate(int ints) {
+    return ByteBuffer.allocateDirect(4 * ints).order(ByteOrder.nativeOrder()).asIntBuffer();
+  }
+
+  private void validate() {
+    int nodeCount = this.nodeCount();
+    int edgeCount = targets.limit();
+    if (nodeCount < 0
+        || offsets.limit() != nodeCount + 1
+        || latencies.limit() != edgeCount
+        || offsets.get(0) != 0
+        || offsets.get(nodeCount) != edgeCount
+        || nameStarts.get(0) != 0
+        || nameStarts.get(nodeCount) != nameTable.limit()) {
+      throw new IllegalArgumentException("The buffer sizes do not match.");
+    }
+    for (int n = 0; n < nodeCount; n++) {
+      int from = offsets.get(n);
+      int to = offsets.get(n + 1);
+      if (to < from || nameStarts.get(n + 1) < nameStarts.get(n)) {
+        throw new IllegalArgumentException("The offsets need to be ascending.");
+      }
+      for (int e = from; e < to; e++) {
+        int target = targets.get(e);
+        if (target < 0 || target >= nodeCount || latencies.get(e) < 0) {
+          throw new IllegalArgumentException("Invalid edge " + e + " of node " + n);
+        }
+        if (e > from && target <= targets.get(e - 1)) {
+          throw new IllegalArgumentException("The targets of node " + n + " are not sorted.");
+        }
+      }
+    }
+  }
+
+  private void buildIndex() {
+    for (int n = 0; n < this.nodeCount(); n++) {
+      int start = nameStarts.get(n);
+      int length = nameStarts.get(n + 1) - start;
+      int hash = 1;
+      for (int i = start; i < start + length; i++) {
+        hash = 31 * hash + nameTable.get(i);
+      }
+      int slot = mix(hash) & indexMask;
+      while (index.get(slot) != EMPTY_SLOT) {
+        if (this.nameEquals(index.get(slot) - 1, nameTable, start, length)) {
+          throw new IllegalArgumentException("Duplicated node name: " + this.nameOf(n));
+        }
+        slot = (slot + 1) & indexMask;
+      }
+      index.put(slot, n + 1);
+    }
+  }
+
+  private boolean nameEquals(int node, ByteBuffer bytes, int start, int length) {
+    int nodeStart = nameStarts.get(node);
+    if (nameStarts.get(node + 1) - nodeStart != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (nameTable.get(nodeStart + i) != bytes.get(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Spreads the hash, so names with a common prefix don't end up in one cluster.
+  private static int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  @Override
+  public int nodeCount() {
+    return nameStarts.limit() - 1;
+  }
+
+  @Override
+  public int edgeCount() {
+    return targets.limit();
+  }
+
+  @Override
+  public int maxLatency() {
+    return maxLatency;
+  }
+
+  @Override
+  public int idOf(String name) {
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    int hash = 1;
+    for (byte b : bytes) {
+      hash = 31 * hash + b;
+    }
+    ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+    for (int slot = mix(hash) & indexMask; ; slot = (slot + 1) & indexMask) {
+      int entry = index.get(slot);
+      if (entry == EMPTY_SLOT) {
+        return -1;
+      }
+      if (this.nameEquals(entry - 1, wrapped, 0, bytes.length)) {
+        return entry - 1;
+      }
+    }
+  }
+
+  @Override
+  public String nameOf(int node) {
+    int start = nameStarts.get(node);
+    byte[] bytes = new byte[nameStarts.get(node + 1) - start];
+    nameTable.get(start, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public int firstEdge(int node) {
+    return offsets.get(node);
+  }
+
+  @Override
+  public int endEdge(int node) {
+    return offsets.get(node + 1);
+  }
+
+  @Override
+  public int target(int edge) {
+    return targets.get(edge);
+  }
+
+  @Override
+  public int latency(int edge) {
+    return latencies.get(edge);
+  }
+
+  // The reversed graph shares names and name index, only the edges are new.
+  @Override
+  CompactGraph buildReversed() {
+    int[][] reversedEdges = CompactGraph.reverseEdges(this);
+    return new OffHeapCompactGraph(
+        nameStarts,
+        nameTable,
+        index,
+        copy(reversedEdges[0]),
+        copy(reversedEdges[1]),
+        copy(reversedEdges[2]));
+  }
+
+  // Without new nodes names and name index are shared, otherwise everything is copied once more.
+  @Override
+  CompactGraph withEdges(String[] addedNames, int[] offsets, int[] targets, int[] latencies) {
+    if (addedNames.length == 0) {
+      return new OffHeapCompactGraph(
+          nameStarts, nameTable, index, copy(offsets), copy(targets), copy(latencies));
+    }
+    int nodeCount = this.nodeCount();
+    String[] names = new String[nodeCount + addedNames.length];
+    for (int n = 0; n < nodeCount; n++) {
+      names[n] = this.nameOf(n);
+    }
+    System.arraycopy(addedNames, 0, names, nodeCount, addedNames.length);
+    return copyOf(CompactGraph.fromArrays(names, offsets, targets, latencies));
+  }
+
+  private static IntBuffer copy(int[] values) {
+    IntBuffer buffer = allocate(values.length);
+    buffer.put(values).clear();
+    return buffer;
+  }
+
+  /**
+   * @return the number of bytes held outside of the heap, including the hash index.
+   */
+  public long offHeapBytes() {
+    return 4L * (nameStarts.capacity() + offsets.capacity() + index.capacity())
+        + nameTable.capacity()
+        + 4L * (targets.capacity() + latencies.capacity());
+  }
+}
@@ -0,0 +1,33 @@
+package org.example.core.graph;
+
+import java.util.Map;
+
+/**
+ * {@link GraphService} which moves the compact graph of another service off the heap, see {@link
+ * OffHeapCompactGraph}. The graph is still built on the heap first, but that copy is garbage as
+ * soon as the off-heap graph is ready, so the long living heap footprint does not grow with the
+ * graph. The indexes the {@code TraverseService} derives from it, like the strongly connected
+ * components, are id arrays which never read the names of the graph.
+ */
+public class OffHeapGraphService implements GraphService {
+
+  private final GraphService graphService;
+
+  /**
+   * @param graphService the service which builds the graph.
+   */
+  public OffHeapGraphService(GraphService graphService) {
+    this.graphService = graphService;
+  }
+
+  @Override
+  public Map<String, GraphNode> constructGraphFromFile(String filePathAndName) {
+    return this.graphService.constructGraphFromFile(filePathAndName);
+  }
+
+  @Override
+  public CompactGraph constructCompactGraphFromFile(String filePathAndName) {
+    return OffHeapCompactGraph.copyOf(
+        this.graphService.constructCompactGraphFromFile(filePathAndName));
+  }
+}
@@ -0,0 +1,200 @@
+package org.example.core.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Builds a {@link CompactGraph} from a list of tuples on a {@link ForkJoinPool}. The result is
+ * exactly the same graph {@link CompactGraph.Builder} creates for the same tuples, including the
+ * node ids, which is why every step is careful to keep the original order of the tuples:
+ *
+ * <ol>
+ *   <li>The tuples are split into chunks and the names are interned concurrently. For every name
+ *       we remember its first occurrence, sorting by that gives the same ids as adding the tuples
+ *       one by one.
+ *   <li>Every chunk resolves the ids of its tuples and counts how many edges go to which source
+ *       partition (a range of node ids).
+ *   <li>The chunks scatter their edges into the buckets of the partitions. A chunk writes behind
+ *       all chunks before it, so the buckets are still in the original order.
+ *   <li>Every partition groups its edges by source, removes duplicates and sorts by target.
+ *   <li>The partitions are merged into the final arrays.
+ * </ol>
+ */
+final class ParallelCompactGraphBuilder {
+  // Below this amount of tuples per chunk the coordination costs more than it saves.
+  private static final int MIN_CHUNK_SIZE = 4096;
+
+  private final ForkJoinPool pool;
+
+  ParallelCompactGraphBuilder(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  CompactGraph build(List<GraphTuple> tuples) {
+    int edgeCount = tuples.size();
+    int taskCount = this.pool.getParallelism() * 4;
+    int chunkCount = Math.max(1, Math.min(taskCount, edgeCount / MIN_CHUNK_SIZE));
+
+    // 1. Intern the names concurrently. Parent and child of tuple i occur at 2i and 2i + 1.
+    Map<String, Long> firstOccurrence = new ConcurrentHashMap<>();
+    this.forEachRange(
+        edgeCount,
+        chunkCount,
+        (chunk, from, to) -> {
+          for (int i = from; i < to; i++) {
+            GraphTuple t = tuples.get(i);
+            intern(firstOccurrence, t.parentName(), 2L * i);
+            intern(firstOccurrence, t.childName(), 2L * i + 1);
+          }
+        });
+    List<Map.Entry<String, Long>> entries = new ArrayList<>(firstOccurrence.entrySet());
+    entries.sort(Map.Entry.comparingByValue());
+    int nodeCount = entries.size();
+    String[] names = new String[nodeCount];
+    Map<String, Integer> ids = new HashMap<>();
+    for (int id = 0; id < nodeCount; id++) {
+      names[id] = entries.get(id).getKey();
+      ids.put(names[id], id);
+    }
+
+    // 2. Resolve the ids and count the edges per chunk and partition.
+    int partitionCount = Math.max(1, Math.min(taskCount, nodeCount));
+    int nodesPerPartition = (nodeCount + partitionCount - 1) / Math.max(1, partitionCount);
+    int[] sources = new int[edgeCount];
+    int[] targets = new int[edgeCount];
+    int[] latencies = new int[edgeCount];
+    int[][] bucketSizes = new int[chunkCount][partitionCount];
+    this.forEachRange(
+        edgeCount,
+        chunkCount,
+        (chunk, from, to) -> {
+          for (int i = from; i < to; i++) {
+            GraphTuple t = tuples.get(i);
+            if (t.latency() < 0) {
+              throw new IllegalArgumentException("The latency can't be negative: " + t.latency());
+            }
+            sources[i] = ids.get(t.parentName());
+            targets[i] = ids.get(t.childName());
+            latencies[i] = t.latency();
+            bucketSizes[chunk][sources[i] / nodesPerPartition]++;
+          }
+        });
+
+    // 3. Scatter the edge indices into the partition buckets, chunk after chunk.
+    int[][] writePositions = new int[chunkCount][partitionCount];
+    int[] partitionStarts = new int[partitionCount + 1];
+    int position = 0;
+    for (int p = 0; p < partitionCount; p++) {
+      partitionStarts[p] = position;
+      for (int c = 0; c < chunkCount; c++) {
+        writePositions[c][p] = position;
+        position += bucketSizes[c][p];
+      }
+    }
+    partitionStarts[partitionCount] = position;
+    int[] edgeOrder = new int[edgeCount];
+    this.forEachRange(
+        edgeCount,
+        chunkCount,
+        (chunk, from, to) -> {
+          int[] write = writePositions[chunk];
+          for (int i = from; i < to; i++) {
+            edgeOrder[write[sources[i] / nodesPerPartition]++] = i;
+          }
+        });
+
+    // 4. Build the adjacency of every partition on its own.
+    int[] degrees = new int[nodeCount];
+    int[][] partitionTargets = new int[partitionCount][];
+    int[][] partitionLatencies = new int[partitionCount][];
+    this.forEachRange(
+        partitionCount,
+        partitionCount,
+        (partition, fromPartition, toPartition) -> {
+          int fromNode = Math.min(nodeCount, partition * nodesPerPartition);
+          int toNode = Math.min(nodeCount, fromNode + nodesPerPartition);
+          int bucketStart = partitionStarts[partition];
+          int bucketSize = partitionStarts[partition + 1] - bucketStart;
+          // Stable counting sort by source within the partition.
+          int[] localOffsets = new int[toNode - fromNode + 1];
+          for (int i = 0; i < bucketSize; i++) {
+            localOffsets[sources[edgeOrder[bucketStart + i]] - fromNode + 1]++;
+          }
+          for (int n = 0; n < toNode - fromNode; n++) {
+            localOffsets[n + 1] += localOffsets[n];
+          }
+          int[] insert = Arrays.copyOf(localOffsets, toNode - fromNode);
+          int[] groupedTargets = new int[bucketSize];
+          int[] groupedLatencies = new int[bucketSize];
+          for (int i = 0; i < bucketSize; i++) {
+            int e = edgeOrder[bucketStart + i];
+            int slot = insert[sources[e] - fromNode]++;
+            groupedTargets[slot] = targets[e];
+            groupedLatencies[slot] = latencies[e];
+          }
+          int[] localDegrees = new int[toNode - fromNode];
+          int[] outTargets = new int[bucketSize];
+          int[] outLatencies = new int[bucketSize];
+          int written =
+              CompactGraph.compactNodes(
+                  localOffsets,
+                  groupedTargets,
+                  groupedLatencies,
+                  0,
+                  toNode - fromNode,
+                  outTargets,
+                  outLatencies,
+                  localDegrees);
+          System.arraycopy(localDegrees, 0, degrees, fromNode, localDegrees.length);
+          partitionTargets[partition] = Arrays.copyOf(outTargets, written);
+          partitionLatencies[partition] = Arrays.copyOf(outLatencies, written);
+        });
+
+    // 5. Merge the partitions.
+    int[] offsets = CompactGraph.offsetsFromDegrees(degrees);
+    int[] mergedTargets = new int[offsets[nodeCount]];
+    int[] mergedLatencies = new int[offsets[nodeCount]];
+    this.forEachRange(
+        partitionCount,
+        partitionCount,
+        (partition, fromPartition, toPartition) -> {
+          int destination = offsets[Math.min(nodeCount, partition * nodesPerPartition)];
+          int[] partTargets = partitionTargets[partition];
+          System.arraycopy(partTargets, 0, mergedTargets, destination, partTargets.length);
+          System.arraycopy(
+              partitionLatencies[partition], 0, mergedLatencies, destination, partTargets.length);
+        });
+    return CompactGraph.of(names, ids, offsets, mergedTargets, mergedLatencies);
+  }
+
+  private static void intern(Map<String, Long> firstOccurrence, String name, long occurrence) {
+    // Most names are seen before, so we try the cheap read first.
+    Long known = firstOccurrence.get(name);
+    if (known == null || known > occurrence) {
+      firstOccurrence.merge(name, occurrence, Math::min);
+    }
+  }
+
+  @FunctionalInterface
+  private interface RangeAction {
+    void run(int chunk, int from, int to);
+  }
+
+  // Splits [0, size) into chunkCount ranges and runs them on the pool, waiting for all of them.
+  private void forEachRange(int size, int chunkCount, RangeAction action) {
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(chunkCount);
+    for (int c = 0; c < chunkCount; c++) {
+      int chunk = c;
+      int from = (int) ((long) size * c / chunkCount);
+      int to = (int) ((long) size * (c + 1) / chunkCount);
+      tasks.add(ForkJoinTask.adapt(() -> action.run(chunk, from, to)));
+    }
+    this.pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+  }
+}
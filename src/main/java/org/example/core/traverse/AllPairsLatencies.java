@@ -0,0 +1,245 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Shortest latency between all pairs of nodes, precomputed with one {@link ShortestLatencySearch}
+ * per source node. The sources are independent, so they are spread over a {@link ForkJoinPool}.
+ *
+ * <p>The latencies are stored in a single row-major {@code int[]} matrix, {@code nodeCount^2 * 4}
+ * bytes in total, which limits the precomputation to small and medium graphs (5000 nodes take
+ * 100MB). The diagonal holds the shortest cycle back to the node itself, the same way {@link
+ * ShortestLatencySearch} answers start == end.
+ *
+ * <p>When edges of the graph change, the matrix is updated copy-on-write instead of computed
+ * again, see {@link #update(CompactGraph, List, ForkJoinPool)}.
+ */
+public final class AllPairsLatencies {
+  // There is at most one matrix row per node which has to fit into an int index.
+  static final int MAX_NODES = 46_340;
+
+  private static final int UNREACHABLE_ENTRY = -1;
+  // A latency sum which does not fit into the int matrix, these pairs are searched on demand.
+  private static final int NOT_STORED_ENTRY = -2;
+  static final long NOT_STORED = -2;
+
+  private final int nodeCount;
+  private final int[] matrix;
+  private final Duration buildTime;
+  // True if any entry is NOT_STORED_ENTRY, the incremental update can't work with those.
+  private final boolean overflow;
+
+  private AllPairsLatencies(int nodeCount, int[] matrix, Duration buildTime) {
+    this.nodeCount = nodeCount;
+    this.matrix = matrix;
+    this.buildTime = buildTime;
+    boolean anyNotStored = false;
+    for (int latency : matrix) {
+      anyNotStored |= latency == NOT_STORED_ENTRY;
+    }
+    this.overflow = anyNotStored;
+  }
+
+  static AllPairsLatencies compute(CompactGraph graph, ForkJoinPool pool) {
+    int nodeCount = graph.nodeCount();
+    if (nodeCount > MAX_NODES) {
+      throw new IllegalArgumentException(
+          "Too many nodes to precompute all pairs: " + nodeCount + " > " + MAX_NODES);
+    }
+    long startTime = System.nanoTime();
+    int[] matrix = new int[nodeCount * nodeCount];
+    int[] sources = new int[nodeCount];
+    for (int n = 0; n < nodeCount; n++) {
+      sources[n] = n;
+    }
+    computeRows(graph, sources, matrix, pool);
+    return new AllPairsLatencies(
+        nodeCount, matrix, Duration.ofNanos(System.nanoTime() - startTime));
+  }
+
+  /**
+   * Updates the matrix after edges of the graph changed. The matrix is copied, so queries which
+   * still use this one are not affected. The changes are applied in two steps:
+   *
+   * <ol>
+   *   <li>A more expensive or deleted edge u->v can only change the rows of the sources s it was on
+   *       a shortest path from, so where {@code d(s, u) + old latency == d(s, v)}. These rows are
+   *       searched again on the new graph.
+   *   <li>A cheaper or new edge is folded into all other rows with {@code d(s, t) = min(d(s, t),
+   *       d(s, u) + latency + d(v, t))}, where the distance of a node to itself is 0 here, the edge
+   *       already is the one hop a trace needs. That is O(V^2) per edge.
+   * </ol>
+   *
+   * In case that is more work than computing all rows again, the graph has new nodes or a latency
+   * sum does not fit into the matrix, everything is computed again.
+   *
+   * @param graph the graph after the changes.
+   * @param changes the changed edges.
+   * @param pool the pool to search the rows on.
+   * @return the latencies of the changed graph.
+   */
+  AllPairsLatencies update(CompactGraph graph, List<EdgeChange> changes, ForkJoinPool pool) {
+    long startTime = System.nanoTime();
+    if (graph.nodeCount() != nodeCount || overflow) {
+      return compute(graph, pool);
+    }
+    boolean[] searchAgain = new boolean[nodeCount];
+    int rowsToSearch = 0;
+    List<EdgeChange> decreases = new ArrayList<>();
+    for (EdgeChange change : changes) {
+      if (change.isIncrease()) {
+        for (int s = 0; s < nodeCount; s++) {
+          if (!searchAgain[s] && this.onShortestPath(s, change)) {
+            searchAgain[s] = true;
+            rowsToSearch++;
+          }
+        }
+      } else if (change.isInsert() || change.newLatency() < change.oldLatency()) {
+        decreases.add(change);
+      }
+    }
+    // Every row costs about one pass over the edges, folding in an edge a pass over the matrix.
+    long fullCost = (long) nodeCount * graph.edgeCount();
+    long updateCost =
+        (long) rowsToSearch * graph.edgeCount() + (long) decreases.size() * nodeCount * nodeCount;
+    if (updateCost >= fullCost) {
+      return compute(graph, pool);
+    }
+    int[] updated = matrix.clone();
+    int[] sources = new int[rowsToSearch];
+    for (int s = 0, i = 0; s < nodeCount; s++) {
+      if (searchAgain[s]) {
+        sources[i++] = s;
+      }
+    }
+    computeRows(graph, sources, updated, pool);
+    for (EdgeChange change : decreases) {
+      if (!foldIn(change, updated, searchAgain)) {
+        return compute(graph, pool);
+      }
+    }
+    AllPairsLatencies result =
+        new AllPairsLatencies(nodeCount, updated, Duration.ofNanos(System.nanoTime() - startTime));
+    return result.overflow ? compute(graph, pool) : result;
+  }
+
+  // True if the edge of the change is on a shortest path from the source with its old latency.
+  private boolean onShortestPath(int source, EdgeChange change) {
+    int toEdge = source == change.source() ? 0 : matrix[source * nodeCount + change.source()];
+    if (toEdge == UNREACHABLE_ENTRY) {
+      return false;
+    }
+    return (long) toEdge + change.oldLatency() == matrix[source * nodeCount + change.target()];
+  }
+
+  // Folds a cheaper or new edge into all rows which were not searched again.
+  private boolean foldIn(EdgeChange change, int[] updated, boolean[] searchedAgain) {
+    int targetRow = change.target() * nodeCount;
+    for (int s = 0; s < nodeCount; s++) {
+      int toEdge = s == change.source() ? 0 : updated[s * nodeCount + change.source()];
+      if (searchedAgain[s] || toEdge == UNREACHABLE_ENTRY) {
+        continue;
+      }
+      long throughEdge = (long) toEdge + change.newLatency();
+      int row = s * nodeCount;
+      for (int t = 0; t < nodeCount; t++) {
+        int fromEdge = t == change.target() ? 0 : updated[targetRow + t];
+        if (fromEdge == UNREACHABLE_ENTRY) {
+          continue;
+        }
+        long latency = throughEdge + fromEdge;
+        int current = updated[row + t];
+        if (current == UNREACHABLE_ENTRY || latency < current) {
+          if (latency > Integer.MAX_VALUE) {
+            return false;
+          }
+          updated[row + t] = (int) latency;
+        }
+      }
+    }
+    return true;
+  }
+
+  // Searches the rows of the given sources in chunks on the pool.
+  private static void computeRows(
+      CompactGraph graph, int[] sources, int[] matrix, ForkJoinPool pool) {
+    int chunkCount = Math.max(1, Math.min(sources.length, pool.getParallelism() * 4));
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(chunkCount);
+    for (int c = 0; c < chunkCount; c++) {
+      int from = (int) ((long) sources.length * c / chunkCount);
+      int to = (int) ((long) sources.length * (c + 1) / chunkCount);
+      tasks.add(ForkJoinTask.adapt(() -> computeRows(graph, sources, from, to, matrix)));
+    }
+    pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+  }
+
+  // Every chunk reuses one distance array and one heap for all of its sources.
+  private static void computeRows(
+      CompactGraph graph, int[] sources, int from, int to, int[] matrix) {
+    int nodeCount = graph.nodeCount();
+    long[] latencies = new long[nodeCount];
+    IntMinHeap heap = new IntMinHeap(nodeCount);
+    for (int i = from; i < to; i++) {
+      int start = sources[i];
+      ShortestLatencySearch.shortestLatencies(graph, start, latencies, heap);
+      int row = start * nodeCount;
+      for (int end = 0; end < nodeCount; end++) {
+        long latency = latencies[end];
+        if (latency == ShortestLatencySearch.UNREACHABLE) {
+          matrix[row + end] = UNREACHABLE_ENTRY;
+        } else if (latency > Integer.MAX_VALUE) {
+          matrix[row + end] = NOT_STORED_ENTRY;
+        } else {
+          matrix[row + end] = (int) latency;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the lowest latency of a non-empty path, {@link ShortestLatencySearch#UNREACHABLE} or
+   *     {@link #NOT_STORED} in case the latency is too big for the matrix.
+   */
+  long latency(int start, int end) {
+    int latency = matrix[start * nodeCount + end];
+    if (latency == UNREACHABLE_ENTRY) {
+      return ShortestLatencySearch.UNREACHABLE;
+    }
+    return latency == NOT_STORED_ENTRY ? NOT_STORED : latency;
+  }
+
+  public int nodeCount() {
+    return nodeCount;
+  }
+
+  /**
+   * @return the wall clock time it took to compute the matrix.
+   */
+  public Duration buildTime() {
+    return buildTime;
+  }
+
+  /**
+   * @return the size of the matrix in bytes.
+   */
+  public long memoryBytes() {
+    return 4L * matrix.length;
+  }
+
+  @Override
+  public String toString() {
+    return "AllPairsLatencies[nodes="
+        + nodeCount
+        + ", buildTime="
+        + buildTime.toMillis()
+        + "ms, memory="
+        + memoryBytes() / 1024
+        + "KB]";
+  }
+}
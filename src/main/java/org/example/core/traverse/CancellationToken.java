@@ -0,0 +1,20 @@
+package org.example.core.traverse;
+
+/**
+ * Lets another thread stop a running query, e.g. because the client went away. The queries check
+ * the token cooperatively every few thousand states and then throw a {@link
+ * QueryBudgetExceededException}, so cancelling takes effect within microseconds but never leaves a
+ * query half way through an update of shared state. One token can cancel any number of queries.
+ */
+public final class CancellationToken {
+  private volatile boolean cancelled;
+
+  /** Cancels all queries which use this token, the running ones and all future ones. */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+}
@@ -0,0 +1,970 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Contraction hierarchy of a {@link CompactGraph}: an index which answers the shortest latency
+ * between two nodes with two tiny searches instead of one search over the whole distance.
+ *
+ * <p>The nodes are contracted one after the other, the least important one first. Contracting a
+ * node removes it from the remaining graph and adds a shortcut u -> w for every pair of remaining
+ * neighbours u -> node -> w, unless a witness search finds a path from u to w which is not longer
+ * and does not need the node. The position of a node in this order is its rank. Every shortest
+ * path then has a representation which first only goes up in rank and then only down again, so a
+ * query searches forward from the start on the upward edges, backward from the end on the edges
+ * which come down to it and joins both searches where they meet.
+ *
+ * <p>On graphs where many nodes are connected to each other (random graphs) the last nodes would
+ * get more and more shortcuts. The contraction stops once the remaining nodes have {@link
+ * #CORE_DEGREE} edges on average, these nodes form the core. The upward searches stop at the
+ * core, a second phase then continues from the core nodes both of them reached with a search from
+ * both ends on the core edges, like plain Dijkstra on a much smaller graph.
+ *
+ * <p>The hierarchy pays off on graphs with a few important nodes most shortest paths go through,
+ * like scale free graphs. On graphs without such a structure, like layered graphs where every
+ * layer is as important as the next one, the upward searches grow larger than the plain search
+ * from both ends.
+ *
+ * <p>The index is immutable and only valid for the graph it was built for, see {@link
+ * #fingerprint(CompactGraph)}. The state of a query is sparse and grows with its search space, so
+ * unlike the other searches a query does not allocate or clear anything of the size of the graph.
+ */
+public final class ContractionHierarchy {
+  static final int CORE_DEGREE = 8;
+  // A witness search gives up after this many settled nodes, which at worst adds a shortcut which
+  // is not needed. The priorities are only estimates, their searches give up a lot earlier.
+  static final int WITNESS_SETTLE_LIMIT = 40;
+  static final int PRIORITY_SETTLE_LIMIT = 10;
+  static final int SIMULATED_PAIRS_LIMIT = 256;
+
+  private final long fingerprint;
+  private final int nodeCount;
+  private final int[] coreNodes;
+  // One bit per node, set for the core nodes.
+  private final long[] coreBits;
+  // The upward edges of every node, for the core nodes all of their edges within the core.
+  private final int[] forwardOffsets;
+  private final int[] forwardTargets;
+  private final long[] forwardLatencies;
+  // The edges which come down to every node from a higher rank, stored at their target with the
+  // source as "target", for the core nodes all incoming edges within the core.
+  private final int[] backwardOffsets;
+  private final int[] backwardTargets;
+  private final long[] backwardLatencies;
+  private final int shortcutCount;
+  private final Duration buildTime;
+
+  private ContractionHierarchy(
+      long fingerprint,
+      int[] coreNodes,
+      int[] forwardOffsets,
+      int[] forwardTargets,
+      long[] forwardLatencies,
+      int[] backwardOffsets,
+      int[] backwardTargets,
+      long[] backwardLatencies,
+      int shortcutCount,
+      Duration buildTime) {
+    this.fingerprint = fingerprint;
+    this.nodeCount = forwardOffsets.length - 1;
+    this.coreNodes = coreNodes;
+    this.coreBits = new long[(nodeCount + 63) >>> 6];
+    for (int node : coreNodes) {
+      this.coreBits[node >>> 6] |= 1L << node;
+    }
+    this.forwardOffsets = forwardOffsets;
+    this.forwardTargets = forwardTargets;
+    this.forwardLatencies = forwardLatencies;
+    this.backwardOffsets = backwardOffsets;
+    this.backwardTargets = backwardTargets;
+    this.backwardLatencies = backwardLatencies;
+    this.shortcutCount = shortcutCount;
+    this.buildTime = buildTime;
+  }
+
+  /**
+   * Provides the hierarchy of a graph, for example by building it ({@code
+   * ContractionHierarchy::build}) or by reading it from an index file.
+   */
+  @FunctionalInterface
+  public interface Source {
+    /**
+     * @param graph the graph the hierarchy is for.
+     * @return the hierarchy of the graph.
+     */
+    ContractionHierarchy hierarchyOf(CompactGraph graph);
+  }
+
+  /**
+   * Contracts all nodes of the graph. This takes a lot longer than loading the graph, but only has
+   * to be done once per graph.
+   *
+   * @param graph the graph to build the hierarchy for.
+   * @return the hierarchy.
+   */
+  public static ContractionHierarchy build(CompactGraph graph) {
+    long startNanos = System.nanoTime();
+    return new Contraction(graph).run(fingerprint(graph), startNanos);
+  }
+
+  /**
+   * Creates a hierarchy from its arrays, for example when it is read from an index file. The
+   * arrays are taken over without copying, so they must not be changed afterwards.
+   *
+   * @param fingerprint the {@link #fingerprint(CompactGraph)} of the graph of the hierarchy.
+   * @param coreNodes the nodes which were not contracted, ascending.
+   * @param forwardOffsets the first upward edge of every node plus the end of the last one.
+   * @param forwardTargets the target of every upward edge.
+   * @param forwardLatencies the latency of every upward edge.
+   * @param backwardOffsets the first downward edge of every node plus the end of the last one.
+   * @param backwardTargets the source of every downward edge, which ends at its node.
+   * @param backwardLatencies the latency of every downward edge.
+   * @param shortcutCount the number of shortcuts among the edges.
+   * @param buildTime the time it took to build or read the hierarchy.
+   * @return the hierarchy.
+   * @throws IllegalArgumentException in case the arrays are not a valid hierarchy.
+   */
+  public static ContractionHierarchy fromArrays(
+      long fingerprint,
+      int[] coreNodes,
+      int[] forwardOffsets,
+      int[] forwardTargets,
+      long[] forwardLatencies,
+      int[] backwardOffsets,
+      int[] backwardTargets,
+      long[] backwardLatencies,
+      int shortcutCount,
+      Duration buildTime) {
+    int nodes = forwardOffsets.length - 1;
+    if (nodes < 0 || backwardOffsets.length != nodes + 1) {
+      throw new IllegalArgumentException("The offsets do not have the same node count.");
+    }
+    if (shortcutCount < 0) {
+      throw new IllegalArgumentException("Invalid shortcut count: " + shortcutCount);
+    }
+    for (int i = 0; i < coreNodes.length; i++) {
+      if (coreNodes[i] < 0
+          || coreNodes[i] >= nodes
+          || (i > 0 && coreNodes[i] <= coreNodes[i - 1])) {
+        throw new IllegalArgumentException("The core nodes are not valid and ascending.");
+      }
+    }
+    checkEdges(nodes, forwardOffsets, forwardTargets, forwardLatencies);
+    checkEdges(nodes, backwardOffsets, backwardTargets, backwardLatencies);
+    return new ContractionHierarchy(
+        fingerprint,
+        coreNodes,
+        forwardOffsets,
+        forwardTargets,
+        forwardLatencies,
+        backwardOffsets,
+        backwardTargets,
+        backwardLatencies,
+        shortcutCount,
+        buildTime);
+  }
+
+  private static void checkEdges(int nodes, int[] offsets, int[] targets, long[] latencies) {
+    if (offsets[0] != 0
+        || offsets[nodes] != targets.length
+        || targets.length != latencies.length) {
+      throw new IllegalArgumentException("The array sizes do not match.");
+    }
+    for (int n = 0; n < nodes; n++) {
+      if (offsets[n + 1] < offsets[n]) {
+        throw new IllegalArgumentException("The offsets need to be ascending.");
+      }
+    }
+    for (int e = 0; e < targets.length; e++) {
+      if (targets[e] < 0 || targets[e] >= nodes || latencies[e] < 0) {
+        throw new IllegalArgumentException("Invalid edge " + e);
+      }
+    }
+  }
+
+  /**
+   * Checksum of names and edges of a graph. A hierarchy only answers correctly for the graph with
+   * the same fingerprint, so a stored hierarchy can be checked against the graph it is used with.
+   *
+   * @param graph the graph.
+   * @return the CRC32C of the graph.
+   */
+  public static long fingerprint(CompactGraph graph) {
+    CRC32C checksum = new CRC32C();
+    ByteBuffer buffer = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(graph.nodeCount()).putInt(graph.edgeCount());
+    for (int n = 0; n < graph.nodeCount(); n++) {
+      byte[] name = graph.nameOf(n).getBytes(StandardCharsets.UTF_8);
+      flushIfFull(checksum, buffer, 4);
+      // The length keeps "ab", "c" apart from "a", "bc".
+      buffer.putInt(name.length);
+      checksum.update(buffer.flip());
+      buffer.clear();
+      checksum.update(name);
+    }
+    for (int n = 0; n < graph.nodeCount(); n++) {
+      flushIfFull(checksum, buffer, 4);
+      buffer.putInt(graph.outDegree(n));
+      for (int e = graph.firstEdge(n); e < graph.endEdge(n); e++) {
+        flushIfFull(checksum, buffer, 8);
+        buffer.putInt(graph.target(e)).putInt(graph.latency(e));
+      }
+    }
+    checksum.update(buffer.flip());
+    return checksum.getValue();
+  }
+
+  private static void flushIfFull(CRC32C checksum, ByteBuffer buffer, int bytes) {
+    if (buffer.remaining() < bytes) {
+      checksum.update(buffer.flip());
+      buffer.clear();
+    }
+  }
+
+  /**
+   * @param graph the graph to check.
+   * @return true if this hierarchy was built for the graph.
+   */
+  public boolean matches(CompactGraph graph) {
+    return graph.nodeCount() == nodeCount && fingerprint(graph) == fingerprint;
+  }
+
+  public long fingerprint() {
+    return fingerprint;
+  }
+
+  public int nodeCount() {
+    return nodeCount;
+  }
+
+  /**
+   * @return the number of nodes which were not contracted.
+   */
+  public int coreSize() {
+    return coreNodes.length;
+  }
+
+  public int[] coreNodes() {
+    return coreNodes.clone();
+  }
+
+  /**
+   * @return the number of edges which were added by the contraction.
+   */
+  public int shortcutCount() {
+    return shortcutCount;
+  }
+
+  /**
+   * @return the time it took to build the hierarchy or to read it from a file.
+   */
+  public Duration buildTime() {
+    return buildTime;
+  }
+
+  /**
+   * @return the size of the edge arrays.
+   */
+  public long memoryBytes() {
+    return 4L * (forwardOffsets.length + backwardOffsets.length + coreNodes.length)
+        + 12L * (forwardTargets.length + backwardTargets.length)
+        + 8L * coreBits.length;
+  }
+
+  public int[] forwardOffsets() {
+    return forwardOffsets.clone();
+  }
+
+  public int[] forwardTargets() {
+    return forwardTargets.clone();
+  }
+
+  public long[] forwardLatencies() {
+    return forwardLatencies.clone();
+  }
+
+  public int[] backwardOffsets() {
+    return backwardOffsets.clone();
+  }
+
+  public int[] backwardTargets() {
+    return backwardTargets.clone();
+  }
+
+  public long[] backwardLatencies() {
+    return backwardLatencies.clone();
+  }
+
+  @Override
+  public String toString() {
+    return "ContractionHierarchy[nodes="
+        + nodeCount
+        + ", core="
+        + coreNodes.length
+        + ", shortcuts="
+        + shortcutCount
+        + ", buildTime="
+        + buildTime.toMillis()
+        + "ms, memory="
+        + memoryBytes() / 1024
+        + "KB]";
+  }
+
+  /**
+   * The lowest latency from start to end, a path of at least one hop as start and end differ. The
+   * forward and the backward search take turns, always the one with the smaller queue. A search
+   * stops once its lowest queued latency is not below the best path found so far, the other one
+   * may still find a better one. The core nodes they reach are the start of the search on the
+   * core, which stops once the lowest queued latencies of both sides add up to the best path.
+   *
+   * @param start the start node.
+   * @param end the end node, not the start node: a cycle can't be found in the hierarchy.
+   * @param budget the budget of the query, every node settled by one of the searches is a state.
+   * @param recording the recording of the query, null if the metrics are disabled.
+   * @return the lowest latency or {@link ShortestLatencySearch#UNREACHABLE}.
+   * @throws QueryBudgetExceededException in case the budget is exceeded.
+   */
+  long shortestLatency(int start, int end, TraversalBudget budget, QueryRecording recording) {
+    if (start == end) {
+      throw new IllegalArgumentException("Start and end are the same node: " + start);
+    }
+    Query query = new Query(budget.meter());
+    long best = query.run(start, end);
+    QueryRecording.count(recording, query.expanded, query.relaxed, query.peakQueueSize);
+    return best;
+  }
+
+  private boolean isCore(int node) {
+    return (coreBits[node >>> 6] & (1L << node)) != 0;
+  }
+
+  /** The two searches of one query. */
+  private final class Query {
+    private final TraversalBudget.Meter meter;
+    private final SearchSpace forward;
+    private final SearchSpace backward;
+    private long best = ShortestLatencySearch.UNREACHABLE;
+    private long expanded;
+    private long relaxed;
+    private int peakQueueSize;
+
+    Query(TraversalBudget.Meter meter) {
+      this.meter = meter;
+      this.forward = new SearchSpace(meter);
+      this.backward = new SearchSpace(meter);
+    }
+
+    long run(int start, int end) {
+      forward.improve(start, 0, !isCore(start));
+      backward.improve(end, 0, !isCore(end));
+      this.upward();
+      // A path through the core enters it from the start and leaves it towards the end.
+      if (forward.entryCount() > 0 && backward.entryCount() > 0) {
+        this.core();
+      }
+      return best;
+    }
+
+    // Both searches up the hierarchy until they reach the core.
+    private void upward() {
+      while (true) {
+        boolean forwardOpen = forward.peek() < best;
+        boolean backwardOpen = backward.peek() < best;
+        if (!forwardOpen && !backwardOpen) {
+          return;
+        }
+        boolean isForward =
+            forwardOpen && (!backwardOpen || forward.queueSize() <= backward.queueSize());
+        SearchSpace search = isForward ? forward : backward;
+        int node = search.poll();
+        long latency = search.latency(node);
+        this.settled(node, latency, isForward ? backward : forward);
+        if (isForward) {
+          this.relaxUpward(
+              search, node, latency, forwardOffsets, forwardTargets, forwardLatencies,
+              backwardOffsets, backwardTargets, backwardLatencies);
+        } else {
+          this.relaxUpward(
+              search, node, latency, backwardOffsets, backwardTargets, backwardLatencies,
+              forwardOffsets, forwardTargets, forwardLatencies);
+        }
+      }
+    }
+
+    // Bidirectional Dijkstra on the core, started from all core nodes the upward searches reached.
+    private void core() {
+      forward.queueEntries();
+      backward.queueEntries();
+      while (true) {
+        long forwardLatency = forward.peek();
+        long backwardLatency = backward.peek();
+        if (forwardLatency == ShortestLatencySearch.UNREACHABLE
+            || backwardLatency == ShortestLatencySearch.UNREACHABLE
+            || forwardLatency + backwardLatency >= best) {
+          return;
+        }
+        boolean isForward = forward.queueSize() <= backward.queueSize();
+        SearchSpace search = isForward ? forward : backward;
+        SearchSpace other = isForward ? backward : forward;
+        int[] offsets = isForward ? forwardOffsets : backwardOffsets;
+        int[] targets = isForward ? forwardTargets : backwardTargets;
+        long[] latencies = isForward ? forwardLatencies : backwardLatencies;
+        int node = search.poll();
+        long latency = search.latency(node);
+        this.settled(node, latency, other);
+        for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+          long newLatency = latency + latencies[e];
+          search.improve(targets[e], newLatency, true);
+          this.join(newLatency, other.latency(targets[e]));
+        }
+        relaxed += offsets[node + 1] - offsets[node];
+      }
+    }
+
+    private void settled(int node, long latency, SearchSpace other) {
+      meter.expand();
+      expanded++;
+      this.join(latency, other.latency(node));
+      peakQueueSize = Math.max(peakQueueSize, forward.queueSize() + backward.queueSize());
+    }
+
+    private void join(long latency, long otherLatency) {
+      if (otherLatency != ShortestLatencySearch.UNREACHABLE && latency + otherLatency < best) {
+        best = latency + otherLatency;
+      }
+    }
+
+    /**
+     * Relaxes the upward edges of a settled node, unless the node is stalled: the search reached a
+     * higher node already, which has an edge down to this one that is shorter than the latency the
+     * node got from below. Then no shortest path goes through the node from here and its edges
+     * would only grow the search space. The core nodes are not queued, they wait for the search
+     * on the core.
+     */
+    private void relaxUpward(
+        SearchSpace search,
+        int node,
+        long latency,
+        int[] offsets,
+        int[] targets,
+        long[] latencies,
+        int[] downOffsets,
+        int[] downTargets,
+        long[] downLatencies) {
+      for (int e = downOffsets[node]; e < downOffsets[node + 1]; e++) {
+        long above = search.latency(downTargets[e]);
+        if (above != ShortestLatencySearch.UNREACHABLE && above + downLatencies[e] < latency) {
+          return;
+        }
+      }
+      for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+        search.improve(targets[e], latency + latencies[e], !isCore(targets[e]));
+      }
+      relaxed += offsets[node + 1] - offsets[node];
+    }
+  }
+
+  /**
+   * Latencies and queue of one search of a query, sized for its search space instead of the graph:
+   * an open addressing map from node to latency and a binary heap which may hold a node several
+   * times, the outdated entries are skipped when they come up.
+   */
+  private static final class SearchSpace {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int FREE = -1;
+
+    private final TraversalBudget.Meter meter;
+    private int[] nodes = new int[INITIAL_CAPACITY];
+    private long[] latencies = new long[INITIAL_CAPACITY];
+    private int size;
+    private int[] queueNodes = new int[INITIAL_CAPACITY];
+    private long[] queueLatencies = new long[INITIAL_CAPACITY];
+    private int queueSize;
+    // The core nodes which were reached, but not queued.
+    private int[] entries = new int[INITIAL_CAPACITY];
+    private int entryCount;
+
+    SearchSpace(TraversalBudget.Meter meter) {
+      this.meter = meter;
+      Arrays.fill(this.nodes, FREE);
+      meter.allocate(28L * INITIAL_CAPACITY);
+    }
+
+    int queueSize() {
+      return queueSize;
+    }
+
+    long latency(int node) {
+      int mask = nodes.length - 1;
+      for (int slot = hash(node) & mask; ; slot = (slot + 1) & mask) {
+        if (nodes[slot] == node) {
+          return latencies[slot];
+        }
+        if (nodes[slot] == FREE) {
+          return ShortestLatencySearch.UNREACHABLE;
+        }
+      }
+    }
+
+    int entryCount() {
+      return entryCount;
+    }
+
+    /**
+     * Lowers the latency of the node in case it is lower than the one it has.
+     *
+     * @param queue false for a core node which is only queued once the search on the core starts.
+     */
+    void improve(int node, long latency, boolean queue) {
+      int mask = nodes.length - 1;
+      int slot = hash(node) & mask;
+      while (nodes[slot] != FREE && nodes[slot] != node) {
+        slot = (slot + 1) & mask;
+      }
+      if (nodes[slot] == node) {
+        if (latency >= latencies[slot]) {
+          return;
+        }
+        latencies[slot] = latency;
+      } else {
+        nodes[slot] = node;
+        latencies[slot] = latency;
+        // At most half full, so a free slot is always close.
+        if (++size > nodes.length >>> 1) {
+          this.growMap();
+        }
+        if (!queue) {
+          this.addEntry(node);
+        }
+      }
+      if (queue) {
+        this.push(node, latency);
+      }
+    }
+
+    /** Replaces the queue with the core nodes which were reached so far. */
+    void queueEntries() {
+      queueSize = 0;
+      for (int i = 0; i < entryCount; i++) {
+        this.push(entries[i], this.latency(entries[i]));
+      }
+    }
+
+    private void addEntry(int node) {
+      if (entryCount == entries.length) {
+        meter.allocate(4L * entries.length);
+        entries = Arrays.copyOf(entries, 2 * entries.length);
+      }
+      entries[entryCount++] = node;
+    }
+
+    /**
+     * @return the lowest latency in the queue, {@link ShortestLatencySearch#UNREACHABLE} if it is
+     *     empty.
+     */
+    long peek() {
+      while (queueSize > 0 && queueLatencies[0] > this.latency(queueNodes[0])) {
+        this.removeFirst();
+      }
+      return queueSize == 0 ? ShortestLatencySearch.UNREACHABLE : queueLatencies[0];
+    }
+
+    // Only called right after peek, so the first entry is up to date.
+    int poll() {
+      int node = queueNodes[0];
+      this.removeFirst();
+      return node;
+    }
+
+    private void push(int node, long latency) {
+      if (queueSize == queueNodes.length) {
+        meter.allocate(12L * queueNodes.length);
+        queueNodes = Arrays.copyOf(queueNodes, 2 * queueNodes.length);
+        queueLatencies = Arrays.copyOf(queueLatencies, 2 * queueLatencies.length);
+      }
+      int index = queueSize++;
+      while (index > 0) {
+        int parent = (index - 1) >>> 1;
+        if (queueLatencies[parent] <= latency) {
+          break;
+        }
+        queueNodes[index] = queueNodes[parent];
+        queueLatencies[index] = queueLatencies[parent];
+        index = parent;
+      }
+      queueNodes[index] = node;
+      queueLatencies[index] = latency;
+    }
+
+    private void removeFirst() {
+      queueSize--;
+      if (queueSize == 0) {
+        return;
+      }
+      int node = queueNodes[queueSize];
+      long latency = queueLatencies[queueSize];
+      int index = 0;
+      int half = queueSize >>> 1;
+      while (index < half) {
+        int child = 2 * index + 1;
+        if (child + 1 < queueSize && queueLatencies[child + 1] < queueLatencies[child]) {
+          child++;
+        }
+        if (latency <= queueLatencies[child]) {
+          break;
+        }
+        queueNodes[index] = queueNodes[child];
+        queueLatencies[index] = queueLatencies[child];
+        index = child;
+      }
+      queueNodes[index] = node;
+      queueLatencies[index] = latency;
+    }
+
+    private void growMap() {
+      meter.allocate(12L * nodes.length);
+      int[] oldNodes = nodes;
+      long[] oldLatencies = latencies;
+      nodes = new int[2 * oldNodes.length];
+      latencies = new long[2 * oldLatencies.length];
+      Arrays.fill(nodes, FREE);
+      int mask = nodes.length - 1;
+      for (int i = 0; i < oldNodes.length; i++) {
+        if (oldNodes[i] != FREE) {
+          int slot = hash(oldNodes[i]) & mask;
+          while (nodes[slot] != FREE) {
+            slot = (slot + 1) & mask;
+          }
+          nodes[slot] = oldNodes[i];
+          latencies[slot] = oldLatencies[i];
+        }
+      }
+    }
+
+    // Node ids of a neighbourhood are often close to each other, mixing spreads them over the map.
+    private static int hash(int node) {
+      return node * 0x9E3779B9;
+    }
+  }
+
+  /**
+   * The contraction of all nodes. The remaining graph is kept as growable adjacency lists with
+   * long latencies in both directions, a contracted node is removed from the lists of its
+   * neighbours, so the lists only ever contain remaining nodes.
+   */
+  private static final class Contraction {
+    private final int nodeCount;
+    private final int[][] outTargets;
+    private final long[][] outLatencies;
+    private final int[] outSize;
+    private final int[][] inSources;
+    private final long[][] inLatencies;
+    private final int[] inSize;
+    private final int[] contractedNeighbours;
+    private final int[] level;
+    // The edges every node had when it was contracted, which all go to higher ranks.
+    private final int[][] upTargets;
+    private final long[][] upLatencies;
+    private final int[][] downSources;
+    private final long[][] downLatencies;
+    // The state of the witness searches, the stamp tells which search a latency belongs to.
+    private final long[] witnessLatencies;
+    private final int[] witnessStamps;
+    // The targets of the node which is contracted, a witness search stops once it settled all.
+    private final int[] targetStamps;
+    private final IntMinHeap witnessHeap;
+    private int stamp;
+    private long remainingEdges;
+    private int shortcutCount;
+
+    Contraction(CompactGraph graph) {
+      this.nodeCount = graph.nodeCount();
+      this.outTargets = new int[nodeCount][];
+      this.outLatencies = new long[nodeCount][];
+      this.outSize = new int[nodeCount];
+      this.inSources = new int[nodeCount][];
+      this.inLatencies = new long[nodeCount][];
+      this.inSize = new int[nodeCount];
+      CompactGraph reversed = graph.reversed();
+      for (int n = 0; n < nodeCount; n++) {
+        this.outTargets[n] = new int[graph.outDegree(n)];
+        this.outLatencies[n] = new long[graph.outDegree(n)];
+        this.inSources[n] = new int[reversed.outDegree(n)];
+        this.inLatencies[n] = new long[reversed.outDegree(n)];
+      }
+      // The graph has at most one edge per pair. Self-loops never help a path between two
+      // different nodes, so they are left out.
+      for (int n = 0; n < nodeCount; n++) {
+        for (int e = graph.firstEdge(n); e < graph.endEdge(n); e++) {
+          int target = graph.target(e);
+          if (target != n) {
+            this.append(n, target, graph.latency(e));
+            this.remainingEdges++;
+          }
+        }
+      }
+      this.contractedNeighbours = new int[nodeCount];
+      this.level = new int[nodeCount];
+      this.upTargets = new int[nodeCount][];
+      this.upLatencies = new long[nodeCount][];
+      this.downSources = new int[nodeCount][];
+      this.downLatencies = new long[nodeCount][];
+      this.witnessLatencies = new long[nodeCount];
+      this.witnessStamps = new int[nodeCount];
+      this.targetStamps = new int[nodeCount];
+      this.witnessHeap = new IntMinHeap(nodeCount);
+    }
+
+    ContractionHierarchy run(long fingerprint, long startNanos) {
+      IntMinHeap order = new IntMinHeap(nodeCount);
+      for (int n = 0; n < nodeCount; n++) {
+        order.insertOrDecrease(n, this.priority(n));
+      }
+      int remaining = nodeCount;
+      while (!order.isEmpty() && remainingEdges <= (long) CORE_DEGREE * remaining) {
+        int node = order.poll();
+        // The priorities of the other nodes may be outdated, they only change when neighbours are
+        // contracted. In case the node is not the least important one anymore it goes back.
+        long priority = this.priority(node);
+        if (!order.isEmpty() && priority > order.peekPriority()) {
+          order.insertOrDecrease(node, priority);
+          continue;
+        }
+        this.contract(node);
+        remaining--;
+        for (int i = 0; i < outSize[node]; i++) {
+          order.insertOrDecrease(outTargets[node][i], this.priority(outTargets[node][i]));
+        }
+        for (int i = 0; i < inSize[node]; i++) {
+          order.insertOrDecrease(inSources[node][i], this.priority(inSources[node][i]));
+        }
+      }
+      // The core keeps all of its edges in both directions.
+      int[] coreNodes = new int[order.size()];
+      for (int i = 0; i < coreNodes.length; i++) {
+        coreNodes[i] = order.poll();
+        this.keep(coreNodes[i]);
+      }
+      Arrays.sort(coreNodes);
+      return this.pack(fingerprint, coreNodes, startNanos);
+    }
+
+    // Fewer added than removed edges first, then nodes whose neighbours were contracted already,
+    // so the contraction spreads evenly over the graph, and low levels, which keeps the hierarchy
+    // flat.
+    private long priority(int node) {
+      long pairs = (long) inSize[node] * outSize[node];
+      // Simulating the contraction of a hub costs a witness search per incoming edge every time a
+      // neighbour is contracted. Hubs come last anyway, so their worst case is good enough.
+      long shortcuts = pairs > SIMULATED_PAIRS_LIMIT ? pairs : this.shortcuts(node, false);
+      return 2L * (shortcuts - outSize[node] - inSize[node])
+          + contractedNeighbours[node]
+          + level[node];
+    }
+
+    private void contract(int node) {
+      this.shortcuts(node, true);
+      this.keep(node);
+      remainingEdges -= outSize[node] + inSize[node];
+      for (int i = 0; i < outSize[node]; i++) {
+        int target = outTargets[node][i];
+        remove(inSources, inLatencies, inSize, target, node);
+        this.contracted(target, node);
+      }
+      for (int i = 0; i < inSize[node]; i++) {
+        int source = inSources[node][i];
+        remove(outTargets, outLatencies, outSize, source, node);
+        this.contracted(source, node);
+      }
+    }
+
+    private void contracted(int neighbour, int node) {
+      contractedNeighbours[neighbour]++;
+      level[neighbour] = Math.max(level[neighbour], level[node] + 1);
+    }
+
+    // The edges of the node to the remaining nodes become its edges in the hierarchy.
+    private void keep(int node) {
+      upTargets[node] = Arrays.copyOf(outTargets[node], outSize[node]);
+      upLatencies[node] = Arrays.copyOf(outLatencies[node], outSize[node]);
+      downSources[node] = Arrays.copyOf(inSources[node], inSize[node]);
+      downLatencies[node] = Arrays.copyOf(inLatencies[node], inSize[node]);
+    }
+
+    /**
+     * The shortcuts which are needed to contract the node, every path source -> node -> target
+     * which has no witness.
+     *
+     * @param add true to add the shortcuts, false to only count them.
+     * @return the number of shortcuts.
+     */
+    private int shortcuts(int node, boolean add) {
+      long maxOut = 0;
+      stamp++;
+      for (int i = 0; i < outSize[node]; i++) {
+        maxOut = Math.max(maxOut, outLatencies[node][i]);
+        targetStamps[outTargets[node][i]] = stamp;
+      }
+      int targetStamp = stamp;
+      int settleLimit = add ? WITNESS_SETTLE_LIMIT : PRIORITY_SETTLE_LIMIT;
+      int shortcuts = 0;
+      for (int i = 0; i < inSize[node]; i++) {
+        int source = inSources[node][i];
+        long toNode = inLatencies[node][i];
+        int targets = outSize[node] - (targetStamps[source] == targetStamp ? 1 : 0);
+        if (targets == 0) {
+          continue;
+        }
+        this.witnessSearch(source, node, toNode + maxOut, targets, targetStamp, settleLimit);
+        for (int j = 0; j < outSize[node]; j++) {
+          int target = outTargets[node][j];
+          if (target == source) {
+            continue;
+          }
+          long viaNode = toNode + outLatencies[node][j];
+          // The witness latency may not be final, but it is the latency of a real path.
+          if (witnessStamps[target] == stamp && witnessLatencies[target] <= viaNode) {
+            continue;
+          }
+          shortcuts++;
+          if (add) {
+            this.addShortcut(source, target, viaNode);
+          }
+        }
+      }
+      return shortcuts;
+    }
+
+    // Dijkstra from the source on the remaining graph without the node, up to the max latency or
+    // until all targets are settled.
+    private void witnessSearch(
+        int source,
+        int node,
+        long maxLatency,
+        int targets,
+        int targetStamp,
+        int settleLimit) {
+      stamp++;
+      witnessHeap.clear();
+      witnessLatencies[source] = 0;
+      witnessStamps[source] = stamp;
+      witnessHeap.insertOrDecrease(source, 0);
+      int settled = 0;
+      while (!witnessHeap.isEmpty() && settled++ < settleLimit) {
+        int current = witnessHeap.poll();
+        if (targetStamps[current] == targetStamp && current != source && --targets == 0) {
+          break;
+        }
+        long latency = witnessLatencies[current];
+        for (int i = 0; i < outSize[current]; i++) {
+          int target = outTargets[current][i];
+          if (target == node) {
+            continue;
+          }
+          long newLatency = latency + outLatencies[current][i];
+          // Longer paths can't be a witness, queueing them only costs time at the hubs.
+          if (newLatency > maxLatency) {
+            continue;
+          }
+          if (witnessStamps[target] != stamp || newLatency < witnessLatencies[target]) {
+            witnessStamps[target] = stamp;
+            witnessLatencies[target] = newLatency;
+            witnessHeap.insertOrDecrease(target, newLatency);
+          }
+        }
+      }
+    }
+
+    private void addShortcut(int source, int target, long latency) {
+      for (int i = 0; i < outSize[source]; i++) {
+        if (outTargets[source][i] == target) {
+          if (latency < outLatencies[source][i]) {
+            outLatencies[source][i] = latency;
+            for (int j = 0; j < inSize[target]; j++) {
+              if (inSources[target][j] == source) {
+                inLatencies[target][j] = latency;
+              }
+            }
+          }
+          return;
+        }
+      }
+      this.append(source, target, latency);
+      remainingEdges++;
+      shortcutCount++;
+    }
+
+    private void append(int source, int target, long latency) {
+      if (outSize[source] == outTargets[source].length) {
+        int capacity = Math.max(4, 2 * outSize[source]);
+        outTargets[source] = Arrays.copyOf(outTargets[source], capacity);
+        outLatencies[source] = Arrays.copyOf(outLatencies[source], capacity);
+      }
+      outTargets[source][outSize[source]] = target;
+      outLatencies[source][outSize[source]++] = latency;
+      if (inSize[target] == inSources[target].length) {
+        int capacity = Math.max(4, 2 * inSize[target]);
+        inSources[target] = Arrays.copyOf(inSources[target], capacity);
+        inLatencies[target] = Arrays.copyOf(inLatencies[target], capacity);
+      }
+      inSources[target][inSize[target]] = source;
+      inLatencies[target][inSize[target]++] = latency;
+    }
+
+    // Removes the neighbour from the list of the node, the last entry takes its place.
+    private static void remove(int[][] nodes, long[][] latencies, int[] sizes, int node, int gone) {
+      for (int i = 0; i < sizes[node]; i++) {
+        if (nodes[node][i] == gone) {
+          int last = --sizes[node];
+          nodes[node][i] = nodes[node][last];
+          latencies[node][i] = latencies[node][last];
+          return;
+        }
+      }
+    }
+
+    private ContractionHierarchy pack(long fingerprint, int[] coreNodes, long startNanos) {
+      int[] forwardOffsets = offsets(upTargets);
+      int[] backwardOffsets = offsets(downSources);
+      int[] forwardTargets = new int[forwardOffsets[nodeCount]];
+      long[] forwardLatencies = new long[forwardOffsets[nodeCount]];
+      int[] backwardTargets = new int[backwardOffsets[nodeCount]];
+      long[] backwardLatencies = new long[backwardOffsets[nodeCount]];
+      for (int n = 0; n < nodeCount; n++) {
+        System.arraycopy(upTargets[n], 0, forwardTargets, forwardOffsets[n], upTargets[n].length);
+        System.arraycopy(
+            upLatencies[n], 0, forwardLatencies, forwardOffsets[n], upLatencies[n].length);
+        System.arraycopy(
+            downSources[n], 0, backwardTargets, backwardOffsets[n], downSources[n].length);
+        System.arraycopy(
+            downLatencies[n], 0, backwardLatencies, backwardOffsets[n], downLatencies[n].length);
+      }
+      return new ContractionHierarchy(
+          fingerprint,
+          coreNodes,
+          forwardOffsets,
+          forwardTargets,
+          forwardLatencies,
+          backwardOffsets,
+          backwardTargets,
+          backwardLatencies,
+          shortcutCount,
+          Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    private static int[] offsets(int[][] edges) {
+      int[] offsets = new int[edges.length + 1];
+      for (int n = 0; n < edges.length; n++) {
+        offsets[n + 1] = Math.addExact(offsets[n], edges[n].length);
+      }
+      return offsets;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package org.example.core.traverse;
+
+/**
+ * The effective change of one edge between two versions of a graph, in node ids of the new graph.
+ *
+ * @param oldLatency the latency before the change, {@link #NO_EDGE} if the edge was added.
+ * @param newLatency the latency after the change, {@link #NO_EDGE} if the edge was deleted.
+ */
+record EdgeChange(int source, int target, int oldLatency, int newLatency) {
+  static final int NO_EDGE = -1;
+
+  boolean isInsert() {
+    return oldLatency == NO_EDGE;
+  }
+
+  boolean isDelete() {
+    return newLatency == NO_EDGE;
+  }
+
+  /**
+   * @return true if the edge is more expensive or gone, shortest paths using it may get longer.
+   */
+  boolean isIncrease() {
+    return !isInsert() && (isDelete() || newLatency > oldLatency);
+  }
+}
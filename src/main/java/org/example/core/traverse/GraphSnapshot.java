@@ -0,0 +1,28 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+/**
+ * A loaded graph together with its version. Every (re)load creates a new snapshot with a higher
+ * version, a query always works on the one snapshot it picked up when it started.
+ *
+ * @param allPairs the precomputed shortest latencies, null if the precomputation is disabled or the
+ *     graph is too big for it.
+ * @param components the strongly connected components of the graph.
+ * @param hierarchy the contraction hierarchy of the graph, null if it is disabled or not built yet.
+ */
+record GraphSnapshot(
+    long version,
+    CompactGraph graph,
+    AllPairsLatencies allPairs,
+    StronglyConnectedComponents components,
+    ContractionHierarchy hierarchy) {
+
+  GraphSnapshot withVersion(long newVersion) {
+    return new GraphSnapshot(newVersion, graph, allPairs, components, hierarchy);
+  }
+
+  GraphSnapshot withHierarchy(ContractionHierarchy newHierarchy) {
+    return new GraphSnapshot(version, graph, allPairs, components, newHierarchy);
+  }
+}
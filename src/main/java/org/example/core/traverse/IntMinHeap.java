@@ -0,0 +1,118 @@
+package org.example.core.traverse;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min heap for the node ids 0..capacity-1 with a long priority. As every node can be
+ * contained only once we can decrease the priority in place instead of adding duplicates, which
+ * keeps the heap size bounded by the number of nodes.
+ */
+final class IntMinHeap {
+  private final int[] heap;
+  // position[node] is the index of the node within heap or -1 if it is not contained.
+  private final int[] position;
+  private final long[] priority;
+  private int size;
+
+  IntMinHeap(int capacity) {
+    this.heap = new int[capacity];
+    this.position = new int[capacity];
+    this.priority = new long[capacity];
+    Arrays.fill(this.position, -1);
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean contains(int node) {
+    return position[node] >= 0;
+  }
+
+  /**
+   * Adds the node or lowers its priority in case it is contained already with a higher one.
+   *
+   * @return true if the heap changed.
+   */
+  boolean insertOrDecrease(int node, long newPriority) {
+    int index = position[node];
+    if (index < 0) {
+      index = size++;
+      heap[index] = node;
+      position[node] = index;
+    } else if (newPriority >= priority[node]) {
+      return false;
+    }
+    priority[node] = newPriority;
+    siftUp(index);
+    return true;
+  }
+
+  long peekPriority() {
+    return priority[heap[0]];
+  }
+
+  /** Removes and returns the node with the lowest priority. */
+  int poll() {
+    int node = heap[0];
+    position[node] = -1;
+    size--;
+    if (size > 0) {
+      heap[0] = heap[size];
+      position[heap[0]] = 0;
+      siftDown(0);
+    }
+    return node;
+  }
+
+  void clear() {
+    for (int i = 0; i < size; i++) {
+      position[heap[i]] = -1;
+    }
+    size = 0;
+  }
+
+  private void siftUp(int index) {
+    int node = heap[index];
+    long p = priority[node];
+    while (index > 0) {
+      int parentIndex = (index - 1) >>> 1;
+      int parent = heap[parentIndex];
+      if (priority[parent] <= p) {
+        break;
+      }
+      heap[index] = parent;
+      position[parent] = index;
+      index = parentIndex;
+    }
+    heap[index] = node;
+    position[node] = index;
+  }
+
+  private void siftDown(int index) {
+    int node = heap[index];
+    long p = priority[node];
+    int half = size >>> 1;
+    while (index < half) {
+      int childIndex = 2 * index + 1;
+      int child = heap[childIndex];
+      int rightIndex = childIndex + 1;
+      if (rightIndex < size && priority[heap[rightIndex]] < priority[child]) {
+        childIndex = rightIndex;
+        child = heap[childIndex];
+      }
+      if (p <= priority[child]) {
+        break;
+      }
+      heap[index] = child;
+      position[child] = index;
+      index = childIndex;
+    }
+    heap[index] = node;
+    position[node] = index;
+  }
+}
@@ -0,0 +1,446 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * The k paths with the lowest latency from a start to an end node, in two flavours:
+ *
+ * <ul>
+ *   <li>{@link #simplePaths}: paths which don't visit a node twice, with Yen's algorithm. Every
+ *       found path is the base for the next candidates, each of them is a prefix of it plus the
+ *       shortest deviation (spur) which avoids the edges of the paths found so far. That is O(k * L)
+ *       Dijkstra searches with L the length of the paths, independent of the number of paths.
+ *   <li>{@link #walks}: cycles are allowed, with the k-visit variant of Dijkstra. Every node is
+ *       settled up to k times, the j-th time with its j-th shortest walk. That is O(k * E log(kE)),
+ *       only the k best walks into every node are ever extended.
+ * </ul>
+ *
+ * Both searches are guided by the exact latency from every node to the end node (A*), computed
+ * once per query with a Dijkstra on the {@link CompactGraph#reversed() reversed graph}. Blocking
+ * edges and nodes only makes paths longer, so the exact latencies stay a consistent lower bound
+ * for all spur searches. The searches go straight to the end node instead of spreading over the
+ * whole graph, and nodes which can't reach the end are never touched.
+ *
+ * <p>Like all other queries a path needs at least one hop, so start == end finds cycles. Paths with
+ * the same latency are returned in the order they are found.
+ */
+final class KShortestPaths {
+
+  private KShortestPaths() {}
+
+  /**
+   * @param budget the budget of the query, every settled label is a state.
+   * @param recording the recording of the query, null if the metrics are disabled.
+   * @throws QueryBudgetExceededException in case the budget is exceeded.
+   */
+  static List<RankedPath> walks(
+      CompactGraph graph,
+      int start,
+      int end,
+      int k,
+      TraversalBudget budget,
+      QueryRecording recording) {
+    TraversalBudget.Meter meter = budget.meter();
+    Labels labels = new Labels(latenciesTo(graph, end, meter, recording), meter);
+    meter.allocate(4L * graph.nodeCount());
+    int[] settled = new int[graph.nodeCount()];
+    List<RankedPath> paths = new ArrayList<>();
+    // The root label is the start before the first hop, it does not count as a visit of the start.
+    int root = labels.add(start, -1, 0);
+    labels.extend(graph, root, settled, k);
+    long expanded = 1;
+    long relaxed = graph.outDegree(start);
+    int peakHeapSize = labels.heapSize;
+    while (paths.size() < k && !labels.isEmpty()) {
+      int label = labels.poll();
+      int node = labels.node[label];
+      if (settled[node] == k) {
+        continue;
+      }
+      settled[node]++;
+      meter.expand();
+      if (node == end) {
+        paths.add(labels.toPath(graph, label));
+      }
+      labels.extend(graph, label, settled, k);
+      expanded++;
+      relaxed += graph.outDegree(node);
+      peakHeapSize = Math.max(peakHeapSize, labels.heapSize);
+    }
+    QueryRecording.count(recording, expanded, relaxed, peakHeapSize);
+    return paths;
+  }
+
+  /**
+   * @param budget the budget of the query, every node settled by a spur search is a state.
+   * @param recording the recording of the query, null if the metrics are disabled.
+   * @throws QueryBudgetExceededException in case the budget is exceeded.
+   */
+  static List<RankedPath> simplePaths(
+      CompactGraph graph,
+      int start,
+      int end,
+      int k,
+      TraversalBudget budget,
+      QueryRecording recording) {
+    TraversalBudget.Meter meter = budget.meter();
+    SpurSearch search =
+        new SpurSearch(graph, end, latenciesTo(graph, end, meter, recording), meter);
+    List<Path> found = new ArrayList<>();
+    PriorityQueue<Path> candidates = new PriorityQueue<>();
+    Set<Path> known = new HashSet<>();
+    Path first = search.run(new int[] {start}, new long[] {0}, 0);
+    if (first != null) {
+      candidates.add(first);
+      known.add(first);
+    }
+    while (found.size() < k && !candidates.isEmpty()) {
+      Path path = candidates.poll();
+      found.add(path);
+      if (found.size() == k) {
+        break;
+      }
+      // Every node but the end can be the spur node where the next candidates deviate.
+      for (int spur = 0; spur < path.nodes.length - 1; spur++) {
+        search.reset();
+        for (Path p : found) {
+          if (p.nodes.length > spur + 1 && p.startsWith(path, spur + 1)) {
+            search.blockEdge(graph.findEdge(p.nodes[spur], p.nodes[spur + 1]));
+          }
+        }
+        for (int i = 0; i < spur; i++) {
+          search.blockNode(path.nodes[i]);
+        }
+        Path candidate = search.run(path.nodes, path.latencies, spur);
+        if (candidate != null && known.add(candidate)) {
+          candidates.add(candidate);
+        }
+      }
+    }
+    QueryRecording.count(recording, search.expanded, search.relaxed, search.peakHeapSize);
+    List<RankedPath> paths = new ArrayList<>(found.size());
+    for (Path p : found) {
+      paths.add(p.toRankedPath(graph));
+    }
+    return paths;
+  }
+
+  /**
+   * @return the lowest latency from every node to the end node, 0 for the end node itself and
+   *     {@link ShortestLatencySearch#UNREACHABLE} for nodes which can't reach it.
+   */
+  static long[] latenciesTo(
+      CompactGraph graph, int end, TraversalBudget.Meter meter, QueryRecording recording) {
+    meter.allocate(ShortestLatencySearch.searchBytes(graph));
+    int nodeCount = graph.nodeCount();
+    CompactGraph reversed = graph.reversed();
+    long[] latencies = new long[nodeCount];
+    Arrays.fill(latencies, ShortestLatencySearch.UNREACHABLE);
+    IntMinHeap heap = new IntMinHeap(nodeCount);
+    latencies[end] = 0;
+    heap.insertOrDecrease(end, 0);
+    long expanded = 0;
+    long relaxed = 0;
+    int peakHeapSize = 1;
+    while (!heap.isEmpty()) {
+      int node = heap.poll();
+      meter.expand();
+      expanded++;
+      relaxed += reversed.outDegree(node);
+      for (int e = reversed.firstEdge(node); e < reversed.endEdge(node); e++) {
+        int source = reversed.target(e);
+        long newLatency = latencies[node] + reversed.latency(e);
+        if (newLatency < latencies[source]) {
+          latencies[source] = newLatency;
+          heap.insertOrDecrease(source, newLatency);
+        }
+      }
+      peakHeapSize = Math.max(peakHeapSize, heap.size());
+    }
+    QueryRecording.count(recording, expanded, relaxed, peakHeapSize);
+    return latencies;
+  }
+
+  /** A path as node ids with the latency sum up to every node. */
+  private static final class Path implements Comparable<Path> {
+    private final int[] nodes;
+    private final long[] latencies;
+    private final long order;
+
+    private Path(int[] nodes, long[] latencies, long order) {
+      this.nodes = nodes;
+      this.latencies = latencies;
+      this.order = order;
+    }
+
+    private long latency() {
+      return latencies[latencies.length - 1];
+    }
+
+    private boolean startsWith(Path other, int length) {
+      return Arrays.equals(nodes, 0, length, other.nodes, 0, length);
+    }
+
+    private RankedPath toRankedPath(CompactGraph graph) {
+      List<String> names = new ArrayList<>(nodes.length);
+      for (int node : nodes) {
+        names.add(graph.nameOf(node));
+      }
+      return new RankedPath(List.copyOf(names), latency());
+    }
+
+    @Override
+    public int compareTo(Path other) {
+      int byLatency = Long.compare(latency(), other.latency());
+      return byLatency != 0 ? byLatency : Long.compare(order, other.order);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Path other && Arrays.equals(nodes, other.nodes);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(nodes);
+    }
+  }
+
+  /**
+   * Dijkstra from a spur node to the end node which avoids blocked nodes and edges. The end node is
+   * never expanded, it is only reached through an edge, so it can be the start node at the same
+   * time (cycles) and a path never passes through it.
+   */
+  private static final class SpurSearch {
+    private final CompactGraph graph;
+    private final int end;
+    private final long[] remaining;
+    private final TraversalBudget.Meter meter;
+    private final long[] latencies;
+    private final int[] predecessors;
+    private final IntMinHeap heap;
+    // A node or edge is blocked if its stamp is the current one, so resetting is O(1). The same
+    // way a latency is only valid if the node was reached with the current stamp.
+    private final int[] reached;
+    private final int[] blockedNodes;
+    private final int[] blockedEdges;
+    private int stamp = 1;
+    private long nextOrder;
+    // The work of all spur searches of a query, reported once at its end.
+    private long expanded;
+    private long relaxed;
+    private int peakHeapSize;
+
+    private SpurSearch(
+        CompactGraph graph, int end, long[] remaining, TraversalBudget.Meter meter) {
+      // Latencies, predecessors, the heap, the stamps of reached and blocked nodes and edges.
+      meter.allocate(36L * graph.nodeCount() + 4L * graph.edgeCount());
+      this.graph = graph;
+      this.end = end;
+      this.remaining = remaining;
+      this.meter = meter;
+      this.latencies = new long[graph.nodeCount()];
+      this.predecessors = new int[graph.nodeCount()];
+      this.heap = new IntMinHeap(graph.nodeCount());
+      this.reached = new int[graph.nodeCount()];
+      this.blockedNodes = new int[graph.nodeCount()];
+      this.blockedEdges = new int[graph.edgeCount()];
+    }
+
+    private void reset() {
+      stamp++;
+    }
+
+    private void blockNode(int node) {
+      blockedNodes[node] = stamp;
+    }
+
+    private void blockEdge(int edge) {
+      if (edge >= 0) {
+        blockedEdges[edge] = stamp;
+      }
+    }
+
+    /**
+     * @param rootNodes the path the candidate starts with, the first spur + 1 nodes are used.
+     * @param rootLatencies the latency sums of the root path.
+     * @return root + the shortest spur path to the end node or null in case there is none.
+     */
+    private Path run(int[] rootNodes, long[] rootLatencies, int spur) {
+      int spurNode = rootNodes[spur];
+      heap.clear();
+      long endLatency = ShortestLatencySearch.UNREACHABLE;
+      int endPredecessor = -1;
+      if (remaining[spurNode] == ShortestLatencySearch.UNREACHABLE) {
+        return null;
+      }
+      latencies[spurNode] = 0;
+      reached[spurNode] = stamp;
+      // The heap is ordered by the latency so far plus the remaining latency to the end.
+      heap.insertOrDecrease(spurNode, remaining[spurNode]);
+      while (!heap.isEmpty() && heap.peekPriority() < endLatency) {
+        int node = heap.poll();
+        long latency = latencies[node];
+        meter.expand();
+        expanded++;
+        relaxed += graph.outDegree(node);
+        for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+          if (blockedEdges[e] == stamp) {
+            continue;
+          }
+          int target = graph.target(e);
+          long newLatency = latency + graph.latency(e);
+          if (target == end) {
+            if (newLatency < endLatency) {
+              endLatency = newLatency;
+              endPredecessor = node;
+            }
+          } else if (blockedNodes[target] != stamp
+              && target != spurNode
+              && remaining[target] != ShortestLatencySearch.UNREACHABLE
+              && (reached[target] != stamp || newLatency < latencies[target])) {
+            reached[target] = stamp;
+            latencies[target] = newLatency;
+            predecessors[target] = node;
+            heap.insertOrDecrease(target, newLatency + remaining[target]);
+          }
+        }
+        peakHeapSize = Math.max(peakHeapSize, heap.size());
+      }
+      if (endPredecessor < 0) {
+        return null;
+      }
+      int spurLength = 1;
+      for (int node = endPredecessor; node != spurNode; node = predecessors[node]) {
+        spurLength++;
+      }
+      int length = spur + 1 + spurLength;
+      meter.allocate(12L * length);
+      int[] nodes = Arrays.copyOf(rootNodes, length);
+      long[] pathLatencies = Arrays.copyOf(rootLatencies, length);
+      long base = rootLatencies[spur];
+      nodes[length - 1] = end;
+      pathLatencies[length - 1] = base + endLatency;
+      int index = length - 2;
+      for (int node = endPredecessor; node != spurNode; node = predecessors[node]) {
+        nodes[index] = node;
+        pathLatencies[index] = base + latencies[node];
+        index--;
+      }
+      return new Path(nodes, pathLatencies, nextOrder++);
+    }
+  }
+
+  /**
+   * The walks of the k-visit Dijkstra as a tree of labels in primitive arrays. Every label is a
+   * node reached with a latency through a parent label, which is all we need to rebuild the walk.
+   * The open labels are kept in a binary heap ordered by latency plus remaining latency.
+   */
+  private static final class Labels {
+    private final long[] remaining;
+    private final TraversalBudget.Meter meter;
+    private int[] node = new int[64];
+    private int[] parent = new int[64];
+    private long[] latency = new long[64];
+    private long[] priority = new long[64];
+    private int count;
+    private int[] heap = new int[64];
+    private int heapSize;
+
+    private Labels(long[] remaining, TraversalBudget.Meter meter) {
+      this.remaining = remaining;
+      this.meter = meter;
+    }
+
+    private int add(int labelNode, int labelParent, long labelLatency) {
+      if (count == node.length) {
+        // Two ints and two longs per label and the int of the heap, which grows alike.
+        meter.allocate(28L * count);
+        node = Arrays.copyOf(node, 2 * count);
+        parent = Arrays.copyOf(parent, 2 * count);
+        latency = Arrays.copyOf(latency, 2 * count);
+        priority = Arrays.copyOf(priority, 2 * count);
+      }
+      node[count] = labelNode;
+      parent[count] = labelParent;
+      latency[count] = labelLatency;
+      priority[count] = labelLatency + remaining[labelNode];
+      return count++;
+    }
+
+    // Only nodes which are not settled k times yet and can reach the end can be part of the k best
+    // walks.
+    private void extend(CompactGraph graph, int label, int[] settled, int k) {
+      int from = node[label];
+      for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+        int target = graph.target(e);
+        if (settled[target] < k && remaining[target] != ShortestLatencySearch.UNREACHABLE) {
+          this.push(this.add(target, label, latency[label] + graph.latency(e)));
+        }
+      }
+    }
+
+    private boolean isEmpty() {
+      return heapSize == 0;
+    }
+
+    private void push(int label) {
+      if (heapSize == heap.length) {
+        heap = Arrays.copyOf(heap, 2 * heapSize);
+      }
+      int index = heapSize++;
+      while (index > 0) {
+        int parentIndex = (index - 1) >>> 1;
+        if (priority[heap[parentIndex]] <= priority[label]) {
+          break;
+        }
+        heap[index] = heap[parentIndex];
+        index = parentIndex;
+      }
+      heap[index] = label;
+    }
+
+    private int poll() {
+      int top = heap[0];
+      int last = heap[--heapSize];
+      int index = 0;
+      int half = heapSize >>> 1;
+      while (index < half) {
+        int child = 2 * index + 1;
+        if (child + 1 < heapSize && priority[heap[child + 1]] < priority[heap[child]]) {
+          child++;
+        }
+        if (priority[last] <= priority[heap[child]]) {
+          break;
+        }
+        heap[index] = heap[child];
+        index = child;
+      }
+      heap[index] = last;
+      return top;
+    }
+
+    private RankedPath toPath(CompactGraph graph, int label) {
+      List<String> names = new ArrayList<>();
+      for (int l = label; l >= 0; l = parent[l]) {
+        names.add(graph.nameOf(node[l]));
+      }
+      return new RankedPath(reverse(names), latency[label]);
+    }
+
+    private static List<String> reverse(List<String> names) {
+      List<String> reversed = new ArrayList<>(names.size());
+      for (int i = names.size() - 1; i >= 0; i--) {
+        reversed.add(names.get(i));
+      }
+      return List.copyOf(reversed);
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+import java.util.Arrays;
+
+/**
+ * Counts the traces (walks) from a start to an end node with a latency sum below a limit without
+ * materialising them. Instead of one state per trace we keep one counter per (latency sum, node):
+ * layer t holds for every node the number of traces from the start node with exactly the latency
+ * sum t ending there. The layers are processed in ascending order and every layer pushes its counts
+ * along the edges into the later layers.
+ *
+ * <p>A layer only pushes to layers at most {@link CompactGraph#maxLatency()} ahead, so we only keep
+ * that many layers in a ring. The memory is O(V * min(maxLatency, latencyLimit)) and does not
+ * depend on the number of traces at all. Like in {@link TraceCounter} counts are only pushed to
+ * nodes which can still reach the end node.
+ *
+ * <p>An edge without latency pushes into the layer which is just processed. So the nodes of a layer
+ * are processed in topological order of these edges, a node only once all nodes which reach it
+ * with 0 latency are done. Only a cycle of 0 latencies can't be ordered, a trace which reaches it
+ * could loop in it forever without getting slower.
+ */
+final class LatencyBoundedCounter {
+
+  private LatencyBoundedCounter() {}
+
+  /**
+   * @param towardsEnd bitset of the nodes which can reach the end node.
+   * @param latencyLimit the latency sum of a trace needs to be lower than this value.
+   * @param budget the budget of the query, every non-zero (latency sum, node) counter is a state.
+   * @param recording the recording of the query, null if the metrics are disabled.
+   * @return the number of non-empty traces from start to end with a latency sum below the limit.
+   * @throws InvalidInputException in case a trace reaches a node from which a cycle of 0 latencies
+   *     can be reached, as that would lead to an infinite number of traces.
+   * @throws ArithmeticException in case the number of traces does not fit into a long.
+   * @throws QueryBudgetExceededException in case the budget is exceeded, with the traces below the
+   *     latency sum reached so far as partial count.
+   */
+  static long countTraces(
+      CompactGraph graph,
+      int start,
+      int end,
+      long[] towardsEnd,
+      int latencyLimit,
+      TraversalBudget budget,
+      QueryRecording recording) {
+    if (latencyLimit <= 0) {
+      return 0;
+    }
+    long traces = 0;
+    long expanded = 0;
+    long relaxed = 0;
+    int peakFilledLayers = 1;
+    try {
+      int ringSize = Math.min(graph.maxLatency(), latencyLimit) + 1;
+      // The ring is by far the biggest allocation of all queries, so it is checked before.
+      budget.allocate((8L * graph.nodeCount() + 1) * ringSize);
+      int[] order = zeroLatencyOrder(graph, towardsEnd, budget);
+      int ordered = order == null ? graph.nodeCount() : order.length;
+      long[] looping = ordered < graph.nodeCount() ? unordered(graph.nodeCount(), order) : null;
+      TraversalBudget.Meter meter = budget.meter();
+      long[][] layers = new long[ringSize][graph.nodeCount()];
+      boolean[] filled = new boolean[ringSize];
+      if (looping != null && Reachability.isSet(looping, start)) {
+        throw zeroLatencyCycle();
+      }
+      layers[0][start] = 1;
+      filled[0] = true;
+      int filledLayers = 1;
+      for (int latencySum = 0; latencySum < latencyLimit && filledLayers > 0; latencySum++) {
+        int slot = latencySum % ringSize;
+        if (!filled[slot]) {
+          continue;
+        }
+        long[] layer = layers[slot];
+        for (int i = 0; i < ordered; i++) {
+          int node = order == null ? i : order[i];
+          long count = layer[node];
+          if (count == 0) {
+            continue;
+          }
+          // The only trace with latency sum 0 at the start is the empty one.
+          if (node == end && (latencySum > 0 || node != start)) {
+            traces = Math.addExact(traces, count);
+          }
+          // We clear the layer while reading it, so the slot can be reused for a later latency
+          // sum.
+          layer[node] = 0;
+          meter.expand();
+          expanded++;
+          relaxed += graph.outDegree(node);
+          for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+            int latency = graph.latency(e);
+            int target = graph.target(e);
+            if (latency >= latencyLimit - latencySum || !Reachability.isSet(towardsEnd, target)) {
+              continue;
+            }
+            if (looping != null && Reachability.isSet(looping, target)) {
+              throw zeroLatencyCycle();
+            }
+            int targetSlot = (latencySum + latency) % ringSize;
+            long[] targetLayer = layers[targetSlot];
+            targetLayer[target] = Math.addExact(targetLayer[target], count);
+            if (!filled[targetSlot]) {
+              filled[targetSlot] = true;
+              filledLayers++;
+              peakFilledLayers = Math.max(peakFilledLayers, filledLayers);
+            }
+          }
+        }
+        filled[slot] = false;
+        filledLayers--;
+      }
+    } catch (QueryBudgetExceededException e) {
+      throw e.withPartialCount(traces);
+    }
+    // The pending (latency sum, node) counters are the queue of this search, counted in layers.
+    QueryRecording.count(recording, expanded, relaxed, peakFilledLayers);
+    return traces;
+  }
+
+  /**
+   * Orders the nodes along the edges without latency between the nodes which can reach the end:
+   * every node comes after all nodes which reach it with 0 latency. Kahn's algorithm runs against
+   * the edges, from the nodes without such an edge to the nodes which call them, so the nodes which
+   * can reach a cycle of 0 latencies are left out.
+   *
+   * @return the ordered nodes, null if no edge has latency 0 and every order is fine.
+   */
+  private static int[] zeroLatencyOrder(
+      CompactGraph graph, long[] towardsEnd, TraversalBudget budget) {
+    int nodeCount = graph.nodeCount();
+    int[] zeroEdges = null;
+    for (int node = 0; node < nodeCount; node++) {
+      for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+        if (graph.latency(e) == 0 && Reachability.isSet(towardsEnd, graph.target(e))) {
+          if (zeroEdges == null) {
+            budget.allocate(2L * Integer.BYTES * nodeCount + nodeCount / 8);
+            zeroEdges = new int[nodeCount];
+          }
+          zeroEdges[node]++;
+        }
+      }
+    }
+    if (zeroEdges == null) {
+      return null;
+    }
+    // Filled from the back, the nodes without edges of 0 latency come last.
+    int[] order = new int[nodeCount];
+    int tail = nodeCount;
+    for (int node = 0; node < nodeCount; node++) {
+      if (zeroEdges[node] == 0) {
+        order[--tail] = node;
+      }
+    }
+    CompactGraph reversed = graph.reversed();
+    for (int next = nodeCount - 1; next >= tail; next--) {
+      int node = order[next];
+      if (!Reachability.isSet(towardsEnd, node)) {
+        continue;
+      }
+      for (int e = reversed.firstEdge(node); e < reversed.endEdge(node); e++) {
+        int caller = reversed.target(e);
+        if (reversed.latency(e) == 0 && --zeroEdges[caller] == 0) {
+          order[--tail] = caller;
+        }
+      }
+    }
+    return Arrays.copyOfRange(order, tail, nodeCount);
+  }
+
+  // Bitset of the nodes which are not part of the order.
+  private static long[] unordered(int nodeCount, int[] order) {
+    long[] bits = new long[(nodeCount + 63) >>> 6];
+    Arrays.fill(bits, -1L);
+    for (int node : order) {
+      bits[node >>> 6] &= ~(1L << node);
+    }
+    return bits;
+  }
+
+  private static InvalidInputException zeroLatencyCycle() {
+    return new InvalidInputException(
+        "Traces can't be counted by latency on a cycle of 0 latencies.");
+  }
+}
@@ -0,0 +1,112 @@
+package org.example.core.traverse;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values (nanoseconds) with log-linear buckets, the same idea
+ * as HdrHistogram: every power of two is split into {@link #SUB_BUCKETS} equally wide buckets, so
+ * the relative error of a value is below 1 / {@link #SUB_BUCKETS} (6.25%) over the whole range of
+ * long. Recording is one bucket index calculation and one atomic increment, there are no locks and
+ * nothing is allocated.
+ *
+ * <p>Percentiles are read from the counts while other threads keep recording, so they are not an
+ * exact snapshot of one moment, which is fine for monitoring.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Values below 2 * SUB_BUCKETS have their own bucket, every further power of two up to 2^62 gets
+  // SUB_BUCKETS buckets.
+  private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * @param value the value to record, negative values are recorded as 0.
+   */
+  public void record(long value) {
+    long v = Math.max(0, value);
+    counts.incrementAndGet(bucketOf(v));
+    count.increment();
+    sum.add(v);
+    // Only a new maximum needs the compare and set loop.
+    long currentMax = max.get();
+    while (v > currentMax && !max.compareAndSet(currentMax, v)) {
+      currentMax = max.get();
+    }
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  public double mean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * @param percentile between 0 and 100.
+   * @return the highest value of the bucket the percentile falls into, never more than the
+   *     maximum, 0 if nothing was recorded.
+   */
+  public long valueAtPercentile(double percentile) {
+    long[] snapshot = new long[BUCKET_COUNT];
+    long total = 0;
+    for (int b = 0; b < BUCKET_COUNT; b++) {
+      snapshot[b] = counts.get(b);
+      total += snapshot[b];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+    long seen = 0;
+    for (int b = 0; b < BUCKET_COUNT; b++) {
+      seen += snapshot[b];
+      if (seen >= rank) {
+        return Math.min(highestValueOf(b), this.max());
+      }
+    }
+    return this.max();
+  }
+
+  /** Drops all recorded values. Values which are recorded at the same time may survive. */
+  public void reset() {
+    for (int b = 0; b < BUCKET_COUNT; b++) {
+      counts.set(b, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.set(0);
+  }
+
+  static int bucketOf(long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    int highestBit = 63 - Long.numberOfLeadingZeros(value);
+    int shift = highestBit - SUB_BUCKET_BITS;
+    // The SUB_BUCKET_BITS bits below the highest bit select the bucket within the power of two.
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long highestValueOf(int bucket) {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,10 @@
+package org.example.core.traverse;
+
+/**
+ * A shortest latency query of a batch, see {@link
+ * TraverseService#findShortestLatencies(java.util.List)}.
+ *
+ * @param startName the start node name.
+ * @param endName the end node name.
+ */
+public record LatencyQuery(String startName, String endName) {}
@@ -1,3 +1,11 @@
 package org.example.core.traverse;
 
-public class NoTraceFoundException extends RuntimeException {}
+/**
+ * Thrown when there is no trace for a query. It is thrown for ordinary answers of the queries, so
+ * it does not capture a stack trace, which would cost more than most queries themselves.
+ */
+public class NoTraceFoundException extends RuntimeException {
+  public NoTraceFoundException() {
+    super(null, null, false, false);
+  }
+}
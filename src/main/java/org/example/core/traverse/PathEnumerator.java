@@ -0,0 +1,126 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+import org.example.core.graph.GraphNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Enumerates the traces from a start to an end node in BFS order. Every state of the search is a
+ * (node, parent state, latency sum) triple in query-local int arrays. As states are only ever
+ * appended and polled in the same order, the BFS queue is just a cursor into these arrays and the
+ * path of a state is found by following the parent states. Nothing of the shared graph is touched,
+ * so any number of threads can enumerate paths at the same time.
+ */
+final class PathEnumerator {
+  // Estimated memory of a found path: the GraphNode with its map and path list, the key in the
+  // result map and per hop a list slot and the name in the key.
+  private static final long PATH_BYTES = 200;
+  private static final long PATH_BYTES_PER_HOP = 16;
+
+  private PathEnumerator() {}
+
+  /**
+   * @param minPaths the minimum amount of paths to calculate (can be more because it does not end
+   *     before all nodes were visited).
+   * @param maxLatency in case it is not null only traces with a latency sum lower than this are
+   *     followed.
+   * @param budget the budget of the query, every trace taken from the queue is a state.
+   * @param recording the recording of the query, null if the metrics are disabled.
+   * @return the different paths by their dash joined node names.
+   * @throws QueryBudgetExceededException in case the budget is exceeded.
+   */
+  static Map<String, GraphNode> findPaths(
+      CompactGraph graph,
+      int start,
+      int end,
+      int minPaths,
+      Integer maxLatency,
+      TraversalBudget budget,
+      QueryRecording recording) {
+    TraversalBudget.Meter meter = budget.meter();
+    // One bit per node for the visited set.
+    long[] visited = new long[(graph.nodeCount() + 63) >>> 6];
+    meter.allocate(Long.BYTES * visited.length + 3L * Integer.BYTES * 16);
+    int[] stateNodes = new int[16];
+    int[] stateParents = new int[16];
+    int[] stateLatencies = new int[16];
+    int stateCount = 1;
+    stateNodes[0] = start;
+    stateParents[0] = -1;
+    Map<String, GraphNode> existingPaths = new HashMap<>();
+    int iteration = 0;
+    int lastIterationAddedNewVisitNode = 0;
+    long relaxed = 0;
+    int peakQueueSize = 1;
+    for (int state = 0; state < stateCount; state++) {
+      int node = stateNodes[state];
+      int latencySum = stateLatencies[state];
+      meter.expand();
+      iteration++;
+      if ((visited[node >>> 6] & (1L << node)) == 0) {
+        visited[node >>> 6] |= 1L << node;
+        lastIterationAddedNewVisitNode = iteration;
+      }
+      if (maxLatency == null || maxLatency > latencySum) {
+        if (node == end && latencySum > 0) {
+          GraphNode path = toGraphNode(graph, state, stateNodes, stateParents, latencySum);
+          meter.allocate(PATH_BYTES + PATH_BYTES_PER_HOP * path.getHops());
+          existingPaths.put(path.previousPathAsString(), path);
+        }
+        int edgeCount = graph.outDegree(node);
+        if (stateCount + edgeCount > stateNodes.length) {
+          int newLength = Math.max(stateNodes.length * 2, stateCount + edgeCount);
+          meter.allocate(3L * Integer.BYTES * (newLength - stateNodes.length));
+          stateNodes = Arrays.copyOf(stateNodes, newLength);
+          stateParents = Arrays.copyOf(stateParents, newLength);
+          stateLatencies = Arrays.copyOf(stateLatencies, newLength);
+        }
+        for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+          stateNodes[stateCount] = graph.target(e);
+          stateParents[stateCount] = state;
+          stateLatencies[stateCount] = latencySum + graph.latency(e);
+          stateCount++;
+        }
+        relaxed += edgeCount;
+        // The states behind the cursor are the BFS queue.
+        peakQueueSize = Math.max(peakQueueSize, stateCount - state - 1);
+      }
+      if (existingPaths.size() >= minPaths && iteration > lastIterationAddedNewVisitNode + 20) {
+        break; // Finding out if we really went all possible paths is not trivial.
+        // As a visited all does not mean we tried all permutations of the nodes.
+        // Neither does the first found path necessarily represent the fastest path.
+        // As a compromise I decided to wait at least to have X paths and check if any new node was
+        // added in the last 20 iterations. So if we have a graph like this A15->B15->C & B15->A &
+        // A1->D1->E1->F1->G1->H1->I1->J1->K1->L1->M1->N1->O1->P1->Q1->R1->S1->T1->U1->V1->C
+        // In this example we would generate plenty of paths like A->B->C (30 cost) Or A->B->A->B->C
+        // (60 cost) etc. But the cheapest way would not easily be found as the BFS algorithm slowly
+        // follows the long path. As we would keep adding new nodes to the visited set we would also
+        // increase the lastIterationAddedNewVisitNode which would prevent us from exiting too
+        // early. Please refer to the unit tests to validate this scenario.
+      }
+    }
+    QueryRecording.count(recording, iteration, relaxed, peakQueueSize);
+    return existingPaths;
+  }
+
+  // The result is a fresh GraphNode which only belongs to the caller.
+  private static GraphNode toGraphNode(
+      CompactGraph graph, int state, int[] stateNodes, int[] stateParents, int latencySum) {
+    List<String> path = new ArrayList<>();
+    for (int s = stateParents[state]; s >= 0; s = stateParents[s]) {
+      path.add(graph.nameOf(stateNodes[s]));
+    }
+    Collections.reverse(path);
+    GraphNode graphNode = new GraphNode(graph.nameOf(stateNodes[state]));
+    graphNode.setHops(path.size());
+    graphNode.setLatencySum(latencySum);
+    graphNode.addToPreviousPath(path, graphNode.getName());
+    return graphNode;
+  }
+}
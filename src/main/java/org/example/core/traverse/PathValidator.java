@@ -0,0 +1,167 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Validates recorded traces against one version of the graph without throwing and, for resolved
+ * node ids, without allocating. Get one with {@link TraverseService#pathValidator()}.
+ *
+ * <p>Node ids are only valid for the graph version the validator was created for. After a reload
+ * a new validator needs to be created and the names resolved again, {@link #graphVersion()} tells
+ * which version a validator belongs to. A validator is immutable and can be shared between
+ * threads, a {@link PathBuffer} can't.
+ */
+public final class PathValidator {
+  /** Result of a path which is not part of the graph. */
+  public static final long NO_TRACE = -1;
+
+  private final long graphVersion;
+  private final CompactGraph graph;
+
+  PathValidator(long graphVersion, CompactGraph graph) {
+    this.graphVersion = graphVersion;
+    this.graph = graph;
+  }
+
+  public long graphVersion() {
+    return graphVersion;
+  }
+
+  /**
+   * @param name the node name.
+   * @return the id of the node or -1 in case the node is not part of the graph.
+   */
+  public int nodeId(String name) {
+    return name == null ? -1 : graph.idOf(name);
+  }
+
+  /**
+   * @param nodeIds the ids of the nodes of the path, the first one is the start.
+   * @param length the number of nodes of the path, starting at index 0.
+   * @return the latency sum of the path or {@link #NO_TRACE} in case a node or an edge is missing.
+   */
+  public long latencyOfPath(int[] nodeIds, int length) {
+    if (length == 0) {
+      return 0;
+    }
+    int nodeCount = graph.nodeCount();
+    int current = nodeIds[0];
+    if (current < 0 || current >= nodeCount) {
+      return NO_TRACE;
+    }
+    long latency = 0;
+    for (int i = 1; i < length; i++) {
+      int next = nodeIds[i];
+      if (next < 0 || next >= nodeCount) {
+        return NO_TRACE;
+      }
+      int edge = graph.findEdge(current, next);
+      if (edge < 0) {
+        return NO_TRACE;
+      }
+      latency += graph.latency(edge);
+      current = next;
+    }
+    return latency;
+  }
+
+  /**
+   * @return the latency sum of the path in the buffer or {@link #NO_TRACE}.
+   */
+  public long latencyOfPath(PathBuffer path) {
+    if (path.graph != this.graph) {
+      throw new IllegalArgumentException("The path buffer belongs to another graph version.");
+    }
+    return this.latencyOfPath(path.nodeIds, path.length);
+  }
+
+  /**
+   * @return the latency sum of the path or {@link #NO_TRACE}.
+   */
+  public long latencyOfPath(List<String> path) {
+    if (path.isEmpty()) {
+      return 0;
+    }
+    int current = this.nodeId(path.get(0));
+    if (current < 0) {
+      return NO_TRACE;
+    }
+    long latency = 0;
+    for (int i = 1; i < path.size(); i++) {
+      int next = this.nodeId(path.get(i));
+      int edge = next < 0 ? -1 : graph.findEdge(current, next);
+      if (edge < 0) {
+        return NO_TRACE;
+      }
+      latency += graph.latency(edge);
+      current = next;
+    }
+    return latency;
+  }
+
+  /**
+   * Validates a stream of recorded traces, for example all traces of a day read line by line. The
+   * stream can be parallel, the results keep the encounter order of the traces.
+   *
+   * @param paths the traces to validate.
+   * @return the latency sum or {@link #NO_TRACE} of every trace.
+   */
+  public LongStream latenciesOfPaths(Stream<? extends List<String>> paths) {
+    return paths.mapToLong(this::latencyOfPath);
+  }
+
+  /**
+   * @return an empty buffer for paths of this graph version.
+   */
+  public PathBuffer newPathBuffer() {
+    return new PathBuffer(graph);
+  }
+
+  /**
+   * Reusable buffer for the nodes of one path. Reusing the buffer for the next path with {@link
+   * #clear()} avoids allocating anything per path. Not thread safe.
+   */
+  public static final class PathBuffer {
+    private final CompactGraph graph;
+    private int[] nodeIds = new int[16];
+    private int length;
+
+    private PathBuffer(CompactGraph graph) {
+      this.graph = graph;
+    }
+
+    /**
+     * @param nodeId the id of the next node, an invalid id makes the path invalid.
+     * @return this buffer.
+     */
+    public PathBuffer add(int nodeId) {
+      if (length == nodeIds.length) {
+        nodeIds = Arrays.copyOf(nodeIds, 2 * length);
+      }
+      nodeIds[length++] = nodeId;
+      return this;
+    }
+
+    /**
+     * @param name the name of the next node, an unknown name makes the path invalid.
+     * @return this buffer.
+     */
+    public PathBuffer add(String name) {
+      return this.add(name == null ? -1 : graph.idOf(name));
+    }
+
+    public PathBuffer clear() {
+      length = 0;
+      return this;
+    }
+
+    public int length() {
+      return length;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package org.example.core.traverse;
+
+import java.time.Duration;
+
+/**
+ * The execution budget of a query, so a single runaway query can't pin a core or fill the heap of
+ * a shared instance. A query which exceeds its budget throws a {@link
+ * QueryBudgetExceededException}. The limits are checked cooperatively in the inner loops of the
+ * searches: the states and the time every {@link TraversalBudget#CHECK_INTERVAL} states at most,
+ * the memory before the search allocates its arrays.
+ *
+ * @param maxStates the maximum number of states a query may expand (a node settled by a shortest
+ *     path search, a (hop, node) counter of the trace counting, a trace of the path enumeration).
+ * @param maxMemoryBytes the maximum estimated memory of the search arrays and results of a query.
+ * @param timeout the maximum time a query may take from its start, null for no limit.
+ * @param cancellation the token to cancel the query with, null if it can't be cancelled.
+ */
+public record QueryBudget(
+    long maxStates, long maxMemoryBytes, Duration timeout, CancellationToken cancellation) {
+  private static final QueryBudget UNLIMITED =
+      new QueryBudget(Long.MAX_VALUE, Long.MAX_VALUE, null, null);
+
+  public QueryBudget {
+    if (maxStates < 0) {
+      throw new IllegalArgumentException("The state limit can't be negative: " + maxStates);
+    }
+    if (maxMemoryBytes < 0) {
+      throw new IllegalArgumentException("The memory limit can't be negative: " + maxMemoryBytes);
+    }
+    if (timeout != null && timeout.isNegative()) {
+      throw new IllegalArgumentException("The timeout can't be negative: " + timeout);
+    }
+  }
+
+  /**
+   * @return the budget without any limit, the default of all queries.
+   */
+  public static QueryBudget unlimited() {
+    return UNLIMITED;
+  }
+
+  public boolean isUnlimited() {
+    return maxStates == Long.MAX_VALUE
+        && maxMemoryBytes == Long.MAX_VALUE
+        && timeout == null
+        && cancellation == null;
+  }
+
+  public QueryBudget withMaxStates(long states) {
+    return new QueryBudget(states, maxMemoryBytes, timeout, cancellation);
+  }
+
+  public QueryBudget withMaxMemoryBytes(long bytes) {
+    return new QueryBudget(maxStates, bytes, timeout, cancellation);
+  }
+
+  public QueryBudget withTimeout(Duration newTimeout) {
+    return new QueryBudget(maxStates, maxMemoryBytes, newTimeout, cancellation);
+  }
+
+  public QueryBudget withCancellation(CancellationToken token) {
+    return new QueryBudget(maxStates, maxMemoryBytes, timeout, token);
+  }
+}
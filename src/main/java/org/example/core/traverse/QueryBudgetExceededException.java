@@ -0,0 +1,66 @@
+package org.example.core.traverse;
+
+/**
+ * Thrown when a query exceeds its {@link QueryBudget} or was cancelled. Nothing of the query is
+ * cached, so the same query with a bigger budget does the work again. Like {@link
+ * NoTraceFoundException} it does not capture a stack trace, a client which sends runaway queries
+ * would otherwise make every rejection expensive.
+ */
+public class QueryBudgetExceededException extends RuntimeException {
+  /** {@link #partialCount()} of queries which don't count traces. */
+  public static final long NO_PARTIAL_COUNT = -1;
+
+  /** The limit of the {@link QueryBudget} which stopped the query. */
+  public enum Limit {
+    STATES,
+    MEMORY,
+    DEADLINE,
+    CANCELLED
+  }
+
+  private final Limit limit;
+  private final long statesExpanded;
+  private final long partialCount;
+
+  public QueryBudgetExceededException(Limit limit, long statesExpanded, long partialCount) {
+    super(
+        "The query exceeded its budget ("
+            + limit
+            + ") after "
+            + statesExpanded
+            + " expanded states.",
+        null,
+        false,
+        false);
+    this.limit = limit;
+    this.statesExpanded = statesExpanded;
+    this.partialCount = partialCount;
+  }
+
+  public Limit limit() {
+    return limit;
+  }
+
+  /**
+   * @return the states the query expanded until it was stopped, counted at the last check.
+   */
+  public long statesExpanded() {
+    return statesExpanded;
+  }
+
+  /**
+   * @return for the trace counting queries the traces counted until the query was stopped, which
+   *     is a lower bound of the real number, {@link #NO_PARTIAL_COUNT} for all other queries.
+   */
+  public long partialCount() {
+    return partialCount;
+  }
+
+  /**
+   * @param count the traces counted so far.
+   * @return the same exception with the partial progress of a trace counting query.
+   */
+  QueryBudgetExceededException withPartialCount(long count) {
+    return new QueryBudgetExceededException(limit, statesExpanded, count);
+  }
+}
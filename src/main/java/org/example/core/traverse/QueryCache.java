@@ -0,0 +1,171 @@
+package org.example.core.traverse;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache for query results. Every result belongs to the graph version it was calculated on.
+ * As soon as a query asks for another version, everything cached so far is dropped, so a result of
+ * an old graph is never returned after a reload. Results calculated on an old graph which arrive
+ * after the reload are not stored at all.
+ *
+ * <p>Every query of every thread looks into the cache, so a lookup takes no lock: the entries of a
+ * version are a {@link ConcurrentHashMap} and a new version replaces the whole map with a single
+ * compare and set. Instead of an LRU list, which every hit would have to reorder under a lock, the
+ * eviction is a CLOCK approximation of it: a hit only sets the referenced flag of its entry. Once
+ * the cache is full, the clock hand walks over the entries, clears the flags it finds set and
+ * evicts the first entry which was not used since the hand passed it last time. Only the puts
+ * which evict wait for each other.
+ */
+final class QueryCache {
+  static final long MISS = Long.MIN_VALUE;
+
+  enum QueryType {
+    SHORTEST_LATENCY,
+    NUMBER_OF_TRACES,
+    TRACES_BELOW_LATENCY
+  }
+
+  record QueryKey(QueryType type, String startName, String endName, int limit, boolean flag) {}
+
+  private final int maxEntries;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final AtomicReference<Generation> current = new AtomicReference<>(new Generation(0));
+
+  QueryCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  boolean isEnabled() {
+    return maxEntries > 0;
+  }
+
+  /**
+   * @return the cached result or {@link #MISS}.
+   */
+  long get(long graphVersion, QueryKey key) {
+    Generation generation = this.switchTo(graphVersion);
+    Entry entry = generation.version == graphVersion ? generation.entries.get(key) : null;
+    if (entry == null) {
+      misses.increment();
+      return MISS;
+    }
+    // Read before the write, so a hot entry does not write its cache line with every hit.
+    if (!entry.referenced) {
+      entry.referenced = true;
+    }
+    hits.increment();
+    return entry.result;
+  }
+
+  void put(long graphVersion, QueryKey key, long result) {
+    Generation generation = this.switchTo(graphVersion);
+    if (generation.version != graphVersion) {
+      return;
+    }
+    if (generation.entries.put(key, new Entry(result)) == null
+        && generation.entries.size() > maxEntries) {
+      generation.evict(maxEntries, key, evictions);
+    }
+  }
+
+  /** Drops all entries of older versions, called as soon as a new graph is published. */
+  void invalidate(long graphVersion) {
+    this.switchTo(graphVersion);
+  }
+
+  /**
+   * Like {@link #invalidate(long)} but keeps the trace counts by hops, which only depend on which
+   * edges exist and not on their latencies. Called when only latencies of a graph changed.
+   */
+  void invalidateLatencies(long graphVersion) {
+    while (true) {
+      Generation old = current.get();
+      if (graphVersion <= old.version) {
+        return;
+      }
+      Generation next = new Generation(graphVersion);
+      old.entries.forEach(
+          (key, entry) -> {
+            if (key.type() == QueryType.NUMBER_OF_TRACES) {
+              next.entries.put(key, entry);
+            }
+          });
+      if (current.compareAndSet(old, next)) {
+        return;
+      }
+    }
+  }
+
+  QueryCacheStats stats() {
+    return new QueryCacheStats(
+        hits.sum(), misses.sum(), evictions.sum(), current.get().entries.size(), maxEntries);
+  }
+
+  // Only ever moves forward, a query which still runs on an old graph can't throw away the entries
+  // of the new one.
+  private Generation switchTo(long graphVersion) {
+    while (true) {
+      Generation generation = current.get();
+      if (graphVersion <= generation.version) {
+        return generation;
+      }
+      Generation next = new Generation(graphVersion);
+      if (current.compareAndSet(generation, next)) {
+        return next;
+      }
+    }
+  }
+
+  private static final class Entry {
+    final long result;
+    volatile boolean referenced;
+
+    Entry(long result) {
+      this.result = result;
+    }
+  }
+
+  /** The entries of one graph version. */
+  private static final class Generation {
+    final long version;
+    final ConcurrentHashMap<QueryKey, Entry> entries = new ConcurrentHashMap<>();
+    // The clock hand, only moved by the puts which evict while they hold the lock of the hand.
+    private final Object handLock = new Object();
+    private Iterator<Map.Entry<QueryKey, Entry>> hand;
+
+    Generation(long version) {
+      this.version = version;
+    }
+
+    // The hand walks in hash order and not in insertion order, so it skips the entry of the put
+    // which evicts: a new entry is not evicted before anyone could use it.
+    void evict(int maxEntries, QueryKey added, LongAdder evictions) {
+      synchronized (handLock) {
+        // Every pass clears the flags it passes, so the second pass at the latest finds a victim.
+        while (entries.size() > maxEntries) {
+          if (hand == null || !hand.hasNext()) {
+            hand = entries.entrySet().iterator();
+            if (!hand.hasNext()) {
+              return;
+            }
+          }
+          Map.Entry<QueryKey, Entry> candidate = hand.next();
+          if (candidate.getKey().equals(added)) {
+            continue;
+          }
+          if (candidate.getValue().referenced) {
+            candidate.getValue().referenced = false;
+          } else if (entries.remove(candidate.getKey(), candidate.getValue())) {
+            evictions.increment();
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package org.example.core.traverse;
+
+/**
+ * Metrics of the query result cache since the {@link TraverseService} was created.
+ *
+ * @param hits number of queries answered from the cache.
+ * @param misses number of queries which had to be calculated.
+ * @param evictions number of results dropped because the cache was full.
+ * @param size number of results currently cached.
+ * @param maxSize the maximum number of cached results, 0 if the cache is disabled.
+ */
+public record QueryCacheStats(long hits, long misses, long evictions, int size, int maxSize) {
+
+  public double hitRate() {
+    long requests = hits + misses;
+    return requests == 0 ? 0 : (double) hits / requests;
+  }
+}
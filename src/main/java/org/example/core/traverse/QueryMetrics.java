@@ -0,0 +1,224 @@
+package org.example.core.traverse;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process registry of the query metrics of one {@link TraverseService}: per query type the wall
+ * time in a {@link LatencyHistogram}, the nodes expanded and edges relaxed by the searches, the
+ * peak queue size and the allocated bytes. Queries which take longer than the slow query threshold
+ * are kept as {@link SlowQuery} samples with their nodes and parameters, the most recent ones
+ * replace the oldest.
+ *
+ * <p>The metrics are disabled by default. A disabled registry costs one volatile read per query,
+ * nothing is allocated, timed or counted. Everything is lock-free, so measuring does not make
+ * concurrent queries wait for each other.
+ */
+public final class QueryMetrics {
+  public static final Duration DEFAULT_SLOW_QUERY_THRESHOLD = Duration.ofMillis(100);
+  static final int SLOW_QUERY_SAMPLES = 64;
+  private static final long NOT_MEASURABLE = -1;
+
+  private final Map<TraverseQuery, TypeMetrics> types = new EnumMap<>(TraverseQuery.class);
+  private final AtomicReferenceArray<SlowQuery> slowQueries =
+      new AtomicReferenceArray<>(SLOW_QUERY_SAMPLES);
+  private final AtomicLong slowQueryCount = new AtomicLong();
+  private final com.sun.management.ThreadMXBean threads;
+  private volatile boolean enabled;
+  private volatile long slowQueryThresholdNanos = DEFAULT_SLOW_QUERY_THRESHOLD.toNanos();
+
+  QueryMetrics(boolean enabled) {
+    for (TraverseQuery query : TraverseQuery.values()) {
+      types.put(query, new TypeMetrics());
+    }
+    // The allocation counter is a HotSpot extension, other JVMs may not have it.
+    com.sun.management.ThreadMXBean allocations = null;
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+        && bean.isThreadAllocatedMemorySupported()
+        && bean.isThreadAllocatedMemoryEnabled()) {
+      allocations = bean;
+    }
+    this.threads = allocations;
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turns the measurement on or off at runtime. Queries which are running keep their setting.
+   *
+   * @param enabled true to measure all following queries.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public Duration slowQueryThreshold() {
+    return Duration.ofNanos(slowQueryThresholdNanos);
+  }
+
+  /**
+   * @param threshold queries which take at least this long are kept as {@link SlowQuery}.
+   */
+  public void setSlowQueryThreshold(Duration threshold) {
+    if (threshold.isNegative()) {
+      throw new IllegalArgumentException("The threshold can't be negative: " + threshold);
+    }
+    this.slowQueryThresholdNanos = threshold.toNanos();
+  }
+
+  /**
+   * @param query the query type.
+   * @return the metrics of the query type.
+   */
+  public QueryStats stats(TraverseQuery query) {
+    TypeMetrics type = types.get(query);
+    LatencyHistogram wallTime = type.wallTime;
+    return new QueryStats(
+        query,
+        wallTime.count(),
+        wallTime.mean(),
+        wallTime.valueAtPercentile(50),
+        wallTime.valueAtPercentile(90),
+        wallTime.valueAtPercentile(99),
+        wallTime.max(),
+        type.nodesExpanded.sum(),
+        type.edgesRelaxed.sum(),
+        type.peakQueueSize.get(),
+        type.allocatedBytes.sum());
+  }
+
+  /**
+   * @return the metrics of all query types which were measured at least once.
+   */
+  public List<QueryStats> stats() {
+    List<QueryStats> stats = new ArrayList<>();
+    for (TraverseQuery query : TraverseQuery.values()) {
+      if (types.get(query).wallTime.count() > 0) {
+        stats.add(this.stats(query));
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * @return the most recent slow queries, the oldest first.
+   */
+  public List<SlowQuery> slowQueries() {
+    long next = slowQueryCount.get();
+    List<SlowQuery> samples = new ArrayList<>(SLOW_QUERY_SAMPLES);
+    for (long i = Math.max(0, next - SLOW_QUERY_SAMPLES); i < next; i++) {
+      SlowQuery sample = slowQueries.get((int) (i % SLOW_QUERY_SAMPLES));
+      if (sample != null) {
+        samples.add(sample);
+      }
+    }
+    return samples;
+  }
+
+  /** Drops everything measured so far, the settings stay. */
+  public void reset() {
+    for (TypeMetrics type : types.values()) {
+      type.wallTime.reset();
+      type.nodesExpanded.reset();
+      type.edgesRelaxed.reset();
+      type.allocatedBytes.reset();
+      type.peakQueueSize.set(0);
+    }
+    for (int i = 0; i < SLOW_QUERY_SAMPLES; i++) {
+      slowQueries.set(i, null);
+    }
+  }
+
+  /**
+   * Starts the measurement of a query.
+   *
+   * @param start the start node or whatever the query starts from, only formatted for slow queries.
+   * @param end the end node or null.
+   * @param firstParameter the first parameter of the query besides start and end, see {@link
+   *     #describe}.
+   * @param secondParameter the second parameter of the query, booleans are passed as 0 and 1.
+   * @return the recording or null if the metrics are disabled.
+   */
+  QueryRecording start(
+      TraverseQuery query, Object start, Object end, long firstParameter, long secondParameter) {
+    if (!enabled) {
+      return null;
+    }
+    return new QueryRecording(
+        query, start, end, firstParameter, secondParameter, this.allocatedBytes());
+  }
+
+  /**
+   * Ends the measurement of a query, also if it threw.
+   *
+   * @param recording the recording of {@link #start} or null.
+   */
+  void finish(QueryRecording recording) {
+    if (recording == null) {
+      return;
+    }
+    long wallTime = System.nanoTime() - recording.startNanos;
+    long allocated = this.allocatedBytes();
+    allocated = allocated == NOT_MEASURABLE ? 0 : allocated - recording.startAllocatedBytes;
+    TypeMetrics type = types.get(recording.query);
+    type.wallTime.record(wallTime);
+    type.nodesExpanded.add(recording.nodesExpanded());
+    type.edgesRelaxed.add(recording.edgesRelaxed());
+    type.allocatedBytes.add(allocated);
+    type.peakQueueSize.accumulateAndGet(recording.peakQueueSize(), Math::max);
+    if (wallTime >= slowQueryThresholdNanos) {
+      SlowQuery sample =
+          new SlowQuery(
+              Instant.now(),
+              recording.query,
+              recording.start == null ? null : String.valueOf(recording.start),
+              recording.end == null ? null : String.valueOf(recording.end),
+              describe(recording),
+              recording.graphVersion,
+              Duration.ofNanos(wallTime),
+              recording.nodesExpanded(),
+              recording.edgesRelaxed(),
+              recording.peakQueueSize(),
+              allocated);
+      long slot = slowQueryCount.getAndIncrement();
+      slowQueries.set((int) (slot % SLOW_QUERY_SAMPLES), sample);
+    }
+  }
+
+  private long allocatedBytes() {
+    return threads == null ? NOT_MEASURABLE : threads.getCurrentThreadAllocatedBytes();
+  }
+
+  private static String describe(QueryRecording recording) {
+    long first = recording.firstParameter;
+    long second = recording.secondParameter;
+    return switch (recording.query) {
+      case NUMBER_OF_TRACES -> "maxHops=" + first + ", onlyExactHops=" + (second != 0);
+      case TRACES_BELOW_LATENCY -> "maxLatency=" + first;
+      case SHORTEST_PATHS -> "k=" + first + ", simplePathsOnly=" + (second != 0);
+      case LATENCY_FOR_PATHS ->
+          "minPaths=" + first + ", maxLatency=" + (second < 0 ? "none" : String.valueOf(second));
+      case SHORTEST_LATENCIES -> "queries=" + first;
+      default -> "";
+    };
+  }
+
+  private static final class TypeMetrics {
+    private final LatencyHistogram wallTime = new LatencyHistogram();
+    private final LongAdder nodesExpanded = new LongAdder();
+    private final LongAdder edgesRelaxed = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final AtomicLong peakQueueSize = new AtomicLong();
+  }
+}
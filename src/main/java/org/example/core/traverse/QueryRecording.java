@@ -0,0 +1,68 @@
+package org.example.core.traverse;
+
+/**
+ * The measurement of a single query while it runs. It only exists while the metrics are enabled,
+ * the searches get null otherwise and skip all counting. The searches count in local variables
+ * and report once at their end, so counting costs nearly nothing even when it is enabled.
+ */
+final class QueryRecording {
+  final TraverseQuery query;
+  final Object start;
+  final Object end;
+  final long firstParameter;
+  final long secondParameter;
+  final long startNanos;
+  final long startAllocatedBytes;
+  long graphVersion;
+  private long nodesExpanded;
+  private long edgesRelaxed;
+  private long peakQueueSize;
+
+  QueryRecording(
+      TraverseQuery query,
+      Object start,
+      Object end,
+      long firstParameter,
+      long secondParameter,
+      long startAllocatedBytes) {
+    this.query = query;
+    this.start = start;
+    this.end = end;
+    this.firstParameter = firstParameter;
+    this.secondParameter = secondParameter;
+    this.startAllocatedBytes = startAllocatedBytes;
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Adds the work of one search, null safe so that the searches don't need to check.
+   *
+   * @param recording the recording of the query or null if the metrics are disabled.
+   * @param peakQueueSize the biggest queue or frontier the search needed.
+   */
+  static void count(
+      QueryRecording recording, long nodesExpanded, long edgesRelaxed, long peakQueueSize) {
+    if (recording != null) {
+      recording.add(nodesExpanded, edgesRelaxed, peakQueueSize);
+    }
+  }
+
+  // The groups of a batch query count from several threads.
+  private synchronized void add(long nodes, long edges, long peakQueue) {
+    this.nodesExpanded += nodes;
+    this.edgesRelaxed += edges;
+    this.peakQueueSize = Math.max(this.peakQueueSize, peakQueue);
+  }
+
+  synchronized long nodesExpanded() {
+    return nodesExpanded;
+  }
+
+  synchronized long edgesRelaxed() {
+    return edgesRelaxed;
+  }
+
+  synchronized long peakQueueSize() {
+    return peakQueueSize;
+  }
+}
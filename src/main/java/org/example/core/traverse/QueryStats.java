@@ -0,0 +1,26 @@
+package org.example.core.traverse;
+
+/**
+ * Metrics of one query type since the metrics were enabled or reset, see {@link QueryMetrics}.
+ * All times are wall clock nanoseconds, the percentiles have a relative error below 6.25%.
+ *
+ * @param count number of measured queries, including the ones which threw.
+ * @param nodesExpanded number of nodes whose edges were followed, summed over all queries.
+ * @param edgesRelaxed number of edges which were followed, summed over all queries.
+ * @param peakQueueSize the biggest queue or frontier a single query needed.
+ * @param allocatedBytes bytes allocated by the querying threads, summed over all queries. Work
+ *     which runs on other threads (the groups of a batch) is not included, 0 if the JVM can't
+ *     measure it.
+ */
+public record QueryStats(
+    TraverseQuery query,
+    long count,
+    double meanNanos,
+    long p50Nanos,
+    long p90Nanos,
+    long p99Nanos,
+    long maxNanos,
+    long nodesExpanded,
+    long edgesRelaxed,
+    long peakQueueSize,
+    long allocatedBytes) {}
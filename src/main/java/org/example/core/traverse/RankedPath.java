@@ -0,0 +1,11 @@
+package org.example.core.traverse;
+
+import java.util.List;
+
+/**
+ * A path found by {@link TraverseService#findShortestPaths(String, String, int, boolean)}.
+ *
+ * @param nodes the node names from the start to the end node.
+ * @param latency the latency sum of all edges of the path.
+ */
+public record RankedPath(List<String> nodes, long latency) {}
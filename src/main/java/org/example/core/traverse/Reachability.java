@@ -0,0 +1,148 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+import java.util.Arrays;
+
+/**
+ * All nodes reachable from a set of source nodes, as a breadth first search on bitsets. Frontier,
+ * next frontier and visited nodes are {@code long[]} bitsets, one bit per node, so joining and
+ * clearing them works on 64 nodes at once. All sources start in the first frontier, which answers
+ * a multi-source query in a single pass.
+ *
+ * <p>The search is direction optimizing (Beamer et al.). While the frontier is small, it goes top
+ * down: every frontier node marks its unvisited targets. Once the edges of the frontier outnumber
+ * the edges of the unvisited nodes (by {@link #ALPHA}), it switches to bottom up: every unvisited
+ * node looks for any parent in the frontier through the reversed edges and stops at the first one.
+ * When the frontier shrinks below {@code nodeCount / BETA} nodes it switches back.
+ *
+ * <p>Like all other queries a node needs to be reached with at least one hop, so a source is only
+ * part of the result if it is on a cycle or reachable from another source.
+ */
+final class Reachability {
+  private static final int ALPHA = 14;
+  private static final int BETA = 24;
+
+  private Reachability() {}
+
+  /**
+   * @param graph the graph to search, pass the reversed graph to search against the edges.
+   * @param sources the ids of the source nodes.
+   * @param budget the budget of the query, every reached node is a state.
+   * @param recording the recording of the query, null if the metrics are disabled.
+   * @return a bitset of all reachable nodes.
+   * @throws QueryBudgetExceededException in case the budget is exceeded.
+   */
+  static long[] reachable(
+      CompactGraph graph, int[] sources, TraversalBudget budget, QueryRecording recording) {
+    int nodeCount = graph.nodeCount();
+    int words = (nodeCount + 63) >>> 6;
+    budget.allocate(3L * Long.BYTES * words);
+    TraversalBudget.Meter meter = budget.meter();
+    long[] visited = new long[words];
+    long[] frontier = new long[words];
+    long[] next = new long[words];
+    long frontierEdges = 0;
+    int frontierSize = 0;
+    for (int source : sources) {
+      if (!isSet(frontier, source)) {
+        set(frontier, source);
+        frontierSize++;
+        frontierEdges += graph.outDegree(source);
+      }
+    }
+    long unvisitedEdges = graph.edgeCount();
+    boolean bottomUp = false;
+    long expanded = 0;
+    long scanned = 0;
+    int peakFrontierSize = frontierSize;
+    while (frontierSize > 0) {
+      if (!bottomUp && frontierEdges > unvisitedEdges / ALPHA) {
+        bottomUp = true;
+      } else if (bottomUp && frontierSize < nodeCount / BETA) {
+        bottomUp = false;
+      }
+      Arrays.fill(next, 0);
+      expanded += frontierSize;
+      peakFrontierSize = Math.max(peakFrontierSize, frontierSize);
+      if (bottomUp) {
+        scanned += bottomUpStep(graph.reversed(), frontier, next, visited);
+      } else {
+        topDownStep(graph, frontier, next, visited);
+        scanned += frontierEdges;
+      }
+      // The new frontier are the nodes visited for the first time in this step.
+      frontierSize = 0;
+      frontierEdges = 0;
+      for (int w = 0; w < words; w++) {
+        long bits = next[w];
+        visited[w] |= bits;
+        frontierSize += Long.bitCount(bits);
+        while (bits != 0) {
+          int node = (w << 6) + Long.numberOfTrailingZeros(bits);
+          meter.expand();
+          frontierEdges += graph.outDegree(node);
+          bits &= bits - 1;
+        }
+      }
+      unvisitedEdges -= frontierEdges;
+      long[] swap = frontier;
+      frontier = next;
+      next = swap;
+    }
+    QueryRecording.count(recording, expanded, scanned, peakFrontierSize);
+    return visited;
+  }
+
+  private static void topDownStep(
+      CompactGraph graph, long[] frontier, long[] next, long[] visited) {
+    for (int w = 0; w < frontier.length; w++) {
+      long bits = frontier[w];
+      while (bits != 0) {
+        int node = (w << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+          int target = graph.target(e);
+          if (!isSet(visited, target)) {
+            set(next, target);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of reversed edges scanned.
+   */
+  private static long bottomUpStep(
+      CompactGraph reversed, long[] frontier, long[] next, long[] visited) {
+    int nodeCount = reversed.nodeCount();
+    long scanned = 0;
+    for (int w = 0; w < visited.length; w++) {
+      long unvisited = ~visited[w];
+      if (w == visited.length - 1 && (nodeCount & 63) != 0) {
+        unvisited &= (1L << (nodeCount & 63)) - 1;
+      }
+      while (unvisited != 0) {
+        int node = (w << 6) + Long.numberOfTrailingZeros(unvisited);
+        unvisited &= unvisited - 1;
+        for (int e = reversed.firstEdge(node); e < reversed.endEdge(node); e++) {
+          scanned++;
+          if (isSet(frontier, reversed.target(e))) {
+            next[w] |= 1L << node;
+            break;
+          }
+        }
+      }
+    }
+    return scanned;
+  }
+
+  static boolean isSet(long[] bits, int node) {
+    return (bits[node >>> 6] & (1L << node)) != 0;
+  }
+
+  private static void set(long[] bits, int node) {
+    bits[node >>> 6] |= 1L << node;
+  }
+}
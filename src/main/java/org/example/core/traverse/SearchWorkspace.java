@@ -0,0 +1,130 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * The latencies and heaps of the point to point searches. A search takes a workspace from a small
+ * shared pool and gives it back when it is done, so the next search on any thread reuses it.
+ * Starting a search neither allocates nor fills anything of the size of the graph: a latency only
+ * counts when it carries the stamp of the current search, all other nodes are unreachable, and the
+ * heap gives back only the positions of the nodes which were left in it. So a query costs the nodes
+ * it touches and not the graph, and in the steady state a search does not allocate at all.
+ *
+ * <p>The pool keeps at most one idle workspace per processor, whatever the number of threads (or
+ * virtual threads) which search. The backward side is only allocated for the bidirectional search.
+ * A workspace which does not fit the graph, because it is too small or more than twice the size,
+ * is dropped instead of reused, so the pool follows the graph when a reload shrinks it.
+ */
+final class SearchWorkspace {
+  private static final ArrayBlockingQueue<SearchWorkspace> POOL =
+      new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+  private final int capacity;
+  private final Side forward;
+  private Side backward;
+
+  private SearchWorkspace(int capacity) {
+    this.capacity = capacity;
+    this.forward = new Side(capacity);
+  }
+
+  /**
+   * Takes a workspace for the graph out of the pool, with its forward side empty. The search owns
+   * it until it gives it back with {@link #release()}. Only a new workspace is charged to the
+   * budget, a reused one costs nothing.
+   *
+   * @param graph the graph to search.
+   * @param budget the budget of the query.
+   * @return the workspace, for at least the nodes of the graph.
+   * @throws QueryBudgetExceededException in case a new workspace exceeds the memory budget.
+   */
+  static SearchWorkspace acquire(CompactGraph graph, TraversalBudget budget) {
+    int nodeCount = graph.nodeCount();
+    SearchWorkspace workspace = POOL.poll();
+    // Workspaces of an older graph are dropped until one fits, at most the size of the pool.
+    while (workspace != null && !workspace.fits(nodeCount)) {
+      workspace = POOL.poll();
+    }
+    if (workspace == null) {
+      budget.allocate(ShortestLatencySearch.searchBytes(graph));
+      workspace = new SearchWorkspace(nodeCount);
+    }
+    workspace.forward.reset();
+    return workspace;
+  }
+
+  Side forward() {
+    return this.forward;
+  }
+
+  /**
+   * The empty backward side, allocated with the first bidirectional search of this workspace.
+   *
+   * @param graph the graph to search.
+   * @param budget the budget of the query, charged in case the side is allocated.
+   * @throws QueryBudgetExceededException in case the side exceeds the memory budget.
+   */
+  Side backward(CompactGraph graph, TraversalBudget budget) {
+    if (this.backward == null) {
+      budget.allocate(ShortestLatencySearch.searchBytes(graph));
+      this.backward = new Side(this.capacity);
+    }
+    this.backward.reset();
+    return this.backward;
+  }
+
+  /** Gives the workspace back to the pool, in case the pool is full it is dropped. */
+  void release() {
+    POOL.offer(this);
+  }
+
+  private boolean fits(int nodeCount) {
+    return this.capacity >= nodeCount && this.capacity / 2 <= nodeCount;
+  }
+
+  /** The latencies and the heap of one search. */
+  static final class Side {
+    private final long[] latencies;
+    // A latency is only valid when its stamp is the one of the current search.
+    private final int[] stamps;
+    private int stamp;
+    final IntMinHeap heap;
+
+    private Side(int capacity) {
+      this.latencies = new long[capacity];
+      this.stamps = new int[capacity];
+      this.heap = new IntMinHeap(capacity);
+    }
+
+    long latency(int node) {
+      return stamps[node] == stamp ? latencies[node] : ShortestLatencySearch.UNREACHABLE;
+    }
+
+    /**
+     * Lowers the latency of the node and queues it, in case the new latency is lower.
+     *
+     * @return true if the latency changed.
+     */
+    boolean improve(int node, long latency) {
+      if (latency >= this.latency(node)) {
+        return false;
+      }
+      latencies[node] = latency;
+      stamps[node] = stamp;
+      heap.insertOrDecrease(node, latency);
+      return true;
+    }
+
+    private void reset() {
+      heap.clear();
+      // After 2^32 searches a stamp would come back, the stale stamps are cleared once instead.
+      if (++stamp == 0) {
+        Arrays.fill(stamps, 0);
+        stamp = 1;
+      }
+    }
+  }
+}
@@ -0,0 +1,265 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+import java.util.Arrays;
+
+/**
+ * Exact shortest latency search (Dijkstra) on a {@link CompactGraph}, O((V+E) log V).
+ *
+ * <p>A trace always needs at least one hop. That is why the start node does not get the distance 0
+ * but only its direct dependents are seeded with the latency of the edge. This way the start node
+ * itself can be reached again through a cycle, which is exactly what we need to answer B -> B.
+ *
+ * <p>Between two different nodes {@link #bidirectionalShortestLatency} searches from both ends at
+ * the same time, forward from the start and backward from the end on the {@link
+ * CompactGraph#reversed() reversed graph}, until the two searches meet. Each search only needs to
+ * cover about half of the distance, which on graphs which fan out settles far fewer nodes than one
+ * search over the whole distance.
+ *
+ * <p>The point to point searches run in a pooled {@link SearchWorkspace}, so they only pay for the
+ * nodes they reach and not for the size of the graph, and only charge the memory budget when the
+ * pool has no workspace for them. The searches to every node fill a fresh array, which they
+ * return.
+ */
+final class ShortestLatencySearch {
+  static final long UNREACHABLE = Long.MAX_VALUE;
+
+  private ShortestLatencySearch() {}
+
+  /**
+   * @return the lowest latency of a non-empty path from start to end or {@link #UNREACHABLE}.
+   */
+  static long shortestLatency(CompactGraph graph, int start, int end) {
+    return shortestLatency(graph, start, end, TraversalBudget.UNLIMITED, null);
+  }
+
+  /**
+   * Same as {@link #shortestLatency(CompactGraph, int, int)} within a budget and counts the work
+   * of the search.
+   *
+   * @param budget the budget of the query.
+   * @param recording the recording of the query, null if the metrics are disabled.
+   * @throws QueryBudgetExceededException in case the budget is exceeded.
+   */
+  static long shortestLatency(
+      CompactGraph graph, int start, int end, TraversalBudget budget, QueryRecording recording) {
+    TraversalBudget.Meter meter = budget.meter();
+    SearchWorkspace workspace = SearchWorkspace.acquire(graph, budget);
+    try {
+      return search(graph, start, end, meter, workspace.forward(), recording);
+    } finally {
+      workspace.release();
+    }
+  }
+
+  private static long search(
+      CompactGraph graph,
+      int start,
+      int end,
+      TraversalBudget.Meter meter,
+      SearchWorkspace.Side search,
+      QueryRecording recording) {
+    relax(graph, start, 0, search);
+    long expanded = 1;
+    long relaxed = graph.outDegree(start);
+    int peakHeapSize = search.heap.size();
+    long result = UNREACHABLE;
+    while (!search.heap.isEmpty()) {
+      int node = search.heap.poll();
+      if (node == end) {
+        result = search.latency(node);
+        break;
+      }
+      meter.expand();
+      relax(graph, node, search.latency(node), search);
+      expanded++;
+      relaxed += graph.outDegree(node);
+      peakHeapSize = Math.max(peakHeapSize, search.heap.size());
+    }
+    QueryRecording.count(recording, expanded, relaxed, peakHeapSize);
+    return result;
+  }
+
+  /**
+   * Same as {@link #shortestLatency(CompactGraph, int, int, TraversalBudget, QueryRecording)} but
+   * searches from both ends. Every step expands the smaller of the two queues. The searches stop
+   * once the lowest latencies of both queues add up to at least the best path found so far, every
+   * path which has not been found yet is at least as long. For start == end (a cycle) the start
+   * node has to be left first, which the search from one end handles already, so it is used.
+   *
+   * @param budget the budget of the query, every node settled by one of the searches is a state.
+   * @param recording the recording of the query, null if the metrics are disabled.
+   * @return the lowest latency of a non-empty path from start to end or {@link #UNREACHABLE}.
+   * @throws QueryBudgetExceededException in case the budget is exceeded.
+   */
+  static long bidirectionalShortestLatency(
+      CompactGraph graph, int start, int end, TraversalBudget budget, QueryRecording recording) {
+    if (start == end) {
+      return shortestLatency(graph, start, end, budget, recording);
+    }
+    CompactGraph reversed = graph.reversed();
+    TraversalBudget.Meter meter = budget.meter();
+    SearchWorkspace workspace = SearchWorkspace.acquire(graph, budget);
+    try {
+      return search(
+          graph,
+          reversed,
+          start,
+          end,
+          meter,
+          workspace.forward(),
+          workspace.backward(graph, budget),
+          recording);
+    } finally {
+      workspace.release();
+    }
+  }
+
+  private static long search(
+      CompactGraph graph,
+      CompactGraph reversed,
+      int start,
+      int end,
+      TraversalBudget.Meter meter,
+      SearchWorkspace.Side forward,
+      SearchWorkspace.Side backward,
+      QueryRecording recording) {
+    IntMinHeap forwardHeap = forward.heap;
+    IntMinHeap backwardHeap = backward.heap;
+    // Start and end differ, so the paths have at least one hop without seeding the neighbours.
+    forward.improve(start, 0);
+    backward.improve(end, 0);
+    long best = UNREACHABLE;
+    long expanded = 0;
+    long relaxed = 0;
+    int peakHeapSize = 2;
+    while (!forwardHeap.isEmpty() && !backwardHeap.isEmpty()) {
+      if (forwardHeap.peekPriority() + backwardHeap.peekPriority() >= best) {
+        break;
+      }
+      meter.expand();
+      expanded++;
+      if (forwardHeap.size() <= backwardHeap.size()) {
+        int node = forwardHeap.poll();
+        best = meet(graph, node, forward, backward, best);
+        relaxed += graph.outDegree(node);
+      } else {
+        int node = backwardHeap.poll();
+        best = meet(reversed, node, backward, forward, best);
+        relaxed += reversed.outDegree(node);
+      }
+      peakHeapSize = Math.max(peakHeapSize, forwardHeap.size() + backwardHeap.size());
+    }
+    QueryRecording.count(recording, expanded, relaxed, peakHeapSize);
+    return best;
+  }
+
+  // Relaxes the edges of a settled node of one search and joins every reached node with the other
+  // search, if that one reached the node already.
+  private static long meet(
+      CompactGraph graph,
+      int node,
+      SearchWorkspace.Side search,
+      SearchWorkspace.Side other,
+      long best) {
+    long latency = search.latency(node);
+    for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+      int target = graph.target(e);
+      long newLatency = latency + graph.latency(e);
+      search.improve(target, newLatency);
+      long otherLatency = other.latency(target);
+      if (otherLatency != UNREACHABLE && newLatency + otherLatency < best) {
+        best = newLatency + otherLatency;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return the lowest latency of a non-empty path from start to every node, {@link #UNREACHABLE}
+   *     for nodes which can't be reached.
+   */
+  static long[] shortestLatencies(CompactGraph graph, int start) {
+    return shortestLatencies(graph, start, TraversalBudget.UNLIMITED, null);
+  }
+
+  /**
+   * Same as {@link #shortestLatencies(CompactGraph, int)} within a budget and counts the work of
+   * the search.
+   *
+   * @param budget the budget of the query.
+   * @param recording the recording of the query, null if the metrics are disabled.
+   * @throws QueryBudgetExceededException in case the budget is exceeded.
+   */
+  static long[] shortestLatencies(
+      CompactGraph graph, int start, TraversalBudget budget, QueryRecording recording) {
+    budget.allocate(searchBytes(graph));
+    long[] latencies = new long[graph.nodeCount()];
+    IntMinHeap heap = new IntMinHeap(graph.nodeCount());
+    run(graph, start, latencies, heap, budget.meter(), recording);
+    return latencies;
+  }
+
+  /**
+   * @return the estimated memory of the latencies and the heap of one search.
+   */
+  static long searchBytes(CompactGraph graph) {
+    // A long latency per node, the heap holds an int node, an int position and a long priority.
+    return 24L * graph.nodeCount();
+  }
+
+  /**
+   * Same as {@link #shortestLatencies(CompactGraph, int)} but writes into the given array, so the
+   * array and the (empty) heap can be reused for many searches.
+   */
+  static void shortestLatencies(CompactGraph graph, int start, long[] latencies, IntMinHeap heap) {
+    run(graph, start, latencies, heap, TraversalBudget.UNLIMITED.meter(), null);
+  }
+
+  // Settles every node which can be reached.
+  private static void run(
+      CompactGraph graph,
+      int start,
+      long[] latencies,
+      IntMinHeap heap,
+      TraversalBudget.Meter meter,
+      QueryRecording recording) {
+    Arrays.fill(latencies, UNREACHABLE);
+    relax(graph, start, 0, latencies, heap);
+    long expanded = 1;
+    long relaxed = graph.outDegree(start);
+    int peakHeapSize = heap.size();
+    while (!heap.isEmpty()) {
+      int node = heap.poll();
+      meter.expand();
+      relax(graph, node, latencies[node], latencies, heap);
+      expanded++;
+      relaxed += graph.outDegree(node);
+      peakHeapSize = Math.max(peakHeapSize, heap.size());
+    }
+    QueryRecording.count(recording, expanded, relaxed, peakHeapSize);
+  }
+
+  private static void relax(
+      CompactGraph graph, int node, long latency, long[] latencies, IntMinHeap heap) {
+    for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+      int target = graph.target(e);
+      long newLatency = latency + graph.latency(e);
+      // Settled nodes can't be improved with non-negative latencies, so this check is enough to
+      // never add a node a second time.
+      if (newLatency < latencies[target]) {
+        latencies[target] = newLatency;
+        heap.insertOrDecrease(target, newLatency);
+      }
+    }
+  }
+
+  private static void relax(
+      CompactGraph graph, int node, long latency, SearchWorkspace.Side search) {
+    for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+      // Settled nodes keep their latency, as in the search to every node.
+      search.improve(graph.target(e), latency + graph.latency(e));
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package org.example.core.traverse;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A query which took longer than the slow query threshold of the {@link QueryMetrics}.
+ *
+ * @param start the start node, the path or the service names of the query.
+ * @param end the end node, null for queries without one.
+ * @param parameters the other parameters of the query, for example the maximum hops.
+ * @param graphVersion the version of the graph the query ran on.
+ */
+public record SlowQuery(
+    Instant finishedAt,
+    TraverseQuery query,
+    String start,
+    String end,
+    String parameters,
+    long graphVersion,
+    Duration wallTime,
+    long nodesExpanded,
+    long edgesRelaxed,
+    long peakQueueSize,
+    long allocatedBytes) {}
@@ -0,0 +1,483 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The strongly connected components of a graph, computed once per graph with an iterative version
+ * of Tarjan's algorithm. The DFS keeps its own call stack of (node, next edge) pairs in int arrays
+ * instead of recursing, so long call chains can't overflow the thread stack.
+ *
+ * <p>Tarjan completes the components in reverse topological order, they are numbered the other way
+ * round: every edge of the graph goes from a component to the same or a higher component. That
+ * gives a free test if a trace can exist at all, a trace from a higher to a lower component never
+ * does. The {@link #condensation()} is the DAG with one node per component.
+ *
+ * <p>Nothing of it is named, components and the condensation are plain int arrays indexed by id. A
+ * graph which lives off the heap (see {@code OffHeapCompactGraph}) would otherwise get its whole
+ * name table copied back onto the heap, as most components of a service graph are single nodes.
+ *
+ * <p>A component is a cycle if it has more than one node or its only node calls itself, only on
+ * these components a trace can visit the same node twice.
+ */
+public final class StronglyConnectedComponents {
+  private static final int UNVISITED = -1;
+
+  private final int[] componentOf;
+  // The nodes of component c are members[memberOffsets[c]..memberOffsets[c + 1]), sorted by id.
+  private final int[] memberOffsets;
+  private final int[] members;
+  private final boolean[] cyclic;
+  private final Condensation condensation;
+  private final Duration buildTime;
+
+  private StronglyConnectedComponents(
+      int[] componentOf,
+      int[] memberOffsets,
+      int[] members,
+      boolean[] cyclic,
+      Condensation condensation,
+      Duration buildTime) {
+    this.componentOf = componentOf;
+    this.memberOffsets = memberOffsets;
+    this.members = members;
+    this.cyclic = cyclic;
+    this.condensation = condensation;
+    this.buildTime = buildTime;
+  }
+
+  static StronglyConnectedComponents compute(CompactGraph graph) {
+    long startTime = System.nanoTime();
+    int nodeCount = graph.nodeCount();
+    int[] index = new int[nodeCount];
+    int[] lowLink = new int[nodeCount];
+    int[] componentOf = new int[nodeCount];
+    Arrays.fill(index, UNVISITED);
+    Arrays.fill(componentOf, UNVISITED);
+    // Nodes which are visited but not assigned to a component yet.
+    int[] tarjanStack = new int[nodeCount];
+    int tarjanSize = 0;
+    // The DFS call stack, every frame is a node and the next of its edges to follow.
+    int[] callNodes = new int[nodeCount];
+    int[] callEdges = new int[nodeCount];
+    int nextIndex = 0;
+    int componentCount = 0;
+    for (int root = 0; root < nodeCount; root++) {
+      if (index[root] != UNVISITED) {
+        continue;
+      }
+      int depth = 0;
+      index[root] = lowLink[root] = nextIndex++;
+      tarjanStack[tarjanSize++] = root;
+      callNodes[0] = root;
+      callEdges[0] = graph.firstEdge(root);
+      depth++;
+      while (depth > 0) {
+        int node = callNodes[depth - 1];
+        int edge = callEdges[depth - 1];
+        if (edge < graph.endEdge(node)) {
+          callEdges[depth - 1]++;
+          int target = graph.target(edge);
+          if (index[target] == UNVISITED) {
+            index[target] = lowLink[target] = nextIndex++;
+            tarjanStack[tarjanSize++] = target;
+            callNodes[depth] = target;
+            callEdges[depth] = graph.firstEdge(target);
+            depth++;
+          } else if (componentOf[target] == UNVISITED) {
+            // Visited without a component means the target is still on the Tarjan stack.
+            lowLink[node] = Math.min(lowLink[node], index[target]);
+          }
+          continue;
+        }
+        depth--;
+        if (lowLink[node] == index[node]) {
+          int member;
+          do {
+            member = tarjanStack[--tarjanSize];
+            componentOf[member] = componentCount;
+          } while (member != node);
+          componentCount++;
+        }
+        if (depth > 0) {
+          int parent = callNodes[depth - 1];
+          lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+        }
+      }
+    }
+
+    // Renumber into topological order and group the members by component.
+    int[] memberOffsets = new int[componentCount + 1];
+    for (int n = 0; n < nodeCount; n++) {
+      componentOf[n] = componentCount - 1 - componentOf[n];
+      memberOffsets[componentOf[n] + 1]++;
+    }
+    for (int c = 0; c < componentCount; c++) {
+      memberOffsets[c + 1] += memberOffsets[c];
+    }
+    int[] insert = Arrays.copyOf(memberOffsets, componentCount);
+    int[] members = new int[nodeCount];
+    boolean[] cyclic = new boolean[componentCount];
+    for (int n = 0; n < nodeCount; n++) {
+      int component = componentOf[n];
+      members[insert[component]++] = n;
+      if (graph.findEdge(n, n) >= 0) {
+        cyclic[component] = true;
+      }
+    }
+    for (int c = 0; c < componentCount; c++) {
+      if (memberOffsets[c + 1] - memberOffsets[c] > 1) {
+        cyclic[c] = true;
+      }
+    }
+    Condensation condensation =
+        condense(graph, componentOf, memberOffsets, members, componentCount);
+    return new StronglyConnectedComponents(
+        componentOf,
+        memberOffsets,
+        members,
+        cyclic,
+        condensation,
+        Duration.ofNanos(System.nanoTime() - startTime));
+  }
+
+  /**
+   * Updates the components after edges of the graph changed. Most changes can't merge or split a
+   * component, then the components are kept and only the condensation edges between the changed
+   * components are updated. Only changes which may do that lead to a full computation: a new edge
+   * to a lower component (it closes a new cycle), a deleted edge within a component (it may break
+   * the cycle) and new nodes.
+   *
+   * @param graph the graph after the changes.
+   * @param changes the changed edges.
+   * @return the components of the changed graph.
+   */
+  StronglyConnectedComponents update(CompactGraph graph, List<EdgeChange> changes) {
+    long startTime = System.nanoTime();
+    if (graph.nodeCount() != componentOf.length) {
+      return compute(graph);
+    }
+    boolean[] updatedCyclic = cyclic;
+    // The target components of the changed condensation edges, by source component.
+    Map<Integer, Set<Integer>> changedPairs = new HashMap<>();
+    for (EdgeChange change : changes) {
+      int from = componentOf[change.source()];
+      int to = componentOf[change.target()];
+      if (from > to) {
+        return compute(graph);
+      }
+      if (from < to) {
+        changedPairs.computeIfAbsent(from, c -> new HashSet<>()).add(to);
+      } else if (change.source() == change.target()) {
+        // A call to itself only decides if a single node component is a cycle.
+        boolean cycle = !change.isDelete() || memberOffsets[from + 1] - memberOffsets[from] > 1;
+        if (cycle != updatedCyclic[from]) {
+          updatedCyclic = updatedCyclic == cyclic ? cyclic.clone() : updatedCyclic;
+          updatedCyclic[from] = cycle;
+        }
+      } else if (change.isDelete()) {
+        return compute(graph);
+      }
+    }
+    Condensation updatedCondensation = condensation;
+    if (!changedPairs.isEmpty()) {
+      Map<Integer, Map<Integer, Integer>> lowest = new HashMap<>();
+      for (Map.Entry<Integer, Set<Integer>> pair : changedPairs.entrySet()) {
+        lowest.put(pair.getKey(), this.condensationEdges(graph, pair.getKey(), pair.getValue()));
+      }
+      updatedCondensation = condensation.withEdges(changedPairs, lowest);
+    }
+    return new StronglyConnectedComponents(
+        componentOf,
+        memberOffsets,
+        members,
+        updatedCyclic,
+        updatedCondensation,
+        Duration.ofNanos(System.nanoTime() - startTime));
+  }
+
+  // The lowest latency of the edges from one component to each of the others, missing if there is
+  // no edge left. One pass over the edges of the members for all target components.
+  private Map<Integer, Integer> condensationEdges(
+      CompactGraph graph, int from, Set<Integer> targets) {
+    Map<Integer, Integer> lowest = new HashMap<>();
+    for (int m = memberOffsets[from]; m < memberOffsets[from + 1]; m++) {
+      int node = members[m];
+      for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+        int to = componentOf[graph.target(e)];
+        if (targets.contains(to)) {
+          lowest.merge(to, graph.latency(e), Math::min);
+        }
+      }
+    }
+    return lowest;
+  }
+
+  // One edge between two components with the lowest latency of all edges between their members.
+  private static Condensation condense(
+      CompactGraph graph,
+      int[] componentOf,
+      int[] memberOffsets,
+      int[] members,
+      int componentCount) {
+    int[] offsets = new int[componentCount + 1];
+    int[] targets = new int[16];
+    int[] latencies = new int[16];
+    // Position of the edge to a target component within the current component, -1 if none yet.
+    int[] edgeTo = new int[componentCount];
+    Arrays.fill(edgeTo, -1);
+    long[] packed = new long[16];
+    int edgeCount = 0;
+    for (int c = 0; c < componentCount; c++) {
+      int first = edgeCount;
+      for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+        int node = members[m];
+        for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+          int target = componentOf[graph.target(e)];
+          if (target == c) {
+            continue;
+          }
+          int position = edgeTo[target];
+          if (position >= 0) {
+            latencies[position] = Math.min(latencies[position], graph.latency(e));
+            continue;
+          }
+          if (edgeCount == targets.length) {
+            targets = Arrays.copyOf(targets, edgeCount * 2);
+            latencies = Arrays.copyOf(latencies, edgeCount * 2);
+          }
+          edgeTo[target] = edgeCount;
+          targets[edgeCount] = target;
+          latencies[edgeCount] = graph.latency(e);
+          edgeCount++;
+        }
+      }
+      // The targets need to be ascending, latencies are never negative so they can be packed.
+      int degree = edgeCount - first;
+      if (packed.length < degree) {
+        packed = new long[Math.max(degree, packed.length * 2)];
+      }
+      for (int i = 0; i < degree; i++) {
+        edgeTo[targets[first + i]] = -1;
+        packed[i] = ((long) targets[first + i] << 32) | latencies[first + i];
+      }
+      Arrays.sort(packed, 0, degree);
+      for (int i = 0; i < degree; i++) {
+        targets[first + i] = (int) (packed[i] >>> 32);
+        latencies[first + i] = (int) packed[i];
+      }
+      offsets[c + 1] = edgeCount;
+    }
+    return new Condensation(
+        offsets, Arrays.copyOf(targets, edgeCount), Arrays.copyOf(latencies, edgeCount));
+  }
+
+  public int componentCount() {
+    return cyclic.length;
+  }
+
+  /**
+   * @param node the id of a node of the graph.
+   * @return the id of its component, in topological order of the condensation.
+   */
+  public int componentOf(int node) {
+    return componentOf[node];
+  }
+
+  /**
+   * @param component the id of the component.
+   * @return the ids of the nodes of the component in ascending order.
+   */
+  public int[] members(int component) {
+    return Arrays.copyOfRange(members, memberOffsets[component], memberOffsets[component + 1]);
+  }
+
+  /**
+   * @param component the id of the component.
+   * @return true if a trace can start and end at the nodes of this component.
+   */
+  public boolean isCycle(int component) {
+    return cyclic[component];
+  }
+
+  /**
+   * @param component the id of the component.
+   * @return the member of the component with the lowest id, to report a component by a name of the
+   *     graph.
+   */
+  public int representative(int component) {
+    return members[memberOffsets[component]];
+  }
+
+  /**
+   * The DAG of the components. Node c is component c, an edge means that a member of one component
+   * calls a member of the other one and has the lowest latency of all these calls.
+   *
+   * @return the condensation, its node ids ascend in topological order.
+   */
+  public Condensation condensation() {
+    return condensation;
+  }
+
+  /**
+   * @return true if there can be a non-empty trace from start to end. False is always right, true
+   *     only means the components don't rule it out.
+   */
+  boolean mayReach(int start, int end) {
+    int from = componentOf[start];
+    int to = componentOf[end];
+    return from == to ? cyclic[from] : from < to;
+  }
+
+  /**
+   * All nodes which are needed for a trace from start to end: every node on such a trace is in a
+   * component between the ones of start and end that can reach the end. The components in between
+   * are swept backwards once, as the condensation only has edges to higher components.
+   *
+   * @return a bitset of the nodes which can reach end (end included), empty if start can't.
+   */
+  long[] nodesTowards(int start, int end) {
+    long[] nodes = new long[(componentOf.length + 63) >>> 6];
+    if (!this.mayReach(start, end)) {
+      return nodes;
+    }
+    int from = componentOf[start];
+    int to = componentOf[end];
+    boolean[] reaches = new boolean[to - from + 1];
+    reaches[to - from] = true;
+    for (int c = to - 1; c >= from; c--) {
+      for (int e = condensation.firstEdge(c); e < condensation.endEdge(c); e++) {
+        int target = condensation.target(e);
+        if (target > to) {
+          // The targets are ascending, none of the remaining ones can reach the end either.
+          break;
+        }
+        if (reaches[target - from]) {
+          reaches[c - from] = true;
+          break;
+        }
+      }
+    }
+    for (int c = from; c <= to; c++) {
+      if (reaches[c - from]) {
+        for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+          nodes[members[m] >>> 6] |= 1L << members[m];
+        }
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * @return the wall clock time it took to compute the components and the condensation, or to
+   *     update them for the last changes.
+   */
+  public Duration buildTime() {
+    return buildTime;
+  }
+
+  @Override
+  public String toString() {
+    return "StronglyConnectedComponents[components="
+        + componentCount()
+        + ", buildTime="
+        + buildTime.toMillis()
+        + "ms]";
+  }
+
+  /**
+   * The condensation in the same CSR layout as the {@link CompactGraph}, but without names: the
+   * edges of component c are firstEdge(c)..endEdge(c), their targets ascend.
+   */
+  public static final class Condensation {
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] latencies;
+
+    private Condensation(int[] offsets, int[] targets, int[] latencies) {
+      this.offsets = offsets;
+      this.targets = targets;
+      this.latencies = latencies;
+    }
+
+    public int nodeCount() {
+      return offsets.length - 1;
+    }
+
+    public int edgeCount() {
+      return targets.length;
+    }
+
+    public int firstEdge(int component) {
+      return offsets[component];
+    }
+
+    public int endEdge(int component) {
+      return offsets[component + 1];
+    }
+
+    public int target(int edge) {
+      return targets[edge];
+    }
+
+    public int latency(int edge) {
+      return latencies[edge];
+    }
+
+    /**
+     * @return the id of the edge from one component to the other, -1 if there is none.
+     */
+    public int findEdge(int from, int to) {
+      int edge = Arrays.binarySearch(targets, offsets[from], offsets[from + 1], to);
+      return edge >= 0 ? edge : -1;
+    }
+
+    // Replaces the edges to the changed targets of the changed components, copy-on-write like the
+    // graph. The edges of all other components are copied as they are.
+    private Condensation withEdges(
+        Map<Integer, Set<Integer>> changedTargets, Map<Integer, Map<Integer, Integer>> lowest) {
+      int added = 0;
+      for (Map<Integer, Integer> edges : lowest.values()) {
+        added += edges.size();
+      }
+      int[] newOffsets = new int[offsets.length];
+      int[] newTargets = new int[targets.length + added];
+      int[] newLatencies = new int[targets.length + added];
+      int edgeCount = 0;
+      for (int c = 0; c < this.nodeCount(); c++) {
+        Set<Integer> changed = changedTargets.get(c);
+        if (changed == null) {
+          int degree = offsets[c + 1] - offsets[c];
+          System.arraycopy(targets, offsets[c], newTargets, edgeCount, degree);
+          System.arraycopy(latencies, offsets[c], newLatencies, edgeCount, degree);
+          edgeCount += degree;
+        } else {
+          TreeMap<Integer, Integer> edges = new TreeMap<>(lowest.get(c));
+          for (int e = offsets[c]; e < offsets[c + 1]; e++) {
+            if (!changed.contains(targets[e])) {
+              edges.put(targets[e], latencies[e]);
+            }
+          }
+          for (Map.Entry<Integer, Integer> edge : edges.entrySet()) {
+            newTargets[edgeCount] = edge.getKey();
+            newLatencies[edgeCount] = edge.getValue();
+            edgeCount++;
+          }
+        }
+        newOffsets[c + 1] = edgeCount;
+      }
+      return new Condensation(
+          newOffsets,
+          Arrays.copyOf(newTargets, edgeCount),
+          Arrays.copyOf(newLatencies, edgeCount));
+    }
+  }
+}
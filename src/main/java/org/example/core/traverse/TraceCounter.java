@@ -0,0 +1,92 @@
+package org.example.core.traverse;
+
+import org.example.core.graph.CompactGraph;
+
+import java.util.Arrays;
+
+/**
+ * Counts the traces (walks) between two nodes by hops with a layered dynamic program instead of
+ * enumerating every single trace. Layer h holds for every node the number of traces from the start
+ * node with exactly h hops ending there, the next layer is computed by pushing the counts along
+ * every edge. That is O(maxHops * E) time and two long arrays of O(V) memory.
+ *
+ * <p>Counts are only pushed to nodes which can still reach the end node (see {@link
+ * StronglyConnectedComponents#nodesTowards(int, int)}), the traces through all other nodes never
+ * end there and would only be carried along until maxHops.
+ */
+final class TraceCounter {
+
+  private TraceCounter() {}
+
+  /**
+   * @param towardsEnd bitset of the nodes which can reach the end node.
+   * @param onlyExactHops if true only traces with exactly maxHops hops are counted, otherwise all
+   *     traces with 1 up to maxHops hops.
+   * @param budget the budget of the query, every non-zero counter of a layer is a state.
+   * @param recording the recording of the query, null if the metrics are disabled.
+   * @return the number of traces.
+   * @throws ArithmeticException in case the number of traces does not fit into a long.
+   * @throws QueryBudgetExceededException in case the budget is exceeded, with the traces of the
+   *     completed hops as partial count.
+   */
+  static long countTraces(
+      CompactGraph graph,
+      int start,
+      int end,
+      long[] towardsEnd,
+      int maxHops,
+      boolean onlyExactHops,
+      TraversalBudget budget,
+      QueryRecording recording) {
+    long traces = 0;
+    long expanded = 0;
+    long relaxed = 0;
+    int peakLayerSize = 0;
+    try {
+      budget.allocate(16L * graph.nodeCount());
+      TraversalBudget.Meter meter = budget.meter();
+      long[] current = new long[graph.nodeCount()];
+      long[] next = new long[graph.nodeCount()];
+      current[start] = 1;
+      for (int hop = 1; hop <= maxHops; hop++) {
+        Arrays.fill(next, 0);
+        boolean reachedAnyNode = false;
+        int layerSize = 0;
+        for (int node = 0; node < current.length; node++) {
+          long count = current[node];
+          if (count == 0) {
+            continue;
+          }
+          meter.expand();
+          layerSize++;
+          relaxed += graph.outDegree(node);
+          for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+            int target = graph.target(e);
+            if (!Reachability.isSet(towardsEnd, target)) {
+              continue;
+            }
+            next[target] = Math.addExact(next[target], count);
+            reachedAnyNode = true;
+          }
+        }
+        expanded += layerSize;
+        peakLayerSize = Math.max(peakLayerSize, layerSize);
+        if (!onlyExactHops || hop == maxHops) {
+          traces = Math.addExact(traces, next[end]);
+        }
+        if (!reachedAnyNode) {
+          // There is no trace with this amount of hops, so there won't be any with more hops
+          // either.
+          break;
+        }
+        long[] swap = current;
+        current = next;
+        next = swap;
+      }
+    } catch (QueryBudgetExceededException e) {
+      throw e.withPartialCount(traces);
+    }
+    QueryRecording.count(recording, expanded, relaxed, peakLayerSize);
+    return traces;
+  }
+}
@@ -0,0 +1,127 @@
+package org.example.core.traverse;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link QueryBudget} of one running query: the deadline is fixed when the query starts and
+ * the expanded states and the allocated memory are summed up. The groups of a batch query share
+ * one budget from several threads, so the sums are atomic.
+ *
+ * <p>The searches don't touch the budget for every state. A {@link Meter} counts down in a plain
+ * int and only every {@link #CHECK_INTERVAL} states (or fewer, right before the state limit) it
+ * charges the budget and checks the time and the cancellation. Without limits {@link #UNLIMITED}
+ * returns right away, so a search without budget pays one decrement per state.
+ */
+final class TraversalBudget {
+  static final int CHECK_INTERVAL = 1024;
+  static final TraversalBudget UNLIMITED = new TraversalBudget(QueryBudget.unlimited(), 0);
+
+  private final boolean unlimited;
+  private final long maxStates;
+  private final long maxMemoryBytes;
+  private final boolean hasDeadline;
+  private final long deadlineNanos;
+  private final CancellationToken cancellation;
+  private final AtomicLong states = new AtomicLong();
+  private final AtomicLong memoryBytes = new AtomicLong();
+
+  private TraversalBudget(QueryBudget budget, long startNanos) {
+    this.unlimited = budget.isUnlimited();
+    this.maxStates = budget.maxStates();
+    this.maxMemoryBytes = budget.maxMemoryBytes();
+    this.hasDeadline = budget.timeout() != null;
+    this.deadlineNanos = this.hasDeadline ? startNanos + budget.timeout().toNanos() : 0;
+    this.cancellation = budget.cancellation();
+  }
+
+  /**
+   * Starts the budget of a query, the timeout counts from now.
+   *
+   * @throws QueryBudgetExceededException in case the query is cancelled already.
+   */
+  static TraversalBudget start(QueryBudget budget) {
+    if (budget.isUnlimited()) {
+      return UNLIMITED;
+    }
+    TraversalBudget started = new TraversalBudget(budget, System.nanoTime());
+    started.charge(0);
+    return started;
+  }
+
+  Meter meter() {
+    return new Meter(this);
+  }
+
+  /**
+   * Adds expanded states and checks all limits but the memory.
+   *
+   * @param count the states expanded since the last charge.
+   * @return the number of states which can be expanded before the next charge.
+   * @throws QueryBudgetExceededException in case a limit is exceeded.
+   */
+  int charge(int count) {
+    if (unlimited) {
+      return CHECK_INTERVAL;
+    }
+    long expanded = states.addAndGet(count);
+    if (expanded > maxStates) {
+      throw this.exceeded(QueryBudgetExceededException.Limit.STATES);
+    }
+    if (cancellation != null && cancellation.isCancelled()) {
+      throw this.exceeded(QueryBudgetExceededException.Limit.CANCELLED);
+    }
+    // Compared as difference, nanoTime may overflow.
+    if (hasDeadline && System.nanoTime() - deadlineNanos > 0) {
+      throw this.exceeded(QueryBudgetExceededException.Limit.DEADLINE);
+    }
+    // The next charge happens right at the first state beyond the limit. Without a state limit
+    // maxStates + 1 would overflow.
+    long remaining = maxStates - expanded;
+    return remaining < CHECK_INTERVAL ? (int) remaining + 1 : CHECK_INTERVAL;
+  }
+
+  /**
+   * Reserves memory before the search allocates it.
+   *
+   * @param bytes the estimated size of the allocation.
+   * @throws QueryBudgetExceededException in case the memory limit is exceeded.
+   */
+  void allocate(long bytes) {
+    if (unlimited) {
+      return;
+    }
+    if (memoryBytes.addAndGet(bytes) > maxMemoryBytes) {
+      throw this.exceeded(QueryBudgetExceededException.Limit.MEMORY);
+    }
+  }
+
+  private QueryBudgetExceededException exceeded(QueryBudgetExceededException.Limit limit) {
+    return new QueryBudgetExceededException(
+        limit, states.get(), QueryBudgetExceededException.NO_PARTIAL_COUNT);
+  }
+
+  /** The state counter of one search, only used by the thread running the search. */
+  static final class Meter {
+    private final TraversalBudget budget;
+    private int interval;
+    private int untilCheck;
+
+    private Meter(TraversalBudget budget) {
+      this.budget = budget;
+      this.interval = budget.charge(0);
+      this.untilCheck = this.interval;
+    }
+
+    /** Counts one expanded state. */
+    void expand() {
+      if (--untilCheck == 0) {
+        interval = budget.charge(interval);
+        untilCheck = interval;
+      }
+    }
+
+    void allocate(long bytes) {
+      budget.allocate(bytes);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package org.example.core.traverse;
+
+/**
+ * Tuning options of the {@link TraverseService}.
+ *
+ * @param queryCacheSize the maximum number of cached query results, 0 disables the cache.
+ * @param allPairsNodeLimit graphs with up to this many nodes get all shortest latencies
+ *     precomputed when they are loaded, 0 disables the precomputation.
+ * @param metricsEnabled if true the queries are measured from the start, see {@link
+ *     TraverseService#queryMetrics()}. The metrics can also be turned on and off at runtime.
+ * @param queryBudget the budget of every query which is not given its own budget.
+ * @param bidirectionalSearch if true the shortest latency between two different nodes is searched
+ *     from both ends, which needs the reversed graph (built once, about the size of the graph).
+ * @param contractionHierarchy provides the {@link ContractionHierarchy} of every loaded graph,
+ *     which then answers the shortest latency between two different nodes. Null disables it. The
+ *     hierarchies of graphs changed by edge updates are built in memory and not asked from it.
+ */
+public record TraverseOptions(
+    int queryCacheSize,
+    int allPairsNodeLimit,
+    boolean metricsEnabled,
+    QueryBudget queryBudget,
+    boolean bidirectionalSearch,
+    ContractionHierarchy.Source contractionHierarchy) {
+  public static final int DEFAULT_QUERY_CACHE_SIZE = 10_000;
+
+  public TraverseOptions {
+    if (queryCacheSize < 0) {
+      throw new IllegalArgumentException("The cache size can't be negative: " + queryCacheSize);
+    }
+    if (allPairsNodeLimit < 0 || allPairsNodeLimit > AllPairsLatencies.MAX_NODES) {
+      throw new IllegalArgumentException(
+          "The node limit needs to be between 0 and "
+              + AllPairsLatencies.MAX_NODES
+              + ": "
+              + allPairsNodeLimit);
+    }
+    if (queryBudget == null) {
+      throw new IllegalArgumentException("The query budget can't be null.");
+    }
+  }
+
+  public static TraverseOptions defaults() {
+    return new TraverseOptions(
+        DEFAULT_QUERY_CACHE_SIZE, 0, false, QueryBudget.unlimited(), true, null);
+  }
+
+  public TraverseOptions withQueryCacheSize(int size) {
+    return new TraverseOptions(
+        size,
+        allPairsNodeLimit,
+        metricsEnabled,
+        queryBudget,
+        bidirectionalSearch,
+        contractionHierarchy);
+  }
+
+  public TraverseOptions withAllPairsNodeLimit(int nodeLimit) {
+    return new TraverseOptions(
+        queryCacheSize,
+        nodeLimit,
+        metricsEnabled,
+        queryBudget,
+        bidirectionalSearch,
+        contractionHierarchy);
+  }
+
+  public TraverseOptions withMetricsEnabled(boolean enabled) {
+    return new TraverseOptions(
+        queryCacheSize,
+        allPairsNodeLimit,
+        enabled,
+        queryBudget,
+        bidirectionalSearch,
+        contractionHierarchy);
+  }
+
+  public TraverseOptions withQueryBudget(QueryBudget budget) {
+    return new TraverseOptions(
+        queryCacheSize,
+        allPairsNodeLimit,
+        metricsEnabled,
+        budget,
+        bidirectionalSearch,
+        contractionHierarchy);
+  }
+
+  public TraverseOptions withBidirectionalSearch(boolean bidirectional) {
+    return new TraverseOptions(
+        queryCacheSize,
+        allPairsNodeLimit,
+        metricsEnabled,
+        queryBudget,
+        bidirectional,
+        contractionHierarchy);
+  }
+
+  /**
+   * @param source the source of the hierarchy, for example {@code ContractionHierarchy::build},
+   *     null to disable it.
+   */
+  public TraverseOptions withContractionHierarchy(ContractionHierarchy.Source source) {
+    return new TraverseOptions(
+        queryCacheSize,
+        allPairsNodeLimit,
+        metricsEnabled,
+        queryBudget,
+        bidirectionalSearch,
+        source);
+  }
+}
@@ -0,0 +1,14 @@
+package org.example.core.traverse;
+
+/** The queries of the {@link TraverseService} which are measured by the {@link QueryMetrics}. */
+public enum TraverseQuery {
+  AVERAGE_LATENCY_OF_PATH,
+  NUMBER_OF_TRACES,
+  SHORTEST_LATENCY,
+  SHORTEST_LATENCIES,
+  TRACES_BELOW_LATENCY,
+  SHORTEST_PATHS,
+  DOWNSTREAM_SERVICES,
+  IMPACTED_SERVICES,
+  LATENCY_FOR_PATHS
+}
@@ -1,35 +1,427 @@
 package org.example.core.traverse;
 
+import org.example.core.graph.CompactGraph;
+import org.example.core.graph.EdgeUpdate;
 import org.example.core.graph.GraphNode;
 import org.example.core.graph.GraphService;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Answers the queries on the loaded graph. The graph is an immutable {@link CompactGraph} and all
+ * state of a query is kept in query-local arrays, so one instance can serve any number of
+ * concurrent queries.
+ *
+ * <p>The graph can be replaced at any time with {@link #reloadGraph(String)}. The new graph is
+ * built in the background and then published with a single atomic swap. Queries which are running
+ * at that moment finish on the graph they started with. Reloads which overlap are published in the
+ * order they were started, the graph of an older reload never replaces the one of a newer reload.
+ *
+ * <p>The results of the shortest latency and the trace counting queries are cached. The cache is
+ * bound to the graph version, so a reload invalidates all results of the previous graph. For small
+ * graphs the shortest latencies of all pairs can be precomputed while the graph is loaded, see
+ * {@link TraverseOptions#allPairsNodeLimit()}.
+ *
+ * <p>Single edges can be changed on the live graph with {@link #updateEdges(List)}, which publishes
+ * a new version the same way a reload does, but only updates what the changes affect.
+ *
+ * <p>The strongly connected components are computed with every graph. Queries use them to rule out
+ * traces between two nodes before searching and the trace counting queries skip all nodes which
+ * can't reach the end node, see {@link StronglyConnectedComponents}.
+ *
+ * <p>The queries can be measured with {@link #queryMetrics()}: wall time percentiles, the work of
+ * the searches and samples of slow queries. The measurement is off by default and costs nothing
+ * but a volatile read then.
+ *
+ * <p>Every traversal runs within a {@link QueryBudget} of expanded states, memory and time and can
+ * be cancelled, so a single runaway query can't take down a shared instance. The default budget of
+ * the {@link TraverseOptions} is unlimited, every query can be given its own budget.
+ *
+ * <p>For graphs which rarely change a {@link ContractionHierarchy} can be built with every loaded
+ * graph, see {@link TraverseOptions#contractionHierarchy()}. It answers the shortest latency
+ * between two nodes with two tiny searches. After edge updates the queries search the graph again
+ * until the hierarchy of the updated graph is built in the background, on a thread of its own and
+ * only for the latest graph of a burst of updates.
+ */
 public class TraverseService {
-  private final GraphService graphService;
-  private Map<String, GraphNode> lookupMap;
+  // Results are stored as long, the queries never return a negative value.
+  private static final long NO_TRACE = -1;
 
-  // We want to make sure that we have at least a collection of paths calculated to make sure we are
-  // not choosing
-  // a "short" one because of the lack of options.
-  private static final int MIN_NUMBER_OF_PATHS_TO_INVESTIGATE = 10;
+  private final GraphService graphService;
+  private final AtomicReference<GraphSnapshot> snapshot = new AtomicReference<>();
+  private final QueryCache queryCache;
+  private final TraverseOptions options;
+  private final QueryMetrics metrics;
+  // Every reload takes the next number when it starts. A loaded graph is only published in case no
+  // reload which started later was published before, guarded by the lock.
+  private final AtomicLong reloadSequence = new AtomicLong();
+  private final Object publishLock = new Object();
+  private long publishedReload;
+  // Builds the hierarchies of updated graphs, one at a time. Null if the hierarchy is disabled.
+  private final ThreadPoolExecutor hierarchyExecutor;
+  // Set while a rebuild is queued and has not yet taken the latest snapshot.
+  private final AtomicBoolean hierarchyRebuildQueued = new AtomicBoolean();
 
   public TraverseService(GraphService graphService) {
+    this(graphService, TraverseOptions.defaults());
+  }
+
+  /**
+   * @param graphService the service to load the graph with.
+   * @param options the cache, precomputation and metrics options.
+   */
+  public TraverseService(GraphService graphService, TraverseOptions options) {
     this.graphService = graphService;
+    this.options = options;
+    this.queryCache = new QueryCache(options.queryCacheSize());
+    this.metrics = new QueryMetrics(options.metricsEnabled());
+    this.hierarchyExecutor =
+        options.contractionHierarchy() == null ? null : newHierarchyExecutor();
+  }
+
+  // A single daemon thread which ends when there is nothing to rebuild, so an instance which is
+  // dropped does not keep a thread.
+  private static ThreadPoolExecutor newHierarchyExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            task -> {
+              Thread thread = new Thread(task, "contraction-hierarchy");
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 
   /**
    * Method responsible to initialize the graph. As we let the user control what should be
    * initialized this needs to be called manually before other operations in this class can be used.
+   * Only the first call loads the graph, use {@link #reloadGraph(String)} to replace it.
    *
    * @param absolutePathAndFileName the path and file name of a file with the graph data to load.
    */
-  public void initGraph(String absolutePathAndFileName) {
-    if (this.lookupMap == null) {
-      this.lookupMap = this.graphService.constructGraphFromFile(absolutePathAndFileName);
+  public synchronized void initGraph(String absolutePathAndFileName) {
+    if (this.snapshot.get() == null) {
+      long sequence = this.reloadSequence.incrementAndGet();
+      this.publish(this.load(absolutePathAndFileName), sequence);
+    }
+  }
+
+  /**
+   * Builds a new graph in the background and replaces the current one as soon as it is ready. In
+   * case the new graph can't be built the current one stays in place. In case a reload which was
+   * started later is published first, for example because the file changed again while it was
+   * loaded, the graph of this reload is outdated and dropped.
+   *
+   * @param absolutePathAndFileName the path and file name of a file with the graph data to load.
+   * @return the version of the new graph once it is published, the version of the newer graph in
+   *     case this one was dropped.
+   */
+  public CompletableFuture<Long> reloadGraph(String absolutePathAndFileName) {
+    return this.reloadGraph(absolutePathAndFileName, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Same as {@link #reloadGraph(String)} but the graph is built on the given executor.
+   *
+   * @param absolutePathAndFileName the path and file name of a file with the graph data to load.
+   * @param executor the executor to build the graph on.
+   * @return the version of the new graph once it is published, the version of the newer graph in
+   *     case this one was dropped.
+   */
+  public CompletableFuture<Long> reloadGraph(String absolutePathAndFileName, Executor executor) {
+    long sequence = this.reloadSequence.incrementAndGet();
+    return CompletableFuture.supplyAsync(() -> this.load(absolutePathAndFileName), executor)
+        .thenApply(loaded -> this.publish(loaded, sequence));
+  }
+
+  /**
+   * Adds an edge or changes its latency, see {@link #updateEdges(List)}.
+   *
+   * @param parentName the calling service, added to the graph if it is not part of it yet.
+   * @param childName the called service, added to the graph if it is not part of it yet.
+   * @param latency the new latency of the edge.
+   * @return the version of the updated graph.
+   */
+  public long upsertEdge(String parentName, String childName, int latency) {
+    return this.updateEdges(List.of(EdgeUpdate.upsert(parentName, childName, latency)));
+  }
+
+  /**
+   * Deletes an edge, see {@link #updateEdges(List)}. The services stay part of the graph.
+   *
+   * @param parentName the calling service.
+   * @param childName the called service.
+   * @return the version of the updated graph.
+   */
+  public long deleteEdge(String parentName, String childName) {
+    return this.updateEdges(List.of(EdgeUpdate.delete(parentName, childName)));
+  }
+
+  /**
+   * Applies edge updates to the current graph without reloading it. The updated graph is published
+   * as a new version with a single atomic swap, just like a reload: queries never wait for it and
+   * the ones already running finish on the graph they started with.
+   *
+   * <p>The graph is copied once per call, O(E) however few edges change ({@link
+   * CompactGraph#withUpdates(List)}), so batch the updates where possible. The strongly connected
+   * components and the precomputed shortest latencies are updated for the changed edges and, as
+   * long as only latencies change, the cached trace counts by hops stay valid. All other cached
+   * results are dropped.
+   *
+   * @param updates the edge updates in the order they happened, the last update of an edge wins.
+   * @return the version of the updated graph, the current version if nothing changed.
+   * @throws InvalidInputException in case a name is missing or a latency is negative.
+   */
+  public synchronized long updateEdges(List<EdgeUpdate> updates) {
+    if (updates == null) {
+      throw new InvalidInputException("The updates can't be empty.");
+    }
+    for (EdgeUpdate update : updates) {
+      if (update == null || update.parentName() == null || update.childName() == null) {
+        throw new InvalidInputException("The parent and child name can't be empty.");
+      }
+      if (!update.isDelete() && update.latency() < 0) {
+        throw new InvalidInputException("The latency can't be negative: " + update.latency());
+      }
+    }
+    while (true) {
+      GraphSnapshot current = this.currentSnapshot();
+      CompactGraph graph = current.graph().withUpdates(updates);
+      List<EdgeChange> changes = edgeChanges(current.graph(), graph, updates);
+      if (changes.isEmpty()) {
+        return current.version();
+      }
+      AllPairsLatencies allPairs = null;
+      if (graph.nodeCount() <= this.options.allPairsNodeLimit()) {
+        allPairs =
+            current.allPairs() == null
+                ? AllPairsLatencies.compute(graph, ForkJoinPool.commonPool())
+                : current.allPairs().update(graph, changes, ForkJoinPool.commonPool());
+      }
+      GraphSnapshot updated =
+          new GraphSnapshot(
+              current.version() + 1,
+              graph,
+              allPairs,
+              current.components().update(graph, changes),
+              null);
+      // Fails only if a reload was published in the meantime, then the updates go onto that graph.
+      if (this.snapshot.compareAndSet(current, updated)) {
+        if (changes.stream().anyMatch(c -> c.isInsert() || c.isDelete())) {
+          this.queryCache.invalidate(updated.version());
+        } else {
+          this.queryCache.invalidateLatencies(updated.version());
+        }
+        if (this.hierarchyExecutor != null
+            && this.hierarchyRebuildQueued.compareAndSet(false, true)) {
+          this.hierarchyExecutor.execute(this::attachHierarchy);
+        }
+        return updated.version();
+      }
     }
   }
 
+  // The hierarchy takes much longer than the update, so it is built afterwards and added to the
+  // snapshot without a new version, the results don't change. At most one rebuild runs and at most
+  // one more is queued: updates during a rebuild queue the next one, which takes the latest graph
+  // once it starts, and all updates before that only share it. The hierarchy of an updated graph
+  // is built in memory and not taken from the source, which may persist it (see
+  // ContractionHierarchyFile), an index of a graph which only lives until the next update or
+  // reload is not worth writing.
+  private void attachHierarchy() {
+    this.hierarchyRebuildQueued.set(false);
+    GraphSnapshot latest = this.snapshot.get();
+    if (latest.hierarchy() != null) {
+      return;
+    }
+    ContractionHierarchy hierarchy = ContractionHierarchy.build(latest.graph());
+    this.snapshot.compareAndSet(latest, latest.withHierarchy(hierarchy));
+  }
+
+  // The edges which really changed, once per edge with the latency before and after all updates.
+  private static List<EdgeChange> edgeChanges(
+      CompactGraph oldGraph, CompactGraph newGraph, List<EdgeUpdate> updates) {
+    List<EdgeChange> changes = new ArrayList<>();
+    Set<Long> seen = new HashSet<>();
+    for (EdgeUpdate update : updates) {
+      int source = newGraph.idOf(update.parentName());
+      int target = newGraph.idOf(update.childName());
+      if (source < 0 || target < 0 || !seen.add(((long) source << 32) | target)) {
+        continue;
+      }
+      int oldLatency = EdgeChange.NO_EDGE;
+      if (source < oldGraph.nodeCount() && target < oldGraph.nodeCount()) {
+        int edge = oldGraph.findEdge(source, target);
+        oldLatency = edge < 0 ? EdgeChange.NO_EDGE : oldGraph.latency(edge);
+      }
+      int edge = newGraph.findEdge(source, target);
+      int newLatency = edge < 0 ? EdgeChange.NO_EDGE : newGraph.latency(edge);
+      if (oldLatency != newLatency) {
+        changes.add(new EdgeChange(source, target, oldLatency, newLatency));
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * @return the version of the current graph, 0 in case no graph is loaded yet.
+   */
+  public long graphVersion() {
+    GraphSnapshot current = this.snapshot.get();
+    return current == null ? 0 : current.version();
+  }
+
+  /**
+   * @return hits, misses and size of the query result cache.
+   */
+  public QueryCacheStats queryCacheStats() {
+    return this.queryCache.stats();
+  }
+
+  /**
+   * @return the metrics of the queries, which can also be turned on and off there.
+   */
+  public QueryMetrics queryMetrics() {
+    return this.metrics;
+  }
+
+  /**
+   * @return the precomputed shortest latencies of the current graph with their build time and
+   *     memory footprint, null in case they are not precomputed.
+   */
+  public AllPairsLatencies allPairsLatencies() {
+    GraphSnapshot current = this.snapshot.get();
+    return current == null ? null : current.allPairs();
+  }
+
+  /**
+   * @return the strongly connected components of the current graph and their condensation, null in
+   *     case no graph is loaded yet.
+   */
+  public StronglyConnectedComponents stronglyConnectedComponents() {
+    GraphSnapshot current = this.snapshot.get();
+    return current == null ? null : current.components();
+  }
+
+  /**
+   * @return the contraction hierarchy of the current graph, null in case it is disabled or not
+   *     built yet after an edge update.
+   */
+  public ContractionHierarchy contractionHierarchy() {
+    GraphSnapshot current = this.snapshot.get();
+    return current == null ? null : current.hierarchy();
+  }
+
+  // Builds the graph and everything derived from it, the version is assigned when it is published.
+  private GraphSnapshot load(String absolutePathAndFileName) {
+    CompactGraph graph = this.graphService.constructCompactGraphFromFile(absolutePathAndFileName);
+    AllPairsLatencies allPairs = null;
+    if (graph.nodeCount() <= this.options.allPairsNodeLimit()) {
+      allPairs = AllPairsLatencies.compute(graph, ForkJoinPool.commonPool());
+    }
+    ContractionHierarchy hierarchy = null;
+    if (this.options.contractionHierarchy() != null) {
+      hierarchy = this.options.contractionHierarchy().hierarchyOf(graph);
+    }
+    return new GraphSnapshot(
+        0, graph, allPairs, StronglyConnectedComponents.compute(graph), hierarchy);
+  }
+
+  private long publish(GraphSnapshot loaded, long sequence) {
+    synchronized (this.publishLock) {
+      if (sequence < this.publishedReload) {
+        return this.snapshot.get().version();
+      }
+      this.publishedReload = sequence;
+      GraphSnapshot published =
+          this.snapshot.updateAndGet(
+              old -> loaded.withVersion(old == null ? 1 : old.version() + 1));
+      this.queryCache.invalidate(published.version());
+      return published.version();
+    }
+  }
+
+  // Every query reads the snapshot exactly once, so it works on the same graph from start to end.
+  private GraphSnapshot currentSnapshot() {
+    GraphSnapshot current = this.snapshot.get();
+    if (current == null) {
+      throw new IllegalStateException("The graph needs to be initialized first.");
+    }
+    return current;
+  }
+
+  private GraphSnapshot currentSnapshot(QueryRecording recording) {
+    GraphSnapshot current = this.currentSnapshot();
+    if (recording != null) {
+      recording.graphVersion = current.version();
+    }
+    return current;
+  }
+
+  @FunctionalInterface
+  private interface Query {
+    /**
+     * @return the result or {@link #NO_TRACE}.
+     */
+    long run(CompactGraph graph);
+  }
+
+  private int cachedQuery(GraphSnapshot current, QueryCache.QueryKey key, Query query) {
+    long result = QueryCache.MISS;
+    if (this.queryCache.isEnabled()) {
+      result = this.queryCache.get(current.version(), key);
+    }
+    if (result == QueryCache.MISS) {
+      result = query.run(current.graph());
+      if (this.queryCache.isEnabled()) {
+        this.queryCache.put(current.version(), key, result);
+      }
+    }
+    if (result == NO_TRACE) {
+      throw new NoTraceFoundException();
+    }
+    return Math.toIntExact(result);
+  }
+
+  private static TraversalBudget startBudget(QueryBudget budget) {
+    if (budget == null) {
+      throw new InvalidInputException("The query budget can't be empty.");
+    }
+    return TraversalBudget.start(budget);
+  }
+
+  private int nodeId(CompactGraph graph, String name) {
+    int node = graph.idOf(name);
+    if (node < 0) {
+      throw new NoTraceFoundException();
+    }
+    return node;
+  }
+
   /**
    * Method to retrieve the average latency of a given path.
    *
@@ -39,24 +431,31 @@ public class TraverseService {
    * @throws NoTraceFoundException in case the requested path can't be found in the graph.
    */
   public int averageLatencyOfPath(List<String> path) {
-    GraphNode startingNode = null;
-    GraphNode currentNode = null;
-    int averageLatency = 0;
-    for (String p : path) {
-      if (startingNode == null) {
-        startingNode = this.lookupMap.get(p);
-        currentNode = startingNode;
-      } else {
-        Map.Entry<GraphNode, Integer> childNode = currentNode.getDependentTreeNodeByName(p);
-        if (childNode == null) {
-          throw new NoTraceFoundException();
-        } else {
-          averageLatency += childNode.getValue();
-          currentNode = childNode.getKey();
-        }
+    QueryRecording recording =
+        this.metrics.start(TraverseQuery.AVERAGE_LATENCY_OF_PATH, path, null, 0, 0);
+    try {
+      GraphSnapshot current = this.currentSnapshot(recording);
+      long latency =
+          new PathValidator(current.version(), current.graph()).latencyOfPath(path);
+      if (latency == PathValidator.NO_TRACE) {
+        throw new NoTraceFoundException();
       }
+      QueryRecording.count(recording, path.size(), path.size() - 1, 0);
+      return Math.toIntExact(latency);
+    } finally {
+      this.metrics.finish(recording);
     }
-    return averageLatency;
+  }
+
+  /**
+   * High volume alternative to {@link #averageLatencyOfPath(List)} which returns {@link
+   * PathValidator#NO_TRACE} instead of throwing and works on resolved node ids.
+   *
+   * @return a validator for the current graph.
+   */
+  public PathValidator pathValidator() {
+    GraphSnapshot current = this.currentSnapshot();
+    return new PathValidator(current.version(), current.graph());
   }
 
   /**
@@ -65,66 +464,503 @@ public class TraverseService {
    * @param startNode the start node name
    * @param endNode the end node name
    * @param maxHops the maximal amount of hops allowed to take. A - B - C would be 2 hops.
+   * @param onlyExactHops if true only traces with exactly maxHops hops are counted.
    * @return the number of permutations possible given the restraints we have.
+   * @throws NoTraceFoundException in case the start or end node is not part of the graph.
+   * @throws ArithmeticException in case the number of traces is too big to be represented.
    */
   public int findNumberOfPossibleTraces(
       String startNode, String endNode, int maxHops, boolean onlyExactHops) {
+    return this.findNumberOfPossibleTraces(
+        startNode, endNode, maxHops, onlyExactHops, this.options.queryBudget());
+  }
+
+  /**
+   * Same as {@link #findNumberOfPossibleTraces(String, String, int, boolean)} within the given
+   * budget instead of the one of the {@link TraverseOptions}.
+   *
+   * @param budget the budget of this query.
+   * @throws QueryBudgetExceededException in case the query exceeds its budget, with the traces
+   *     counted so far as partial count.
+   */
+  public int findNumberOfPossibleTraces(
+      String startNode,
+      String endNode,
+      int maxHops,
+      boolean onlyExactHops,
+      QueryBudget budget) {
     if (startNode == null || endNode == null) {
       throw new InvalidInputException("The start and end node can't be empty.");
     }
     if (maxHops < 1) {
       throw new InvalidInputException("There can't be a trace if there is no hops are allowed.");
     }
-    GraphNode gn = this.lookupMap.get(startNode);
-    int possiblePaths = 0;
-
-    Queue<GraphNode> nodeQueue = new LinkedList<>();
-    gn.setHops(0);
-    nodeQueue.add(gn);
-    while (!nodeQueue.isEmpty()) {
-      GraphNode currentNode = nodeQueue.poll();
-      if (currentNode.getHops() <= maxHops) {
-        if (currentNode.getName().equals(endNode)
-            && currentNode.getHops() > 0
-            && (onlyExactHops
-                ? currentNode.getHops() == maxHops
-                : currentNode.getHops() <= maxHops)) {
-          possiblePaths++;
+    TraversalBudget traversal = startBudget(budget);
+    QueryRecording recording =
+        this.metrics.start(
+            TraverseQuery.NUMBER_OF_TRACES, startNode, endNode, maxHops, onlyExactHops ? 1 : 0);
+    try {
+      GraphSnapshot current = this.currentSnapshot(recording);
+      return this.cachedQuery(
+          current,
+          new QueryCache.QueryKey(
+              QueryCache.QueryType.NUMBER_OF_TRACES, startNode, endNode, maxHops, onlyExactHops),
+          graph -> {
+            int start = this.nodeId(graph, startNode);
+            int end = this.nodeId(graph, endNode);
+            if (!current.components().mayReach(start, end)) {
+              return 0;
+            }
+            return TraceCounter.countTraces(
+                graph,
+                start,
+                end,
+                current.components().nodesTowards(start, end),
+                maxHops,
+                onlyExactHops,
+                traversal,
+                recording);
+          });
+    } finally {
+      this.metrics.finish(recording);
+    }
+  }
+
+  /**
+   * Method to find the lowest latency of a trace from a start to an end node. The trace needs at
+   * least one hop, so if start and end are the same the shortest cycle is returned (B -> B).
+   *
+   * @param startName the start node name
+   * @param endName the end node name
+   * @return the lowest latency sum of all traces from the start to the end node.
+   * @throws NoTraceFoundException in case there is no trace from the start to the end node.
+   */
+  public Integer findShortestLatencyForPath(String startName, String endName) {
+    return this.findShortestLatencyForPath(startName, endName, this.options.queryBudget());
+  }
+
+  /**
+   * Same as {@link #findShortestLatencyForPath(String, String)} within the given budget instead of
+   * the one of the {@link TraverseOptions}.
+   *
+   * @param budget the budget of this query.
+   * @throws QueryBudgetExceededException in case the query exceeds its budget.
+   */
+  public Integer findShortestLatencyForPath(
+      String startName, String endName, QueryBudget budget) {
+    if (startName == null || endName == null) {
+      throw new InvalidInputException("The start and end node can't be empty.");
+    }
+    TraversalBudget traversal = startBudget(budget);
+    QueryRecording recording =
+        this.metrics.start(TraverseQuery.SHORTEST_LATENCY, startName, endName, 0, 0);
+    try {
+      GraphSnapshot current = this.currentSnapshot(recording);
+      if (current.allPairs() != null) {
+        CompactGraph graph = current.graph();
+        long latency =
+            current
+                .allPairs()
+                .latency(this.nodeId(graph, startName), this.nodeId(graph, endName));
+        if (latency == ShortestLatencySearch.UNREACHABLE) {
+          throw new NoTraceFoundException();
         }
-        for (Map.Entry<GraphNode, Integer> childNode : currentNode.getDependentNodes().values()) {
-          // The copy constructor is important because if we keep using the same object the hops
-          // information will be updated for all objects of the same reference in the queue.
-          // In the copy constructor we are NOT making a deep copy of the dependent array as this
-          // would be unnecessary. We are referencing the same HashMap and only copying the name and
-          // the hops field. So that we can have multiple nodes of the same type in our queue with
-          // different hop values.
-          GraphNode newChildNode = new GraphNode(childNode.getKey());
-          newChildNode.setHops(currentNode.getHops() + 1);
-          nodeQueue.add(newChildNode);
+        if (latency != AllPairsLatencies.NOT_STORED) {
+          return (int) latency;
         }
       }
+      return this.cachedQuery(
+          current,
+          new QueryCache.QueryKey(
+              QueryCache.QueryType.SHORTEST_LATENCY, startName, endName, 0, false),
+          graph -> {
+            int start = this.nodeId(graph, startName);
+            int end = this.nodeId(graph, endName);
+            // Without this check an unreachable end costs a search of everything reachable.
+            if (!current.components().mayReach(start, end)) {
+              return NO_TRACE;
+            }
+            long latency = this.pointToPoint(current, start, end, traversal, recording);
+            return latency == ShortestLatencySearch.UNREACHABLE ? NO_TRACE : latency;
+          });
+    } finally {
+      this.metrics.finish(recording);
     }
-    return possiblePaths;
   }
 
-  public Integer findShortestLatencyForPath(String startName, String endName) {
-    Map<String, GraphNode> existingPaths =
-        this.findLatencyForPaths(startName, endName, MIN_NUMBER_OF_PATHS_TO_INVESTIGATE, null);
-    int minLatency = Integer.MAX_VALUE;
-    for (Map.Entry<String, GraphNode> e : existingPaths.entrySet()) {
-      if (e.getValue().getLatencySum() < minLatency) {
-        minLatency = e.getValue().getLatencySum();
+  /**
+   * Answers many shortest latency queries at once, see {@link #findShortestLatencies(List,
+   * Executor)}. The groups are run on the common pool.
+   *
+   * @param queries the queries to answer.
+   * @return the lowest latency for every query in the same order, null for queries without trace.
+   */
+  public List<Integer> findShortestLatencies(List<LatencyQuery> queries) {
+    return this.findShortestLatencies(queries, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Answers many shortest latency queries at once. The queries are grouped by start node and every
+   * group is answered by a single search from its start node to all other nodes, so a report from
+   * one gateway to all services costs one search instead of one per service. The groups run in
+   * parallel on the executor. A batch works on one graph, even if a reload happens in the meantime.
+   *
+   * @param queries the queries to answer.
+   * @param executor the executor to run the groups on.
+   * @return the lowest latency for every query in the same order, null for queries without trace
+   *     (also if the start or end node is not part of the graph).
+   * @throws ArithmeticException in case a latency is too big to be represented.
+   */
+  public List<Integer> findShortestLatencies(List<LatencyQuery> queries, Executor executor) {
+    return this.findShortestLatencies(queries, executor, this.options.queryBudget());
+  }
+
+  /**
+   * Same as {@link #findShortestLatencies(List, Executor)} within the given budget instead of the
+   * one of the {@link TraverseOptions}.
+   *
+   * @param budget the budget of this query.
+   * @throws QueryBudgetExceededException in case the query exceeds its budget.
+   */
+  public List<Integer> findShortestLatencies(
+      List<LatencyQuery> queries, Executor executor, QueryBudget budget) {
+    for (LatencyQuery query : queries) {
+      if (query == null || query.startName() == null || query.endName() == null) {
+        throw new InvalidInputException("The start and end node can't be empty.");
+      }
+    }
+    TraversalBudget traversal = startBudget(budget);
+    QueryRecording recording =
+        this.metrics.start(TraverseQuery.SHORTEST_LATENCIES, null, null, queries.size(), 0);
+    try {
+      return this.answerBatch(
+          this.currentSnapshot(recording), queries, executor, traversal, recording);
+    } finally {
+      this.metrics.finish(recording);
+    }
+  }
+
+  private List<Integer> answerBatch(
+      GraphSnapshot current,
+      List<LatencyQuery> queries,
+      Executor executor,
+      TraversalBudget traversal,
+      QueryRecording recording) {
+    CompactGraph graph = current.graph();
+    Integer[] results = new Integer[queries.size()];
+    // Query indices grouped by the start node, only queries which can have a trace at all.
+    Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < queries.size(); i++) {
+      int start = graph.idOf(queries.get(i).startName());
+      if (start >= 0 && graph.idOf(queries.get(i).endName()) >= 0) {
+        groups.computeIfAbsent(start, s -> new ArrayList<>()).add(i);
+      }
+    }
+    List<CompletableFuture<Void>> tasks = new ArrayList<>(groups.size());
+    for (Map.Entry<Integer, List<Integer>> group : groups.entrySet()) {
+      tasks.add(
+          CompletableFuture.runAsync(
+              () ->
+                  this.answerGroup(
+                      current,
+                      group.getKey(),
+                      group.getValue(),
+                      queries,
+                      results,
+                      traversal,
+                      recording),
+              executor));
+    }
+    try {
+      CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+    return Arrays.asList(results);
+  }
+
+  private void answerGroup(
+      GraphSnapshot current,
+      int start,
+      List<Integer> queryIndices,
+      List<LatencyQuery> queries,
+      Integer[] results,
+      TraversalBudget traversal,
+      QueryRecording recording) {
+    CompactGraph graph = current.graph();
+    // Without the precomputed matrix one search answers all queries of the group.
+    long[] latencies =
+        current.allPairs() == null
+            ? ShortestLatencySearch.shortestLatencies(graph, start, traversal, recording)
+            : null;
+    for (int i : queryIndices) {
+      int end = graph.idOf(queries.get(i).endName());
+      long latency = latencies == null ? current.allPairs().latency(start, end) : latencies[end];
+      if (latency == AllPairsLatencies.NOT_STORED) {
+        latency = this.pointToPoint(current, start, end, traversal, recording);
       }
+      results[i] =
+          latency == ShortestLatencySearch.UNREACHABLE ? null : Math.toIntExact(latency);
+    }
+  }
+
+  private long pointToPoint(
+      GraphSnapshot current,
+      int start,
+      int end,
+      TraversalBudget traversal,
+      QueryRecording recording) {
+    CompactGraph graph = current.graph();
+    // The hierarchy only knows paths between different nodes, not the cycles of start == end.
+    if (current.hierarchy() != null && start != end) {
+      return current.hierarchy().shortestLatency(start, end, traversal, recording);
+    }
+    if (this.options.bidirectionalSearch()) {
+      return ShortestLatencySearch.bidirectionalShortestLatency(
+          graph, start, end, traversal, recording);
     }
-    return minLatency;
+    return ShortestLatencySearch.shortestLatency(graph, start, end, traversal, recording);
   }
 
+  /**
+   * Method to count all traces from a start to an end node with a latency sum lower than the given
+   * limit. Cycles are allowed, so the same node can be part of a trace multiple times.
+   *
+   * @param startName the start node name
+   * @param endName the end node name
+   * @param maxLatencyIncluding the latency sum of a trace needs to be lower than this limit.
+   * @return the number of traces.
+   * @throws NoTraceFoundException in case the start or end node is not part of the graph.
+   * @throws ArithmeticException in case the number of traces is too big to be represented.
+   */
   public Integer findAllPathsWithLessThanLatency(
       String startName, String endName, int maxLatencyIncluding) {
-    Map<String, GraphNode> existingPaths =
-        this.findLatencyForPaths(
-            startName, endName, MIN_NUMBER_OF_PATHS_TO_INVESTIGATE, maxLatencyIncluding);
-    return existingPaths.size();
+    return this.findAllPathsWithLessThanLatency(
+        startName, endName, maxLatencyIncluding, this.options.queryBudget());
+  }
+
+  /**
+   * Same as {@link #findAllPathsWithLessThanLatency(String, String, int)} within the given budget
+   * instead of the one of the {@link TraverseOptions}.
+   *
+   * @param budget the budget of this query.
+   * @throws QueryBudgetExceededException in case the query exceeds its budget, with the traces
+   *     counted so far as partial count.
+   */
+  public Integer findAllPathsWithLessThanLatency(
+      String startName, String endName, int maxLatencyIncluding, QueryBudget budget) {
+    if (startName == null || endName == null) {
+      throw new InvalidInputException("The start and end node can't be empty.");
+    }
+    TraversalBudget traversal = startBudget(budget);
+    QueryRecording recording =
+        this.metrics.start(
+            TraverseQuery.TRACES_BELOW_LATENCY, startName, endName, maxLatencyIncluding, 0);
+    try {
+      GraphSnapshot current = this.currentSnapshot(recording);
+      return this.cachedQuery(
+          current,
+          new QueryCache.QueryKey(
+              QueryCache.QueryType.TRACES_BELOW_LATENCY,
+              startName,
+              endName,
+              maxLatencyIncluding,
+              false),
+          graph -> {
+            int start = this.nodeId(graph, startName);
+            int end = this.nodeId(graph, endName);
+            if (!current.components().mayReach(start, end)) {
+              return 0;
+            }
+            return LatencyBoundedCounter.countTraces(
+                graph,
+                start,
+                end,
+                current.components().nodesTowards(start, end),
+                maxLatencyIncluding,
+                traversal,
+                recording);
+          });
+    } finally {
+      this.metrics.finish(recording);
+    }
+  }
+
+  /**
+   * Method to find the k paths with the lowest latency from a start to an end node, ranked by their
+   * latency. Like for {@link #findShortestLatencyForPath(String, String)} a path needs at least one
+   * hop, so if start and end are the same the shortest cycles are returned.
+   *
+   * @param startName the start node name
+   * @param endName the end node name
+   * @param k the maximum number of paths to return.
+   * @param simplePathsOnly if true no node can be visited twice (except start == end), otherwise
+   *     the paths can contain cycles.
+   * @return up to k paths, the one with the lowest latency first. Empty in case there is no path.
+   * @throws NoTraceFoundException in case the start or end node is not part of the graph.
+   */
+  public List<RankedPath> findShortestPaths(
+      String startName, String endName, int k, boolean simplePathsOnly) {
+    return this.findShortestPaths(
+        startName, endName, k, simplePathsOnly, this.options.queryBudget());
+  }
+
+  /**
+   * Same as {@link #findShortestPaths(String, String, int, boolean)} within the given budget
+   * instead of the one of the {@link TraverseOptions}.
+   *
+   * @param budget the budget of this query.
+   * @throws QueryBudgetExceededException in case the query exceeds its budget.
+   */
+  public List<RankedPath> findShortestPaths(
+      String startName, String endName, int k, boolean simplePathsOnly, QueryBudget budget) {
+    if (startName == null || endName == null) {
+      throw new InvalidInputException("The start and end node can't be empty.");
+    }
+    if (k < 1) {
+      throw new InvalidInputException("At least one path needs to be requested.");
+    }
+    TraversalBudget traversal = startBudget(budget);
+    QueryRecording recording =
+        this.metrics.start(
+            TraverseQuery.SHORTEST_PATHS, startName, endName, k, simplePathsOnly ? 1 : 0);
+    try {
+      GraphSnapshot current = this.currentSnapshot(recording);
+      CompactGraph graph = current.graph();
+      int start = this.nodeId(graph, startName);
+      int end = this.nodeId(graph, endName);
+      if (!current.components().mayReach(start, end)) {
+        return List.of();
+      }
+      return simplePathsOnly
+          ? KShortestPaths.simplePaths(graph, start, end, k, traversal, recording)
+          : KShortestPaths.walks(graph, start, end, k, traversal, recording);
+    } finally {
+      this.metrics.finish(recording);
+    }
+  }
+
+  /**
+   * Method to find all services which are transitively called by the given services, directly or
+   * through any number of hops.
+   *
+   * @param serviceNames the names of the services to start from.
+   * @return the names of all downstream services. One of the given services is only contained if
+   *     it is downstream of itself or of another given service.
+   * @throws NoTraceFoundException in case one of the services is not part of the graph.
+   */
+  public Set<String> findDownstreamServices(Collection<String> serviceNames) {
+    return this.findDownstreamServices(serviceNames, this.options.queryBudget());
+  }
+
+  /**
+   * Same as {@link #findDownstreamServices(Collection)} within the given budget instead of the one
+   * of the {@link TraverseOptions}.
+   *
+   * @param budget the budget of this query.
+   * @throws QueryBudgetExceededException in case the query exceeds its budget.
+   */
+  public Set<String> findDownstreamServices(Collection<String> serviceNames, QueryBudget budget) {
+    TraversalBudget traversal = startBudget(budget);
+    QueryRecording recording =
+        this.metrics.start(TraverseQuery.DOWNSTREAM_SERVICES, serviceNames, null, 0, 0);
+    try {
+      CompactGraph graph = this.currentSnapshot(recording).graph();
+      return toNames(
+          graph,
+          Reachability.reachable(
+              graph, this.nodeIds(graph, serviceNames), traversal, recording));
+    } finally {
+      this.metrics.finish(recording);
+    }
+  }
+
+  /**
+   * Method to find all services which transitively call one of the given services, so all services
+   * which are affected if one of the given services is slow or down.
+   *
+   * @param serviceNames the names of the services to start from.
+   * @return the names of all upstream services. One of the given services is only contained if it
+   *     is upstream of itself or of another given service.
+   * @throws NoTraceFoundException in case one of the services is not part of the graph.
+   */
+  public Set<String> findImpactedServices(Collection<String> serviceNames) {
+    return this.findImpactedServices(serviceNames, this.options.queryBudget());
+  }
+
+  /**
+   * Same as {@link #findImpactedServices(Collection)} within the given budget instead of the one of
+   * the {@link TraverseOptions}.
+   *
+   * @param budget the budget of this query.
+   * @throws QueryBudgetExceededException in case the query exceeds its budget.
+   */
+  public Set<String> findImpactedServices(Collection<String> serviceNames, QueryBudget budget) {
+    TraversalBudget traversal = startBudget(budget);
+    QueryRecording recording =
+        this.metrics.start(TraverseQuery.IMPACTED_SERVICES, serviceNames, null, 0, 0);
+    try {
+      CompactGraph graph = this.currentSnapshot(recording).graph();
+      return toNames(
+          graph,
+          Reachability.reachable(
+              graph.reversed(), this.nodeIds(graph, serviceNames), traversal, recording));
+    } finally {
+      this.metrics.finish(recording);
+    }
+  }
+
+  /**
+   * Method to find all dependency cycles, so all groups of services which call each other directly
+   * or transitively. A service which calls itself is a cycle of its own.
+   *
+   * @return the services of every cycle sorted by their order in the graph, the cycles in
+   *     topological order (a cycle is listed before all cycles it calls).
+   */
+  public List<List<String>> findDependencyCycles() {
+    GraphSnapshot current = this.currentSnapshot();
+    StronglyConnectedComponents components = current.components();
+    List<List<String>> cycles = new ArrayList<>();
+    for (int c = 0; c < components.componentCount(); c++) {
+      if (components.isCycle(c)) {
+        List<String> names = new ArrayList<>();
+        for (int node : components.members(c)) {
+          names.add(current.graph().nameOf(node));
+        }
+        cycles.add(names);
+      }
+    }
+    return cycles;
+  }
+
+  private int[] nodeIds(CompactGraph graph, Collection<String> names) {
+    if (names == null || names.isEmpty()) {
+      throw new InvalidInputException("At least one service name is needed.");
+    }
+    int[] ids = new int[names.size()];
+    int i = 0;
+    for (String name : names) {
+      if (name == null) {
+        throw new InvalidInputException("The service name can't be empty.");
+      }
+      ids[i++] = this.nodeId(graph, name);
+    }
+    return ids;
+  }
+
+  private static Set<String> toNames(CompactGraph graph, long[] nodes) {
+    Set<String> names = new LinkedHashSet<>();
+    for (int w = 0; w < nodes.length; w++) {
+      long bits = nodes[w];
+      while (bits != 0) {
+        names.add(graph.nameOf((w << 6) + Long.numberOfTrailingZeros(bits)));
+        bits &= bits - 1;
+      }
+    }
+    return names;
   }
 
   /**
@@ -138,52 +974,46 @@ public class TraverseService {
    */
   public Map<String, GraphNode> findLatencyForPaths(
       String startName, String endName, int minPaths, Integer maxLatency) {
+    return this.findLatencyForPaths(
+        startName, endName, minPaths, maxLatency, this.options.queryBudget());
+  }
+
+  /**
+   * Same as {@link #findLatencyForPaths(String, String, int, Integer)} within the given budget
+   * instead of the one of the {@link TraverseOptions}.
+   *
+   * @param budget the budget of this query.
+   * @throws QueryBudgetExceededException in case the query exceeds its budget.
+   */
+  public Map<String, GraphNode> findLatencyForPaths(
+      String startName,
+      String endName,
+      int minPaths,
+      Integer maxLatency,
+      QueryBudget budget) {
     if (startName == null || endName == null) {
       throw new InvalidInputException("The start and end node can't be empty.");
     }
-    GraphNode gn = this.lookupMap.get(startName);
-    gn.setLatencySum(0);
-    Queue<GraphNode> nodeQueue = new LinkedList<>();
-    nodeQueue.add(gn);
-    Map<String, GraphNode> existingPaths = new HashMap<>();
-    Set<String> visited = new HashSet<>();
-    int iteration = 0;
-    int lastIterationAddedNewVisitNode = 0;
-    while (!nodeQueue.isEmpty()) {
-      GraphNode currentNode = nodeQueue.poll();
-      if (currentNode.getPreviousPath().isEmpty()) {
-        currentNode.addToPreviousPath(null, currentNode.getName());
-      }
-      iteration++;
-      if (!visited.contains(currentNode.getName())) {
-        visited.add(currentNode.getName());
-        lastIterationAddedNewVisitNode = iteration;
-      }
-      if (maxLatency == null || maxLatency > currentNode.getLatencySum()) {
-        if (currentNode.getName().equals(endName) && currentNode.getLatencySum() > 0) {
-          existingPaths.put(currentNode.previousPathAsString(), currentNode);
-        }
-        for (Map.Entry<GraphNode, Integer> childNode : currentNode.getDependentNodes().values()) {
-          GraphNode newChildNode = new GraphNode(childNode.getKey());
-          newChildNode.setLatencySum(currentNode.getLatencySum() + childNode.getValue());
-          newChildNode.addToPreviousPath(currentNode.getPreviousPath(), newChildNode.getName());
-          nodeQueue.add(newChildNode);
-        }
-      }
-      if (existingPaths.size() >= minPaths && iteration > lastIterationAddedNewVisitNode + 20) {
-        break; // Finding out if we really went all possible paths is not trivial.
-        // As a visited all does not mean we tried all permutations of the nodes.
-        // Neither does the first found path necessarily represent the fastest path.
-        // As a compromise I decided to wait at least to have X paths and check if any new node was
-        // added in the last 20 iterations. So if we have a graph like this A15->B15->C & B15->A &
-        // A1->D1->E1->F1->G1->H1->I1->J1->K1->L1->M1->N1->O1->P1->Q1->R1->S1->T1->U1->V1->C
-        // In this example we would generate plenty of paths like A->B->C (30 cost) Or A->B->A->B->C
-        // (60 cost) etc. But the cheapest way would not easily be found as the BFS algorithm slowly
-        // follows the long path. As we would keep adding new nodes to the visited set we would also
-        // increase the lastIterationAddedNewVisitNode which would prevent us from exiting too
-        // early. Please refer to the unit tests to validate this scenario.
-      }
-    }
-    return existingPaths;
+    TraversalBudget traversal = startBudget(budget);
+    QueryRecording recording =
+        this.metrics.start(
+            TraverseQuery.LATENCY_FOR_PATHS,
+            startName,
+            endName,
+            minPaths,
+            maxLatency == null ? -1 : maxLatency);
+    try {
+      CompactGraph graph = this.currentSnapshot(recording).graph();
+      return PathEnumerator.findPaths(
+          graph,
+          this.nodeId(graph, startName),
+          this.nodeId(graph, endName),
+          minPaths,
+          maxLatency,
+          traversal,
+          recording);
+    } finally {
+      this.metrics.finish(recording);
+    }
   }
 }
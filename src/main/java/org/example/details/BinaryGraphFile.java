@@ -0,0 +1,226 @@
+package org.example.details;
+
+import org.example.core.graph.CompactGraph;
+import org.example.core.graph.OffHeapCompactGraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary snapshot of a {@link CompactGraph}. Loading a snapshot does not parse anything, the arrays
+ * are copied in bulk out of the memory mapped file. All values are little endian:
+ *
+ * <pre>
+ *  0  int   magic "CGRF"
+ *  4  int   format version
+ *  8  int   node count (n)
+ * 12  int   edge count (e)
+ * 16  int   length of the name table in bytes
+ * 20  int   reserved
+ * 24  long  CRC32C of everything after the header
+ * 32  int[n + 1]  start of every name in the name table
+ *     int[n + 1]  offsets, the first edge of every node
+ *     int[e]      targets
+ *     int[e]      latencies
+ *     byte[]      name table, the UTF-8 encoded names one after the other
+ * </pre>
+ *
+ * The name table is stored last, so all int arrays stay 4 byte aligned.
+ */
+public final class BinaryGraphFile {
+  static final int MAGIC = 0x46524743; // "CGRF" read as little endian int
+  static final int FORMAT_VERSION = 1;
+  static final int HEADER_SIZE = 32;
+
+  private BinaryGraphFile() {}
+
+  /**
+   * Writes the graph to a snapshot file. The file is written next to the target and moved in place
+   * at the end, so a reader never sees a half written snapshot.
+   *
+   * @param graph the graph to write.
+   * @param file the snapshot file, an existing file is replaced.
+   */
+  public static void write(CompactGraph graph, Path file) {
+    int nodeCount = graph.nodeCount();
+    int edgeCount = graph.edgeCount();
+    byte[][] names = new byte[nodeCount][];
+    long nameBytes = 0;
+    for (int n = 0; n < nodeCount; n++) {
+      names[n] = graph.nameOf(n).getBytes(StandardCharsets.UTF_8);
+      nameBytes += names[n].length;
+    }
+    long size = nameTableStart(nodeCount, edgeCount) + nameBytes;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The graph is too big for a snapshot: " + size + " bytes");
+    }
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      buffer.position(HEADER_SIZE);
+      int nameStart = 0;
+      for (int n = 0; n < nodeCount; n++) {
+        buffer.putInt(nameStart);
+        nameStart += names[n].length;
+      }
+      buffer.putInt(nameStart);
+      for (int n = 0; n < nodeCount; n++) {
+        buffer.putInt(graph.firstEdge(n));
+      }
+      buffer.putInt(edgeCount);
+      for (int e = 0; e < edgeCount; e++) {
+        buffer.putInt(graph.target(e));
+      }
+      for (int e = 0; e < edgeCount; e++) {
+        buffer.putInt(graph.latency(e));
+      }
+      for (byte[] name : names) {
+        buffer.put(name);
+      }
+      CRC32C checksum = new CRC32C();
+      checksum.update(buffer.slice(HEADER_SIZE, (int) size - HEADER_SIZE));
+      buffer
+          .putInt(0, MAGIC)
+          .putInt(4, FORMAT_VERSION)
+          .putInt(8, nodeCount)
+          .putInt(12, edgeCount)
+          .putInt(16, (int) nameBytes)
+          .putInt(20, 0)
+          .putLong(24, checksum.getValue());
+      buffer.force();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    try {
+      Files.move(
+          temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Loads a snapshot written by {@link #write(CompactGraph, Path)}.
+   *
+   * @param file the snapshot file.
+   * @return the graph.
+   * @throws MalformedInputFormatException in case the file is not a snapshot, has another format
+   *     version or its checksum does not match.
+   */
+  public static CompactGraph read(Path file) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = mapVerified(channel);
+      int nodeCount = buffer.getInt(8);
+      int edgeCount = buffer.getInt(12);
+      int[] nameStarts = new int[nodeCount + 1];
+      int[] offsets = new int[nodeCount + 1];
+      int[] targets = new int[edgeCount];
+      int[] latencies = new int[edgeCount];
+      byte[] nameTable = new byte[buffer.getInt(16)];
+      buffer.position(HEADER_SIZE);
+      buffer.asIntBuffer().get(nameStarts).get(offsets).get(targets).get(latencies);
+      buffer.position((int) nameTableStart(nodeCount, edgeCount)).get(nameTable);
+
+      String[] names = new String[nodeCount];
+      for (int n = 0; n < nodeCount; n++) {
+        int start = nameStarts[n];
+        int end = nameStarts[n + 1];
+        if (start < 0 || end < start || end > nameTable.length) {
+          throw new MalformedInputFormatException();
+        }
+        names[n] = new String(nameTable, start, end - start, StandardCharsets.UTF_8);
+      }
+      return CompactGraph.fromArrays(names, offsets, targets, latencies);
+    } catch (IllegalArgumentException e) {
+      // The checksum matched but the content is still not a valid graph.
+      throw new MalformedInputFormatException();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Maps a snapshot written by {@link #write(CompactGraph, Path)} into an {@link
+   * OffHeapCompactGraph} without copying anything onto the heap. The graph reads straight from the
+   * page cache, the mapping stays valid after the file is closed or replaced.
+   *
+   * @param file the snapshot file.
+   * @return the graph.
+   * @throws MalformedInputFormatException in case the file is not a snapshot, has another format
+   *     version or its checksum does not match.
+   */
+  public static OffHeapCompactGraph map(Path file) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = mapVerified(channel);
+      int nodeCount = buffer.getInt(8);
+      int edgeCount = buffer.getInt(12);
+      int position = HEADER_SIZE;
+      IntBuffer nameStarts = intSection(buffer, position, nodeCount + 1);
+      position += 4 * (nodeCount + 1);
+      IntBuffer offsets = intSection(buffer, position, nodeCount + 1);
+      position += 4 * (nodeCount + 1);
+      IntBuffer targets = intSection(buffer, position, edgeCount);
+      position += 4 * edgeCount;
+      IntBuffer latencies = intSection(buffer, position, edgeCount);
+      position += 4 * edgeCount;
+      ByteBuffer nameTable = buffer.slice(position, buffer.getInt(16));
+      return OffHeapCompactGraph.wrap(nameStarts, nameTable, offsets, targets, latencies);
+    } catch (IllegalArgumentException e) {
+      throw new MalformedInputFormatException();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // Maps the whole file and checks header, size and checksum.
+  private static ByteBuffer mapVerified(FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+      throw new MalformedInputFormatException();
+    }
+    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    int nodeCount = buffer.getInt(8);
+    int edgeCount = buffer.getInt(12);
+    int nameBytes = buffer.getInt(16);
+    if (buffer.getInt(0) != MAGIC
+        || buffer.getInt(4) != FORMAT_VERSION
+        || nodeCount < 0
+        || edgeCount < 0
+        || nameBytes < 0
+        || size != nameTableStart(nodeCount, edgeCount) + nameBytes) {
+      throw new MalformedInputFormatException();
+    }
+    CRC32C checksum = new CRC32C();
+    checksum.update(buffer.slice(HEADER_SIZE, (int) size - HEADER_SIZE));
+    if (checksum.getValue() != buffer.getLong(24)) {
+      throw new MalformedInputFormatException();
+    }
+    return buffer;
+  }
+
+  private static long nameTableStart(long nodeCount, long edgeCount) {
+    return HEADER_SIZE + 4L * (2L * (nodeCount + 1) + 2L * edgeCount);
+  }
+
+  private static IntBuffer intSection(ByteBuffer buffer, int position, int ints) {
+    return buffer.slice(position, 4 * ints).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+  }
+}
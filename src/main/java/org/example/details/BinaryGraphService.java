@@ -0,0 +1,53 @@
+package org.example.details;
+
+import org.example.core.graph.CompactGraph;
+import org.example.core.graph.GraphNode;
+import org.example.core.graph.GraphService;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link GraphService} which loads the graph from a binary snapshot instead of parsing text, see
+ * {@link BinaryGraphFile}. Snapshots are created with {@link BinaryGraphFile#write(CompactGraph,
+ * Path)} from a graph which was built once from the text file.
+ */
+public class BinaryGraphService implements GraphService {
+
+  private final boolean offHeap;
+
+  public BinaryGraphService() {
+    this(false);
+  }
+
+  /**
+   * @param offHeap if true the snapshot is mapped into an {@link
+   *     org.example.core.graph.OffHeapCompactGraph} instead of being copied onto the heap.
+   */
+  public BinaryGraphService(boolean offHeap) {
+    this.offHeap = offHeap;
+  }
+
+  @Override
+  public Map<String, GraphNode> constructGraphFromFile(String filePathAndName) {
+    CompactGraph graph = this.constructCompactGraphFromFile(filePathAndName);
+    Map<String, GraphNode> lookupMap = new HashMap<>();
+    for (int n = 0; n < graph.nodeCount(); n++) {
+      lookupMap.put(graph.nameOf(n), new GraphNode(graph.nameOf(n)));
+    }
+    for (int n = 0; n < graph.nodeCount(); n++) {
+      GraphNode parent = lookupMap.get(graph.nameOf(n));
+      for (int e = graph.firstEdge(n); e < graph.endEdge(n); e++) {
+        parent.addDependentNode(lookupMap.get(graph.nameOf(graph.target(e))), graph.latency(e));
+      }
+    }
+    return lookupMap;
+  }
+
+  @Override
+  public CompactGraph constructCompactGraphFromFile(String filePathAndName) {
+    Path file = Path.of(filePathAndName);
+    return this.offHeap ? BinaryGraphFile.map(file) : BinaryGraphFile.read(file);
+  }
+}
@@ -0,0 +1,233 @@
+package org.example.details;
+
+import org.example.core.graph.CompactGraph;
+import org.example.core.traverse.ContractionHierarchy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.zip.CRC32C;
+
+/**
+ * Index file of a {@link ContractionHierarchy}, so the contraction only runs once per graph and not
+ * with every start. The fingerprint of the graph is stored with the hierarchy, {@link
+ * #cached(Path)} only uses a file which belongs to the loaded graph. All values are little endian:
+ *
+ * <pre>
+ *  0  int   magic "CHIX"
+ *  4  int   format version
+ *  8  int   node count (n)
+ * 12  int   forward edge count (f)
+ * 16  int   backward edge count (b)
+ * 20  int   core size (c)
+ * 24  int   shortcut count
+ * 28  int   reserved
+ * 32  long  fingerprint of the graph
+ * 40  long  CRC32C of everything after the header
+ * 48  long[f]     forward latencies
+ *     long[b]     backward latencies
+ *     int[n + 1]  forward offsets
+ *     int[f]      forward targets
+ *     int[n + 1]  backward offsets
+ *     int[b]      backward targets
+ *     int[c]      core nodes, ascending
+ * </pre>
+ *
+ * The long arrays are stored first, so all arrays stay aligned.
+ */
+public final class ContractionHierarchyFile {
+  static final int MAGIC = 0x58494843; // "CHIX" read as little endian int
+  static final int FORMAT_VERSION = 1;
+  static final int HEADER_SIZE = 48;
+
+  private ContractionHierarchyFile() {}
+
+  /**
+   * A source which reads the hierarchy from the file in case it belongs to the graph. Otherwise
+   * (no file, another graph or a broken file) the hierarchy is built and the file is replaced. The
+   * service only asks it for loaded graphs, so the file always holds the index of the graph file and
+   * not of a graph changed by edge updates.
+   *
+   * @param file the index file.
+   * @return the source for {@code TraverseOptions.withContractionHierarchy}.
+   */
+  public static ContractionHierarchy.Source cached(Path file) {
+    return graph -> {
+      if (Files.exists(file)) {
+        try {
+          ContractionHierarchy stored = read(file);
+          if (stored.matches(graph)) {
+            return stored;
+          }
+        } catch (MalformedInputFormatException e) {
+          // Built again and replaced below.
+        }
+      }
+      ContractionHierarchy built = ContractionHierarchy.build(graph);
+      write(built, file);
+      return built;
+    };
+  }
+
+  /**
+   * Writes the hierarchy to an index file. The file is written next to the target and moved in
+   * place at the end, so a reader never sees a half written index.
+   *
+   * @param hierarchy the hierarchy to write.
+   * @param file the index file, an existing file is replaced.
+   */
+  public static void write(ContractionHierarchy hierarchy, Path file) {
+    int nodeCount = hierarchy.nodeCount();
+    int[] forwardOffsets = hierarchy.forwardOffsets();
+    int[] forwardTargets = hierarchy.forwardTargets();
+    long[] forwardLatencies = hierarchy.forwardLatencies();
+    int[] backwardOffsets = hierarchy.backwardOffsets();
+    int[] backwardTargets = hierarchy.backwardTargets();
+    long[] backwardLatencies = hierarchy.backwardLatencies();
+    int[] coreNodes = hierarchy.coreNodes();
+    long size =
+        fileSize(nodeCount, forwardTargets.length, backwardTargets.length, coreNodes.length);
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The hierarchy is too big for a file: " + size + " bytes");
+    }
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      buffer.position(HEADER_SIZE);
+      buffer.asLongBuffer().put(forwardLatencies).put(backwardLatencies);
+      buffer.position(HEADER_SIZE + 8 * (forwardLatencies.length + backwardLatencies.length));
+      buffer
+          .asIntBuffer()
+          .put(forwardOffsets)
+          .put(forwardTargets)
+          .put(backwardOffsets)
+          .put(backwardTargets)
+          .put(coreNodes);
+      CRC32C checksum = new CRC32C();
+      checksum.update(buffer.slice(HEADER_SIZE, (int) size - HEADER_SIZE));
+      buffer
+          .putInt(0, MAGIC)
+          .putInt(4, FORMAT_VERSION)
+          .putInt(8, nodeCount)
+          .putInt(12, forwardTargets.length)
+          .putInt(16, backwardTargets.length)
+          .putInt(20, coreNodes.length)
+          .putInt(24, hierarchy.shortcutCount())
+          .putInt(28, 0)
+          .putLong(32, hierarchy.fingerprint())
+          .putLong(40, checksum.getValue());
+      buffer.force();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    try {
+      Files.move(
+          temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads an index file written by {@link #write(ContractionHierarchy, Path)}. It is not checked
+   * against a graph, see {@link ContractionHierarchy#matches(CompactGraph)}.
+   *
+   * @param file the index file.
+   * @return the hierarchy, its build time is the time it took to read it.
+   * @throws MalformedInputFormatException in case the file is not an index, has another format
+   *     version or its checksum does not match.
+   */
+  public static ContractionHierarchy read(Path file) {
+    long startNanos = System.nanoTime();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = mapVerified(channel);
+      int nodeCount = buffer.getInt(8);
+      int forwardEdges = buffer.getInt(12);
+      int backwardEdges = buffer.getInt(16);
+      long[] forwardLatencies = new long[forwardEdges];
+      long[] backwardLatencies = new long[backwardEdges];
+      int[] forwardOffsets = new int[nodeCount + 1];
+      int[] forwardTargets = new int[forwardEdges];
+      int[] backwardOffsets = new int[nodeCount + 1];
+      int[] backwardTargets = new int[backwardEdges];
+      int[] coreNodes = new int[buffer.getInt(20)];
+      buffer.position(HEADER_SIZE);
+      buffer.asLongBuffer().get(forwardLatencies).get(backwardLatencies);
+      buffer.position(HEADER_SIZE + 8 * (forwardEdges + backwardEdges));
+      buffer
+          .asIntBuffer()
+          .get(forwardOffsets)
+          .get(forwardTargets)
+          .get(backwardOffsets)
+          .get(backwardTargets)
+          .get(coreNodes);
+      return ContractionHierarchy.fromArrays(
+          buffer.getLong(32),
+          coreNodes,
+          forwardOffsets,
+          forwardTargets,
+          forwardLatencies,
+          backwardOffsets,
+          backwardTargets,
+          backwardLatencies,
+          buffer.getInt(24),
+          Duration.ofNanos(System.nanoTime() - startNanos));
+    } catch (IllegalArgumentException e) {
+      // The checksum matched but the content is still not a valid hierarchy.
+      throw new MalformedInputFormatException();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // Maps the whole file and checks header, size and checksum.
+  private static ByteBuffer mapVerified(FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+      throw new MalformedInputFormatException();
+    }
+    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    int nodeCount = buffer.getInt(8);
+    int forwardEdges = buffer.getInt(12);
+    int backwardEdges = buffer.getInt(16);
+    int coreSize = buffer.getInt(20);
+    if (buffer.getInt(0) != MAGIC
+        || buffer.getInt(4) != FORMAT_VERSION
+        || nodeCount < 0
+        || forwardEdges < 0
+        || backwardEdges < 0
+        || coreSize < 0
+        || size != fileSize(nodeCount, forwardEdges, backwardEdges, coreSize)) {
+      throw new MalformedInputFormatException();
+    }
+    CRC32C checksum = new CRC32C();
+    checksum.update(buffer.slice(HEADER_SIZE, (int) size - HEADER_SIZE));
+    if (checksum.getValue() != buffer.getLong(40)) {
+      throw new MalformedInputFormatException();
+    }
+    return buffer;
+  }
+
+  private static long fileSize(
+      long nodeCount, long forwardEdges, long backwardEdges, long coreSize) {
+    return HEADER_SIZE
+        + 12L * (forwardEdges + backwardEdges)
+        + 8L * (nodeCount + 1)
+        + 4L * coreSize;
+  }
+}
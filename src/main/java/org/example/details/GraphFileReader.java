@@ -1,20 +1,41 @@
 package org.example.details;
 
+import org.example.core.graph.GraphEdgeConsumer;
 import org.example.core.graph.GraphReader;
 import org.example.core.graph.GraphTuple;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Here are all the details about the file format contained. If we want to switch the format in how
  * the graph nodes are stored we just have to touch this file.
+ *
+ * <p>Two formats are supported. The original one where every tuple is two single character names
+ * followed by the latency, separated by a comma ({@code AB5, BC4}). And the edge list format with
+ * one edge per line and names of any length ({@code checkout-api->payment-api:12}). The format is
+ * detected once by looking for an arrow in the first tuple, the whole file then has to be in this
+ * format. Both entry points, the list and the stream, parse a file into the same tuples.
  */
 public class GraphFileReader implements GraphReader {
 
+  // A single mapping can't be bigger than 2GB, so bigger files are mapped window by window.
+  private static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+  private static final int FORMAT_DETECTION_SIZE = 64 * 1024;
+  private static final String ARROW = "->";
+  // The whitespace of isWhitespace, the stream ignores nothing else.
+  private static final String WHITESPACE = "[ \\t\\r\\n]*";
+
   @Override
   public List<GraphTuple> getGraphTuplesForFile(String fileNameAndPath) {
     List<String> graphTuplesAsString = this.readFileContentAsList(fileNameAndPath);
@@ -22,27 +43,469 @@ public class GraphFileReader implements GraphReader {
     if (graphTuplesAsString == null || graphTuplesAsString.isEmpty()) {
       throw new MalformedInputFormatException();
     }
+    String first = graphTuplesAsString.get(0);
+    boolean edgeLines = first != null && first.contains(ARROW);
+    Map<String, String> names = new HashMap<>();
     for (String s : graphTuplesAsString) {
-      if (s == null || s.length() < 3 || !Character.isDigit(s.charAt(2))) {
+      if (s == null) {
+        throw new MalformedInputFormatException();
+      }
+      if (edgeLines) {
+        graphTuples.add(toGraphTupleFromEdgeLine(s, names));
+        continue;
+      }
+      // A name is one char, a character outside of the BMP is two and can't be a name.
+      if (s.length() < 3
+          || isWhitespace(s.charAt(0))
+          || isWhitespace(s.charAt(1))
+          || Character.isSurrogate(s.charAt(0))
+          || Character.isSurrogate(s.charAt(1))
+          || !Character.isDigit(s.charAt(2))) {
         throw new MalformedInputFormatException();
       }
       GraphTuple graphTuple =
           new GraphTuple(
-              String.valueOf(s.charAt(0)),
-              String.valueOf(s.charAt(1)),
-              Integer.valueOf(s.substring(2)));
+              String.valueOf(s.charAt(0)), String.valueOf(s.charAt(1)), parseLatency(s, 2));
       graphTuples.add(graphTuple);
     }
     return graphTuples;
   }
 
+  // Same rules as the EdgeLineParser: whitespace around the names and before the latency is
+  // ignored, a name can't be empty.
+  private static GraphTuple toGraphTupleFromEdgeLine(String s, Map<String, String> names) {
+    int arrow = s.indexOf(ARROW);
+    int colon = s.indexOf(':', arrow + ARROW.length());
+    if (arrow < 0 || colon < 0) {
+      throw new MalformedInputFormatException();
+    }
+    String parentName = trimName(s, 0, arrow);
+    String childName = trimName(s, arrow + ARROW.length(), colon);
+    int digits = colon + 1;
+    while (digits < s.length() && (s.charAt(digits) == ' ' || s.charAt(digits) == '\t')) {
+      digits++;
+    }
+    return new GraphTuple(
+        names.computeIfAbsent(parentName, n -> n),
+        names.computeIfAbsent(childName, n -> n),
+        parseLatency(s, digits));
+  }
+
+  private static String trimName(String s, int from, int to) {
+    while (from < to && isWhitespace(s.charAt(from))) {
+      from++;
+    }
+    while (to > from && isWhitespace(s.charAt(to - 1))) {
+      to--;
+    }
+    String name = s.substring(from, to);
+    if (name.isEmpty() || name.indexOf(',') >= 0) {
+      throw new MalformedInputFormatException();
+    }
+    return name;
+  }
+
+  // Only digits up to the end, the latency has to fit into an int.
+  private static int parseLatency(String s, int from) {
+    if (from == s.length()) {
+      throw new MalformedInputFormatException();
+    }
+    for (int i = from; i < s.length(); i++) {
+      if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+        throw new MalformedInputFormatException();
+      }
+    }
+    try {
+      return Integer.parseInt(s, from, s.length(), 10);
+    } catch (NumberFormatException e) {
+      throw new MalformedInputFormatException();
+    }
+  }
+
+  @Override
+  public void streamGraphTuplesForFile(String fileNameAndPath, GraphEdgeConsumer consumer) {
+    this.streamGraphTuplesForFile(fileNameAndPath, consumer, DEFAULT_CHUNK_SIZE);
+  }
+
+  void streamGraphTuplesForFile(String fileNameAndPath, GraphEdgeConsumer consumer, int chunkSize) {
+    ContentParser parser;
+    try (FileChannel channel =
+        FileChannel.open(Path.of(fileNameAndPath), StandardOpenOption.READ)) {
+      long size = channel.size();
+      ByteBuffer head =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, FORMAT_DETECTION_SIZE));
+      parser = isEdgeLineFormat(head) ? new EdgeLineParser(consumer) : new TupleParser(consumer);
+      for (long position = 0; position < size; position += chunkSize) {
+        long length = Math.min(chunkSize, size - position);
+        parser.parse(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    parser.finish();
+  }
+
+  // Looks for an arrow in the first tuple, which ends at the first comma or line break. Whitespace
+  // and empty lines before it are skipped, like the list strips the content.
+  private static boolean isEdgeLineFormat(ByteBuffer buffer) {
+    int start = buffer.position();
+    while (start < buffer.limit() && isWhitespace(buffer.get(start))) {
+      start++;
+    }
+    for (int i = start; i < buffer.limit() - 1; i++) {
+      byte b = buffer.get(i);
+      if (b == ',' || b == '\n') {
+        return false;
+      }
+      if (b == '-' && buffer.get(i + 1) == '>') {
+        return true;
+      }
+    }
+    return false;
+  }
+
   List<String> readFileContentAsList(String fileNameAndPath) {
     try {
       Path filePath = Path.of(fileNameAndPath);
-      String content = Files.readString(filePath);
-      return new ArrayList<>(List.of(content.split(", ")));
+      String content = strip(Files.readString(filePath));
+      // Like the stream, the edge list format is one edge per line and a comma is no separator.
+      String first = content.split("[,\\n]", 2)[0];
+      boolean edgeLines = first.contains(ARROW);
+      String separator =
+          edgeLines ? WHITESPACE + "\\n" + WHITESPACE : WHITESPACE + "," + WHITESPACE;
+      // An empty tuple at the end is kept, so a trailing comma is malformed like in the stream.
+      return new ArrayList<>(List.of(content.split(separator, -1)));
+    } catch (CharacterCodingException e) {
+      // Not UTF-8, the stream fails the same way.
+      throw new MalformedInputFormatException();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Parses the tuples byte by byte directly from the (mapped) file content. The parser keeps its
+   * state between two calls of {@link #parse(ByteBuffer)}, so a tuple can be split across two
+   * windows of the file. Between the tuples a comma is expected, whitespace is ignored.
+   */
+  private interface ContentParser {
+    void parse(ByteBuffer buffer);
+
+    void finish();
+  }
+
+  private static final class TupleParser implements ContentParser {
+    private static final int START_OF_TUPLE = 0;
+    private static final int PARENT = 1;
+    private static final int CHILD = 2;
+    private static final int FIRST_DIGIT = 3;
+    private static final int DIGITS = 4;
+    private static final int END_OF_TUPLE = 5;
+
+    // The names are only one character long, so we can reuse the same String for every occurrence
+    // of an ASCII name. A name can be any char, in UTF-8 it is up to three bytes long.
+    private static final String[] NAMES = new String[128];
+
+    static {
+      for (int c = 0; c < NAMES.length; c++) {
+        NAMES[c] = String.valueOf((char) c);
+      }
+    }
+
+    private final GraphEdgeConsumer consumer;
+    private int state = START_OF_TUPLE;
+    private char parent;
+    private char child;
+    private int latency;
+    // The char of the name which is decoded, its lowest value and the bytes which are still missing.
+    private int decoded;
+    private int minimum;
+    private int missingBytes;
+
+    private TupleParser(GraphEdgeConsumer consumer) {
+      this.consumer = consumer;
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+      while (buffer.hasRemaining()) {
+        byte b = buffer.get();
+        switch (state) {
+          case START_OF_TUPLE -> {
+            if (!isWhitespace(b)) {
+              state = PARENT;
+              this.parent(b);
+            }
+          }
+          case PARENT -> this.parent(b);
+          case CHILD -> {
+            if (this.decode(b)) {
+              child = (char) decoded;
+              state = FIRST_DIGIT;
+            }
+          }
+          case FIRST_DIGIT -> {
+            latency = digit(b);
+            state = DIGITS;
+          }
+          case DIGITS -> {
+            if (b >= '0' && b <= '9') {
+              if (latency > (Integer.MAX_VALUE - (b - '0')) / 10) {
+                throw new MalformedInputFormatException();
+              }
+              latency = latency * 10 + (b - '0');
+            } else {
+              this.emit();
+              state = END_OF_TUPLE;
+              this.endOfTuple(b);
+            }
+          }
+          default -> this.endOfTuple(b);
+        }
+      }
+    }
+
+    @Override
+    public void finish() {
+      if (state == DIGITS) {
+        this.emit();
+      } else if (state != END_OF_TUPLE) {
+        // Either nothing was read at all, the file ends with a separator or in the middle of a tuple.
+        throw new MalformedInputFormatException();
+      }
+    }
+
+    private void endOfTuple(byte b) {
+      if (b == ',') {
+        state = START_OF_TUPLE;
+      } else if (!isWhitespace(b)) {
+        throw new MalformedInputFormatException();
+      }
+    }
+
+    private void parent(byte b) {
+      if (this.decode(b)) {
+        parent = (char) decoded;
+        state = CHILD;
+      }
+    }
+
+    private void emit() {
+      consumer.accept(name(parent), name(child), latency);
+    }
+
+    private static String name(char c) {
+      return c < NAMES.length ? NAMES[c] : String.valueOf(c);
+    }
+
+    /**
+     * Decodes the next UTF-8 byte of a name. Like in the list, a name is a single char: characters
+     * outside of the BMP (four bytes), invalid UTF-8, whitespace and the comma are malformed.
+     *
+     * @return true if the byte completed the char, which is then in decoded.
+     */
+    private boolean decode(byte b) {
+      if (missingBytes == 0) {
+        if (b >= 0) {
+          if (isWhitespace(b) || b == ',') {
+            throw new MalformedInputFormatException();
+          }
+          decoded = b;
+          return true;
+        }
+        if ((b & 0xE0) == 0xC0) {
+          decoded = b & 0x1F;
+          minimum = 0x80;
+          missingBytes = 1;
+        } else if ((b & 0xF0) == 0xE0) {
+          decoded = b & 0x0F;
+          minimum = 0x800;
+          missingBytes = 2;
+        } else {
+          throw new MalformedInputFormatException();
+        }
+        return false;
+      }
+      if ((b & 0xC0) != 0x80) {
+        throw new MalformedInputFormatException();
+      }
+      decoded = (decoded << 6) | (b & 0x3F);
+      if (--missingBytes > 0) {
+        return false;
+      }
+      // Overlong encodings and surrogates are not valid UTF-8.
+      if (decoded < minimum || Character.isSurrogate((char) decoded)) {
+        throw new MalformedInputFormatException();
+      }
+      return true;
+    }
+
+    private static int digit(byte b) {
+      if (b < '0' || b > '9') {
+        throw new MalformedInputFormatException();
+      }
+      return b - '0';
+    }
+
+  }
+
+  /**
+   * Parses the edge list format, one {@code parent->child:latency} edge per line. Empty lines and
+   * whitespace around the names are ignored. The name bytes are collected in a reusable buffer and
+   * turned into Strings by the {@link NameInterner}, so a name which occurs many times in the file
+   * is only created once.
+   */
+  private static final class EdgeLineParser implements ContentParser {
+    private static final int START_OF_LINE = 0;
+    private static final int PARENT = 1;
+    private static final int CHILD = 2;
+    private static final int FIRST_DIGIT = 3;
+    private static final int DIGITS = 4;
+    private static final int END_OF_LINE = 5;
+
+    private final GraphEdgeConsumer consumer;
+    private final NameInterner names = new NameInterner();
+    private byte[] token = new byte[64];
+    private int tokenLength;
+    private int state = START_OF_LINE;
+    private int edgeCount;
+    private String parent;
+    private int latency;
+
+    private EdgeLineParser(GraphEdgeConsumer consumer) {
+      this.consumer = consumer;
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+      while (buffer.hasRemaining()) {
+        byte b = buffer.get();
+        switch (state) {
+          case START_OF_LINE -> {
+            if (!isWhitespace(b)) {
+              tokenLength = 0;
+              this.appendToName(b);
+              state = PARENT;
+            }
+          }
+          case PARENT -> {
+            if (b == '>' && tokenLength > 0 && token[tokenLength - 1] == '-') {
+              // The '-' belongs to the arrow and not to the name.
+              tokenLength--;
+              parent = this.internName();
+              tokenLength = 0;
+              state = CHILD;
+            } else {
+              this.appendToName(b);
+            }
+          }
+          case CHILD -> {
+            if (b == ':') {
+              if (this.trimmedNameLength() == 0) {
+                throw new MalformedInputFormatException();
+              }
+              state = FIRST_DIGIT;
+            } else {
+              this.appendToName(b);
+            }
+          }
+          case FIRST_DIGIT -> {
+            if (b != ' ' && b != '\t') {
+              latency = TupleParser.digit(b);
+              state = DIGITS;
+            }
+          }
+          case DIGITS -> {
+            if (b >= '0' && b <= '9') {
+              if (latency > (Integer.MAX_VALUE - (b - '0')) / 10) {
+                throw new MalformedInputFormatException();
+              }
+              latency = latency * 10 + (b - '0');
+            } else {
+              this.emit();
+              this.endOfLine(b);
+            }
+          }
+          default -> this.endOfLine(b);
+        }
+      }
+    }
+
+    @Override
+    public void finish() {
+      if (state == DIGITS) {
+        this.emit();
+      } else if (state != START_OF_LINE && state != END_OF_LINE) {
+        throw new MalformedInputFormatException();
+      }
+      if (edgeCount == 0) {
+        throw new MalformedInputFormatException();
+      }
+    }
+
+    private void endOfLine(byte b) {
+      if (b == '\n') {
+        state = START_OF_LINE;
+      } else if (isWhitespace(b)) {
+        state = END_OF_LINE;
+      } else {
+        throw new MalformedInputFormatException();
+      }
+    }
+
+    private void appendToName(byte b) {
+      if (b == '\n' || b == ',') {
+        throw new MalformedInputFormatException();
+      }
+      if (tokenLength == token.length) {
+        token = Arrays.copyOf(token, token.length * 2);
+      }
+      token[tokenLength++] = b;
+    }
+
+    private int trimmedNameLength() {
+      while (tokenLength > 0 && isWhitespace(token[tokenLength - 1])) {
+        tokenLength--;
+      }
+      return tokenLength;
+    }
+
+    private String internName() {
+      int length = this.trimmedNameLength();
+      int offset = 0;
+      while (offset < length && isWhitespace(token[offset])) {
+        offset++;
+      }
+      if (offset == length) {
+        throw new MalformedInputFormatException();
+      }
+      return names.intern(token, offset, length - offset);
+    }
+
+    private void emit() {
+      // The child name is still in the token buffer, the ':' ended it.
+      consumer.accept(parent, this.internName(), latency);
+      edgeCount++;
+    }
+  }
+
+  private static String strip(String content) {
+    int from = 0;
+    int to = content.length();
+    while (from < to && isWhitespace(content.charAt(from))) {
+      from++;
+    }
+    while (to > from && isWhitespace(content.charAt(to - 1))) {
+      to--;
+    }
+    return content.substring(from, to);
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
 }
@@ -0,0 +1,106 @@
+package org.example.details;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches a single file and runs a callback whenever it was changed. The directory of the file is
+ * watched, as many editors and export jobs replace a file instead of writing into it. Events which
+ * arrive shortly after each other are collapsed into one call, so a file which is written in
+ * several steps only triggers one reload.
+ */
+public class GraphFileWatcher implements AutoCloseable {
+  private static final long QUIET_PERIOD_MILLIS = 200;
+
+  private final Path file;
+  private final Runnable onChange;
+  private final Consumer<RuntimeException> onError;
+  private final WatchService watchService;
+  private final Thread thread;
+
+  /**
+   * Starts watching right away on a daemon thread.
+   *
+   * @param fileNameAndPath the file to watch.
+   * @param onChange called on the watcher thread after the file changed.
+   * @param onError called on the watcher thread in case onChange failed, the watcher keeps going
+   *     and the next change gets another chance.
+   */
+  public GraphFileWatcher(
+      String fileNameAndPath, Runnable onChange, Consumer<RuntimeException> onError) {
+    this.file = Path.of(fileNameAndPath).toAbsolutePath();
+    this.onChange = onChange;
+    this.onError = onError;
+    try {
+      this.watchService = FileSystems.getDefault().newWatchService();
+      this.file
+          .getParent()
+          .register(
+              this.watchService,
+              StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    this.thread = new Thread(this::watch, "graph-file-watcher");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        if (this.isFileChanged(this.watchService.take())) {
+          // Wait until the file was quiet for a moment before we report the change.
+          WatchKey next;
+          while ((next = this.watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS))
+              != null) {
+            this.isFileChanged(next);
+          }
+          this.notifyChange();
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // The watcher was closed.
+    }
+  }
+
+  private boolean isFileChanged(WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW
+          || this.file.getFileName().equals(event.context())) {
+        changed = true;
+      }
+    }
+    key.reset();
+    return changed;
+  }
+
+  private void notifyChange() {
+    try {
+      this.onChange.run();
+    } catch (RuntimeException e) {
+      // A failing callback must not stop the watcher.
+      this.onError.accept(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.watchService.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    this.thread.interrupt();
+  }
+}
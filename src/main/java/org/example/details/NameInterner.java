@@ -0,0 +1,78 @@
+package org.example.details;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Turns the bytes of a node name into a String, but creates the String only the first time a name
+ * is seen. Every later occurrence of the same bytes returns the very same String instance, so a file
+ * with millions of edges only produces as many Strings as there are distinct nodes.
+ *
+ * <p>It is an open addressing hash table keyed by the raw bytes, the bytes are compared directly
+ * without decoding them first.
+ */
+final class NameInterner {
+  private byte[][] keys = new byte[64][];
+  // The hash is kept next to the key, so we only compare the bytes of likely matches.
+  private int[] hashes = new int[64];
+  private String[] values = new String[64];
+  private int size;
+
+  String intern(byte[] bytes, int offset, int length) {
+    int hash = hash(bytes, offset, length);
+    int mask = keys.length - 1;
+    int slot = hash & mask;
+    while (keys[slot] != null) {
+      if (hashes[slot] == hash
+          && Arrays.equals(keys[slot], 0, keys[slot].length, bytes, offset, offset + length)) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    byte[] key = Arrays.copyOfRange(bytes, offset, offset + length);
+    String value = new String(key, StandardCharsets.UTF_8);
+    keys[slot] = key;
+    hashes[slot] = hash;
+    values[slot] = value;
+    if (++size * 2 > keys.length) {
+      this.grow();
+    }
+    return value;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void grow() {
+    byte[][] oldKeys = keys;
+    int[] oldHashes = hashes;
+    String[] oldValues = values;
+    keys = new byte[oldKeys.length * 2][];
+    hashes = new int[oldKeys.length * 2];
+    values = new String[oldKeys.length * 2];
+    int mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        int slot = oldHashes[i] & mask;
+        while (keys[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        hashes[slot] = oldHashes[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private static int hash(byte[] bytes, int offset, int length) {
+    int h = 1;
+    for (int i = offset; i < offset + length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    // Similar names like svc-1, svc-2 would end up in neighbouring slots and form long probe
+    // sequences, so we mix the bits before using the lower ones to find the slot.
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,182 @@
+package org.example.details;
+
+import org.example.core.traverse.QueryMetrics;
+import org.example.core.traverse.QueryStats;
+import org.example.core.traverse.SlowQuery;
+import org.example.core.traverse.TraverseQuery;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Publishes the {@link QueryMetrics} of a traverse service as MXBeans, so they can be read and
+ * switched with JConsole, VisualVM or any JMX exporter: one {@link TraverseMetricsMXBean} for the
+ * settings and slow queries and one {@link QueryStatsMXBean} per query type. The beans read the
+ * metrics on every access, nothing is copied or polled in the background.
+ */
+public class QueryMetricsJmx implements AutoCloseable {
+  public static final String DOMAIN = "org.example";
+
+  private final MBeanServer server;
+  private final List<ObjectName> names = new ArrayList<>();
+
+  /**
+   * Registers the beans right away.
+   *
+   * @param metrics the metrics to publish, usually {@code TraverseService#queryMetrics()}.
+   * @param server the server to register the beans at, usually the platform MBean server.
+   */
+  public QueryMetricsJmx(QueryMetrics metrics, MBeanServer server) {
+    this.server = server;
+    try {
+      this.register(
+          new ObjectName(DOMAIN, "type", "TraverseService"),
+          new StandardMBean(new Settings(metrics), TraverseMetricsMXBean.class, true));
+      for (TraverseQuery query : TraverseQuery.values()) {
+        this.register(
+            ObjectName.getInstance(DOMAIN + ":type=TraverseService,query=" + query.name()),
+            new StandardMBean(new Stats(metrics, query), QueryStatsMXBean.class, true));
+      }
+    } catch (JMException e) {
+      this.close();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void register(ObjectName name, StandardMBean bean) throws JMException {
+    this.server.registerMBean(bean, name);
+    this.names.add(name);
+  }
+
+  /**
+   * @return the names of all registered beans.
+   */
+  public List<ObjectName> objectNames() {
+    return List.copyOf(this.names);
+  }
+
+  /** Unregisters all beans, the metrics themselves keep measuring. */
+  @Override
+  public void close() {
+    for (ObjectName name : this.names) {
+      try {
+        this.server.unregisterMBean(name);
+      } catch (JMException e) {
+        // Someone else unregistered it already, which is all we wanted.
+      }
+    }
+    this.names.clear();
+  }
+
+  private static final class Settings implements TraverseMetricsMXBean {
+    private final QueryMetrics metrics;
+
+    private Settings(QueryMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return this.metrics.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+      this.metrics.setEnabled(enabled);
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+      return this.metrics.slowQueryThreshold().toMillis();
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long thresholdMillis) {
+      this.metrics.setSlowQueryThreshold(Duration.ofMillis(thresholdMillis));
+    }
+
+    @Override
+    public String[] getSlowQueries() {
+      List<SlowQuery> slowQueries = this.metrics.slowQueries();
+      String[] lines = new String[slowQueries.size()];
+      for (int i = 0; i < lines.length; i++) {
+        lines[i] = slowQueries.get(i).toString();
+      }
+      return lines;
+    }
+
+    @Override
+    public void reset() {
+      this.metrics.reset();
+    }
+  }
+
+  private static final class Stats implements QueryStatsMXBean {
+    private final QueryMetrics metrics;
+    private final TraverseQuery query;
+
+    private Stats(QueryMetrics metrics, TraverseQuery query) {
+      this.metrics = metrics;
+      this.query = query;
+    }
+
+    private QueryStats stats() {
+      return this.metrics.stats(this.query);
+    }
+
+    @Override
+    public long getCount() {
+      return this.stats().count();
+    }
+
+    @Override
+    public double getMeanNanos() {
+      return this.stats().meanNanos();
+    }
+
+    @Override
+    public long getP50Nanos() {
+      return this.stats().p50Nanos();
+    }
+
+    @Override
+    public long getP90Nanos() {
+      return this.stats().p90Nanos();
+    }
+
+    @Override
+    public long getP99Nanos() {
+      return this.stats().p99Nanos();
+    }
+
+    @Override
+    public long getMaxNanos() {
+      return this.stats().maxNanos();
+    }
+
+    @Override
+    public long getNodesExpanded() {
+      return this.stats().nodesExpanded();
+    }
+
+    @Override
+    public long getEdgesRelaxed() {
+      return this.stats().edgesRelaxed();
+    }
+
+    @Override
+    public long getPeakQueueSize() {
+      return this.stats().peakQueueSize();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+      return this.stats().allocatedBytes();
+    }
+  }
+}
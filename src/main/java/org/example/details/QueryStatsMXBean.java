@@ -0,0 +1,28 @@
+package org.example.details;
+
+/**
+ * Management interface of the metrics of one query type, registered as {@code
+ * org.example:type=TraverseService,query=<query type>}. All times are in nanoseconds.
+ */
+public interface QueryStatsMXBean {
+
+  long getCount();
+
+  double getMeanNanos();
+
+  long getP50Nanos();
+
+  long getP90Nanos();
+
+  long getP99Nanos();
+
+  long getMaxNanos();
+
+  long getNodesExpanded();
+
+  long getEdgesRelaxed();
+
+  long getPeakQueueSize();
+
+  long getAllocatedBytes();
+}
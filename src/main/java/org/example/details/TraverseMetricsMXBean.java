@@ -0,0 +1,25 @@
+package org.example.details;
+
+/**
+ * Management interface of the query metrics of a traverse service, registered as {@code
+ * org.example:type=TraverseService}. Operators can turn the measurement on and off and read the
+ * slow query samples without restarting the service.
+ */
+public interface TraverseMetricsMXBean {
+
+  boolean isEnabled();
+
+  void setEnabled(boolean enabled);
+
+  long getSlowQueryThresholdMillis();
+
+  void setSlowQueryThresholdMillis(long thresholdMillis);
+
+  /**
+   * @return the most recent slow queries, the oldest first, one line per query.
+   */
+  String[] getSlowQueries();
+
+  /** Drops everything measured so far, the settings stay. */
+  void reset();
+}
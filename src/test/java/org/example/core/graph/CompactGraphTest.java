@@ -0,0 +1,234 @@
+package org.example.core.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactGraphTest {
+
+  @Test
+  void test_fromTuples_taskExample_valid() {
+    // Arrange
+    List<GraphTuple> gt =
+        List.of(
+            new GraphTuple("A", "B", 5),
+            new GraphTuple("B", "C", 4),
+            new GraphTuple("C", "D", 8),
+            new GraphTuple("D", "C", 8),
+            new GraphTuple("D", "E", 6),
+            new GraphTuple("A", "D", 5),
+            new GraphTuple("C", "E", 2),
+            new GraphTuple("E", "B", 3),
+            new GraphTuple("A", "E", 7));
+    // Act
+    CompactGraph graph = CompactGraph.fromTuples(gt);
+    // Assert
+    assertEquals(5, graph.nodeCount());
+    assertEquals(9, graph.edgeCount());
+    test(graph, "A", List.of("B", "D", "E"), List.of(5, 5, 7));
+    test(graph, "B", List.of("C"), List.of(4));
+    test(graph, "C", List.of("D", "E"), List.of(8, 2));
+    test(graph, "D", List.of("C", "E"), List.of(8, 6));
+    test(graph, "E", List.of("B"), List.of(3));
+  }
+
+  @Test
+  void test_fromArrays_validArrays_sameGraph() {
+    // Act
+    CompactGraph graph =
+        CompactGraph.fromArrays(
+            new String[] {"A", "B", "C"}, new int[] {0, 2, 3, 3}, new int[] {1, 2, 2}, new int[] {5, 7, 4});
+    // Assert
+    assertEquals(3, graph.nodeCount());
+    assertEquals(7, graph.maxLatency());
+    test(graph, "A", List.of("B", "C"), List.of(5, 7));
+    test(graph, "B", List.of("C"), List.of(4));
+    assertEquals(0, graph.outDegree(graph.idOf("C")));
+  }
+
+  @Test
+  void test_fromArrays_invalidArrays_exception() {
+    String[] names = {"A", "B"};
+    // Unsorted targets, target out of range, wrong sizes, duplicated name.
+    assertThrows(IllegalArgumentException.class, () -> CompactGraph.fromArrays(names, new int[] {0, 2, 2}, new int[] {1, 0}, new int[] {1, 1}));
+    assertThrows(IllegalArgumentException.class, () -> CompactGraph.fromArrays(names, new int[] {0, 1, 1}, new int[] {2}, new int[] {1}));
+    assertThrows(IllegalArgumentException.class, () -> CompactGraph.fromArrays(names, new int[] {0, 1}, new int[] {1}, new int[] {1}));
+    assertThrows(IllegalArgumentException.class, () -> CompactGraph.fromArrays(new String[] {"A", "A"}, new int[] {0, 0, 0}, new int[0], new int[0]));
+  }
+
+  @Test
+  void test_reversed_taskExample_incomingEdges() {
+    // Arrange
+    CompactGraph graph =
+        CompactGraph.fromTuples(
+            List.of(
+                new GraphTuple("A", "B", 5),
+                new GraphTuple("B", "C", 4),
+                new GraphTuple("C", "D", 8),
+                new GraphTuple("D", "C", 8),
+                new GraphTuple("D", "E", 6),
+                new GraphTuple("A", "D", 5),
+                new GraphTuple("C", "E", 2),
+                new GraphTuple("E", "B", 3),
+                new GraphTuple("A", "E", 7)));
+    // Act
+    CompactGraph reversed = graph.reversed();
+    // Assert
+    assertEquals(graph.edgeCount(), reversed.edgeCount());
+    assertEquals(0, reversed.outDegree(reversed.idOf("A")));
+    test(reversed, "B", List.of("A", "E"), List.of(5, 3));
+    test(reversed, "C", List.of("B", "D"), List.of(4, 8));
+    test(reversed, "D", List.of("A", "C"), List.of(5, 8));
+    test(reversed, "E", List.of("A", "C", "D"), List.of(7, 2, 6));
+    assertSame(reversed, graph.reversed());
+    assertSame(graph, reversed.reversed());
+  }
+
+  @Test
+  void test_fromTuples_duplicatedEdge_lastOneWins() {
+    // Arrange
+    List<GraphTuple> gt =
+        List.of(new GraphTuple("A", "B", 4), new GraphTuple("A", "C", 1), new GraphTuple("A", "B", 9));
+    // Act
+    CompactGraph graph = CompactGraph.fromTuples(gt);
+    // Assert
+    assertEquals(2, graph.edgeCount());
+    test(graph, "A", List.of("B", "C"), List.of(9, 1));
+  }
+
+  @Test
+  void test_findEdge_unknownEdge_minusOne() {
+    // Arrange
+    CompactGraph graph = CompactGraph.fromTuples(List.of(new GraphTuple("A", "B", 4)));
+    // Act & Assert
+    assertEquals(-1, graph.findEdge(graph.idOf("B"), graph.idOf("A")));
+    assertEquals(-1, graph.idOf("C"));
+  }
+
+  @Test
+  void test_fromLookupMap_nodeWithoutEdges_containsNode() {
+    // Arrange
+    GraphNode graphNodeA = new GraphNode("A");
+    GraphNode graphNodeB = new GraphNode("B");
+    GraphNode graphNodeC = new GraphNode("C");
+    graphNodeA.addDependentNode(graphNodeB, 4);
+    Map<String, GraphNode> lookupMap = new HashMap<>();
+    lookupMap.put("A", graphNodeA);
+    lookupMap.put("B", graphNodeB);
+    lookupMap.put("C", graphNodeC);
+    // Act
+    CompactGraph graph = CompactGraph.fromLookupMap(lookupMap);
+    // Assert
+    assertEquals(3, graph.nodeCount());
+    test(graph, "A", List.of("B"), List.of(4));
+    test(graph, "C", List.of(), List.of());
+  }
+
+  @Test
+  void test_withUpdates_taskExample_changedCopy() {
+    // Arrange
+    CompactGraph graph =
+        CompactGraph.fromTuples(
+            List.of(
+                new GraphTuple("A", "B", 5),
+                new GraphTuple("A", "E", 7),
+                new GraphTuple("C", "E", 2),
+                new GraphTuple("E", "B", 3)));
+    // Act
+    CompactGraph updated =
+        graph.withUpdates(
+            List.of(
+                EdgeUpdate.upsert("A", "B", 9),
+                EdgeUpdate.delete("C", "E"),
+                EdgeUpdate.upsert("E", "F", 1),
+                EdgeUpdate.delete("X", "A"),
+                EdgeUpdate.upsert("A", "C", 4)));
+    // Assert
+    assertEquals(5, updated.nodeCount());
+    assertEquals(5, updated.edgeCount());
+    test(updated, "A", List.of("B", "C", "E"), List.of(9, 4, 7));
+    test(updated, "C", List.of(), List.of());
+    test(updated, "E", List.of("B", "F"), List.of(3, 1));
+    // The original graph is not changed.
+    test(graph, "A", List.of("B", "E"), List.of(5, 7));
+    test(graph, "C", List.of("E"), List.of(2));
+    assertEquals(-1, graph.idOf("F"));
+  }
+
+  @Test
+  void test_withUpdates_randomUpdates_sameAsRebuilt() {
+    Random random = new Random(5);
+    for (int round = 0; round < 30; round++) {
+      // Arrange
+      int nodes = 1 + random.nextInt(30);
+      int edgeCount = random.nextInt(4 * nodes);
+      Map<List<String>, Integer> edges = new LinkedHashMap<>();
+      for (int i = 0; i < edgeCount; i++) {
+        edges.put(List.of("N" + random.nextInt(nodes), "N" + random.nextInt(nodes)), random.nextInt(20));
+      }
+      CompactGraph.Builder builder = new CompactGraph.Builder();
+      edges.forEach((edge, latency) -> builder.addEdge(edge.get(0), edge.get(1), latency));
+      CompactGraph graph = builder.build();
+      CompactGraph reversed = graph.reversed();
+      // Latency changes only in every other round, new nodes and deletes in the others.
+      boolean latenciesOnly = round % 2 == 0;
+      List<EdgeUpdate> updates = new ArrayList<>();
+      List<List<String>> existing = new ArrayList<>(edges.keySet());
+      int updateCount = 1 + random.nextInt(10);
+      for (int i = 0; i < updateCount; i++) {
+        if (latenciesOnly && !existing.isEmpty()) {
+          List<String> edge = existing.get(random.nextInt(existing.size()));
+          updates.add(EdgeUpdate.upsert(edge.get(0), edge.get(1), random.nextInt(20)));
+        } else if (!latenciesOnly && random.nextBoolean()) {
+          updates.add(EdgeUpdate.delete("N" + random.nextInt(nodes), "N" + random.nextInt(nodes)));
+        } else if (!latenciesOnly) {
+          updates.add(EdgeUpdate.upsert("N" + random.nextInt(nodes + 3), "N" + random.nextInt(nodes + 3), random.nextInt(20)));
+        }
+      }
+
+      // Act
+      CompactGraph updated = graph.withUpdates(updates);
+
+      // Assert, the expected graph keeps the node ids and adds new nodes in order of appearance.
+      CompactGraph.Builder expected = new CompactGraph.Builder();
+      for (int n = 0; n < graph.nodeCount(); n++) {
+        expected.addNode(graph.nameOf(n));
+      }
+      for (EdgeUpdate update : updates) {
+        if (update.isDelete()) {
+          edges.remove(List.of(update.parentName(), update.childName()));
+        } else {
+          expected.addNode(update.parentName());
+          expected.addNode(update.childName());
+          edges.put(List.of(update.parentName(), update.childName()), update.latency());
+        }
+      }
+      edges.forEach((edge, latency) -> expected.addEdge(edge.get(0), edge.get(1), latency));
+      CompactGraph expectedGraph = expected.build();
+      OffHeapCompactGraphTest.assertSameGraph(expectedGraph, updated);
+      OffHeapCompactGraphTest.assertSameGraph(expectedGraph.reversed(), updated.reversed());
+      assertSame(updated, updated.reversed().reversed());
+      assertNotSame(reversed, updated.reversed());
+    }
+  }
+
+  static void test(
+      CompactGraph graph, String parentName, List<String> childNames, List<Integer> latencies) {
+    assertEquals(childNames.size(), latencies.size(), "The two lists need to be equally long.");
+    int parent = graph.idOf(parentName);
+    assertEquals(parentName, graph.nameOf(parent));
+    assertEquals(childNames.size(), graph.outDegree(parent));
+    for (int i = 0; i < childNames.size(); i++) {
+      int edge = graph.findEdge(parent, graph.idOf(childNames.get(i)));
+      assertEquals(childNames.get(i), graph.nameOf(graph.target(edge)));
+      assertEquals(latencies.get(i), graph.latency(edge));
+    }
+  }
+}
@@ -1,14 +1,22 @@
 package org.example.core.graph;
 
+import org.example.details.GraphFileReader;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Answers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -19,7 +27,7 @@ class GraphServiceImplTest {
 
   @InjectMocks private GraphServiceImpl graphServiceImpl;
 
-  @Mock private GraphReader graphReader;
+  @Mock(answer = Answers.CALLS_REAL_METHODS) private GraphReader graphReader;
 
   @Test
   void test_constructTreeNodeFromFile_verySimpleExample_valid() {
@@ -77,6 +85,81 @@ class GraphServiceImplTest {
     test(gE, "E", List.of("B"), List.of(3));
   }
 
+  @Test
+  void test_constructCompactGraphFromFile_circularDependency_valid() {
+    // Arrange
+    List<GraphTuple> gt = new ArrayList<>();
+    gt.add(new GraphTuple("A", "B", 4));
+    gt.add(new GraphTuple("B", "A", 5));
+    doReturn(gt).when(this.graphReader).getGraphTuplesForFile(anyString());
+    // Act
+    CompactGraph graph = this.graphServiceImpl.constructCompactGraphFromFile("anyFilePath/AndName.txt");
+    // Assert
+    assertEquals(2, graph.nodeCount());
+    CompactGraphTest.test(graph, "A", List.of("B"), List.of(4));
+    CompactGraphTest.test(graph, "B", List.of("A"), List.of(5));
+  }
+
+  @Test
+  void test_constructCompactGraphFromFile_parallel_identicalToSequential() {
+    // Arrange
+    Random random = new Random(42);
+    List<GraphTuple> gt = new ArrayList<>();
+    for (int i = 0; i < 50_000; i++) {
+      // Only few names, so we get plenty of duplicated edges where the last one has to win.
+      gt.add(
+          new GraphTuple(
+              "S" + random.nextInt(3_000), "S" + random.nextInt(3_000), random.nextInt(100)));
+    }
+    doReturn(gt).when(this.graphReader).getGraphTuplesForFile(anyString());
+    ForkJoinPool pool = new ForkJoinPool(4);
+    // Act
+    CompactGraph sequential = this.graphServiceImpl.constructCompactGraphFromFile("anyFilePath");
+    CompactGraph parallel =
+        new GraphServiceImpl(this.graphReader, pool).constructCompactGraphFromFile("anyFilePath");
+    pool.shutdown();
+    // Assert
+    assertEquals(sequential.nodeCount(), parallel.nodeCount());
+    assertEquals(sequential.edgeCount(), parallel.edgeCount());
+    for (int n = 0; n < sequential.nodeCount(); n++) {
+      assertEquals(sequential.nameOf(n), parallel.nameOf(n));
+      assertEquals(n, parallel.idOf(sequential.nameOf(n)));
+      assertEquals(sequential.firstEdge(n), parallel.firstEdge(n));
+    }
+    for (int e = 0; e < sequential.edgeCount(); e++) {
+      assertEquals(sequential.target(e), parallel.target(e));
+      assertEquals(sequential.latency(e), parallel.latency(e));
+    }
+  }
+
+  @Test
+  void test_constructCompactGraphFromFile_parallelFromRealFile_sameAsSequential(@TempDir Path dir)
+      throws IOException {
+    // Arrange
+    Path file = dir.resolve("graph.txt");
+    Files.writeString(file, "a -> b:1\nb -> a:2\n  checkout api ->b : 3\n");
+    GraphReader reader = new GraphFileReader();
+    ForkJoinPool pool = new ForkJoinPool(2);
+    // Act
+    CompactGraph sequential = new GraphServiceImpl(reader).constructCompactGraphFromFile(file.toString());
+    CompactGraph parallel =
+        new GraphServiceImpl(reader, pool).constructCompactGraphFromFile(file.toString());
+    pool.shutdown();
+    // Assert
+    assertEquals(3, sequential.nodeCount());
+    assertEquals(0, parallel.idOf("a"));
+    assertEquals(sequential.nodeCount(), parallel.nodeCount());
+    assertEquals(sequential.edgeCount(), parallel.edgeCount());
+    for (int n = 0; n < sequential.nodeCount(); n++) {
+      assertEquals(sequential.nameOf(n), parallel.nameOf(n));
+      assertEquals(sequential.firstEdge(n), parallel.firstEdge(n));
+    }
+    for (int e = 0; e < sequential.edgeCount(); e++) {
+      assertEquals(sequential.target(e), parallel.target(e));
+      assertEquals(sequential.latency(e), parallel.latency(e));
+    }
+  }
+
   void test(GraphNode gn, String parentName, List<String> childNames, List<Integer> latencies) {
     assertEquals(childNames.size(), latencies.size(), "The two lists need to be equally long.");
     assertEquals(parentName, gn.getName());
@@ -0,0 +1,190 @@
+package org.example.core.graph;
+
+import org.example.core.traverse.StronglyConnectedComponents;
+import org.example.core.traverse.TraverseOptions;
+import org.example.core.traverse.TraverseService;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OffHeapCompactGraphTest {
+
+  @Test
+  void test_copyOf_taskExample_sameGraph() {
+    // Arrange
+    CompactGraph graph =
+        CompactGraph.fromTuples(
+            List.of(
+                new GraphTuple("A", "B", 5),
+                new GraphTuple("B", "C", 4),
+                new GraphTuple("C", "D", 8),
+                new GraphTuple("D", "C", 8),
+                new GraphTuple("D", "E", 6),
+                new GraphTuple("A", "D", 5),
+                new GraphTuple("C", "E", 2),
+                new GraphTuple("E", "B", 3),
+                new GraphTuple("A", "E", 7)));
+    // Act
+    OffHeapCompactGraph offHeap = OffHeapCompactGraph.copyOf(graph);
+    // Assert
+    assertSameGraph(graph, offHeap);
+    assertEquals(8, offHeap.maxLatency());
+    assertEquals(-1, offHeap.idOf("X"));
+    assertEquals(-1, offHeap.findEdge(offHeap.idOf("B"), offHeap.idOf("A")));
+    assertEquals(2, offHeap.latency(offHeap.findEdge(offHeap.idOf("C"), offHeap.idOf("E"))));
+  }
+
+  @Test
+  void test_copyOf_manyLongNames_allFound() {
+    // Arrange
+    List<GraphTuple> tuples = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      tuples.add(new GraphTuple("checkout-service-" + i, "payment-service-\u00e4-" + (i * 7 % 5000), i % 50));
+    }
+    CompactGraph graph = CompactGraph.fromTuples(tuples);
+    // Act
+    OffHeapCompactGraph offHeap = OffHeapCompactGraph.copyOf(graph);
+    // Assert
+    assertSameGraph(graph, offHeap);
+    assertEquals(-1, offHeap.idOf("checkout-service-5000"));
+    assertTrue(offHeap.offHeapBytes() > 4L * 2 * graph.edgeCount());
+  }
+
+  @Test
+  void test_reversed_offHeapGraph_sameAsHeapReversed() {
+    // Arrange
+    List<GraphTuple> tuples = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      tuples.add(new GraphTuple("svc-" + (i % 97), "svc-" + (i * 31 % 89), i % 13));
+    }
+    CompactGraph graph = CompactGraph.fromTuples(tuples);
+    // Act
+    CompactGraph reversed = OffHeapCompactGraph.copyOf(graph).reversed();
+    // Assert
+    assertInstanceOf(OffHeapCompactGraph.class, reversed);
+    assertSameGraph(graph.reversed(), reversed);
+  }
+
+  @Test
+  void test_withUpdates_offHeapGraph_sameAsHeapUpdate() {
+    // Arrange
+    List<GraphTuple> tuples = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      tuples.add(new GraphTuple("svc-" + (i % 97), "svc-" + (i * 31 % 89), i % 13));
+    }
+    CompactGraph graph = CompactGraph.fromTuples(tuples);
+    List<EdgeUpdate> latencyUpdates = List.of(EdgeUpdate.upsert("svc-1", "svc-31", 99));
+    List<EdgeUpdate> edgeUpdates =
+        List.of(EdgeUpdate.delete("svc-1", "svc-31"), EdgeUpdate.upsert("svc-1", "svc-new", 5));
+    // Act
+    CompactGraph latencyUpdated = OffHeapCompactGraph.copyOf(graph).withUpdates(latencyUpdates);
+    CompactGraph edgeUpdated = OffHeapCompactGraph.copyOf(graph).withUpdates(edgeUpdates);
+    // Assert
+    assertInstanceOf(OffHeapCompactGraph.class, latencyUpdated);
+    assertInstanceOf(OffHeapCompactGraph.class, edgeUpdated);
+    assertSameGraph(graph.withUpdates(latencyUpdates), latencyUpdated);
+    assertSameGraph(graph.withUpdates(edgeUpdates), edgeUpdated);
+  }
+
+  @Test
+  void test_wrap_duplicatedName_exception() {
+    // Arrange
+    ByteBuffer names = ByteBuffer.allocateDirect(2).put("AA".getBytes(StandardCharsets.UTF_8)).clear();
+    // Act & Assert
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            OffHeapCompactGraph.wrap(
+                IntBuffer.wrap(new int[] {0, 1, 2}),
+                names,
+                IntBuffer.wrap(new int[] {0, 0, 0}),
+                IntBuffer.allocate(0),
+                IntBuffer.allocate(0)));
+  }
+
+  @Test
+  void test_wrap_unsortedTargets_exception() {
+    // Arrange
+    ByteBuffer names = ByteBuffer.allocateDirect(2).put("AB".getBytes(StandardCharsets.UTF_8)).clear();
+    // Act & Assert
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            OffHeapCompactGraph.wrap(
+                IntBuffer.wrap(new int[] {0, 1, 2}),
+                names,
+                IntBuffer.wrap(new int[] {0, 2, 2}),
+                IntBuffer.wrap(new int[] {1, 0}),
+                IntBuffer.wrap(new int[] {1, 1})));
+  }
+
+  @Test
+  void test_constructCompactGraphFromFile_offHeapService_offHeapGraph() {
+    // Arrange
+    GraphService graphService =
+        new OffHeapGraphService(new GraphServiceImpl(file -> List.of(new GraphTuple("A", "B", 5))));
+    // Act
+    CompactGraph graph = graphService.constructCompactGraphFromFile("anyString");
+    // Assert
+    assertInstanceOf(OffHeapCompactGraph.class, graph);
+    assertEquals(5, graph.latency(graph.findEdge(graph.idOf("A"), graph.idOf("B"))));
+  }
+
+  @Test
+  void test_stronglyConnectedComponents_offHeapTraverseService_noNamesRead() {
+    // Arrange, a chain of single node components and one cycle at its end.
+    int nodes = 1000;
+    List<GraphTuple> tuples = new ArrayList<>();
+    for (int i = 0; i < nodes - 1; i++) {
+      tuples.add(new GraphTuple("service-" + i, "service-" + (i + 1), 1 + i % 7));
+    }
+    tuples.add(new GraphTuple("service-" + (nodes - 1), "service-" + (nodes - 2), 3));
+    OffHeapCompactGraph graph = spy(OffHeapCompactGraph.copyOf(CompactGraph.fromTuples(tuples)));
+    GraphService graphService = mock(GraphService.class);
+    when(graphService.constructCompactGraphFromFile(anyString())).thenReturn(graph);
+    TraverseService traverseService =
+        new TraverseService(graphService, TraverseOptions.defaults().withAllPairsNodeLimit(0));
+    try (MockedStatic<CompactGraph> graphs = mockStatic(CompactGraph.class, CALLS_REAL_METHODS)) {
+      // Act
+      traverseService.initGraph("anyString");
+      StronglyConnectedComponents components = traverseService.stronglyConnectedComponents();
+      // Assert
+      assertEquals(nodes - 1, components.componentCount());
+      assertEquals(nodes - 2, components.condensation().edgeCount());
+      verify(graph, never()).nameOf(anyInt());
+      graphs.verify(() -> CompactGraph.fromArrays(any(), any(), any(), any()), never());
+    }
+  }
+
+  static void assertSameGraph(CompactGraph expected, CompactGraph actual) {
+    assertEquals(expected.nodeCount(), actual.nodeCount());
+    assertEquals(expected.edgeCount(), actual.edgeCount());
+    for (int n = 0; n < expected.nodeCount(); n++) {
+      assertEquals(expected.nameOf(n), actual.nameOf(n));
+      assertEquals(n, actual.idOf(expected.nameOf(n)));
+      assertEquals(expected.firstEdge(n), actual.firstEdge(n));
+      assertEquals(expected.endEdge(n), actual.endEdge(n));
+    }
+    for (int e = 0; e < expected.edgeCount(); e++) {
+      assertEquals(expected.target(e), actual.target(e));
+      assertEquals(expected.latency(e), actual.latency(e));
+    }
+  }
+}
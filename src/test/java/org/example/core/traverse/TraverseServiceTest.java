@@ -1,73 +1,1130 @@
 package org.example.core.traverse;
 
 import org.example.core.graph.*;
+import org.example.details.MalformedInputFormatException;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.junit.platform.commons.util.ReflectionUtils;
-import org.mockito.InjectMocks;
+import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class TraverseServiceTest {
-    @InjectMocks private TraverseService traverseService;
+    private TraverseService traverseService;
 
     @Mock private GraphService graphService;
 
+    @BeforeEach
+    void setUp() {
+        this.traverseService = new TraverseService(this.graphService);
+    }
+
     @Test
-    void test_initGraph_notSetYet_initialized() throws IllegalAccessException {
+    void test_initGraph_notSetYet_initialized() {
         // Arrange
         String filePath = "test/test.txt";
-        GraphNode graphNode = new GraphNode("A");
-        Map<String, GraphNode> lookupMap = new HashMap<>();
-        lookupMap.put("A", graphNode);
-        doReturn(lookupMap).when(this.graphService).constructGraphFromFile(filePath);
-
-        Field lookupMapField = ReflectionUtils
-                .findFields(TraverseService.class, f -> f.getName().equals("lookupMap"),
-                        ReflectionUtils.HierarchyTraversalMode.TOP_DOWN)
-                .get(0);
-        lookupMapField.setAccessible(true);
-        lookupMapField.set(this.traverseService, null);
+        CompactGraph graph = new CompactGraph.Builder().addEdge("A", "B", 3).build();
+        doReturn(graph).when(this.graphService).constructCompactGraphFromFile(filePath);
 
         // Act
         this.traverseService.initGraph(filePath);
 
         // Assert
-        verify(this.graphService, times(1)).constructGraphFromFile(anyString());
-        assertEquals(lookupMap, lookupMapField.get(this.traverseService));
+        verify(this.graphService, times(1)).constructCompactGraphFromFile(anyString());
+        assertEquals(3, this.traverseService.averageLatencyOfPath(List.of("A", "B")));
     }
 
     @Test
-    void test_initGraph_setAlready_doNothing() throws IllegalAccessException {
+    void test_initGraph_setAlready_doNothing() {
         // Arrange
         String filePath = "test/test.txt";
-        Field lookupMapField = ReflectionUtils
-                .findFields(TraverseService.class, f -> f.getName().equals("lookupMap"),
-                        ReflectionUtils.HierarchyTraversalMode.TOP_DOWN)
-                .get(0);
-        lookupMapField.setAccessible(true);
-        lookupMapField.set(this.traverseService, new HashMap<>());
+        CompactGraph graph = new CompactGraph.Builder().addEdge("A", "B", 3).build();
+        doReturn(graph).when(this.graphService).constructCompactGraphFromFile(filePath);
+        this.traverseService.initGraph(filePath);
 
         // Act
         this.traverseService.initGraph(filePath);
 
         // Assert
-        verify(this.graphService, times(0)).constructGraphFromFile(anyString());
+        verify(this.graphService, times(1)).constructCompactGraphFromFile(anyString());
+    }
+
+    @Test
+    void test_reloadGraph_newGraph_swappedWithNewVersion() throws Exception {
+        // Arrange
+        CompactGraph graph = new CompactGraph.Builder().addEdge("A", "B", 3).build();
+        CompactGraph newGraph = new CompactGraph.Builder().addEdge("A", "B", 5).build();
+        doReturn(graph, newGraph).when(this.graphService).constructCompactGraphFromFile(anyString());
+        this.traverseService.initGraph("test/test.txt");
+
+        // Act
+        long version = this.traverseService.reloadGraph("test/test.txt").get();
+
+        // Assert
+        assertEquals(2, version);
+        assertEquals(2, this.traverseService.graphVersion());
+        assertEquals(5, this.traverseService.averageLatencyOfPath(List.of("A", "B")));
+    }
+
+    @Test
+    void test_reloadGraph_olderReloadFinishesLast_newerGraphStaysLive() throws Exception {
+        // Arrange
+        CompactGraph graph = new CompactGraph.Builder().addEdge("A", "B", 3).build();
+        CompactGraph olderGraph = new CompactGraph.Builder().addEdge("A", "B", 5).build();
+        CompactGraph newerGraph = new CompactGraph.Builder().addEdge("A", "B", 7).build();
+        CountDownLatch newerPublished = new CountDownLatch(1);
+        doReturn(graph).when(this.graphService).constructCompactGraphFromFile("test/test.txt");
+        doAnswer(invocation -> {
+            // The older file is slow to load, the newer one overtakes it.
+            assertTrue(newerPublished.await(30, TimeUnit.SECONDS));
+            return olderGraph;
+        }).when(this.graphService).constructCompactGraphFromFile("test/older.txt");
+        doReturn(newerGraph).when(this.graphService).constructCompactGraphFromFile("test/newer.txt");
+        this.traverseService.initGraph("test/test.txt");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // Act
+        CompletableFuture<Long> older = this.traverseService.reloadGraph("test/older.txt", executor);
+        long newerVersion = this.traverseService.reloadGraph("test/newer.txt", Runnable::run).get();
+        newerPublished.countDown();
+        long olderVersion = older.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // Assert
+        assertEquals(2, newerVersion);
+        assertEquals(2, olderVersion);
+        assertEquals(2, this.traverseService.graphVersion());
+        assertEquals(7, this.traverseService.averageLatencyOfPath(List.of("A", "B")));
+    }
+
+    @Test
+    void test_reloadGraph_malformedFile_keepCurrentGraph() {
+        // Arrange
+        CompactGraph graph = new CompactGraph.Builder().addEdge("A", "B", 3).build();
+        doReturn(graph).when(this.graphService).constructCompactGraphFromFile("test/test.txt");
+        doThrow(new MalformedInputFormatException()).when(this.graphService).constructCompactGraphFromFile("test/broken.txt");
+        this.traverseService.initGraph("test/test.txt");
+
+        // Act
+        Assertions.assertThrows(ExecutionException.class, () -> this.traverseService.reloadGraph("test/broken.txt").get());
+
+        // Assert
+        assertEquals(1, this.traverseService.graphVersion());
+        assertEquals(3, this.traverseService.averageLatencyOfPath(List.of("A", "B")));
+    }
+
+    @Test
+    void test_findShortestLatencyForPath_sameQueryTwice_answeredFromCache() {
+        // Arrange
+        prepareSimpleGraph();
+        this.traverseService.findShortestLatencyForPath("A", "C");
+
+        // Act
+        int latency = this.traverseService.findShortestLatencyForPath("A", "C");
+
+        // Assert
+        assertEquals(10, latency);
+        QueryCacheStats stats = this.traverseService.queryCacheStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.size());
+    }
+
+    @Test
+    void test_findNumberOfPossibleTraces_differentParameters_notMixedUp() {
+        // Arrange
+        prepareSimpleGraph();
+        this.traverseService.findNumberOfPossibleTraces("A", "C", 2, true);
+
+        // Act
+        int traces = this.traverseService.findNumberOfPossibleTraces("A", "C", 3, true);
+
+        // Assert
+        assertEquals(0, traces);
+        assertEquals(0, this.traverseService.queryCacheStats().hits());
+        assertEquals(2, this.traverseService.queryCacheStats().size());
+    }
+
+    @Test
+    void test_findShortestLatencyForPath_noTraceCached_stillException() {
+        // Arrange
+        prepareSimpleGraph();
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath("C","A"));
+
+        // Act & Assert
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath("C","A"));
+        assertEquals(1, this.traverseService.queryCacheStats().hits());
+    }
+
+    @Test
+    void test_reloadGraph_cachedResult_invalidated() throws Exception {
+        // Arrange
+        CompactGraph graph = new CompactGraph.Builder().addEdge("A", "B", 3).build();
+        CompactGraph newGraph = new CompactGraph.Builder().addEdge("A", "B", 5).build();
+        doReturn(graph, newGraph).when(this.graphService).constructCompactGraphFromFile(anyString());
+        this.traverseService.initGraph("test/test.txt");
+        assertEquals(3, this.traverseService.findShortestLatencyForPath("A", "B"));
+
+        // Act
+        this.traverseService.reloadGraph("test/test.txt").get();
+
+        // Assert
+        assertEquals(0, this.traverseService.queryCacheStats().size());
+        assertEquals(5, this.traverseService.findShortestLatencyForPath("A", "B"));
+        assertEquals(0, this.traverseService.queryCacheStats().hits());
+    }
+
+    @Test
+    void test_queryCache_moreQueriesThanSize_leastRecentlyUsedEvicted() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withQueryCacheSize(2));
+        prepareSimpleGraph();
+        this.traverseService.findShortestLatencyForPath("A", "B");
+        this.traverseService.findShortestLatencyForPath("A", "C");
+        this.traverseService.findShortestLatencyForPath("A", "B");
+
+        // Act
+        this.traverseService.findShortestLatencyForPath("B", "C");
+
+        // Assert
+        this.traverseService.findShortestLatencyForPath("A", "B");
+        QueryCacheStats stats = this.traverseService.queryCacheStats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.evictions());
+        assertEquals(2, stats.size());
+    }
+
+    @Test
+    void test_queryCache_disabled_nothingCached() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withQueryCacheSize(0));
+        prepareSimpleGraph();
+
+        // Act
+        this.traverseService.findShortestLatencyForPath("A", "C");
+        this.traverseService.findShortestLatencyForPath("A", "C");
+
+        // Assert
+        assertEquals(0, this.traverseService.queryCacheStats().hits());
+        assertEquals(0, this.traverseService.queryCacheStats().size());
+    }
+
+    @Test
+    void test_findShortestLatencyForPath_allPairsPrecomputed_sameAsSearch() {
+        // Arrange
+        List<GraphTuple> graphTuples = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            graphTuples.add(new GraphTuple("N" + random.nextInt(60), "N" + random.nextInt(60), random.nextInt(20)));
+        }
+        prepareGraph(graphTuples);
+        TraverseService search = this.traverseService;
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withQueryCacheSize(0).withAllPairsNodeLimit(100));
+        this.traverseService.initGraph("anyString");
+
+        // Act & Assert
+        assertNotNull(this.traverseService.allPairsLatencies());
+        assertEquals(60 * 60 * 4, this.traverseService.allPairsLatencies().memoryBytes());
+        for (int start = 0; start < 60; start++) {
+            for (int end = 0; end < 60; end++) {
+                String startName = "N" + start;
+                String endName = "N" + end;
+                Integer expected = null;
+                try {
+                    expected = search.findShortestLatencyForPath(startName, endName);
+                } catch (NoTraceFoundException e) {
+                    Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath(startName, endName));
+                }
+                if (expected != null) {
+                    assertEquals(expected, this.traverseService.findShortestLatencyForPath(startName, endName));
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_findShortestLatencyForPath_allPairsSameStartAndEnd_shortestCycle() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withAllPairsNodeLimit(10));
+        prepareTaskGraph();
+
+        // Act & Assert
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("B","B"));
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("A","C"));
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath("A","A"));
+        assertEquals(0, this.traverseService.queryCacheStats().misses());
+    }
+
+    @Test
+    void test_initGraph_moreNodesThanAllPairsLimit_notPrecomputed() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withAllPairsNodeLimit(4));
+
+        // Act
+        prepareTaskGraph();
+
+        // Assert
+        assertNull(this.traverseService.allPairsLatencies());
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("B","B"));
+    }
+
+    @Test
+    void test_reloadGraph_allPairsPrecomputed_recomputedForNewGraph() throws Exception {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withAllPairsNodeLimit(10));
+        CompactGraph graph = new CompactGraph.Builder().addEdge("A", "B", 3).build();
+        CompactGraph newGraph = new CompactGraph.Builder().addEdge("A", "B", 5).build();
+        doReturn(graph, newGraph).when(this.graphService).constructCompactGraphFromFile(anyString());
+        this.traverseService.initGraph("test/test.txt");
+
+        // Act
+        this.traverseService.reloadGraph("test/test.txt").get();
+
+        // Assert
+        assertEquals(5, this.traverseService.findShortestLatencyForPath("A", "B"));
+    }
+
+    @Test
+    void test_findShortestLatencies_manyQueries_sameAsSingleQueriesInInputOrder() {
+        // Arrange
+        prepareTaskGraph();
+        List<LatencyQuery> queries = new ArrayList<>();
+        for (String end : List.of("E", "D", "C", "B", "A")) {
+            for (String start : List.of("A", "B", "C", "D", "E")) {
+                queries.add(new LatencyQuery(start, end));
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // Act
+        List<Integer> latencies = this.traverseService.findShortestLatencies(queries, executor);
+        executor.shutdown();
+
+        // Assert
+        assertEquals(queries.size(), latencies.size());
+        for (int i = 0; i < queries.size(); i++) {
+            LatencyQuery query = queries.get(i);
+            if (latencies.get(i) == null) {
+                Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath(query.startName(), query.endName()));
+            } else {
+                assertEquals(this.traverseService.findShortestLatencyForPath(query.startName(), query.endName()), latencies.get(i));
+            }
+        }
+        assertEquals(9, latencies.get(queries.indexOf(new LatencyQuery("B", "B"))));
+    }
+
+    @Test
+    void test_findShortestLatencies_unknownNodes_null() {
+        // Arrange
+        prepareSimpleGraph();
+
+        // Act
+        List<Integer> latencies = this.traverseService.findShortestLatencies(
+                List.of(new LatencyQuery("A", "C"), new LatencyQuery("X", "C"), new LatencyQuery("A", "X"), new LatencyQuery("C", "A")));
+
+        // Assert
+        assertEquals(Arrays.asList(10, null, null, null), latencies);
+    }
+
+    @Test
+    void test_findShortestLatencies_allPairsPrecomputed_sameResults() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withAllPairsNodeLimit(10));
+        prepareTaskGraph();
+
+        // Act
+        List<Integer> latencies = this.traverseService.findShortestLatencies(
+                List.of(new LatencyQuery("A", "C"), new LatencyQuery("B", "B"), new LatencyQuery("A", "A")));
+
+        // Assert
+        assertEquals(Arrays.asList(9, 9, null), latencies);
+    }
+
+    @Test
+    void test_findShortestLatencies_emptyStart_exception() {
+        // Arrange
+        prepareSimpleGraph();
+        // Act & Assert
+        Assertions.assertThrows(InvalidInputException.class, () -> this.traverseService.findShortestLatencies(List.of(new LatencyQuery(null, "A"))));
+    }
+
+    @Test
+    void test_queries_offHeapGraph_sameAsExpected() {
+        // Arrange
+        prepareTaskGraph();
+        CompactGraph offHeap = OffHeapCompactGraph.copyOf(this.graphService.constructCompactGraphFromFile("anyString"));
+        this.traverseService = new TraverseService(this.graphService);
+        initGraph(offHeap);
+
+        // Act & Assert
+        assertEquals(9, this.traverseService.averageLatencyOfPath(List.of("A", "B", "C")));
+        assertEquals(2, this.traverseService.findNumberOfPossibleTraces("C", "C", 3, false));
+        assertEquals(3, this.traverseService.findNumberOfPossibleTraces("A", "C", 4, true));
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("A", "C"));
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("B", "B"));
+        assertEquals(7, this.traverseService.findAllPathsWithLessThanLatency("C", "C", 30));
+        assertEquals(List.of(9), this.traverseService.findShortestLatencies(List.of(new LatencyQuery("B", "B"))));
+    }
+
+    @Test
+    void test_pathValidator_resolvedIds_latencyOrSentinel() {
+        // Arrange
+        prepareTaskGraph();
+        PathValidator validator = this.traverseService.pathValidator();
+        int[] path = {validator.nodeId("A"), validator.nodeId("E"), validator.nodeId("B"), validator.nodeId("C"), validator.nodeId("D")};
+
+        // Act & Assert
+        assertEquals(22, validator.latencyOfPath(path, 5));
+        assertEquals(7, validator.latencyOfPath(path, 2));
+        assertEquals(0, validator.latencyOfPath(path, 1));
+        assertEquals(PathValidator.NO_TRACE, validator.latencyOfPath(new int[] {validator.nodeId("A"), validator.nodeId("C")}, 2));
+        assertEquals(PathValidator.NO_TRACE, validator.latencyOfPath(new int[] {-1, validator.nodeId("C")}, 2));
+        assertEquals(PathValidator.NO_TRACE, validator.latencyOfPath(new int[] {99}, 1));
+        assertEquals(-1, validator.nodeId("X"));
+        assertEquals(-1, validator.nodeId(null));
+    }
+
+    @Test
+    void test_pathValidator_reusedPathBuffer_latencyOrSentinel() {
+        // Arrange
+        prepareTaskGraph();
+        PathValidator validator = this.traverseService.pathValidator();
+        PathValidator.PathBuffer buffer = validator.newPathBuffer();
+
+        // Act & Assert
+        assertEquals(9, validator.latencyOfPath(buffer.add("A").add("B").add("C")));
+        assertEquals(PathValidator.NO_TRACE, validator.latencyOfPath(buffer.clear().add("X").add("B")));
+        assertEquals(5, validator.latencyOfPath(buffer.clear().add("A").add("D")));
+        assertEquals(2, buffer.length());
+    }
+
+    @Test
+    void test_pathValidator_bufferOfOtherVersion_exception() throws Exception {
+        // Arrange
+        CompactGraph graph = new CompactGraph.Builder().addEdge("A", "B", 3).build();
+        CompactGraph newGraph = new CompactGraph.Builder().addEdge("B", "A", 3).build();
+        doReturn(graph, newGraph).when(this.graphService).constructCompactGraphFromFile(anyString());
+        this.traverseService.initGraph("test/test.txt");
+        PathValidator.PathBuffer buffer = this.traverseService.pathValidator().newPathBuffer().add("A");
+        this.traverseService.reloadGraph("test/test.txt").get();
+
+        // Act
+        PathValidator validator = this.traverseService.pathValidator();
+
+        // Assert
+        assertEquals(2, validator.graphVersion());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> validator.latencyOfPath(buffer));
+    }
+
+    @Test
+    void test_pathValidator_streamOfTraces_allValidated() {
+        // Arrange
+        prepareTaskGraph();
+        List<List<String>> traces = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            traces.add(List.of("A", "B", "C"));
+            traces.add(List.of("A", "E", "D"));
+            traces.add(List.of("X"));
+        }
+
+        // Act
+        long[] latencies = this.traverseService.pathValidator().latenciesOfPaths(traces.parallelStream()).toArray();
+
+        // Assert
+        assertEquals(traces.size(), latencies.length);
+        for (int i = 0; i < latencies.length; i += 3) {
+            assertEquals(9, latencies[i]);
+            assertEquals(PathValidator.NO_TRACE, latencies[i + 1]);
+            assertEquals(PathValidator.NO_TRACE, latencies[i + 2]);
+        }
+    }
+
+    @Test
+    void test_averageLatencyOfPath_unknownFirstNode_exception() {
+        // Arrange
+        prepareTaskGraph();
+        // Act & Assert
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.averageLatencyOfPath(List.of("X", "A")));
+    }
+
+    @Test
+    void test_findShortestPaths_taskExampleSimplePaths_allRanked() {
+        // Arrange
+        prepareTaskGraph();
+
+        // Act
+        List<RankedPath> paths = this.traverseService.findShortestPaths("A", "C", 10, true);
+
+        // Assert
+        assertEquals(List.of(
+                new RankedPath(List.of("A", "B", "C"), 9),
+                new RankedPath(List.of("A", "D", "C"), 13),
+                new RankedPath(List.of("A", "E", "B", "C"), 14),
+                new RankedPath(List.of("A", "D", "E", "B", "C"), 18)), paths);
+    }
+
+    @Test
+    void test_findShortestPaths_taskExampleWalks_cyclesIncluded() {
+        // Arrange
+        prepareTaskGraph();
+
+        // Act
+        List<RankedPath> paths = this.traverseService.findShortestPaths("A", "C", 5, false);
+
+        // Assert
+        assertEquals(List.of(9L, 13L, 14L, 18L, 18L), paths.stream().map(RankedPath::latency).toList());
+        assertEquals(List.of("A", "B", "C"), paths.get(0).nodes());
+    }
+
+    @Test
+    void test_findShortestPaths_sameStartAndEnd_shortestCycles() {
+        // Arrange
+        prepareTaskGraph();
+
+        // Act
+        List<RankedPath> simple = this.traverseService.findShortestPaths("C", "C", 5, true);
+        List<RankedPath> walks = this.traverseService.findShortestPaths("C", "C", 4, false);
+
+        // Assert
+        assertEquals(List.of(
+                new RankedPath(List.of("C", "E", "B", "C"), 9),
+                new RankedPath(List.of("C", "D", "C"), 16),
+                new RankedPath(List.of("C", "D", "E", "B", "C"), 21)), simple);
+        assertEquals(List.of(9L, 16L, 18L, 21L), walks.stream().map(RankedPath::latency).toList());
+        assertEquals(List.of("C", "E", "B", "C", "E", "B", "C"), walks.get(2).nodes());
+    }
+
+    @Test
+    void test_findShortestPaths_randomGraphs_sameAsBruteForce() {
+        Random random = new Random(7);
+        for (int round = 0; round < 30; round++) {
+            // Arrange
+            List<GraphTuple> graphTuples = new ArrayList<>();
+            for (int i = 0; i < 24; i++) {
+                graphTuples.add(new GraphTuple("N" + random.nextInt(8), "N" + random.nextInt(8), random.nextInt(10)));
+            }
+            CompactGraph graph = CompactGraph.fromTuples(graphTuples);
+            this.traverseService = new TraverseService(this.graphService);
+            initGraph(graph);
+            String start = graph.nameOf(random.nextInt(graph.nodeCount()));
+            String end = graph.nameOf(random.nextInt(graph.nodeCount()));
+            List<Long> simple = new ArrayList<>();
+            List<Long> walks = new ArrayList<>();
+            enumerate(graph, graph.idOf(start), graph.idOf(end), new ArrayList<>(List.of(graph.idOf(start))), 0, simple, true);
+            enumerate(graph, graph.idOf(start), graph.idOf(end), new ArrayList<>(List.of(graph.idOf(start))), 0, walks, false);
+            simple.sort(null);
+            walks.sort(null);
+
+            // Act
+            List<RankedPath> simplePaths = this.traverseService.findShortestPaths(start, end, 20, true);
+            List<RankedPath> walkPaths = this.traverseService.findShortestPaths(start, end, 20, false);
+
+            // Assert
+            assertEquals(simple.subList(0, Math.min(20, simple.size())), simplePaths.stream().map(RankedPath::latency).toList());
+            // Walks are only enumerated up to a length, all walks which are shorter are complete.
+            List<Long> found = walkPaths.stream().map(RankedPath::latency).toList();
+            for (int i = 0; i < found.size() && found.get(i) < 10; i++) {
+                assertEquals(walks.get(i), found.get(i));
+            }
+            for (RankedPath path : simplePaths) {
+                assertEquals(path.latency(), this.traverseService.averageLatencyOfPath(path.nodes()));
+                assertEquals(path.nodes().size(), new HashSet<>(path.nodes().subList(1, path.nodes().size())).size() + 1);
+            }
+        }
+    }
+
+    // Collects the latencies of all simple paths or all walks with less than 10 hops.
+    private static void enumerate(CompactGraph graph, int node, int end, List<Integer> path, long latency, List<Long> latencies, boolean simple) {
+        if (path.size() > 10) {
+            return;
+        }
+        for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+            int target = graph.target(e);
+            if (target == end) {
+                latencies.add(latency + graph.latency(e));
+            }
+            if (simple && (target == end || path.contains(target))) {
+                continue;
+            }
+            path.add(target);
+            enumerate(graph, target, end, path, latency + graph.latency(e), latencies, simple);
+            path.remove(path.size() - 1);
+        }
+    }
+
+    @Test
+    void test_findShortestPaths_noPath_empty() {
+        // Arrange
+        prepareSimpleGraph();
+        // Act & Assert
+        assertTrue(this.traverseService.findShortestPaths("C", "A", 3, true).isEmpty());
+        assertTrue(this.traverseService.findShortestPaths("C", "A", 3, false).isEmpty());
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestPaths("X", "A", 3, true));
+        Assertions.assertThrows(InvalidInputException.class, () -> this.traverseService.findShortestPaths("A", "C", 0, true));
+    }
+
+    @Test
+    void test_findDownstreamServices_taskExample_allCallees() {
+        // Arrange
+        prepareTaskGraph();
+        // Act & Assert
+        assertEquals(Set.of("B", "C", "D", "E"), this.traverseService.findDownstreamServices(List.of("A")));
+        assertEquals(Set.of("B", "C", "D", "E"), this.traverseService.findDownstreamServices(List.of("C")));
+        assertEquals(Set.of("B", "C", "D", "E"), this.traverseService.findDownstreamServices(List.of("A", "B")));
+    }
+
+    @Test
+    void test_findImpactedServices_taskExample_allCallers() {
+        // Arrange
+        prepareTaskGraph();
+        // Act & Assert
+        assertEquals(Set.of(), this.traverseService.findImpactedServices(List.of("A")));
+        assertEquals(Set.of("A", "B", "C", "D", "E"), this.traverseService.findImpactedServices(List.of("C")));
+    }
+
+    @Test
+    void test_findDownstreamServices_simpleGraph_noCycle() {
+        // Arrange
+        prepareSimpleGraph();
+        // Act & Assert
+        assertEquals(Set.of("B", "C"), this.traverseService.findDownstreamServices(List.of("A")));
+        assertEquals(Set.of(), this.traverseService.findDownstreamServices(List.of("C")));
+        assertEquals(Set.of("A", "B"), this.traverseService.findImpactedServices(List.of("C")));
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findDownstreamServices(List.of("X")));
+        Assertions.assertThrows(InvalidInputException.class, () -> this.traverseService.findDownstreamServices(List.of()));
+    }
+
+    @Test
+    void test_findDownstreamServices_largeRandomGraphs_sameAsSimpleSearch() {
+        Random random = new Random(11);
+        for (int round = 0; round < 6; round++) {
+            // Arrange, dense graphs make the search switch to bottom up.
+            int nodes = 200 + random.nextInt(3000);
+            int degree = 1 + random.nextInt(12);
+            List<GraphTuple> graphTuples = new ArrayList<>();
+            for (int i = 0; i < nodes * degree; i++) {
+                graphTuples.add(new GraphTuple("N" + random.nextInt(nodes), "N" + random.nextInt(nodes), 1));
+            }
+            CompactGraph graph = CompactGraph.fromTuples(graphTuples);
+            this.traverseService = new TraverseService(this.graphService);
+            initGraph(graph);
+            List<String> sources = List.of(graph.nameOf(random.nextInt(graph.nodeCount())), graph.nameOf(random.nextInt(graph.nodeCount())));
+
+            // Act
+            Set<String> downstream = this.traverseService.findDownstreamServices(sources);
+            Set<String> impacted = this.traverseService.findImpactedServices(sources);
+
+            // Assert
+            assertEquals(search(graph, sources), downstream);
+            assertEquals(search(graph.reversed(), sources), impacted);
+        }
+    }
+
+    private static Set<String> search(CompactGraph graph, List<String> sources) {
+        Set<String> found = new HashSet<>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        sources.forEach(s -> queue.add(graph.idOf(s)));
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+                if (found.add(graph.nameOf(graph.target(e)))) {
+                    queue.add(graph.target(e));
+                }
+            }
+        }
+        return found;
+    }
+
+    @Test
+    void test_findDependencyCycles_taskExample_oneCycle() {
+        // Arrange
+        prepareTaskGraph();
+        // Act
+        List<List<String>> cycles = this.traverseService.findDependencyCycles();
+        // Assert
+        assertEquals(List.of(List.of("B", "C", "D", "E")), cycles);
+        StronglyConnectedComponents components = this.traverseService.stronglyConnectedComponents();
+        assertEquals(2, components.componentCount());
+        StronglyConnectedComponents.Condensation condensation = components.condensation();
+        assertEquals(1, condensation.edgeCount());
+        // A calls the cycle with 5 (B and D) and 7 (E), the lowest one is kept.
+        CompactGraph graph = this.graphService.constructCompactGraphFromFile("anyString");
+        int a = components.componentOf(graph.idOf("A"));
+        int b = components.componentOf(graph.idOf("B"));
+        assertEquals(5, condensation.latency(condensation.findEdge(a, b)));
+        assertEquals("B", graph.nameOf(components.representative(b)));
+    }
+
+    @Test
+    void test_stronglyConnectedComponents_randomUpdates_condensationSameAsComputed() {
+        Random random = new Random(19);
+        for (int round = 0; round < 20; round++) {
+            // Arrange
+            int nodes = 2 + random.nextInt(30);
+            List<GraphTuple> graphTuples = new ArrayList<>();
+            for (int i = 0; i < nodes + random.nextInt(nodes); i++) {
+                graphTuples.add(new GraphTuple("N" + random.nextInt(nodes), "N" + random.nextInt(nodes), 1 + random.nextInt(9)));
+            }
+            CompactGraph graph = CompactGraph.fromTuples(graphTuples);
+            this.traverseService = new TraverseService(this.graphService);
+            initGraph(graph);
+            List<EdgeUpdate> updates = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                String parent = graph.nameOf(random.nextInt(graph.nodeCount()));
+                String child = graph.nameOf(random.nextInt(graph.nodeCount()));
+                updates.add(random.nextBoolean() ? EdgeUpdate.upsert(parent, child, 1 + random.nextInt(9)) : EdgeUpdate.delete(parent, child));
+            }
+
+            // Act
+            this.traverseService.updateEdges(updates);
+
+            // Assert
+            StronglyConnectedComponents updated = this.traverseService.stronglyConnectedComponents();
+            StronglyConnectedComponents computed = StronglyConnectedComponents.compute(graph.withUpdates(updates));
+            assertEquals(computed.componentCount(), updated.componentCount());
+            // The numbering may differ, the components are compared by their representatives.
+            for (int node = 0; node < graph.nodeCount(); node++) {
+                assertArrayEquals(computed.members(computed.componentOf(node)), updated.members(updated.componentOf(node)));
+                assertEquals(condensationEdges(computed, computed.componentOf(node)), condensationEdges(updated, updated.componentOf(node)));
+            }
+        }
+    }
+
+    // The edges of a component in the condensation, by the representatives of their targets.
+    private static Map<Integer, Integer> condensationEdges(StronglyConnectedComponents components, int component) {
+        StronglyConnectedComponents.Condensation condensation = components.condensation();
+        Map<Integer, Integer> edges = new HashMap<>();
+        for (int e = condensation.firstEdge(component); e < condensation.endEdge(component); e++) {
+            edges.put(components.representative(condensation.target(e)), condensation.latency(e));
+        }
+        return edges;
+    }
+
+    @Test
+    void test_findDependencyCycles_selfCallAndNoCycle_onlySelfCall() {
+        // Arrange
+        List<GraphTuple> graphTuples = new ArrayList<>();
+        graphTuples.add(new GraphTuple("A","B",1));
+        graphTuples.add(new GraphTuple("B","B",1));
+        graphTuples.add(new GraphTuple("B","C",1));
+        prepareGraph(graphTuples);
+        // Act & Assert
+        assertEquals(List.of(List.of("B")), this.traverseService.findDependencyCycles());
+    }
+
+    @Test
+    void test_findDependencyCycles_veryLongChain_noStackOverflow() {
+        // Arrange, a recursive DFS would need one stack frame per node.
+        int nodes = 200_000;
+        List<GraphTuple> graphTuples = new ArrayList<>();
+        for (int i = 0; i < nodes - 1; i++) {
+            graphTuples.add(new GraphTuple("N" + i, "N" + (i + 1), 1));
+        }
+        graphTuples.add(new GraphTuple("N" + (nodes / 2), "N0", 1));
+        initGraph(CompactGraph.fromTuples(graphTuples));
+        // Act
+        List<List<String>> cycles = this.traverseService.findDependencyCycles();
+        // Assert
+        assertEquals(1, cycles.size());
+        assertEquals(nodes / 2 + 1, cycles.get(0).size());
+        assertEquals(nodes / 2, this.traverseService.stronglyConnectedComponents().componentCount());
+    }
+
+    @Test
+    void test_stronglyConnectedComponents_randomGraphs_sameAsMutualReachability() {
+        Random random = new Random(13);
+        for (int round = 0; round < 20; round++) {
+            // Arrange
+            int nodes = 2 + random.nextInt(60);
+            List<GraphTuple> graphTuples = new ArrayList<>();
+            for (int i = 0; i < nodes + random.nextInt(2 * nodes); i++) {
+                graphTuples.add(new GraphTuple("N" + random.nextInt(nodes), "N" + random.nextInt(nodes), 1 + random.nextInt(9)));
+            }
+            CompactGraph graph = CompactGraph.fromTuples(graphTuples);
+            this.traverseService = new TraverseService(this.graphService);
+            initGraph(graph);
+
+            // Act
+            StronglyConnectedComponents components = this.traverseService.stronglyConnectedComponents();
+
+            // Assert
+            List<Set<String>> reachable = new ArrayList<>();
+            for (int n = 0; n < graph.nodeCount(); n++) {
+                reachable.add(search(graph, List.of(graph.nameOf(n))));
+            }
+            for (int u = 0; u < graph.nodeCount(); u++) {
+                for (int v = 0; v < graph.nodeCount(); v++) {
+                    boolean mutual = u == v || (reachable.get(u).contains(graph.nameOf(v)) && reachable.get(v).contains(graph.nameOf(u)));
+                    assertEquals(mutual, components.componentOf(u) == components.componentOf(v));
+                    if (components.componentOf(u) > components.componentOf(v)) {
+                        assertEquals(-1, graph.findEdge(u, v), "edges only go to higher components");
+                    }
+                }
+                assertEquals(reachable.get(u).contains(graph.nameOf(u)), components.isCycle(components.componentOf(u)));
+            }
+        }
+    }
+
+    @Test
+    void test_traceQueries_randomGraphs_prunedSameAsUnpruned() {
+        Random random = new Random(17);
+        for (int round = 0; round < 20; round++) {
+            // Arrange
+            int nodes = 2 + random.nextInt(40);
+            List<GraphTuple> graphTuples = new ArrayList<>();
+            for (int i = 0; i < nodes + random.nextInt(nodes); i++) {
+                graphTuples.add(new GraphTuple("N" + random.nextInt(nodes), "N" + random.nextInt(nodes), 1 + random.nextInt(9)));
+            }
+            CompactGraph graph = CompactGraph.fromTuples(graphTuples);
+            this.traverseService = new TraverseService(this.graphService);
+            initGraph(graph);
+            long[] allNodes = new long[(graph.nodeCount() + 63) >>> 6];
+            Arrays.fill(allNodes, -1L);
+            int start = random.nextInt(graph.nodeCount());
+            int end = random.nextInt(graph.nodeCount());
+            String startName = graph.nameOf(start);
+            String endName = graph.nameOf(end);
+
+            // Act & Assert
+            assertEquals(TraceCounter.countTraces(graph, start, end, allNodes, 8, false, TraversalBudget.UNLIMITED, null), this.traverseService.findNumberOfPossibleTraces(startName, endName, 8, false));
+            assertEquals(LatencyBoundedCounter.countTraces(graph, start, end, allNodes, 40, TraversalBudget.UNLIMITED, null), (long) this.traverseService.findAllPathsWithLessThanLatency(startName, endName, 40));
+            long latency = ShortestLatencySearch.shortestLatency(graph, start, end);
+            if (latency == ShortestLatencySearch.UNREACHABLE) {
+                Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath(startName, endName));
+                assertEquals(List.of(), this.traverseService.findShortestPaths(startName, endName, 3, false));
+            } else {
+                assertEquals(latency, (long) this.traverseService.findShortestLatencyForPath(startName, endName));
+            }
+        }
+    }
+
+    @Test
+    void test_bidirectionalShortestLatency_randomGraphs_sameAsForwardSearch() {
+        Random random = new Random(29);
+        for (int round = 0; round < 50; round++) {
+            // Arrange
+            int nodes = 2 + random.nextInt(60);
+            int edges = nodes + random.nextInt(3 * nodes);
+            List<GraphTuple> graphTuples = new ArrayList<>();
+            for (int i = 0; i < edges; i++) {
+                // Some edges without latency, so both searches meet on ties.
+                graphTuples.add(new GraphTuple("N" + random.nextInt(nodes), "N" + random.nextInt(nodes), random.nextInt(6)));
+            }
+            CompactGraph graph = CompactGraph.fromTuples(graphTuples);
+            for (int query = 0; query < 20; query++) {
+                int start = random.nextInt(graph.nodeCount());
+                int end = query % 5 == 0 ? start : random.nextInt(graph.nodeCount());
+
+                // Act
+                long latency = ShortestLatencySearch.bidirectionalShortestLatency(graph, start, end, TraversalBudget.UNLIMITED, null);
+
+                // Assert
+                assertEquals(ShortestLatencySearch.shortestLatency(graph, start, end), latency, graph.nameOf(start) + " -> " + graph.nameOf(end));
+            }
+        }
+    }
+
+    @Test
+    void test_findShortestLatencyForPath_bidirectionalOff_sameResults() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withQueryCacheSize(0).withBidirectionalSearch(false));
+        prepareTaskGraph();
+        // Act & Assert
+        assertTrue(TraverseOptions.defaults().bidirectionalSearch());
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("A", "C"));
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("B", "B"));
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath("A", "A"));
+    }
+
+    @Test
+    void test_bidirectionalShortestLatency_longChain_meetsInTheMiddle() {
+        // Arrange
+        List<GraphTuple> graphTuples = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            graphTuples.add(new GraphTuple("N" + i, "N" + (i + 1), 1));
+            // Every node of the chain fans out, the search from one end settles all of them.
+            graphTuples.add(new GraphTuple("N" + i, "F" + i, 1));
+        }
+        CompactGraph graph = CompactGraph.fromTuples(graphTuples);
+        QueryRecording forward = new QueryRecording(TraverseQuery.SHORTEST_LATENCY, "N0", "N100", 0, 0, 0);
+        QueryRecording bidirectional = new QueryRecording(TraverseQuery.SHORTEST_LATENCY, "N0", "N100", 0, 0, 0);
+        int start = graph.idOf("N0");
+        int end = graph.idOf("N100");
+        // Act
+        long forwardLatency = ShortestLatencySearch.shortestLatency(graph, start, end, TraversalBudget.UNLIMITED, forward);
+        long bidirectionalLatency = ShortestLatencySearch.bidirectionalShortestLatency(graph, start, end, TraversalBudget.UNLIMITED, bidirectional);
+        // Assert
+        assertEquals(100, forwardLatency);
+        assertEquals(100, bidirectionalLatency);
+        assertTrue(bidirectional.nodesExpanded() < forward.nodesExpanded(), bidirectional.nodesExpanded() + " vs " + forward.nodesExpanded());
+    }
+
+    @Test
+    void test_shortestLatency_graphsOfOtherSizesOnOneThread_workspaceLeavesNothingBehind() {
+        Random random = new Random(37);
+        List<CompactGraph> graphs = new ArrayList<>();
+        for (int nodes : new int[] {40, 5, 80}) {
+            List<GraphTuple> graphTuples = new ArrayList<>();
+            for (int i = 0; i < 3 * nodes; i++) {
+                graphTuples.add(new GraphTuple("N" + random.nextInt(nodes), "N" + random.nextInt(nodes), random.nextInt(6)));
+            }
+            graphs.add(CompactGraph.fromTuples(graphTuples));
+        }
+        for (int query = 0; query < 300; query++) {
+            // Arrange
+            CompactGraph graph = graphs.get(random.nextInt(graphs.size()));
+            int start = random.nextInt(graph.nodeCount());
+            int end = random.nextInt(graph.nodeCount());
+            long expected = ShortestLatencySearch.shortestLatencies(graph, start)[end];
+            // Act
+            long forwardLatency = ShortestLatencySearch.shortestLatency(graph, start, end);
+            long bidirectionalLatency = ShortestLatencySearch.bidirectionalShortestLatency(graph, start, end, TraversalBudget.UNLIMITED, null);
+            // Assert
+            assertEquals(expected, forwardLatency, graph.nameOf(start) + " -> " + graph.nameOf(end));
+            assertEquals(expected, bidirectionalLatency, graph.nameOf(start) + " -> " + graph.nameOf(end));
+        }
+    }
+
+    @Test
+    void test_contractionHierarchy_randomGraphs_sameAsDijkstra() {
+        Random random = new Random(31);
+        for (int round = 0; round < 60; round++) {
+            // Arrange
+            int nodes = 2 + random.nextInt(80);
+            // From sparse graphs which contract completely to dense ones which are only core.
+            int edges = nodes * (1 + random.nextInt(round % 3 == 0 ? 30 : 4));
+            List<GraphTuple> graphTuples = new ArrayList<>();
+            for (int i = 0; i < edges; i++) {
+                graphTuples.add(new GraphTuple("N" + random.nextInt(nodes), "N" + random.nextInt(nodes), random.nextInt(6)));
+            }
+            CompactGraph graph = CompactGraph.fromTuples(graphTuples);
+
+            // Act
+            ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+
+            // Assert
+            assertTrue(hierarchy.matches(graph));
+            for (int start = 0; start < graph.nodeCount(); start++) {
+                long[] expected = ShortestLatencySearch.shortestLatencies(graph, start);
+                for (int end = 0; end < graph.nodeCount(); end++) {
+                    if (end != start) {
+                        assertEquals(expected[end], hierarchy.shortestLatency(start, end, TraversalBudget.UNLIMITED, null), graph.nameOf(start) + " -> " + graph.nameOf(end) + " in " + hierarchy);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_findShortestLatencyForPath_contractionHierarchy_sameResults() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withQueryCacheSize(0).withContractionHierarchy(ContractionHierarchy::build));
+        prepareTaskGraph();
+        // Act & Assert
+        assertEquals(5, this.traverseService.contractionHierarchy().nodeCount());
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("A", "C"));
+        assertEquals(7, this.traverseService.findShortestLatencyForPath("A", "E"));
+        // Cycles are searched without the hierarchy.
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("B", "B"));
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath("B", "A"));
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath("A", "A"));
+    }
+
+    @Test
+    void test_upsertEdge_contractionHierarchy_rebuiltInBackground() throws Exception {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withQueryCacheSize(0).withContractionHierarchy(ContractionHierarchy::build));
+        prepareTaskGraph();
+        ContractionHierarchy before = this.traverseService.contractionHierarchy();
+        // Act
+        long version = this.traverseService.upsertEdge("B", "C", 10);
+        // Assert
+        assertEquals(13, this.traverseService.findShortestLatencyForPath("A", "C"));
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (this.traverseService.contractionHierarchy() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        ContractionHierarchy after = this.traverseService.contractionHierarchy();
+        assertNotNull(after);
+        assertNotEquals(before.fingerprint(), after.fingerprint());
+        assertEquals(version, this.traverseService.graphVersion());
+        assertEquals(13, this.traverseService.findShortestLatencyForPath("A", "C"));
+        assertEquals(12, this.traverseService.findShortestLatencyForPath("B", "E"));
     }
 
     @Test
-    void test_averageLatencyOfPath_validPath_returnAverageLatency() throws IllegalAccessException {
+    void test_upsertEdge_contractionHierarchyBurstOfUpdates_builtForLatestWithoutSource() throws Exception {
+        // Arrange
+        AtomicInteger sourceCalls = new AtomicInteger();
+        ContractionHierarchy.Source source = graph -> {
+            sourceCalls.incrementAndGet();
+            return ContractionHierarchy.build(graph);
+        };
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withQueryCacheSize(0).withContractionHierarchy(source));
+        prepareTaskGraph();
+        // Act
+        this.traverseService.upsertEdge("B", "C", 10);
+        this.traverseService.upsertEdge("B", "C", 9);
+        long version = this.traverseService.upsertEdge("B", "C", 1);
+        // Assert
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (this.traverseService.contractionHierarchy() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(this.traverseService.contractionHierarchy());
+        assertEquals(version, this.traverseService.graphVersion());
+        assertEquals(6, this.traverseService.findShortestLatencyForPath("A", "C"));
+        assertEquals(1, sourceCalls.get());
+    }
+
+    @Test
+    void test_upsertEdge_latencyChanged_newVersionAndResults() {
+        // Arrange
+        prepareTaskGraph();
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("A", "C"));
+        assertEquals(3, this.traverseService.findNumberOfPossibleTraces("A", "C", 4, true));
+        // Act
+        long version = this.traverseService.upsertEdge("B", "C", 10);
+        // Assert
+        assertEquals(2, version);
+        assertEquals(13, this.traverseService.findShortestLatencyForPath("A", "C"));
+        // Trace counts by hops don't depend on latencies, so they stay cached.
+        long hits = this.traverseService.queryCacheStats().hits();
+        assertEquals(3, this.traverseService.findNumberOfPossibleTraces("A", "C", 4, true));
+        assertEquals(hits + 1, this.traverseService.queryCacheStats().hits());
+        assertEquals(2, this.traverseService.upsertEdge("B", "C", 10), "nothing changed");
+    }
+
+    @Test
+    void test_updateEdges_cycleAddedAndRemoved_cyclesAndTracesUpdated() {
+        // Arrange
+        prepareSimpleGraph();
+        // Act & Assert
+        this.traverseService.upsertEdge("C", "A", 1);
+        assertEquals(List.of(List.of("A", "B", "C")), this.traverseService.findDependencyCycles());
+        assertEquals(11, this.traverseService.findShortestLatencyForPath("A", "A"));
+        this.traverseService.deleteEdge("B", "C");
+        assertEquals(List.of(), this.traverseService.findDependencyCycles());
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath("A", "C"));
+        assertEquals(0, this.traverseService.findNumberOfPossibleTraces("A", "C", 3, false));
+        this.traverseService.upsertEdge("C", "X", 2);
+        assertEquals(Set.of("A", "B", "X"), this.traverseService.findDownstreamServices(List.of("C")));
+        assertEquals(4, this.traverseService.graphVersion());
+    }
+
+    @Test
+    void test_updateEdges_invalidUpdates_exception() {
+        // Act & Assert
+        Assertions.assertThrows(IllegalStateException.class, () -> this.traverseService.upsertEdge("A", "B", 1));
+        prepareSimpleGraph();
+        Assertions.assertThrows(InvalidInputException.class, () -> this.traverseService.upsertEdge("A", "B", -1));
+        Assertions.assertThrows(InvalidInputException.class, () -> this.traverseService.deleteEdge(null, "B"));
+        assertEquals(1, this.traverseService.graphVersion());
+    }
+
+    @Test
+    void test_updateEdges_randomUpdates_sameAsRebuiltGraph() {
+        Random random = new Random(23);
+        for (int round = 0; round < 10; round++) {
+            // Arrange
+            int nodes = 5 + random.nextInt(40);
+            Map<List<String>, Integer> edges = new HashMap<>();
+            for (int i = 0; i < 2 * nodes; i++) {
+                edges.put(List.of("N" + random.nextInt(nodes), "N" + random.nextInt(nodes)), 1 + random.nextInt(9));
+            }
+            List<GraphTuple> graphTuples = new ArrayList<>();
+            edges.forEach((edge, latency) -> graphTuples.add(new GraphTuple(edge.get(0), edge.get(1), latency)));
+            this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withAllPairsNodeLimit(1000));
+            initGraph(CompactGraph.fromTuples(graphTuples));
+
+            for (int batch = 0; batch < 15; batch++) {
+                // Act
+                List<EdgeUpdate> updates = new ArrayList<>();
+                for (int i = 0; i < 1 + random.nextInt(3); i++) {
+                    List<String> edge = List.of("N" + random.nextInt(nodes), "N" + random.nextInt(nodes));
+                    if (random.nextInt(3) == 0) {
+                        updates.add(EdgeUpdate.delete(edge.get(0), edge.get(1)));
+                        edges.remove(edge);
+                    } else {
+                        int latency = 1 + random.nextInt(9);
+                        updates.add(EdgeUpdate.upsert(edge.get(0), edge.get(1), latency));
+                        edges.put(edge, latency);
+                    }
+                }
+                this.traverseService.updateEdges(updates);
+
+                // Assert
+                CompactGraph.Builder builder = new CompactGraph.Builder();
+                edges.forEach((edge, latency) -> builder.addEdge(edge.get(0), edge.get(1), latency));
+                CompactGraph expected = builder.build();
+                for (int start = 0; start < expected.nodeCount(); start++) {
+                    long[] latencies = ShortestLatencySearch.shortestLatencies(expected, start);
+                    for (int end = 0; end < expected.nodeCount(); end++) {
+                        String startName = expected.nameOf(start);
+                        String endName = expected.nameOf(end);
+                        if (latencies[end] == ShortestLatencySearch.UNREACHABLE) {
+                            Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath(startName, endName));
+                        } else {
+                            assertEquals(latencies[end], (long) this.traverseService.findShortestLatencyForPath(startName, endName));
+                        }
+                    }
+                }
+                assertEquals(cycles(expected), new HashSet<>(this.traverseService.findDependencyCycles().stream().map(Set::copyOf).toList()));
+                String startName = expected.nameOf(random.nextInt(expected.nodeCount()));
+                String endName = expected.nameOf(random.nextInt(expected.nodeCount()));
+                long[] allNodes = new long[(expected.nodeCount() + 63) >>> 6];
+                Arrays.fill(allNodes, -1L);
+                assertEquals(TraceCounter.countTraces(expected, expected.idOf(startName), expected.idOf(endName), allNodes, 5, false, TraversalBudget.UNLIMITED, null), this.traverseService.findNumberOfPossibleTraces(startName, endName, 5, false));
+            }
+        }
+    }
+
+    // The cycles by mutual reachability, which is what the strongly connected components are.
+    private static Set<Set<String>> cycles(CompactGraph graph) {
+        Set<Set<String>> cycles = new HashSet<>();
+        for (int n = 0; n < graph.nodeCount(); n++) {
+            Set<String> downstream = search(graph, List.of(graph.nameOf(n)));
+            if (downstream.contains(graph.nameOf(n))) {
+                Set<String> cycle = new HashSet<>(downstream);
+                cycle.retainAll(search(graph.reversed(), List.of(graph.nameOf(n))));
+                cycles.add(cycle);
+            }
+        }
+        return cycles;
+    }
+
+    @Test
+    void test_averageLatencyOfPath_notInitialized_exception() {
+        // Act
+        Assertions.assertThrows(IllegalStateException.class, () -> this.traverseService.averageLatencyOfPath(List.of("A")));
+    }
+
+    @Test
+    void test_averageLatencyOfPath_validPath_returnAverageLatency() {
         // Arrange
         prepareSimpleGraph();
         // Act
@@ -77,27 +1134,21 @@ class TraverseServiceTest {
     }
 
     @Test
-    void test_averageLatencyOfPath_noPathFound_exception() throws IllegalAccessException {
+    void test_averageLatencyOfPath_noPathFound_exception() {
         // Arrange
         prepareSimpleGraph();
         // Act
         Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.averageLatencyOfPath(List.of("A","B","D")));
     }
 
-    @Mock private GraphReader graphReader;
+    @Mock(answer = Answers.CALLS_REAL_METHODS) private GraphReader graphReader;
     @Test
-    void test_findLatencyForPaths_obviousChoiceIsBad_findNotObviousChoice() throws IllegalAccessException {
+    void test_findLatencyForPaths_obviousChoiceIsBad_findNotObviousChoice() {
         List<GraphTuple> graphTuples = new ArrayList<>();
         fillWithLongSideGraphUseCase(graphTuples);
         doReturn(graphTuples).when(this.graphReader).getGraphTuplesForFile(anyString());
         GraphService gs = new GraphServiceImpl(this.graphReader);
-
-        Field lookupMapField = ReflectionUtils
-                .findFields(TraverseService.class, f -> f.getName().equals("lookupMap"),
-                        ReflectionUtils.HierarchyTraversalMode.TOP_DOWN)
-                .get(0);
-        lookupMapField.setAccessible(true);
-        lookupMapField.set(this.traverseService, gs.constructGraphFromFile("anyString"));
+        initGraph(gs.constructCompactGraphFromFile("anyString"));
 
         Map<String, GraphNode> paths = this.traverseService.findLatencyForPaths("A","C",5, null);
         // Assert
@@ -106,24 +1157,80 @@ class TraverseServiceTest {
     }
 
     @Test
-    void test_findShortestLatencyForPath_obviousChoiceIsBad_findNotObviousChoice() throws IllegalAccessException {
+    void test_findShortestLatencyForPath_obviousChoiceIsBad_findNotObviousChoice() {
         List<GraphTuple> graphTuples = new ArrayList<>();
         fillWithLongSideGraphUseCase(graphTuples);
         doReturn(graphTuples).when(this.graphReader).getGraphTuplesForFile(anyString());
         GraphService gs = new GraphServiceImpl(this.graphReader);
-
-        Field lookupMapField = ReflectionUtils
-                .findFields(TraverseService.class, f -> f.getName().equals("lookupMap"),
-                        ReflectionUtils.HierarchyTraversalMode.TOP_DOWN)
-                .get(0);
-        lookupMapField.setAccessible(true);
-        lookupMapField.set(this.traverseService, gs.constructGraphFromFile("anyString"));
+        initGraph(gs.constructCompactGraphFromFile("anyString"));
 
         int shortestPath = this.traverseService.findShortestLatencyForPath("A","C");
         // Assert
         assertEquals(20, shortestPath);
     }
 
+    @Test
+    void test_findShortestLatencyForPath_sameStartAndEnd_shortestCycle() {
+        // Arrange
+        prepareTaskGraph();
+        // Act
+        int shortestPath = this.traverseService.findShortestLatencyForPath("B","B");
+        // Assert
+        assertEquals(9, shortestPath);
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("A","C"));
+    }
+
+    @Test
+    void test_findShortestLatencyForPath_noTrace_exception() {
+        // Arrange
+        prepareSimpleGraph();
+        // Act
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath("A","A"));
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath("X","A"));
+    }
+
+    @Test
+    void test_queries_concurrentCallers_sameResults() throws Exception {
+        // Arrange
+        prepareTaskGraph();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+        // Act
+        for (int i = 0; i < 64; i++) {
+            futures.add(executor.submit(() -> List.of(
+                    this.traverseService.averageLatencyOfPath(List.of("A", "B", "C")),
+                    this.traverseService.findNumberOfPossibleTraces("C", "C", 3, false),
+                    this.traverseService.findShortestLatencyForPath("B", "B"),
+                    this.traverseService.findAllPathsWithLessThanLatency("C", "C", 30),
+                    this.traverseService.findLatencyForPaths("A", "C", 10, null).size())));
+        }
+        // Assert
+        for (Future<List<Integer>> future : futures) {
+            assertEquals(List.of(9, 2, 9, 7, futures.get(0).get().get(4)), future.get());
+        }
+        executor.shutdown();
+    }
+
+    private void prepareTaskGraph() {
+        List<GraphTuple> graphTuples = new ArrayList<>();
+        graphTuples.add(new GraphTuple("A","B",5));
+        graphTuples.add(new GraphTuple("B","C",4));
+        graphTuples.add(new GraphTuple("C","D",8));
+        graphTuples.add(new GraphTuple("D","C",8));
+        graphTuples.add(new GraphTuple("D","E",6));
+        graphTuples.add(new GraphTuple("A","D",5));
+        graphTuples.add(new GraphTuple("C","E",2));
+        graphTuples.add(new GraphTuple("E","B",3));
+        graphTuples.add(new GraphTuple("A","E",7));
+        prepareGraph(graphTuples);
+    }
+
+    private void prepareGraph(List<GraphTuple> graphTuples) {
+        doReturn(graphTuples).when(this.graphReader).getGraphTuplesForFile(anyString());
+        GraphService gs = new GraphServiceImpl(this.graphReader);
+        initGraph(gs.constructCompactGraphFromFile("anyString"));
+    }
+
     private static void fillWithLongSideGraphUseCase(List<GraphTuple> graphTuples) {
         graphTuples.add(new GraphTuple("A","B",15));
         graphTuples.add(new GraphTuple("B","C",15));
@@ -151,7 +1258,7 @@ class TraverseServiceTest {
     }
 
     @Test
-    void test_findNumberOfPossibleTraces_simpleGraphNoCycles_justOneWay() throws IllegalAccessException {
+    void test_findNumberOfPossibleTraces_simpleGraphNoCycles_justOneWay() {
         // Arrange
         prepareSimpleGraph();
         // Act
@@ -161,7 +1268,7 @@ class TraverseServiceTest {
     }
 
     @Test
-    void test_findNumberOfPossibleTraces_simpleGraphNoCyclesOnlyExactHopMatches_nothingFound() throws IllegalAccessException {
+    void test_findNumberOfPossibleTraces_simpleGraphNoCyclesOnlyExactHopMatches_nothingFound() {
         // Arrange
         prepareSimpleGraph();
         // Act
@@ -170,7 +1277,301 @@ class TraverseServiceTest {
         assertEquals(0, result);
     }
 
-    private void prepareSimpleGraph() throws IllegalAccessException {
+    @Test
+    void test_findNumberOfPossibleTraces_taskExample_sameAsExpected() {
+        // Arrange
+        prepareTaskGraph();
+        // Act & Assert
+        assertEquals(2, this.traverseService.findNumberOfPossibleTraces("C","C", 3, false));
+        assertEquals(3, this.traverseService.findNumberOfPossibleTraces("A","C", 4, true));
+    }
+
+    @Test
+    void test_findNumberOfPossibleTraces_tooManyTraces_exception() {
+        // Arrange
+        List<GraphTuple> graphTuples = new ArrayList<>();
+        graphTuples.add(new GraphTuple("A","A",1));
+        graphTuples.add(new GraphTuple("A","B",1));
+        graphTuples.add(new GraphTuple("B","A",1));
+        graphTuples.add(new GraphTuple("B","B",1));
+        prepareGraph(graphTuples);
+        // Act & Assert
+        assertEquals(1 << 20, this.traverseService.findNumberOfPossibleTraces("A","B", 21, true));
+        Assertions.assertThrows(ArithmeticException.class, () -> this.traverseService.findNumberOfPossibleTraces("A","B", 40, true));
+        Assertions.assertThrows(ArithmeticException.class, () -> this.traverseService.findNumberOfPossibleTraces("A","B", 70, false));
+    }
+
+    @Test
+    void test_findAllPathsWithLessThanLatency_taskExample_sameAsExpected() {
+        // Arrange
+        prepareTaskGraph();
+        // Act
+        int result = this.traverseService.findAllPathsWithLessThanLatency("C","C", 30);
+        // Assert
+        assertEquals(7, result);
+        assertEquals(this.traverseService.findLatencyForPaths("C","C", 10, 30).size(), result);
+    }
+
+    @Test
+    void test_findAllPathsWithLessThanLatency_limitBelowAnyTrace_nothingFound() {
+        // Arrange
+        prepareSimpleGraph();
+        // Act & Assert
+        assertEquals(0, this.traverseService.findAllPathsWithLessThanLatency("A","C", 10));
+        assertEquals(1, this.traverseService.findAllPathsWithLessThanLatency("A","C", 11));
+    }
+
+    @Test
+    void test_findAllPathsWithLessThanLatency_zeroLatencyEdgesWithoutCycle_counted() {
+        // Arrange
+        CompactGraph graph = new CompactGraph.Builder()
+                .addEdge("A", "B", 0).addEdge("B", "C", 3).addEdge("A", "C", 3).addEdge("C", "D", 0).addEdge("A", "D", 5)
+                // A cycle of 0 latencies no trace from A can reach.
+                .addEdge("E", "F", 0).addEdge("F", "E", 0).addEdge("F", "D", 1)
+                .build();
+        initGraph(graph);
+        // Act & Assert
+        assertEquals(3, this.traverseService.findAllPathsWithLessThanLatency("A", "D", 10));
+        assertEquals(2, this.traverseService.findAllPathsWithLessThanLatency("A", "D", 4));
+        assertEquals(1, this.traverseService.findAllPathsWithLessThanLatency("A", "B", 1));
+        assertEquals(this.traverseService.findLatencyForPaths("A", "D", 3, 10).size(), this.traverseService.findAllPathsWithLessThanLatency("A", "D", 10));
+    }
+
+    @Test
+    void test_findAllPathsWithLessThanLatency_zeroLatencyCycle_exception() {
+        // Arrange
+        CompactGraph graph = new CompactGraph.Builder()
+                .addEdge("A", "B", 2).addEdge("B", "C", 0).addEdge("C", "B", 0).addEdge("C", "D", 1)
+                .build();
+        initGraph(graph);
+        // Act & Assert
+        Assertions.assertThrows(InvalidInputException.class, () -> this.traverseService.findAllPathsWithLessThanLatency("A", "D", 10));
+        Assertions.assertThrows(InvalidInputException.class, () -> this.traverseService.findAllPathsWithLessThanLatency("B", "D", 10));
+    }
+
+    @Test
+    void test_queryMetrics_disabledByDefault_nothingRecorded() {
+        // Arrange
+        prepareTaskGraph();
+        // Act
+        this.traverseService.findShortestLatencyForPath("A", "C");
+        // Assert
+        assertFalse(this.traverseService.queryMetrics().isEnabled());
+        assertEquals(List.of(), this.traverseService.queryMetrics().stats());
+        assertEquals(0, this.traverseService.queryMetrics().stats(TraverseQuery.SHORTEST_LATENCY).count());
+    }
+
+    @Test
+    void test_queryMetrics_enabled_workOfEveryQueryCounted() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withQueryCacheSize(0).withMetricsEnabled(true));
+        prepareTaskGraph();
+        QueryMetrics metrics = this.traverseService.queryMetrics();
+        // Act
+        this.traverseService.findShortestLatencyForPath("A", "C");
+        this.traverseService.findShortestLatencyForPath("B", "B");
+        this.traverseService.findNumberOfPossibleTraces("C", "C", 3, false);
+        this.traverseService.findAllPathsWithLessThanLatency("C", "C", 30);
+        this.traverseService.findShortestPaths("A", "C", 3, true);
+        this.traverseService.findShortestPaths("A", "C", 3, false);
+        this.traverseService.findDownstreamServices(List.of("A"));
+        this.traverseService.findImpactedServices(List.of("C"));
+        this.traverseService.findLatencyForPaths("C", "C", 10, 30);
+        this.traverseService.findShortestLatencies(List.of(new LatencyQuery("A", "C"), new LatencyQuery("A", "D")));
+        this.traverseService.averageLatencyOfPath(List.of("A", "B", "C"));
+        // Assert
+        assertEquals(TraverseQuery.values().length, metrics.stats().size());
+        for (QueryStats stats : metrics.stats()) {
+            assertTrue(stats.nodesExpanded() > 0, stats.toString());
+            assertTrue(stats.edgesRelaxed() > 0, stats.toString());
+            assertTrue(stats.p50Nanos() <= stats.p99Nanos() && stats.p99Nanos() <= stats.maxNanos(), stats.toString());
+        }
+        assertEquals(2, metrics.stats(TraverseQuery.SHORTEST_LATENCY).count());
+        assertEquals(2, metrics.stats(TraverseQuery.SHORTEST_PATHS).count());
+        assertTrue(metrics.stats(TraverseQuery.SHORTEST_LATENCY).peakQueueSize() > 0);
+    }
+
+    @Test
+    void test_queryMetrics_disabledAtRuntime_laterQueriesNotRecorded() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withMetricsEnabled(true));
+        prepareTaskGraph();
+        this.traverseService.findShortestLatencyForPath("A", "C");
+        // Act
+        this.traverseService.queryMetrics().setEnabled(false);
+        this.traverseService.findShortestLatencyForPath("A", "C");
+        // Assert
+        assertEquals(1, this.traverseService.queryMetrics().stats(TraverseQuery.SHORTEST_LATENCY).count());
+        this.traverseService.queryMetrics().reset();
+        assertEquals(List.of(), this.traverseService.queryMetrics().stats());
+    }
+
+    @Test
+    void test_queryMetrics_slowQueryThresholdZero_everyQuerySampledWithParameters() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withMetricsEnabled(true));
+        prepareTaskGraph();
+        this.traverseService.queryMetrics().setSlowQueryThreshold(Duration.ZERO);
+        // Act
+        this.traverseService.findNumberOfPossibleTraces("A", "C", 4, true);
+        Assertions.assertThrows(NoTraceFoundException.class, () -> this.traverseService.findShortestLatencyForPath("A", "X"));
+        this.traverseService.findLatencyForPaths("C", "C", 10, null);
+        // Assert
+        List<SlowQuery> slowQueries = this.traverseService.queryMetrics().slowQueries();
+        assertEquals(3, slowQueries.size());
+        SlowQuery traces = slowQueries.get(0);
+        assertEquals(TraverseQuery.NUMBER_OF_TRACES, traces.query());
+        assertEquals("A", traces.start());
+        assertEquals("C", traces.end());
+        assertEquals("maxHops=4, onlyExactHops=true", traces.parameters());
+        assertEquals(this.traverseService.graphVersion(), traces.graphVersion());
+        assertTrue(traces.nodesExpanded() > 0);
+        assertEquals(TraverseQuery.SHORTEST_LATENCY, slowQueries.get(1).query());
+        assertEquals("minPaths=10, maxLatency=none", slowQueries.get(2).parameters());
+    }
+
+    @Test
+    void test_latencyHistogram_manyValues_percentilesWithinBucketError() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        // Act
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1_000);
+        }
+        // Assert
+        assertEquals(100_000, histogram.count());
+        assertEquals(100_000_000, histogram.max());
+        assertEquals(50_000_500, histogram.mean(), 0.1);
+        for (int percentile : new int[] {1, 50, 90, 99}) {
+            long exact = percentile * 1_000_000L;
+            long value = histogram.valueAtPercentile(percentile);
+            assertTrue(value >= exact && value <= exact * 1.0625, percentile + ": " + value);
+        }
+        assertEquals(histogram.max(), histogram.valueAtPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.valueAtPercentile(50));
+    }
+
+    @Test
+    void test_findNumberOfPossibleTraces_stateBudgetExceeded_partialCountOfCompletedHops() {
+        // Arrange
+        List<GraphTuple> graphTuples = new ArrayList<>();
+        graphTuples.add(new GraphTuple("A","A",1));
+        graphTuples.add(new GraphTuple("A","B",1));
+        graphTuples.add(new GraphTuple("B","A",1));
+        graphTuples.add(new GraphTuple("B","B",1));
+        prepareGraph(graphTuples);
+        // Act
+        QueryBudgetExceededException e = Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findNumberOfPossibleTraces("A","B", 25, false, QueryBudget.unlimited().withMaxStates(10)));
+        // Assert
+        assertEquals(QueryBudgetExceededException.Limit.STATES, e.limit());
+        assertEquals(11, e.statesExpanded());
+        assertEquals(this.traverseService.findNumberOfPossibleTraces("A","B", 5, false), e.partialCount());
+    }
+
+    @Test
+    void test_findAllPathsWithLessThanLatency_memoryBudgetExceeded_failsBeforeAllocating() {
+        // Arrange
+        prepareTaskGraph();
+        // Act
+        QueryBudgetExceededException e = Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findAllPathsWithLessThanLatency("C","C", 1_000_000, QueryBudget.unlimited().withMaxMemoryBytes(100)));
+        // Assert
+        assertEquals(QueryBudgetExceededException.Limit.MEMORY, e.limit());
+        assertEquals(0, e.statesExpanded());
+        assertEquals(0, e.partialCount());
+    }
+
+    @Test
+    void test_findLatencyForPaths_cancelled_stopsWithoutTouchingOtherQueries() {
+        // Arrange
+        prepareTaskGraph();
+        CancellationToken token = new CancellationToken();
+        QueryBudget budget = QueryBudget.unlimited().withCancellation(token);
+        assertEquals(7, this.traverseService.findLatencyForPaths("C","C", 10, 30, budget).size());
+        // Act
+        token.cancel();
+        // Assert
+        QueryBudgetExceededException e = Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findLatencyForPaths("C","C", 10, 30, budget));
+        assertEquals(QueryBudgetExceededException.Limit.CANCELLED, e.limit());
+        assertEquals(QueryBudgetExceededException.NO_PARTIAL_COUNT, e.partialCount());
+        assertEquals(7, this.traverseService.findLatencyForPaths("C","C", 10, 30).size());
+    }
+
+    @Test
+    void test_findNumberOfPossibleTraces_cancelledWhileRunning_stopsWithPartialCount() throws Exception {
+        // Arrange
+        List<GraphTuple> graphTuples = new ArrayList<>();
+        graphTuples.add(new GraphTuple("A","B",1));
+        graphTuples.add(new GraphTuple("B","A",1));
+        prepareGraph(graphTuples);
+        CancellationToken token = new CancellationToken();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Act
+            Future<Integer> query = executor.submit(() -> this.traverseService.findNumberOfPossibleTraces("A","A", Integer.MAX_VALUE, false, QueryBudget.unlimited().withCancellation(token)));
+            Thread.sleep(50);
+            token.cancel();
+            // Assert
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, query::get);
+            QueryBudgetExceededException cause = (QueryBudgetExceededException) e.getCause();
+            assertEquals(QueryBudgetExceededException.Limit.CANCELLED, cause.limit());
+            assertTrue(cause.partialCount() > 0);
+            assertTrue(cause.statesExpanded() > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void test_findShortestPaths_deadlinePassed_deadlineExceeded() {
+        // Arrange
+        prepareTaskGraph();
+        // Act
+        QueryBudgetExceededException e = Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findShortestPaths("A","C", 3, true, QueryBudget.unlimited().withTimeout(Duration.ZERO)));
+        // Assert
+        assertEquals(QueryBudgetExceededException.Limit.DEADLINE, e.limit());
+    }
+
+    @Test
+    void test_findShortestLatencyForPath_pooledWorkspace_noMemoryCharged() {
+        // Arrange
+        for (boolean bidirectional : new boolean[] {false, true}) {
+            this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withQueryCacheSize(0).withBidirectionalSearch(bidirectional));
+            prepareTaskGraph();
+            this.traverseService.findShortestLatencyForPath("A","C");
+            // Act & Assert
+            assertEquals(9, this.traverseService.findShortestLatencyForPath("A","C", QueryBudget.unlimited().withMaxMemoryBytes(0)));
+        }
+    }
+
+    @Test
+    void test_queryBudget_defaultOfOptions_appliedToEveryTraversal() {
+        // Arrange
+        this.traverseService = new TraverseService(this.graphService, TraverseOptions.defaults().withQueryBudget(QueryBudget.unlimited().withMaxStates(0)));
+        prepareTaskGraph();
+        // Act & Assert
+        Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findShortestLatencyForPath("A","C"));
+        Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findNumberOfPossibleTraces("C","C", 3, false));
+        Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findAllPathsWithLessThanLatency("C","C", 30));
+        Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findShortestPaths("A","C", 3, false));
+        Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findDownstreamServices(List.of("A")));
+        Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findImpactedServices(List.of("C")));
+        Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findLatencyForPaths("C","C", 10, 30));
+        Assertions.assertThrows(QueryBudgetExceededException.class, () -> this.traverseService.findShortestLatencies(List.of(new LatencyQuery("A","C"))));
+        // A budget of its own overrides the default, nothing of the failed queries was cached.
+        assertEquals(9, this.traverseService.findShortestLatencyForPath("A","C", QueryBudget.unlimited()));
+        assertEquals(2, this.traverseService.findNumberOfPossibleTraces("C","C", 3, false, QueryBudget.unlimited().withMaxStates(100)));
+    }
+
+    @Test
+    void test_queryBudget_negativeLimit_exception() {
+        // Act & Assert
+        Assertions.assertThrows(IllegalArgumentException.class, () -> QueryBudget.unlimited().withMaxStates(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> QueryBudget.unlimited().withTimeout(Duration.ofMillis(-1)));
+        Assertions.assertThrows(InvalidInputException.class, () -> this.traverseService.findShortestLatencyForPath("A","C", null));
+    }
+
+    private void prepareSimpleGraph() {
         GraphNode graphNodeA = new GraphNode("A");
         GraphNode graphNodeB = new GraphNode("B");
         GraphNode graphNodeC = new GraphNode("C");
@@ -180,11 +1581,11 @@ class TraverseServiceTest {
         lookupMap.put("C", graphNodeC);
         graphNodeA.addDependentNode(graphNodeB, 4);
         graphNodeB.addDependentNode(graphNodeC, 6);
-        Field lookupMapField = ReflectionUtils
-                .findFields(TraverseService.class, f -> f.getName().equals("lookupMap"),
-                        ReflectionUtils.HierarchyTraversalMode.TOP_DOWN)
-                .get(0);
-        lookupMapField.setAccessible(true);
-        lookupMapField.set(this.traverseService, lookupMap);
+        initGraph(CompactGraph.fromLookupMap(lookupMap));
+    }
+
+    private void initGraph(CompactGraph graph) {
+        doReturn(graph).when(this.graphService).constructCompactGraphFromFile(anyString());
+        this.traverseService.initGraph("anyString");
     }
 }
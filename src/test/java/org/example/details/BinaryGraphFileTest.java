@@ -0,0 +1,148 @@
+package org.example.details;
+
+import org.example.core.graph.CompactGraph;
+import org.example.core.graph.GraphNode;
+import org.example.core.graph.OffHeapCompactGraph;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryGraphFileTest {
+
+  @TempDir Path tempDir;
+
+  @Test
+  void test_read_writtenSnapshot_sameGraph() {
+    // Arrange
+    CompactGraph graph =
+        new CompactGraph.Builder()
+            .addEdge("checkout-api", "payment-api", 12)
+            .addEdge("checkout-api", "stock-api", 7)
+            .addEdge("payment-api", "zahlungs-dienst-\u00fc", 3)
+            .addEdge("stock-api", "checkout-api", 1)
+            .build();
+    Path file = this.tempDir.resolve("graph.bin");
+    // Act
+    BinaryGraphFile.write(graph, file);
+    CompactGraph loaded = BinaryGraphFile.read(file);
+    // Assert
+    assertEquals(graph.nodeCount(), loaded.nodeCount());
+    assertEquals(graph.edgeCount(), loaded.edgeCount());
+    for (int n = 0; n < graph.nodeCount(); n++) {
+      assertEquals(graph.nameOf(n), loaded.nameOf(n));
+      assertEquals(n, loaded.idOf(graph.nameOf(n)));
+      assertEquals(graph.firstEdge(n), loaded.firstEdge(n));
+    }
+    for (int e = 0; e < graph.edgeCount(); e++) {
+      assertEquals(graph.target(e), loaded.target(e));
+      assertEquals(graph.latency(e), loaded.latency(e));
+    }
+    assertFalse(Files.exists(this.tempDir.resolve("graph.bin.tmp")));
+  }
+
+  @Test
+  void test_map_writtenSnapshot_sameGraphOffHeap() {
+    // Arrange
+    CompactGraph graph =
+        new CompactGraph.Builder()
+            .addEdge("checkout-api", "payment-api", 12)
+            .addEdge("checkout-api", "stock-api", 7)
+            .addEdge("stock-api", "checkout-api", 1)
+            .build();
+    Path file = this.tempDir.resolve("graph.bin");
+    BinaryGraphFile.write(graph, file);
+    // Act
+    CompactGraph mapped = new BinaryGraphService(true).constructCompactGraphFromFile(file.toString());
+    // Assert
+    assertInstanceOf(OffHeapCompactGraph.class, mapped);
+    assertEquals(graph.nodeCount(), mapped.nodeCount());
+    for (int n = 0; n < graph.nodeCount(); n++) {
+      assertEquals(n, mapped.idOf(graph.nameOf(n)));
+      assertEquals(graph.outDegree(n), mapped.outDegree(n));
+    }
+    assertEquals(12, mapped.latency(mapped.findEdge(mapped.idOf("checkout-api"), mapped.idOf("payment-api"))));
+  }
+
+  @Test
+  void test_map_flippedByte_exception() throws IOException {
+    // Arrange
+    Path file = this.tempDir.resolve("graph.bin");
+    BinaryGraphFile.write(new CompactGraph.Builder().addEdge("A", "B", 5).build(), file);
+    byte[] content = Files.readAllBytes(file);
+    content[BinaryGraphFile.HEADER_SIZE] ^= 1;
+    Files.write(file, content);
+    // Act & Assert
+    Assertions.assertThrows(MalformedInputFormatException.class, () -> BinaryGraphFile.map(file));
+  }
+
+  @Test
+  void test_read_emptyGraph_emptyGraph() {
+    // Arrange
+    Path file = this.tempDir.resolve("graph.bin");
+    BinaryGraphFile.write(new CompactGraph.Builder().build(), file);
+    // Act
+    CompactGraph loaded = BinaryGraphFile.read(file);
+    // Assert
+    assertEquals(0, loaded.nodeCount());
+    assertEquals(0, loaded.edgeCount());
+  }
+
+  @Test
+  void test_read_flippedByte_exception() throws IOException {
+    // Arrange
+    Path file = this.tempDir.resolve("graph.bin");
+    BinaryGraphFile.write(new CompactGraph.Builder().addEdge("A", "B", 5).build(), file);
+    byte[] content = Files.readAllBytes(file);
+    content[content.length - 1] ^= 1;
+    Files.write(file, content);
+    // Act & Assert
+    Assertions.assertThrows(MalformedInputFormatException.class, () -> BinaryGraphFile.read(file));
+  }
+
+  @Test
+  void test_read_otherFormatVersion_exception() throws IOException {
+    // Arrange
+    Path file = this.tempDir.resolve("graph.bin");
+    BinaryGraphFile.write(new CompactGraph.Builder().addEdge("A", "B", 5).build(), file);
+    byte[] content = Files.readAllBytes(file);
+    ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN).putInt(4, BinaryGraphFile.FORMAT_VERSION + 1);
+    Files.write(file, content);
+    // Act & Assert
+    Assertions.assertThrows(MalformedInputFormatException.class, () -> BinaryGraphFile.read(file));
+  }
+
+  @Test
+  void test_read_textFile_exception() throws IOException {
+    // Arrange
+    Path file = this.tempDir.resolve("graph.txt");
+    Files.writeString(file, "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7");
+    // Act & Assert
+    Assertions.assertThrows(MalformedInputFormatException.class, () -> BinaryGraphFile.read(file));
+  }
+
+  @Test
+  void test_constructGraphFromFile_snapshot_sameLookupMap() {
+    // Arrange
+    Path file = this.tempDir.resolve("graph.bin");
+    BinaryGraphFile.write(
+        new CompactGraph.Builder().addEdge("A", "B", 5).addEdge("B", "C", 4).addEdge("A", "C", 9).build(),
+        file);
+    // Act
+    Map<String, GraphNode> lookupMap = new BinaryGraphService().constructGraphFromFile(file.toString());
+    // Assert
+    assertEquals(3, lookupMap.size());
+    assertEquals(5, lookupMap.get("A").getDependentNodes().get("B").getValue());
+    assertEquals(9, lookupMap.get("A").getDependentNodes().get("C").getValue());
+    assertEquals(4, lookupMap.get("B").getDependentNodes().get("C").getValue());
+    assertTrue(lookupMap.get("C").getDependentNodes().isEmpty());
+  }
+}
@@ -0,0 +1,129 @@
+package org.example.details;
+
+import org.example.core.graph.CompactGraph;
+import org.example.core.graph.GraphServiceImpl;
+import org.example.core.graph.GraphTuple;
+import org.example.core.traverse.ContractionHierarchy;
+import org.example.core.traverse.TraverseOptions;
+import org.example.core.traverse.TraverseService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContractionHierarchyFileTest {
+  private static final List<GraphTuple> TASK_GRAPH =
+      List.of(
+          new GraphTuple("A", "B", 5),
+          new GraphTuple("B", "C", 4),
+          new GraphTuple("C", "D", 8),
+          new GraphTuple("D", "C", 8),
+          new GraphTuple("D", "E", 6),
+          new GraphTuple("A", "D", 5),
+          new GraphTuple("C", "E", 2),
+          new GraphTuple("E", "B", 3),
+          new GraphTuple("A", "E", 7));
+
+  @TempDir Path tempDir;
+
+  private static CompactGraph taskGraph() {
+    return CompactGraph.fromTuples(TASK_GRAPH);
+  }
+
+  @Test
+  void test_read_writtenHierarchy_sameHierarchy() {
+    // Arrange
+    CompactGraph graph = taskGraph();
+    ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+    Path file = this.tempDir.resolve("graph.ch");
+    // Act
+    ContractionHierarchyFile.write(hierarchy, file);
+    ContractionHierarchy loaded = ContractionHierarchyFile.read(file);
+    // Assert
+    assertTrue(loaded.matches(graph));
+    assertEquals(hierarchy.fingerprint(), loaded.fingerprint());
+    assertEquals(hierarchy.nodeCount(), loaded.nodeCount());
+    assertArrayEquals(hierarchy.coreNodes(), loaded.coreNodes());
+    assertEquals(hierarchy.shortcutCount(), loaded.shortcutCount());
+    assertArrayEquals(hierarchy.forwardOffsets(), loaded.forwardOffsets());
+    assertArrayEquals(hierarchy.forwardTargets(), loaded.forwardTargets());
+    assertArrayEquals(hierarchy.forwardLatencies(), loaded.forwardLatencies());
+    assertArrayEquals(hierarchy.backwardOffsets(), loaded.backwardOffsets());
+    assertArrayEquals(hierarchy.backwardTargets(), loaded.backwardTargets());
+    assertArrayEquals(hierarchy.backwardLatencies(), loaded.backwardLatencies());
+    assertFalse(Files.exists(this.tempDir.resolve("graph.ch.tmp")));
+  }
+
+  @Test
+  void test_cached_noFile_builtAndWrittenThenRead() {
+    // Arrange
+    CompactGraph graph = taskGraph();
+    Path file = this.tempDir.resolve("graph.ch");
+    TraverseService traverseService =
+        new TraverseService(
+            new GraphServiceImpl(name -> TASK_GRAPH),
+            TraverseOptions.defaults()
+                .withContractionHierarchy(ContractionHierarchyFile.cached(file)));
+    // Act
+    traverseService.initGraph("graph.txt");
+    // Assert
+    assertTrue(Files.exists(file));
+    assertTrue(ContractionHierarchyFile.read(file).matches(graph));
+    assertEquals(9, traverseService.findShortestLatencyForPath("A", "C"));
+    assertEquals(5, traverseService.contractionHierarchy().nodeCount());
+  }
+
+  @Test
+  void test_cached_fileOfOtherGraph_rebuiltAndReplaced() {
+    // Arrange
+    CompactGraph graph = taskGraph();
+    CompactGraph otherGraph = new CompactGraph.Builder().addEdge("A", "B", 5).build();
+    Path file = this.tempDir.resolve("graph.ch");
+    ContractionHierarchyFile.write(ContractionHierarchy.build(otherGraph), file);
+    // Act
+    ContractionHierarchy hierarchy = ContractionHierarchyFile.cached(file).hierarchyOf(graph);
+    // Assert
+    assertTrue(hierarchy.matches(graph));
+    assertEquals(ContractionHierarchy.fingerprint(graph), ContractionHierarchyFile.read(file).fingerprint());
+  }
+
+  @Test
+  void test_cached_brokenFile_rebuilt() throws IOException {
+    // Arrange
+    CompactGraph graph = taskGraph();
+    Path file = this.tempDir.resolve("graph.ch");
+    Files.writeString(file, "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7");
+    // Act
+    ContractionHierarchy hierarchy = ContractionHierarchyFile.cached(file).hierarchyOf(graph);
+    // Assert
+    assertTrue(hierarchy.matches(graph));
+    assertTrue(ContractionHierarchyFile.read(file).matches(graph));
+  }
+
+  @Test
+  void test_read_flippedByte_exception() throws IOException {
+    // Arrange
+    Path file = this.tempDir.resolve("graph.ch");
+    ContractionHierarchyFile.write(ContractionHierarchy.build(taskGraph()), file);
+    byte[] content = Files.readAllBytes(file);
+    content[content.length - 1] ^= 1;
+    Files.write(file, content);
+    // Act & Assert
+    Assertions.assertThrows(MalformedInputFormatException.class, () -> ContractionHierarchyFile.read(file));
+  }
+
+  @Test
+  void test_read_graphSnapshot_exception() {
+    // Arrange
+    Path file = this.tempDir.resolve("graph.bin");
+    BinaryGraphFile.write(taskGraph(), file);
+    // Act & Assert
+    Assertions.assertThrows(MalformedInputFormatException.class, () -> ContractionHierarchyFile.read(file));
+  }
+}
@@ -4,11 +4,16 @@ import org.example.core.graph.GraphTuple;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Spy;
 import java.util.List;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 
 import static org.mockito.ArgumentMatchers.anyString;
@@ -90,4 +95,239 @@ class GraphFileReaderTest {
     assertEquals("A", graphTuples.get(2).childName());
     assertEquals(1200, graphTuples.get(2).latency());
   }
+
+  @Test
+  void test_streamGraphTuplesForFile_tupleSplitAcrossChunks_sameAsList(@TempDir Path dir)
+      throws IOException {
+    // Arrange
+    Path file = dir.resolve("graph.txt");
+    Files.writeString(file, "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE1200");
+    List<GraphTuple> graphTuples = new ArrayList<>();
+    // Act
+    this.graphFileReader.streamGraphTuplesForFile(
+        file.toString(),
+        (parentName, childName, latency) ->
+            graphTuples.add(new GraphTuple(parentName, childName, latency)),
+        3);
+    // Assert
+    assertEquals(this.graphFileReader.getGraphTuplesForFile(file.toString()), graphTuples);
+  }
+
+  @Test
+  void test_streamGraphTuplesForFile_trailingNewLine_validList(@TempDir Path dir)
+      throws IOException {
+    // Arrange
+    Path file = dir.resolve("graph.txt");
+    Files.writeString(file, "AB10,BC9\n");
+    List<GraphTuple> graphTuples = new ArrayList<>();
+    // Act
+    this.graphFileReader.streamGraphTuplesForFile(
+        file.toString(),
+        (parentName, childName, latency) ->
+            graphTuples.add(new GraphTuple(parentName, childName, latency)));
+    // Assert
+    assertEquals(List.of(new GraphTuple("A", "B", 10), new GraphTuple("B", "C", 9)), graphTuples);
+  }
+
+  @Test
+  void test_streamGraphTuplesForFile_malformedContent_exception(@TempDir Path dir)
+      throws IOException {
+    for (String content : List.of("", "AB1, ", "AAB1", "AB", "AB1 BC2", "AB99999999999")) {
+      // Arrange
+      Path file = dir.resolve("graph.txt");
+      Files.writeString(file, content);
+      // Act
+      Assertions.assertThrows(
+          MalformedInputFormatException.class,
+          () -> this.graphFileReader.streamGraphTuplesForFile(file.toString(), (p, c, l) -> {}),
+          content);
+    }
+  }
+
+  @Test
+  void test_getGraphTuplesForFile_edgeLines_validList() {
+    // Arrange
+    doReturn(new ArrayList<>(List.of("checkout-api->payment-api:12", "payment-api->db:1200")))
+        .when(this.graphFileReader)
+        .readFileContentAsList(anyString());
+    // Act
+    List<GraphTuple> graphTuples = this.graphFileReader.getGraphTuplesForFile("anyString");
+    // Assert
+    assertEquals(
+        List.of(
+            new GraphTuple("checkout-api", "payment-api", 12),
+            new GraphTuple("payment-api", "db", 1200)),
+        graphTuples);
+    assertSame(graphTuples.get(0).childName(), graphTuples.get(1).parentName());
+  }
+
+  @Test
+  void test_streamGraphTuplesForFile_edgeLinesSplitAcrossChunks_namesInterned(@TempDir Path dir)
+      throws IOException {
+    // Arrange
+    Path file = dir.resolve("graph.txt");
+    Files.writeString(
+        file, "checkout-api->payment-api:12\r\n\n payment-api -> db:1200\ndb->checkout-api:7");
+    List<GraphTuple> graphTuples = new ArrayList<>();
+    // Act
+    this.graphFileReader.streamGraphTuplesForFile(
+        file.toString(),
+        (parentName, childName, latency) ->
+            graphTuples.add(new GraphTuple(parentName, childName, latency)),
+        5);
+    // Assert
+    assertEquals(
+        List.of(
+            new GraphTuple("checkout-api", "payment-api", 12),
+            new GraphTuple("payment-api", "db", 1200),
+            new GraphTuple("db", "checkout-api", 7)),
+        graphTuples);
+    assertSame(graphTuples.get(0).childName(), graphTuples.get(1).parentName());
+    assertSame(graphTuples.get(0).parentName(), graphTuples.get(2).childName());
+  }
+
+  @Test
+  void test_streamGraphTuplesForFile_malformedEdgeLines_exception(@TempDir Path dir)
+      throws IOException {
+    for (String content : List.of("a->b:", "a->b:1\nc->d", "->b:1", "a->:1", "a->b:1x", "a->b:1\n,")) {
+      // Arrange
+      Path file = dir.resolve("graph.txt");
+      Files.writeString(file, content);
+      // Act
+      Assertions.assertThrows(
+          MalformedInputFormatException.class,
+          () -> this.graphFileReader.streamGraphTuplesForFile(file.toString(), (p, c, l) -> {}),
+          content);
+    }
+  }
+
+  @Test
+  void test_getGraphTuplesForFile_spacesAroundNames_sameAsStream(@TempDir Path dir)
+      throws IOException {
+    for (String content :
+        List.of(
+            "a -> b:1\nb -> a:2",
+            "  checkout api ->  db : 7\r\n\n\tdb->checkout api:12  \n",
+            "AB5, BC4,CD8 ,\n DE6")) {
+      // Arrange
+      Path file = dir.resolve("graph.txt");
+      Files.writeString(file, content);
+      List<GraphTuple> streamed = new ArrayList<>();
+      // Act
+      List<GraphTuple> listed = new GraphFileReader().getGraphTuplesForFile(file.toString());
+      new GraphFileReader()
+          .streamGraphTuplesForFile(
+              file.toString(),
+              (parentName, childName, latency) ->
+                  streamed.add(new GraphTuple(parentName, childName, latency)));
+      // Assert
+      assertEquals(streamed, listed, content);
+    }
+    Path file = dir.resolve("graph.txt");
+    Files.writeString(file, "a -> b:1\nb -> a:2");
+    assertEquals(
+        List.of(new GraphTuple("a", "b", 1), new GraphTuple("b", "a", 2)),
+        new GraphFileReader().getGraphTuplesForFile(file.toString()));
+  }
+
+  @Test
+  void test_getGraphTuplesForFile_leadingEmptyLines_sameAsStream(@TempDir Path dir)
+      throws IOException {
+    for (String content :
+        List.of("\na->b:1\nb->c:2\n", " \r\n\n\ta->b:1\nb->c:2", "\n\nab1, bc2\n")) {
+      // Arrange
+      Path file = dir.resolve("graph.txt");
+      Files.writeString(file, content);
+      List<GraphTuple> streamed = new ArrayList<>();
+      // Act
+      List<GraphTuple> listed = new GraphFileReader().getGraphTuplesForFile(file.toString());
+      new GraphFileReader()
+          .streamGraphTuplesForFile(
+              file.toString(),
+              (parentName, childName, latency) ->
+                  streamed.add(new GraphTuple(parentName, childName, latency)));
+      // Assert
+      assertEquals(List.of(new GraphTuple("a", "b", 1), new GraphTuple("b", "c", 2)), listed);
+      assertEquals(listed, streamed, content);
+    }
+  }
+
+  @Test
+  void test_getGraphTuplesForFile_nonAsciiNames_sameAsStream(@TempDir Path dir)
+      throws IOException {
+    for (String content : List.of("\u00e9B5, BC4", "A\u20ac1,\u20ac\u00e92")) {
+      // Arrange
+      Path file = dir.resolve("graph.txt");
+      Files.writeString(file, content);
+      List<GraphTuple> streamed = new ArrayList<>();
+      // Act
+      List<GraphTuple> listed = new GraphFileReader().getGraphTuplesForFile(file.toString());
+      new GraphFileReader()
+          .streamGraphTuplesForFile(
+              file.toString(),
+              (parentName, childName, latency) ->
+                  streamed.add(new GraphTuple(parentName, childName, latency)),
+              2);
+      // Assert
+      assertEquals(listed, streamed, content);
+    }
+    Path file = dir.resolve("graph.txt");
+    Files.writeString(file, "\u00e9B5, BC4");
+    assertEquals(
+        List.of(new GraphTuple("\u00e9", "B", 5), new GraphTuple("B", "C", 4)),
+        new GraphFileReader().getGraphTuplesForFile(file.toString()));
+  }
+
+  @Test
+  void test_getGraphTuplesForFile_invalidNames_exceptionLikeStream(@TempDir Path dir)
+      throws IOException {
+    for (byte[] content :
+        List.of(
+            "\ud83d\ude00B5".getBytes(StandardCharsets.UTF_8),
+            "A\ud83d\ude005".getBytes(StandardCharsets.UTF_8),
+            new byte[] {(byte) 0xc3, 'B', '5'},
+            new byte[] {'A', (byte) 0xc1, (byte) 0x81, '5'})) {
+      // Arrange
+      Path file = dir.resolve("graph.txt");
+      Files.write(file, content);
+      // Act & Assert
+      Assertions.assertThrows(
+          MalformedInputFormatException.class,
+          () -> new GraphFileReader().getGraphTuplesForFile(file.toString()));
+      Assertions.assertThrows(
+          MalformedInputFormatException.class,
+          () -> new GraphFileReader().streamGraphTuplesForFile(file.toString(), (p, c, l) -> {}));
+    }
+  }
+
+  @Test
+  void test_getGraphTuplesForFile_malformedContent_exceptionLikeStream(@TempDir Path dir)
+      throws IOException {
+    for (String content :
+        List.of(
+            "a->b:",
+            "a->b:1\nc->d",
+            "->b:1",
+            " -> b:1",
+            "a-> :1",
+            "a->b:1x",
+            "a->b:1, c->d:2",
+            "a->b:99999999999",
+            "a->b:1\nAB5",
+            "AB5,",
+            "AB5\nBC4")) {
+      // Arrange
+      Path file = dir.resolve("graph.txt");
+      Files.writeString(file, content);
+      // Act
+      Assertions.assertThrows(
+          MalformedInputFormatException.class,
+          () -> new GraphFileReader().getGraphTuplesForFile(file.toString()),
+          content);
+      Assertions.assertThrows(
+          MalformedInputFormatException.class,
+          () -> new GraphFileReader().streamGraphTuplesForFile(file.toString(), (p, c, l) -> {}),
+          content);
+    }
+  }
 }
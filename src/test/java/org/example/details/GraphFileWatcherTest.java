@@ -0,0 +1,69 @@
+package org.example.details;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphFileWatcherTest {
+
+  @Test
+  void test_watch_fileChanged_callbackCalled(@TempDir Path dir)
+      throws IOException, InterruptedException {
+    // Arrange
+    Path file = dir.resolve("graph.txt");
+    Files.writeString(file, "AB5");
+    Semaphore changes = new Semaphore(0);
+    BlockingQueue<RuntimeException> errors = new LinkedBlockingQueue<>();
+    GraphFileWatcher watcher = new GraphFileWatcher(file.toString(), changes::release, errors::add);
+    try {
+      // Act
+      Files.writeString(dir.resolve("other.txt"), "AB6");
+      boolean otherFileChanged = changes.tryAcquire(1, TimeUnit.SECONDS);
+      Files.writeString(file, "AB7");
+      // Assert, a write can arrive as more than one batch of events, so at least one callback.
+      assertFalse(otherFileChanged);
+      assertTrue(changes.tryAcquire(30, TimeUnit.SECONDS));
+      assertTrue(errors.isEmpty());
+    } finally {
+      watcher.close();
+    }
+  }
+
+  @Test
+  void test_watch_callbackFails_errorReportedAndWatcherKeepsGoing(@TempDir Path dir)
+      throws IOException, InterruptedException {
+    // Arrange
+    Path file = dir.resolve("graph.txt");
+    Files.writeString(file, "AB5");
+    Semaphore changes = new Semaphore(0);
+    BlockingQueue<RuntimeException> errors = new LinkedBlockingQueue<>();
+    GraphFileWatcher watcher =
+        new GraphFileWatcher(
+            file.toString(),
+            () -> {
+              changes.release();
+              throw new IllegalStateException("reload failed");
+            },
+            errors::add);
+    try {
+      // Act
+      Files.writeString(file, "AB7");
+      RuntimeException error = errors.poll(30, TimeUnit.SECONDS);
+      Files.writeString(file, "AB8");
+      // Assert
+      assertEquals("reload failed", error.getMessage());
+      assertTrue(changes.tryAcquire(2, 30, TimeUnit.SECONDS));
+    } finally {
+      watcher.close();
+    }
+  }
+}
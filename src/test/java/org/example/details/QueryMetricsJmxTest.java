@@ -0,0 +1,45 @@
+package org.example.details;
+
+import org.example.core.graph.GraphServiceImpl;
+import org.example.core.graph.GraphTuple;
+import org.example.core.traverse.TraverseService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryMetricsJmxTest {
+
+  @Test
+  void test_register_enabledOverJmx_queryStatsVisible() throws Exception {
+    // Arrange
+    List<GraphTuple> tuples = List.of(new GraphTuple("A", "B", 5), new GraphTuple("B", "C", 4));
+    TraverseService traverseService = new TraverseService(new GraphServiceImpl(file -> tuples));
+    traverseService.initGraph("anyString");
+    MBeanServer server = MBeanServerFactory.newMBeanServer();
+    ObjectName settings = new ObjectName("org.example:type=TraverseService");
+    ObjectName shortestLatency =
+        new ObjectName("org.example:type=TraverseService,query=SHORTEST_LATENCY");
+    try (QueryMetricsJmx jmx = new QueryMetricsJmx(traverseService.queryMetrics(), server)) {
+      // Act
+      server.setAttribute(settings, new Attribute("Enabled", true));
+      server.setAttribute(settings, new Attribute("SlowQueryThresholdMillis", 0L));
+      traverseService.findShortestLatencyForPath("A", "C");
+      // Assert
+      assertTrue(traverseService.queryMetrics().isEnabled());
+      assertTrue(jmx.objectNames().contains(shortestLatency));
+      assertEquals(1L, server.getAttribute(shortestLatency, "Count"));
+      assertEquals(2L, server.getAttribute(shortestLatency, "NodesExpanded"));
+      assertEquals(1, ((String[]) server.getAttribute(settings, "SlowQueries")).length);
+      server.invoke(settings, "reset", null, null);
+      assertEquals(0L, server.getAttribute(shortestLatency, "Count"));
+    }
+    assertFalse(server.isRegistered(settings));
+    assertFalse(server.isRegistered(shortestLatency));
+  }
+}